@@ -0,0 +1,69 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 PayinTech
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.payintech.play.remoteconfiguration.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler enabled, so each result
+ * reports both throughput and allocation rate. Standard JMH command
+ * line options are supported (ie: "-p keys=1000 ConsulProviderBenchmark").
+ *
+ * @author Thibault Meyer
+ * @version 26.10.18
+ * @since 26.10.18
+ */
+public final class BenchmarkRunner {
+
+    /**
+     * Build a new instance.
+     *
+     * @since 26.10.18
+     */
+    private BenchmarkRunner() {
+    }
+
+    /**
+     * Entry point.
+     *
+     * @param args The JMH command line options
+     * @throws CommandLineOptionException When the command line is not valid
+     * @throws RunnerException            When a benchmark fails
+     * @since 26.10.18
+     */
+    public static void main(final String[] args) throws CommandLineOptionException, RunnerException {
+        final CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+        new Runner(
+            new OptionsBuilder()
+                .parent(commandLineOptions)
+                .addProfiler(GCProfiler.class)
+                .build()
+        ).run();
+    }
+}
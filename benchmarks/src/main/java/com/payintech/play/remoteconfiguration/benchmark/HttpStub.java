@@ -0,0 +1,85 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 PayinTech
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.payintech.play.remoteconfiguration.benchmark;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+
+/**
+ * In-process HTTP server answering every request with the same body.
+ *
+ * @author Thibault Meyer
+ * @version 26.10.18
+ * @since 26.10.18
+ */
+public final class HttpStub implements Closeable {
+
+    /**
+     * The HTTP server.
+     *
+     * @since 26.10.18
+     */
+    private final HttpServer server;
+
+    /**
+     * Build a new instance listening on a random port.
+     *
+     * @param body The body to return
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    public HttpStub(final byte[] body) throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 128);
+        this.server.createContext("/", exchange -> {
+            exchange.getRequestBody().close();
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.getResponseHeaders().add("X-Consul-Index", "1");
+            exchange.getResponseHeaders().add("X-Etcd-Index", "1");
+            exchange.sendResponseHeaders(200, body.length);
+            try (final OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        });
+        this.server.start();
+    }
+
+    /**
+     * Retrieve the endpoint of the server.
+     *
+     * @return The endpoint, ie: "http://127.0.0.1:12345/"
+     * @since 26.10.18
+     */
+    public String getEndpoint() {
+        return "http://127.0.0.1:" + this.server.getAddress().getPort() + "/";
+    }
+
+    @Override
+    public void close() {
+        this.server.stop(0);
+    }
+}
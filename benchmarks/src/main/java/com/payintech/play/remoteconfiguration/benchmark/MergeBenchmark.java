@@ -0,0 +1,118 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 PayinTech
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.payintech.play.remoteconfiguration.benchmark;
+
+import com.payintech.play.remoteconfiguration.provider.KeyValueConfigBuilder;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the merge of the remote configuration with the
+ * local configuration, as done by {@code PlayApplicationLoader}.
+ *
+ * @author Thibault Meyer
+ * @version 26.10.18
+ * @since 26.10.18
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class MergeBenchmark {
+
+    /**
+     * The number of remote keys.
+     *
+     * @since 26.10.18
+     */
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int keys;
+
+    /**
+     * The remote configuration.
+     *
+     * @since 26.10.18
+     */
+    private Config remoteConfiguration;
+
+    /**
+     * The local configuration.
+     *
+     * @since 26.10.18
+     */
+    private Config localConfiguration;
+
+    /**
+     * Build the configurations to merge.
+     *
+     * @since 26.10.18
+     */
+    @Setup
+    public void setup() {
+        final KeyValueConfigBuilder builder = new KeyValueConfigBuilder("benchmark");
+        for (int idx = 0; idx < this.keys; ++idx) {
+            builder.put(Payloads.key(idx).replace('/', '.'), Payloads.value(idx));
+        }
+        this.remoteConfiguration = builder.build();
+        this.localConfiguration = ConfigFactory.load();
+    }
+
+    /**
+     * Merge the remote configuration with the local configuration.
+     *
+     * @return The merged configuration
+     * @since 26.10.18
+     */
+    @Benchmark
+    public Config withFallback() {
+        return this.remoteConfiguration.withFallback(this.localConfiguration);
+    }
+
+    /**
+     * Merge the remote configuration with the local configuration,
+     * then resolve the merged configuration.
+     *
+     * @return The merged configuration
+     * @since 26.10.18
+     */
+    @Benchmark
+    public Config withFallbackAndResolve() {
+        return this.remoteConfiguration.withFallback(this.localConfiguration).resolve();
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 PayinTech
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.payintech.play.remoteconfiguration.benchmark;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Synthetic provider responses. Keys are laid out as
+ * {@code <prefix>/app<N>/section<N>/key<N>}, with at most 100 keys per
+ * section and 100 sections per application. Values cycle through the
+ * kind of values usually found in a configuration (strings, integers,
+ * booleans and lists).
+ *
+ * @author Thibault Meyer
+ * @version 26.10.18
+ * @since 26.10.18
+ */
+public final class Payloads {
+
+    /**
+     * Values used to fill the payloads.
+     *
+     * @since 26.10.18
+     */
+    private static final String[] VALUES = new String[]{
+        "org.postgresql.Driver",
+        "5000",
+        "false",
+        "[1,2,3,4,5]",
+        "Hello World",
+    };
+
+    /**
+     * The factory used to create Json generators.
+     *
+     * @since 26.10.18
+     */
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    /**
+     * Build a new instance.
+     *
+     * @since 26.10.18
+     */
+    private Payloads() {
+    }
+
+    /**
+     * Retrieve the application directory of a key.
+     *
+     * @param idx The key index
+     * @return The application directory
+     * @since 26.10.18
+     */
+    private static String application(final int idx) {
+        return "app" + idx / 10000;
+    }
+
+    /**
+     * Retrieve the section directory of a key.
+     *
+     * @param idx The key index
+     * @return The section directory
+     * @since 26.10.18
+     */
+    private static String section(final int idx) {
+        return "section" + (idx / 100) % 100;
+    }
+
+    /**
+     * Retrieve the value of a key.
+     *
+     * @param idx The key index
+     * @return The value
+     * @since 26.10.18
+     */
+    public static String value(final int idx) {
+        return VALUES[idx % VALUES.length];
+    }
+
+    /**
+     * Retrieve the path of a key, relative to the prefix.
+     *
+     * @param idx The key index
+     * @return The path of the key
+     * @since 26.10.18
+     */
+    public static String key(final int idx) {
+        return application(idx) + "/" + section(idx) + "/key" + idx;
+    }
+
+    /**
+     * Build a Consul "?recurse" response.
+     *
+     * @param prefix The key prefix
+     * @param keys   The number of keys
+     * @return The response body
+     * @since 26.10.18
+     */
+    public static byte[] consulRecurse(final String prefix, final int keys) {
+        final Base64.Encoder encoder = Base64.getEncoder();
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream(keys * 96);
+        try (final JsonGenerator generator = JSON_FACTORY.createGenerator(baos, JsonEncoding.UTF8)) {
+            generator.writeStartArray();
+            for (int idx = 0; idx < keys; ++idx) {
+                generator.writeStartObject();
+                generator.writeNumberField("LockIndex", 0);
+                generator.writeStringField("Key", prefix + "/" + key(idx));
+                generator.writeNumberField("Flags", 0);
+                generator.writeStringField(
+                    "Value",
+                    encoder.encodeToString(value(idx).getBytes(StandardCharsets.UTF_8))
+                );
+                generator.writeNumberField("CreateIndex", idx + 1);
+                generator.writeNumberField("ModifyIndex", idx + 1);
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+        } catch (final IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return baos.toByteArray();
+    }
+
+    /**
+     * Build an etcd v2 "?recursive=true" response.
+     *
+     * @param prefix The key prefix
+     * @param keys   The number of keys
+     * @return The response body
+     * @since 26.10.18
+     */
+    public static byte[] etcdRecursive(final String prefix, final int keys) {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream(keys * 96);
+        try (final JsonGenerator generator = JSON_FACTORY.createGenerator(baos, JsonEncoding.UTF8)) {
+            generator.writeStartObject();
+            generator.writeStringField("action", "get");
+            generator.writeObjectFieldStart("node");
+            generator.writeStringField("key", "/" + prefix);
+            generator.writeBooleanField("dir", true);
+            generator.writeArrayFieldStart("nodes");
+            String currentApplication = null;
+            String currentSection = null;
+            for (int idx = 0; idx < keys; ++idx) {
+                if (!application(idx).equals(currentApplication)) {
+                    if (currentApplication != null) {
+                        generator.writeEndArray();
+                        generator.writeEndObject();
+                        generator.writeEndArray();
+                        generator.writeEndObject();
+                    }
+                    currentApplication = application(idx);
+                    currentSection = null;
+                    generator.writeStartObject();
+                    generator.writeStringField("key", "/" + prefix + "/" + currentApplication);
+                    generator.writeBooleanField("dir", true);
+                    generator.writeArrayFieldStart("nodes");
+                }
+                if (!section(idx).equals(currentSection)) {
+                    if (currentSection != null) {
+                        generator.writeEndArray();
+                        generator.writeEndObject();
+                    }
+                    currentSection = section(idx);
+                    generator.writeStartObject();
+                    generator.writeStringField("key", "/" + prefix + "/" + currentApplication + "/" + currentSection);
+                    generator.writeBooleanField("dir", true);
+                    generator.writeArrayFieldStart("nodes");
+                }
+                generator.writeStartObject();
+                generator.writeStringField("key", "/" + prefix + "/" + key(idx));
+                generator.writeStringField("value", value(idx));
+                generator.writeNumberField("modifiedIndex", idx + 1);
+                generator.writeNumberField("createdIndex", idx + 1);
+                generator.writeEndObject();
+            }
+            if (currentApplication != null) {
+                generator.writeEndArray();
+                generator.writeEndObject();
+                generator.writeEndArray();
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+            generator.writeEndObject();
+        } catch (final IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return baos.toByteArray();
+    }
+}
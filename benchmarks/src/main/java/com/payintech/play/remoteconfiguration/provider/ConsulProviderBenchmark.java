@@ -0,0 +1,156 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 PayinTech
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.payintech.play.remoteconfiguration.provider;
+
+import com.payintech.play.remoteconfiguration.benchmark.HttpStub;
+import com.payintech.play.remoteconfiguration.benchmark.Payloads;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the HashiCorp Consul provider: decoding of a synthetic
+ * "?recurse" response and end-to-end configuration loading
+ * against an in-process HTTP stub.
+ *
+ * @author Thibault Meyer
+ * @version 26.10.18
+ * @since 26.10.18
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class ConsulProviderBenchmark {
+
+    /**
+     * The key prefix.
+     *
+     * @since 26.10.18
+     */
+    private static final String PREFIX = "benchmark";
+
+    /**
+     * The number of keys.
+     *
+     * @since 26.10.18
+     */
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int keys;
+
+    /**
+     * The response body.
+     *
+     * @since 26.10.18
+     */
+    private byte[] payload;
+
+    /**
+     * The HTTP stub.
+     *
+     * @since 26.10.18
+     */
+    private HttpStub httpStub;
+
+    /**
+     * The local configuration.
+     *
+     * @since 26.10.18
+     */
+    private Config localConfiguration;
+
+    /**
+     * Build the response and start the HTTP stub.
+     *
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        this.payload = Payloads.consulRecurse(PREFIX, this.keys);
+        this.httpStub = new HttpStub(this.payload);
+        final String endpoint = this.httpStub.getEndpoint();
+        this.localConfiguration = ConfigFactory.parseMap(
+            new HashMap<String, Object>() {{
+                put("remote-configuration.consul.endpoint", endpoint);
+                put("remote-configuration.consul.prefix", PREFIX);
+            }}
+        ).withFallback(ConfigFactory.defaultReference());
+    }
+
+    /**
+     * Stop the HTTP stub.
+     *
+     * @since 26.10.18
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.httpStub.close();
+    }
+
+    /**
+     * Decode the response and build the configuration.
+     *
+     * @return The configuration
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    @Benchmark
+    public Config decode() throws IOException {
+        final KeyValueConfigBuilder builder = new KeyValueConfigBuilder("benchmark");
+        ConsulProvider.readKeyValues(new ByteArrayInputStream(this.payload), PREFIX, builder);
+        return builder.build();
+    }
+
+    /**
+     * Load the configuration from the HTTP stub.
+     *
+     * @return The configuration
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    @Benchmark
+    public Config loadConfiguration() throws IOException {
+        return new ConsulProvider().loadConfiguration(play.Mode.PROD, this.localConfiguration);
+    }
+}
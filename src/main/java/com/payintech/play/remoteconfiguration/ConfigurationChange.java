@@ -0,0 +1,293 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 PayinTech
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.payintech.play.remoteconfiguration;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigValue;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keys added, removed and changed between two versions of the
+ * configuration. Keys are full configuration paths (ie: "db.default.url").
+ * Typed values can be read from the old and new configurations.
+ *
+ * @author Thibault Meyer
+ * @version 26.10.18
+ * @since 26.10.18
+ */
+public final class ConfigurationChange {
+
+    /**
+     * The configuration before the change.
+     *
+     * @since 26.10.18
+     */
+    private final Config oldConfiguration;
+
+    /**
+     * The configuration after the change.
+     *
+     * @since 26.10.18
+     */
+    private final Config newConfiguration;
+
+    /**
+     * The added keys, with their new value.
+     *
+     * @since 26.10.18
+     */
+    private final Map<String, ConfigValue> added;
+
+    /**
+     * The removed keys, with their old value.
+     *
+     * @since 26.10.18
+     */
+    private final Map<String, ConfigValue> removed;
+
+    /**
+     * The changed keys, with their old and new values.
+     *
+     * @since 26.10.18
+     */
+    private final Map<String, ValueChange> changed;
+
+    /**
+     * Build a new instance.
+     *
+     * @param oldConfiguration The configuration before the change
+     * @param newConfiguration The configuration after the change
+     * @param added            The added keys, with their new value
+     * @param removed          The removed keys, with their old value
+     * @param changed          The changed keys, with their old and new values
+     * @since 26.10.18
+     */
+    private ConfigurationChange(final Config oldConfiguration,
+                                final Config newConfiguration,
+                                final Map<String, ConfigValue> added,
+                                final Map<String, ConfigValue> removed,
+                                final Map<String, ValueChange> changed) {
+        this.oldConfiguration = oldConfiguration;
+        this.newConfiguration = newConfiguration;
+        this.added = Collections.unmodifiableMap(added);
+        this.removed = Collections.unmodifiableMap(removed);
+        this.changed = Collections.unmodifiableMap(changed);
+    }
+
+    /**
+     * Compute the keys added, removed and changed between two versions
+     * of the configuration.
+     *
+     * @param oldConfiguration The configuration before the change
+     * @param newConfiguration The configuration after the change
+     * @return The change
+     * @since 26.10.18
+     */
+    static ConfigurationChange compute(final Config oldConfiguration, final Config newConfiguration) {
+        final Map<String, ConfigValue> oldValues = new HashMap<>();
+        for (final Map.Entry<String, ConfigValue> entry : oldConfiguration.entrySet()) {
+            oldValues.put(entry.getKey(), entry.getValue());
+        }
+        final Map<String, ConfigValue> added = new HashMap<>();
+        final Map<String, ValueChange> changed = new HashMap<>();
+        for (final Map.Entry<String, ConfigValue> entry : newConfiguration.entrySet()) {
+            final ConfigValue oldValue = oldValues.remove(entry.getKey());
+            if (oldValue == null) {
+                added.put(entry.getKey(), entry.getValue());
+            } else if (!oldValue.equals(entry.getValue())) {
+                changed.put(entry.getKey(), new ValueChange(oldValue, entry.getValue()));
+            }
+        }
+        return new ConfigurationChange(oldConfiguration, newConfiguration, added, oldValues, changed);
+    }
+
+    /**
+     * Check if a key is located under a path.
+     *
+     * @param path The path, an empty path matches all keys
+     * @param key  The key
+     * @return {@code true} if the key is the path itself or is located under it
+     * @since 26.10.18
+     */
+    private static boolean isUnder(final String path, final String key) {
+        return path.isEmpty()
+            || key.equals(path)
+            || key.length() > path.length() && key.charAt(path.length()) == '.' && key.startsWith(path);
+    }
+
+    /**
+     * Retrieve the part of this change located under a path.
+     *
+     * @param path The path, an empty path matches all keys
+     * @return The change located under the path
+     * @since 26.10.18
+     */
+    ConfigurationChange filter(final String path) {
+        if (path.isEmpty()) {
+            return this;
+        }
+        final Map<String, ConfigValue> filteredAdded = new HashMap<>();
+        final Map<String, ConfigValue> filteredRemoved = new HashMap<>();
+        final Map<String, ValueChange> filteredChanged = new HashMap<>();
+        this.added.forEach((key, value) -> {
+            if (isUnder(path, key)) {
+                filteredAdded.put(key, value);
+            }
+        });
+        this.removed.forEach((key, value) -> {
+            if (isUnder(path, key)) {
+                filteredRemoved.put(key, value);
+            }
+        });
+        this.changed.forEach((key, value) -> {
+            if (isUnder(path, key)) {
+                filteredChanged.put(key, value);
+            }
+        });
+        return new ConfigurationChange(
+            this.oldConfiguration,
+            this.newConfiguration,
+            filteredAdded,
+            filteredRemoved,
+            filteredChanged
+        );
+    }
+
+    /**
+     * Check if no key has been added, removed or changed.
+     *
+     * @return {@code true} if nothing has changed
+     * @since 26.10.18
+     */
+    public boolean isEmpty() {
+        return this.added.isEmpty() && this.removed.isEmpty() && this.changed.isEmpty();
+    }
+
+    /**
+     * Retrieve the configuration before the change.
+     *
+     * @return The old configuration
+     * @since 26.10.18
+     */
+    public Config getOldConfiguration() {
+        return this.oldConfiguration;
+    }
+
+    /**
+     * Retrieve the configuration after the change.
+     *
+     * @return The new configuration
+     * @since 26.10.18
+     */
+    public Config getNewConfiguration() {
+        return this.newConfiguration;
+    }
+
+    /**
+     * Retrieve the added keys.
+     *
+     * @return The added keys, with their new value
+     * @since 26.10.18
+     */
+    public Map<String, ConfigValue> getAdded() {
+        return this.added;
+    }
+
+    /**
+     * Retrieve the removed keys.
+     *
+     * @return The removed keys, with their old value
+     * @since 26.10.18
+     */
+    public Map<String, ConfigValue> getRemoved() {
+        return this.removed;
+    }
+
+    /**
+     * Retrieve the changed keys.
+     *
+     * @return The changed keys, with their old and new values
+     * @since 26.10.18
+     */
+    public Map<String, ValueChange> getChanged() {
+        return this.changed;
+    }
+
+    /**
+     * Old and new values of a changed key.
+     *
+     * @since 26.10.18
+     */
+    public static final class ValueChange {
+
+        /**
+         * The value before the change.
+         *
+         * @since 26.10.18
+         */
+        private final ConfigValue oldValue;
+
+        /**
+         * The value after the change.
+         *
+         * @since 26.10.18
+         */
+        private final ConfigValue newValue;
+
+        /**
+         * Build a new instance.
+         *
+         * @param oldValue The value before the change
+         * @param newValue The value after the change
+         * @since 26.10.18
+         */
+        ValueChange(final ConfigValue oldValue, final ConfigValue newValue) {
+            this.oldValue = oldValue;
+            this.newValue = newValue;
+        }
+
+        /**
+         * Retrieve the value before the change.
+         *
+         * @return The old value
+         * @since 26.10.18
+         */
+        public ConfigValue getOldValue() {
+            return this.oldValue;
+        }
+
+        /**
+         * Retrieve the value after the change.
+         *
+         * @return The new value
+         * @since 26.10.18
+         */
+        public ConfigValue getNewValue() {
+            return this.newValue;
+        }
+    }
+}
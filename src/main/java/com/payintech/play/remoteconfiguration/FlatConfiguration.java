@@ -0,0 +1,584 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 PayinTech
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.payintech.play.remoteconfiguration;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigException;
+import com.typesafe.config.ConfigValue;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Immutable, read-optimized view of a resolved configuration. All
+ * values are flattened in an open-addressing hash index keyed by their
+ * interned path ("db.default.url"), and converted once to their typed
+ * representations. Lookups never parse the path, never walk nested
+ * objects and, except for the list accessors which return a copy of
+ * the values, never allocate. Paths are the ones of
+ * {@code Config.entrySet()}; {@code null} values are not indexed.
+ *
+ * @author Thibault Meyer
+ * @version 26.10.18
+ * @since 26.10.18
+ */
+public final class FlatConfiguration {
+
+    /**
+     * The value can be read as a long.
+     *
+     * @since 26.10.18
+     */
+    private static final int HAS_LONG = 1;
+
+    /**
+     * The value can be read as a double.
+     *
+     * @since 26.10.18
+     */
+    private static final int HAS_DOUBLE = 1 << 1;
+
+    /**
+     * The value can be read as a boolean.
+     *
+     * @since 26.10.18
+     */
+    private static final int HAS_BOOLEAN = 1 << 2;
+
+    /**
+     * The value can be read as a duration.
+     *
+     * @since 26.10.18
+     */
+    private static final int HAS_DURATION = 1 << 3;
+
+    /**
+     * The value is a list.
+     *
+     * @since 26.10.18
+     */
+    private static final int HAS_LIST = 1 << 4;
+
+    /**
+     * The source configuration.
+     *
+     * @since 26.10.18
+     */
+    private final Config config;
+
+    /**
+     * The mask applied to hashes to get a slot index.
+     *
+     * @since 26.10.18
+     */
+    private final int mask;
+
+    /**
+     * The number of indexed values.
+     *
+     * @since 26.10.18
+     */
+    private final int size;
+
+    /**
+     * The interned paths, by slot.
+     *
+     * @since 26.10.18
+     */
+    private final String[] keys;
+
+    /**
+     * The available representations of the values, by slot.
+     *
+     * @since 26.10.18
+     */
+    private final byte[] flags;
+
+    /**
+     * The values as strings, by slot ({@code null} for lists).
+     *
+     * @since 26.10.18
+     */
+    private final String[] strings;
+
+    /**
+     * The values as longs, by slot.
+     *
+     * @since 26.10.18
+     */
+    private final long[] longs;
+
+    /**
+     * The values as doubles, by slot.
+     *
+     * @since 26.10.18
+     */
+    private final double[] doubles;
+
+    /**
+     * The values as booleans, by slot.
+     *
+     * @since 26.10.18
+     */
+    private final boolean[] booleans;
+
+    /**
+     * The values as durations in nanoseconds, by slot.
+     *
+     * @since 26.10.18
+     */
+    private final long[] durations;
+
+    /**
+     * The list values, by slot.
+     *
+     * @since 26.10.18
+     */
+    private final ListValue[] lists;
+
+    /**
+     * Build a new instance.
+     *
+     * @param config   The source configuration
+     * @param capacity The number of slots, a power of two
+     * @param size     The number of values to index
+     * @since 26.10.18
+     */
+    private FlatConfiguration(final Config config, final int capacity, final int size) {
+        this.config = config;
+        this.mask = capacity - 1;
+        this.size = size;
+        this.keys = new String[capacity];
+        this.flags = new byte[capacity];
+        this.strings = new String[capacity];
+        this.longs = new long[capacity];
+        this.doubles = new double[capacity];
+        this.booleans = new boolean[capacity];
+        this.durations = new long[capacity];
+        this.lists = new ListValue[capacity];
+    }
+
+    /**
+     * Flatten a resolved configuration.
+     *
+     * @param config The configuration
+     * @return The flattened configuration
+     * @since 26.10.18
+     */
+    public static FlatConfiguration of(final Config config) {
+        final Set<Map.Entry<String, ConfigValue>> entries = config.entrySet();
+        // Keep the load factor under 0.5 to keep probe sequences short
+        final int capacity = Integer.highestOneBit(Math.max(2, entries.size() * 2 - 1)) << 1;
+        final FlatConfiguration flatConfiguration = new FlatConfiguration(config, capacity, entries.size());
+        for (final Map.Entry<String, ConfigValue> entry : entries) {
+            flatConfiguration.index(entry.getKey().intern(), entry.getValue());
+        }
+        return flatConfiguration;
+    }
+
+    /**
+     * Spread the bits of a hash code.
+     *
+     * @param hashCode The hash code
+     * @return The spread hash
+     * @since 26.10.18
+     */
+    private static int spread(final int hashCode) {
+        return hashCode ^ (hashCode >>> 16);
+    }
+
+    /**
+     * Check if a string looks like a number or a duration, to avoid
+     * costly conversion failures.
+     *
+     * @param value The string
+     * @return {@code true} if the string could be numeric
+     * @since 26.10.18
+     */
+    private static boolean isNumeric(final String value) {
+        if (value.isEmpty()) {
+            return false;
+        }
+        final char first = value.charAt(0);
+        return Character.isDigit(first) || first == '-' || first == '+' || first == '.';
+    }
+
+    /**
+     * Find the slot of a path.
+     *
+     * @param path The path
+     * @return The slot, or -1 if the path is not indexed
+     * @since 26.10.18
+     */
+    private int indexOf(final String path) {
+        int idx = spread(path.hashCode()) & this.mask;
+        String key = this.keys[idx];
+        while (key != null) {
+            if (key == path || key.equals(path)) {
+                return idx;
+            }
+            idx = (idx + 1) & this.mask;
+            key = this.keys[idx];
+        }
+        return -1;
+    }
+
+    /**
+     * Index a value and convert it to all its representations.
+     *
+     * @param path  The interned path
+     * @param value The value
+     * @since 26.10.18
+     */
+    private void index(final String path, final ConfigValue value) {
+        int idx = spread(path.hashCode()) & this.mask;
+        while (this.keys[idx] != null) {
+            idx = (idx + 1) & this.mask;
+        }
+        this.keys[idx] = path;
+        int valueFlags = 0;
+        switch (value.valueType()) {
+            case NUMBER:
+                final Number number = (Number) value.unwrapped();
+                this.strings[idx] = this.config.getString(path);
+                this.longs[idx] = number.longValue();
+                this.doubles[idx] = number.doubleValue();
+                this.durations[idx] = TimeUnit.MILLISECONDS.toNanos(number.longValue());
+                valueFlags = HAS_LONG | HAS_DOUBLE | HAS_DURATION;
+                break;
+            case BOOLEAN:
+                this.strings[idx] = this.config.getString(path);
+                this.booleans[idx] = (Boolean) value.unwrapped();
+                valueFlags = HAS_BOOLEAN;
+                break;
+            case STRING:
+                final String string = (String) value.unwrapped();
+                this.strings[idx] = string;
+                valueFlags = this.convertString(idx, path, string);
+                break;
+            case LIST:
+                this.lists[idx] = new ListValue(this.config, path);
+                valueFlags = HAS_LIST;
+                break;
+            default:
+                break;
+        }
+        this.flags[idx] = (byte) valueFlags;
+    }
+
+    /**
+     * Convert a string value the same way {@code Config} does.
+     *
+     * @param idx    The slot
+     * @param path   The path
+     * @param string The string value
+     * @return The available representations
+     * @since 26.10.18
+     */
+    private int convertString(final int idx, final String path, final String string) {
+        int valueFlags = 0;
+        switch (string) {
+            case "true":
+            case "yes":
+            case "on":
+                this.booleans[idx] = true;
+                return HAS_BOOLEAN;
+            case "false":
+            case "no":
+            case "off":
+                this.booleans[idx] = false;
+                return HAS_BOOLEAN;
+            default:
+                break;
+        }
+        if (isNumeric(string)) {
+            try {
+                this.doubles[idx] = this.config.getDouble(path);
+                valueFlags |= HAS_DOUBLE;
+                this.longs[idx] = this.config.getLong(path);
+                valueFlags |= HAS_LONG;
+            } catch (final ConfigException ignore) {
+                // Not a number
+            }
+            try {
+                this.durations[idx] = this.config.getDuration(path, TimeUnit.NANOSECONDS);
+                valueFlags |= HAS_DURATION;
+            } catch (final ConfigException ignore) {
+                // Not a duration
+            }
+        }
+        return valueFlags;
+    }
+
+    /**
+     * Find the slot of a path holding the given representation.
+     *
+     * @param path     The path
+     * @param flag     The expected representation
+     * @param expected The expected type, for error messages
+     * @return The slot
+     * @throws ConfigException.Missing  If the path is not indexed
+     * @throws ConfigException.BadValue If the value can't be converted
+     * @since 26.10.18
+     */
+    private int require(final String path, final int flag, final String expected) {
+        final int idx = this.indexOf(path);
+        if (idx < 0) {
+            throw new ConfigException.Missing(path);
+        }
+        if ((this.flags[idx] & flag) == 0) {
+            throw new ConfigException.BadValue(path, "Value is not a " + expected);
+        }
+        return idx;
+    }
+
+    /**
+     * Retrieve the source configuration.
+     *
+     * @return The source configuration
+     * @since 26.10.18
+     */
+    public Config getConfig() {
+        return this.config;
+    }
+
+    /**
+     * Retrieve the number of indexed values.
+     *
+     * @return The number of indexed values
+     * @since 26.10.18
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Check if a path holds a non-null value.
+     *
+     * @param path The path
+     * @return {@code true} if the path exists
+     * @since 26.10.18
+     */
+    public boolean hasPath(final String path) {
+        return this.indexOf(path) >= 0;
+    }
+
+    /**
+     * Retrieve a string.
+     *
+     * @param path The path
+     * @return The value
+     * @since 26.10.18
+     */
+    public String getString(final String path) {
+        final int idx = this.indexOf(path);
+        if (idx < 0) {
+            throw new ConfigException.Missing(path);
+        }
+        if (this.strings[idx] == null) {
+            throw new ConfigException.BadValue(path, "Value is not a string");
+        }
+        return this.strings[idx];
+    }
+
+    /**
+     * Retrieve a boolean.
+     *
+     * @param path The path
+     * @return The value
+     * @since 26.10.18
+     */
+    public boolean getBoolean(final String path) {
+        return this.booleans[this.require(path, HAS_BOOLEAN, "boolean")];
+    }
+
+    /**
+     * Retrieve an integer.
+     *
+     * @param path The path
+     * @return The value
+     * @since 26.10.18
+     */
+    public int getInt(final String path) {
+        final long value = this.longs[this.require(path, HAS_LONG, "number")];
+        if ((int) value != value) {
+            throw new ConfigException.BadValue(path, "Value is out of the integer range");
+        }
+        return (int) value;
+    }
+
+    /**
+     * Retrieve a long.
+     *
+     * @param path The path
+     * @return The value
+     * @since 26.10.18
+     */
+    public long getLong(final String path) {
+        return this.longs[this.require(path, HAS_LONG, "number")];
+    }
+
+    /**
+     * Retrieve a double.
+     *
+     * @param path The path
+     * @return The value
+     * @since 26.10.18
+     */
+    public double getDouble(final String path) {
+        return this.doubles[this.require(path, HAS_DOUBLE, "number")];
+    }
+
+    /**
+     * Retrieve a duration. Numbers are read as milliseconds.
+     *
+     * @param path The path
+     * @param unit The unit of the returned value
+     * @return The value
+     * @since 26.10.18
+     */
+    public long getDuration(final String path, final TimeUnit unit) {
+        return unit.convert(this.durations[this.require(path, HAS_DURATION, "duration")], TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Retrieve a list of strings.
+     *
+     * @param path The path
+     * @return A copy of the values
+     * @since 26.10.18
+     */
+    public String[] getStringArray(final String path) {
+        final String[] values = this.lists[this.require(path, HAS_LIST, "list")].strings;
+        if (values == null) {
+            throw new ConfigException.BadValue(path, "Value is not a list of strings");
+        }
+        return values.clone();
+    }
+
+    /**
+     * Retrieve a list of integers.
+     *
+     * @param path The path
+     * @return A copy of the values
+     * @since 26.10.18
+     */
+    public int[] getIntArray(final String path) {
+        final int[] values = this.lists[this.require(path, HAS_LIST, "list")].ints;
+        if (values == null) {
+            throw new ConfigException.BadValue(path, "Value is not a list of integers");
+        }
+        return values.clone();
+    }
+
+    /**
+     * Retrieve a list of longs.
+     *
+     * @param path The path
+     * @return A copy of the values
+     * @since 26.10.18
+     */
+    public long[] getLongArray(final String path) {
+        final long[] values = this.lists[this.require(path, HAS_LIST, "list")].longs;
+        if (values == null) {
+            throw new ConfigException.BadValue(path, "Value is not a list of numbers");
+        }
+        return values.clone();
+    }
+
+    /**
+     * Retrieve a list of doubles.
+     *
+     * @param path The path
+     * @return A copy of the values
+     * @since 26.10.18
+     */
+    public double[] getDoubleArray(final String path) {
+        final double[] values = this.lists[this.require(path, HAS_LIST, "list")].doubles;
+        if (values == null) {
+            throw new ConfigException.BadValue(path, "Value is not a list of numbers");
+        }
+        return values.clone();
+    }
+
+    /**
+     * A list value, converted to all its representations.
+     *
+     * @since 26.10.18
+     */
+    private static final class ListValue {
+
+        /**
+         * The elements as strings, or {@code null}.
+         *
+         * @since 26.10.18
+         */
+        private String[] strings;
+
+        /**
+         * The elements as integers, or {@code null}.
+         *
+         * @since 26.10.18
+         */
+        private int[] ints;
+
+        /**
+         * The elements as longs, or {@code null}.
+         *
+         * @since 26.10.18
+         */
+        private long[] longs;
+
+        /**
+         * The elements as doubles, or {@code null}.
+         *
+         * @since 26.10.18
+         */
+        private double[] doubles;
+
+        /**
+         * Build a new instance.
+         *
+         * @param config The source configuration
+         * @param path   The path of the list
+         * @since 26.10.18
+         */
+        ListValue(final Config config, final String path) {
+            try {
+                this.strings = config.getStringList(path).toArray(new String[0]);
+            } catch (final ConfigException ignore) {
+                // Not a list of scalars
+                return;
+            }
+            try {
+                this.doubles = config.getDoubleList(path).stream().mapToDouble(Double::doubleValue).toArray();
+                this.longs = config.getLongList(path).stream().mapToLong(Long::longValue).toArray();
+                this.ints = config.getIntList(path).stream().mapToInt(Integer::intValue).toArray();
+            } catch (final ConfigException ignore) {
+                // Not a list of numbers
+            }
+        }
+    }
+}
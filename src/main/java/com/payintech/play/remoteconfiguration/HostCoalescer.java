@@ -0,0 +1,208 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 PayinTech
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.payintech.play.remoteconfiguration;
+
+import com.payintech.play.remoteconfiguration.provider.RemoteConfigProvider;
+import com.typesafe.config.Config;
+import play.Logger;
+import play.Mode;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces the retrievals of the processes running on the same host.
+ * The first process to take the lock file of a source retrieves the
+ * configuration and shares it in a local file. The other processes
+ * wait for the lock, then reuse the shared configuration as long as it
+ * is fresh. Shared files use the snapshot format.
+ *
+ * @author Thibault Meyer
+ * @version 26.10.18
+ * @since 26.10.18
+ */
+final class HostCoalescer {
+
+    /**
+     * Delay (in milliseconds) between two attempts to take a lock.
+     *
+     * @since 26.10.18
+     */
+    private static final long LOCK_RETRY_DELAY = 50;
+
+    /**
+     * The shared configurations.
+     *
+     * @since 26.10.18
+     */
+    private final SnapshotCache sharedCache;
+
+    /**
+     * Maximum time (in milliseconds) to wait for the lock.
+     *
+     * @since 26.10.18
+     */
+    private final long lockTimeout;
+
+    /**
+     * Maximum random delay (in milliseconds) before taking the lock.
+     *
+     * @since 26.10.18
+     */
+    private final long startJitter;
+
+    /**
+     * Build a new instance.
+     *
+     * @param sharedCache The shared configurations
+     * @param lockTimeout Maximum time (in milliseconds) to wait for the lock
+     * @param startJitter Maximum random delay (in milliseconds) before taking the lock
+     * @since 26.10.18
+     */
+    HostCoalescer(final SnapshotCache sharedCache, final long lockTimeout, final long startJitter) {
+        this.sharedCache = sharedCache;
+        this.lockTimeout = lockTimeout;
+        this.startJitter = startJitter;
+    }
+
+    /**
+     * Build a new instance from the local configuration.
+     *
+     * @param localConfiguration The local configuration
+     * @return A new instance, or {@code null} if coalescing is disabled
+     * @since 26.10.18
+     */
+    static HostCoalescer create(final Config localConfiguration) {
+        if (!localConfiguration.getBoolean("remote-configuration.coalescing.enabled")) {
+            return null;
+        }
+        final long maxAge = localConfiguration.getDuration("remote-configuration.coalescing.maxAge", TimeUnit.MILLISECONDS);
+        final long lockTimeout = localConfiguration.getDuration("remote-configuration.coalescing.lockTimeout", TimeUnit.MILLISECONDS);
+        final long startJitter = localConfiguration.getDuration("remote-configuration.coalescing.startJitter", TimeUnit.MILLISECONDS);
+        if (maxAge <= 0 || lockTimeout < 0 || startJitter < 0) {
+            throw new RuntimeException("Bad configuration");
+        }
+        return new HostCoalescer(
+            new SnapshotCache(
+                Paths.get(localConfiguration.getString("remote-configuration.coalescing.directory")),
+                maxAge,
+                false
+            ),
+            lockTimeout,
+            startJitter
+        );
+    }
+
+    /**
+     * Take the lock, waiting at most the lock timeout.
+     *
+     * @param channel The lock file
+     * @return The lock, or {@code null} if it can't be taken in time
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    private FileLock acquire(final FileChannel channel) throws IOException {
+        final long deadline = System.currentTimeMillis() + this.lockTimeout;
+        while (true) {
+            try {
+                final FileLock lock = channel.tryLock();
+                if (lock != null) {
+                    return lock;
+                }
+            } catch (final OverlappingFileLockException ignore) {
+                // Held by another application of this JVM
+            }
+            if (System.currentTimeMillis() >= deadline) {
+                return null;
+            }
+            try {
+                Thread.sleep(LOCK_RETRY_DELAY);
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted");
+            }
+        }
+    }
+
+    /**
+     * Retrieve the configuration of a provider, or reuse the one
+     * shared by another process of the host if it is fresh enough.
+     * When the lock can't be taken in time, the configuration is
+     * retrieved anyway.
+     *
+     * @param provider           The remote configuration provider
+     * @param mode               The current running mode
+     * @param localConfiguration The local configuration
+     * @return The configuration
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    Config load(final RemoteConfigProvider provider, final Mode mode, final Config localConfiguration) throws IOException {
+        final String sourceIdentifier = provider.getSourceIdentifier(localConfiguration);
+        Config sharedConfiguration = this.sharedCache.load(provider.getShortName(), sourceIdentifier);
+        if (sharedConfiguration != null) {
+            Logger.info("Reusing configuration from {} retrieved by another process", provider.getName());
+            return sharedConfiguration;
+        }
+        if (this.startJitter > 0) {
+            try {
+                Thread.sleep(ThreadLocalRandom.current().nextLong(this.startJitter + 1));
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted");
+            }
+        }
+        final Path sharedPath = this.sharedCache.resolvePath(provider.getShortName(), sourceIdentifier);
+        Files.createDirectories(sharedPath.getParent());
+        try (final FileChannel channel = FileChannel.open(
+            sharedPath.resolveSibling(sharedPath.getFileName() + ".lock"),
+            StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE
+        );
+             final FileLock lock = this.acquire(channel)) {
+            if (lock == null) {
+                Logger.warn("Can't lock the shared configuration from {}, retrieving it anyway", provider.getName());
+            } else {
+                // The process holding the lock may have retrieved it meanwhile
+                sharedConfiguration = this.sharedCache.load(provider.getShortName(), sourceIdentifier);
+                if (sharedConfiguration != null) {
+                    Logger.info("Reusing configuration from {} retrieved by another process", provider.getName());
+                    return sharedConfiguration;
+                }
+            }
+            final Config remoteConfiguration = provider.loadConfiguration(mode, localConfiguration);
+            this.sharedCache.save(provider.getShortName(), sourceIdentifier, remoteConfiguration);
+            return remoteConfiguration;
+        }
+    }
+}
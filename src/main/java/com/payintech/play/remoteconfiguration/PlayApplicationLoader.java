@@ -23,78 +23,129 @@
  */
 package com.payintech.play.remoteconfiguration;
 
+import com.payintech.play.remoteconfiguration.metrics.Phase;
+import com.payintech.play.remoteconfiguration.metrics.RemoteConfigurationMetrics;
 import com.payintech.play.remoteconfiguration.provider.RemoteConfigProvider;
 import com.typesafe.config.Config;
-import play.Logger;
 import play.inject.guice.GuiceApplicationBuilder;
 import play.inject.guice.GuiceApplicationLoader;
 
-import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.ServiceLoader;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Extends the default application loader to inject the
- * retrieved configuration into the local configuration.
+ * retrieved configuration into the local configuration. The
+ * retrieval is started when the builder is created and joined
+ * when Play loads the application configuration.
  *
  * @author Thibault Meyer
- * @version 17.12.16
+ * @version 26.10.18
  * @since 17.08.20
  */
 public class PlayApplicationLoader extends GuiceApplicationLoader {
 
+    /**
+     * Discard the providers and configurations kept across application
+     * reloads. The next reload retrieves the remote configuration again.
+     *
+     * @since 26.10.18
+     */
+    public static void invalidateReloadCache() {
+        ReloadCache.invalidate();
+    }
+
+    /**
+     * Try to instantiate the provider having the given short name.
+     *
+     * @param shortName The provider short name
+     * @return The {@code RemoteConfigProvider}
+     * @since 17.08.20
+     */
+    private RemoteConfigProvider loadProvider(final String shortName) {
+        final long startTime = System.nanoTime();
+        final ServiceLoader<RemoteConfigProvider> serviceLoaderRCP = ServiceLoader.load(RemoteConfigProvider.class);
+        for (final RemoteConfigProvider rcp : serviceLoaderRCP) {
+            if (rcp.getShortName().compareToIgnoreCase(shortName) == 0) {
+                RemoteConfigurationMetrics.timing(rcp.getName(), Phase.PROVIDER_RESOLUTION, startTime);
+                return rcp;
+            }
+        }
+        throw new RuntimeException("Can't resolve the remote configuration provider '" + shortName + "'");
+    }
+
     /**
      * Look for the configuration key "remote-configuration.provider" and
-     * try to instantiate class.
+     * try to instantiate each listed provider, in the same order.
      *
      * @param localConfiguration The local configuration
-     * @return An optional {@code RemoteConfigProvider}
-     * @since 17.08.20
+     * @param reloadCache        The reload cache, can be {@code null}
+     * @return The providers, can be empty
+     * @since 26.10.18
      */
-    private RemoteConfigProvider loadProvider(final Config localConfiguration) {
-        final String provider = localConfiguration.getString("remote-configuration.provider");
-        if (!provider.isEmpty()) {
-            final ServiceLoader<RemoteConfigProvider> serviceLoaderRCP = ServiceLoader.load(RemoteConfigProvider.class);
-            for (final RemoteConfigProvider rcp : serviceLoaderRCP) {
-                if (rcp.getShortName().compareToIgnoreCase(provider) == 0) {
-                    return rcp;
+    private List<ProviderSlot> loadProviders(final Config localConfiguration, final ReloadCache reloadCache) {
+        final List<ProviderSlot> slots = new ArrayList<>();
+        final String providers = localConfiguration.getString("remote-configuration.provider");
+        if (providers.trim().isEmpty()) {
+            return slots;
+        }
+        final Config compositionConfiguration = localConfiguration.getConfig("remote-configuration.composition");
+        final List<String> optionalProviders = compositionConfiguration.getStringList("optional");
+        for (final String shortName : providers.split(",")) {
+            final RemoteConfigProvider provider = reloadCache == null
+                ? this.loadProvider(shortName.trim())
+                : reloadCache.getProvider(shortName.trim(), this::loadProvider);
+            for (final ProviderSlot slot : slots) {
+                if (slot.getProvider().getShortName().equals(provider.getShortName())) {
+                    throw new RuntimeException("Bad configuration");
                 }
             }
-            throw new RuntimeException("Can't resolve the remote configuration provider '" + provider + "'");
+            final String timeoutPath = "timeouts." + provider.getShortName();
+            final long timeout = compositionConfiguration.getDuration(
+                compositionConfiguration.hasPath(timeoutPath) ? timeoutPath : "timeout",
+                TimeUnit.MILLISECONDS
+            );
+            final boolean optional = optionalProviders.stream()
+                .anyMatch(name -> name.equalsIgnoreCase(provider.getShortName()));
+            slots.add(new ProviderSlot(provider, timeout, optional));
         }
-        return null;
+        return slots;
     }
 
     @Override
     public GuiceApplicationBuilder builder(final Context context) {
         final Config localConfiguration = context.initialConfig();
-        final RemoteConfigProvider provider = this.loadProvider(localConfiguration);
+        if (localConfiguration.getBoolean("remote-configuration.metrics.jmx.enabled")) {
+            RemoteConfigurationMetrics.getInstance().registerMBean();
+        }
+        final ReloadCache reloadCache = ReloadCache.create(context.environment().mode(), localConfiguration);
+        final List<ProviderSlot> slots = this.loadProviders(localConfiguration, reloadCache);
 
-        if (provider != null) {
-            Logger.info("Retrieving configuration from {}", provider.getName());
-            try {
-                final Config remoteConfiguration = provider.loadConfiguration(
-                    context.environment().mode(),
-                    localConfiguration
-                );
-                if (Logger.isDebugEnabled()) {
-                    Logger.debug("Remote Configuration> {}", remoteConfiguration.root().render());
-                }
-                return this.initialBuilder
-                    .in(context.environment())
-                    .loadConfig(remoteConfiguration.withFallback(localConfiguration))
-                    .overrides(overrides(context));
-            } catch (final IOException ex) {
-                Logger.error("Can't retrieve remote configuration from {}", provider.getName());
-                throw new RuntimeException(ex);
-            } catch (final RuntimeException ex) {
-                Logger.error("Can't retrieve remote configuration from {}", provider.getName());
-                throw ex;
-            }
+        if (!slots.isEmpty()) {
+            // Start the retrieval first, then let Play prepare the application meanwhile
+            final ProviderComposition providerComposition = new ProviderComposition(
+                slots,
+                context.environment().mode(),
+                localConfiguration,
+                SnapshotCache.create(localConfiguration),
+                reloadCache,
+                HostCoalescer.create(localConfiguration)
+            );
+            providerComposition.start();
+            final RemoteConfiguration currentConfiguration = new RemoteConfiguration(localConfiguration);
+            return this.initialBuilder
+                .in(context.environment())
+                .withConfigLoader(environment -> providerComposition.join(currentConfiguration))
+                .bindings(new RemoteConfigurationModule(currentConfiguration))
+                .overrides(overrides(context));
         }
 
         return this.initialBuilder
             .in(context.environment())
             .loadConfig(localConfiguration)
+            .bindings(new RemoteConfigurationModule(new RemoteConfiguration(localConfiguration)))
             .overrides(overrides(context));
     }
 }
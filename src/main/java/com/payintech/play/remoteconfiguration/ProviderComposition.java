@@ -0,0 +1,532 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 PayinTech
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.payintech.play.remoteconfiguration;
+
+import com.payintech.play.remoteconfiguration.metrics.Counter;
+import com.payintech.play.remoteconfiguration.metrics.Phase;
+import com.payintech.play.remoteconfiguration.metrics.RemoteConfigurationMetrics;
+import com.payintech.play.remoteconfiguration.provider.LazyKeyValueStore;
+import com.payintech.play.remoteconfiguration.provider.RemoteConfigProvider;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import play.Logger;
+import play.Mode;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Retrieves the configuration from an ordered list of providers and
+ * merges it. Providers are queried concurrently. When many providers
+ * define the same key, the value from the last provider is used. The
+ * retrieval is started as soon as possible and joined only when the
+ * configuration is needed.
+ *
+ * @author Thibault Meyer
+ * @version 26.10.18
+ * @since 26.10.18
+ */
+final class ProviderComposition {
+
+    /**
+     * The providers, in precedence order (last one wins).
+     *
+     * @since 26.10.18
+     */
+    private final List<ProviderSlot> slots;
+
+    /**
+     * The current running mode.
+     *
+     * @since 26.10.18
+     */
+    private final Mode mode;
+
+    /**
+     * The local configuration.
+     *
+     * @since 26.10.18
+     */
+    private final Config localConfiguration;
+
+    /**
+     * The snapshot cache, can be {@code null}.
+     *
+     * @since 26.10.18
+     */
+    private final SnapshotCache snapshotCache;
+
+    /**
+     * The reload cache, can be {@code null}.
+     *
+     * @since 26.10.18
+     */
+    private final ReloadCache reloadCache;
+
+    /**
+     * Coalesces the retrievals of the processes of the host, can be {@code null}.
+     *
+     * @since 26.10.18
+     */
+    private final HostCoalescer hostCoalescer;
+
+    /**
+     * The pending configurations, by provider (or {@code null} if
+     * already available).
+     *
+     * @since 26.10.18
+     */
+    private final List<CompletableFuture<Config>> pendingConfigurations;
+
+    /**
+     * The executor running the providers during the initial retrieval.
+     *
+     * @since 26.10.18
+     */
+    private ExecutorService executorService;
+
+    /**
+     * The time (in nanoseconds) the initial retrieval was started.
+     *
+     * @since 26.10.18
+     */
+    private long retrievalStartTime;
+
+    /**
+     * The configuration retrieved during the application start, merged
+     * with the local one, once joined.
+     *
+     * @since 26.10.18
+     */
+    private Config initialConfiguration;
+
+    /**
+     * Build a new instance.
+     *
+     * @param slots              The providers, in precedence order
+     * @param mode               The current running mode
+     * @param localConfiguration The local configuration
+     * @param snapshotCache      The snapshot cache, can be {@code null}
+     * @param reloadCache        The reload cache, can be {@code null}
+     * @param hostCoalescer      Coalesces the retrievals of the processes of the host, can be {@code null}
+     * @since 26.10.18
+     */
+    ProviderComposition(final List<ProviderSlot> slots,
+                        final Mode mode,
+                        final Config localConfiguration,
+                        final SnapshotCache snapshotCache,
+                        final ReloadCache reloadCache,
+                        final HostCoalescer hostCoalescer) {
+        this.slots = slots;
+        this.mode = mode;
+        this.localConfiguration = localConfiguration;
+        this.snapshotCache = snapshotCache;
+        this.reloadCache = reloadCache;
+        this.hostCoalescer = hostCoalescer;
+        this.pendingConfigurations = new ArrayList<>(slots.size());
+    }
+
+    /**
+     * Merge the last configuration retrieved from each provider.
+     *
+     * @return The merged remote configuration
+     * @since 26.10.18
+     */
+    Config compose() {
+        Config remoteConfiguration = ConfigFactory.empty();
+        for (final ProviderSlot slot : this.slots) {
+            final Config configuration = slot.getConfiguration();
+            if (configuration != null) {
+                remoteConfiguration = configuration.withFallback(remoteConfiguration);
+            }
+        }
+        return remoteConfiguration;
+    }
+
+    /**
+     * Start retrieving the configuration from all providers. Providers
+     * are queried concurrently, in background. The configurations kept
+     * by the reload cache are reused as is.
+     *
+     * @since 26.10.18
+     */
+    void start() {
+        this.executorService = Executors.newFixedThreadPool(this.slots.size(), runnable -> {
+            final Thread thread = new Thread(runnable, "remote-configuration-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.retrievalStartTime = System.nanoTime();
+        for (final ProviderSlot slot : this.slots) {
+            final RemoteConfigProvider provider = slot.getProvider();
+            final Config cachedConfiguration = this.reloadCache == null
+                ? null
+                : this.reloadCache.getConfiguration(provider, provider.getSourceIdentifier(this.localConfiguration));
+            final Config snapshot = cachedConfiguration == null && this.snapshotCache != null && this.snapshotCache.isFastPath()
+                ? this.loadSnapshot(provider)
+                : null;
+            if (cachedConfiguration != null) {
+                Logger.info("Reusing configuration from {}", provider.getName());
+                slot.setConfiguration(cachedConfiguration);
+                this.pendingConfigurations.add(null);
+            } else if (snapshot != null) {
+                Logger.info("Using local snapshot of the configuration from {}", provider.getName());
+                slot.setConfiguration(snapshot);
+                slot.setRefreshNeeded(true);
+                this.pendingConfigurations.add(null);
+            } else {
+                Logger.info("Retrieving configuration from {}", provider.getName());
+                this.pendingConfigurations.add(this.loadConfigurationAsync(provider));
+            }
+        }
+    }
+
+    /**
+     * Wait for the configuration of all providers started with
+     * {@link #start()}, each one within its own timeout, then merge it
+     * with the local configuration. Once the configuration is joined,
+     * it is published and the providers are followed for changes. The
+     * configuration is joined only once.
+     *
+     * @param currentConfiguration The current configuration holder
+     * @return The configuration, merged with the local one
+     * @since 26.10.18
+     */
+    synchronized Config join(final RemoteConfiguration currentConfiguration) {
+        if (this.initialConfiguration == null) {
+            try {
+                for (int idx = 0; idx < this.slots.size(); ++idx) {
+                    final CompletableFuture<Config> future = this.pendingConfigurations.get(idx);
+                    if (future != null) {
+                        this.awaitConfiguration(this.slots.get(idx), future, this.retrievalStartTime);
+                    }
+                }
+            } finally {
+                this.executorService.shutdownNow();
+            }
+            final long mergeStartTime = System.nanoTime();
+            final Config remoteConfiguration = this.compose();
+            this.initialConfiguration = remoteConfiguration.withFallback(this.localConfiguration);
+            currentConfiguration.update(this.initialConfiguration);
+            RemoteConfigurationMetrics.timing(RemoteConfigurationMetrics.COMPOSITION_SOURCE, Phase.MERGE, mergeStartTime);
+            if (Logger.isDebugEnabled()) {
+                Logger.debug("Remote Configuration> {}", remoteConfiguration.root().render());
+            }
+            this.follow(currentConfiguration);
+        }
+        return this.initialConfiguration;
+    }
+
+    /**
+     * Start retrieving the configuration of a provider. When host-level
+     * coalescing is enabled and the provider configuration can be
+     * written on disk, the retrieval goes through the coalescer.
+     *
+     * @param provider The remote configuration provider
+     * @return The pending configuration
+     * @since 26.10.18
+     */
+    private CompletableFuture<Config> loadConfigurationAsync(final RemoteConfigProvider provider) {
+        final long loadStartTime = System.nanoTime();
+        final CompletableFuture<Config> future;
+        if (this.hostCoalescer == null || !provider.isPersistent(this.localConfiguration)) {
+            future = provider.loadConfigurationAsync(this.mode, this.localConfiguration, this.executorService).toCompletableFuture();
+        } else {
+            future = new CompletableFuture<>();
+            this.executorService.execute(() -> {
+                try {
+                    future.complete(this.hostCoalescer.load(provider, this.mode, this.localConfiguration));
+                } catch (final Throwable ex) {
+                    future.completeExceptionally(ex);
+                }
+            });
+        }
+        return future
+            .whenComplete((remoteConfiguration, ex) -> {
+                if (ex == null) {
+                    this.recordLoad(provider, loadStartTime);
+                } else {
+                    RemoteConfigurationMetrics.count(provider.getName(), Counter.FAILURES, 1);
+                }
+            });
+    }
+
+    /**
+     * Record a successful load of the configuration of a provider.
+     *
+     * @param provider      The remote configuration provider
+     * @param loadStartTime The time (in nanoseconds) the load was started
+     * @since 26.10.18
+     */
+    private void recordLoad(final RemoteConfigProvider provider, final long loadStartTime) {
+        RemoteConfigurationMetrics.timing(provider.getName(), Phase.LOAD, loadStartTime);
+        RemoteConfigurationMetrics.count(provider.getName(), Counter.LOADS, 1);
+        Logger.info(
+            "Configuration retrieved from {} in {}ms",
+            provider.getName(),
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - loadStartTime)
+        );
+    }
+
+    /**
+     * Retrieve the configuration of a provider.
+     *
+     * @param provider The remote configuration provider
+     * @return The retrieved configuration
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    private Config loadConfiguration(final RemoteConfigProvider provider) throws IOException {
+        final long loadStartTime = System.nanoTime();
+        try {
+            final Config remoteConfiguration = provider.loadConfiguration(this.mode, this.localConfiguration);
+            this.recordLoad(provider, loadStartTime);
+            return remoteConfiguration;
+        } catch (final IOException | RuntimeException ex) {
+            RemoteConfigurationMetrics.count(provider.getName(), Counter.FAILURES, 1);
+            throw ex;
+        }
+    }
+
+    /**
+     * Wait for the configuration of a provider.
+     *
+     * @param slot      The provider
+     * @param future    The pending configuration
+     * @param startTime The time (in nanoseconds) the providers have been queried
+     * @since 26.10.18
+     */
+    private void awaitConfiguration(final ProviderSlot slot, final CompletableFuture<Config> future, final long startTime) {
+        final RemoteConfigProvider provider = slot.getProvider();
+        try {
+            final Config remoteConfiguration;
+            if (slot.getTimeout() > 0) {
+                final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+                remoteConfiguration = future.get(Math.max(slot.getTimeout() - elapsed, 0), TimeUnit.MILLISECONDS);
+            } else {
+                remoteConfiguration = future.get();
+            }
+            slot.setConfiguration(remoteConfiguration);
+            this.saveSnapshot(provider, remoteConfiguration);
+        } catch (final ExecutionException ex) {
+            if (ex.getCause() instanceof Error) {
+                throw (Error) ex.getCause();
+            }
+            this.handleFailure(slot, ex.getCause());
+        } catch (final TimeoutException ex) {
+            future.cancel(true);
+            this.handleFailure(slot, new IOException("Timeout after " + slot.getTimeout() + "ms"));
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * Handle a provider failure. The snapshot of the configuration is
+     * used if available. Otherwise, the application start is aborted
+     * unless the provider is optional.
+     *
+     * @param slot  The provider
+     * @param cause The failure cause
+     * @since 26.10.18
+     */
+    private void handleFailure(final ProviderSlot slot, final Throwable cause) {
+        final RemoteConfigProvider provider = slot.getProvider();
+        Logger.error("Can't retrieve remote configuration from {}: {}", provider.getName(), cause.getMessage());
+        final Config snapshot = this.snapshotCache == null ? null : this.loadSnapshot(provider);
+        if (snapshot != null) {
+            Logger.warn("Using local snapshot of the configuration from {}", provider.getName());
+            slot.setConfiguration(snapshot);
+        } else if (slot.isOptional()) {
+            Logger.warn("Starting without the configuration from {}", provider.getName());
+        } else if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        } else {
+            throw new RuntimeException(cause);
+        }
+        slot.setRefreshNeeded(true);
+    }
+
+    /**
+     * Start following the providers. Providers not retrieved from the
+     * remote source during the application start are refreshed in
+     * background first.
+     *
+     * @param currentConfiguration The current configuration holder
+     * @since 26.10.18
+     */
+    private void follow(final RemoteConfiguration currentConfiguration) {
+        for (final ProviderSlot slot : this.slots) {
+            if (slot.isRefreshNeeded()) {
+                this.refreshProvider(slot, currentConfiguration);
+            } else {
+                this.registerLazyKeyValueStore(slot, currentConfiguration);
+                this.watchProvider(slot, currentConfiguration);
+            }
+        }
+    }
+
+    /**
+     * Register the lazy Key/Value store of the provider, if any.
+     *
+     * @param slot                 The provider
+     * @param currentConfiguration The current configuration holder
+     * @since 26.10.18
+     */
+    private void registerLazyKeyValueStore(final ProviderSlot slot, final RemoteConfiguration currentConfiguration) {
+        final LazyKeyValueStore lazyKeyValueStore = slot.getProvider().getLazyKeyValueStore();
+        if (lazyKeyValueStore != null) {
+            currentConfiguration.addLazyKeyValueStore(lazyKeyValueStore);
+        }
+    }
+
+    /**
+     * Publish a new configuration retrieved from a provider.
+     *
+     * @param slot                 The provider
+     * @param remoteConfiguration  The new remote configuration of this provider
+     * @param currentConfiguration The current configuration holder
+     * @return {@code true} if the current configuration has changed
+     * @since 26.10.18
+     */
+    private boolean publish(final ProviderSlot slot,
+                            final Config remoteConfiguration,
+                            final RemoteConfiguration currentConfiguration) {
+        synchronized (this.slots) {
+            final long startTime = System.nanoTime();
+            slot.setConfiguration(remoteConfiguration);
+            final boolean changed = currentConfiguration.update(this.compose().withFallback(this.localConfiguration));
+            RemoteConfigurationMetrics.timing(RemoteConfigurationMetrics.COMPOSITION_SOURCE, Phase.MERGE, startTime);
+            if (changed) {
+                RemoteConfigurationMetrics.count(slot.getProvider().getName(), Counter.RELOADS, 1);
+            }
+            return changed;
+        }
+    }
+
+    /**
+     * Watch the provider for changes. Each new remote configuration is
+     * merged and published. If enabled, the new remote configuration is
+     * also saved as snapshot.
+     *
+     * @param slot                 The provider
+     * @param currentConfiguration The current configuration holder
+     * @since 26.10.18
+     */
+    private void watchProvider(final ProviderSlot slot, final RemoteConfiguration currentConfiguration) {
+        final RemoteConfigProvider provider = slot.getProvider();
+        final Closeable watcher = provider.watchConfiguration(
+            this.mode,
+            this.localConfiguration,
+            newRemoteConfiguration -> {
+                if (this.publish(slot, newRemoteConfiguration, currentConfiguration)) {
+                    Logger.info("Configuration reloaded from {}", provider.getName());
+                    this.saveSnapshot(provider, newRemoteConfiguration);
+                }
+            }
+        );
+        if (watcher != null) {
+            currentConfiguration.addWatcher(watcher);
+        }
+    }
+
+    /**
+     * Retrieve the remote configuration in background, then watch the
+     * provider for changes.
+     *
+     * @param slot                 The provider
+     * @param currentConfiguration The current configuration holder
+     * @since 26.10.18
+     */
+    private void refreshProvider(final ProviderSlot slot, final RemoteConfiguration currentConfiguration) {
+        final RemoteConfigProvider provider = slot.getProvider();
+        final Thread thread = new Thread(() -> {
+            try {
+                final Config remoteConfiguration = this.loadConfiguration(provider);
+                this.saveSnapshot(provider, remoteConfiguration);
+                this.registerLazyKeyValueStore(slot, currentConfiguration);
+                if (this.publish(slot, remoteConfiguration, currentConfiguration)) {
+                    Logger.info("Configuration refreshed from {}", provider.getName());
+                }
+            } catch (final IOException | RuntimeException ex) {
+                Logger.warn("Can't refresh remote configuration from {}: {}", provider.getName(), ex.getMessage());
+            }
+            this.watchProvider(slot, currentConfiguration);
+        }, "remote-configuration-refresh");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Load the snapshot of the configuration of a provider.
+     *
+     * @param provider The remote configuration provider
+     * @return The configuration, or {@code null} if no valid snapshot exists or the provider is not persistent
+     * @since 26.10.18
+     */
+    private Config loadSnapshot(final RemoteConfigProvider provider) {
+        if (!provider.isPersistent(this.localConfiguration)) {
+            return null;
+        }
+        return this.snapshotCache.load(
+            provider.getShortName(),
+            provider.getSourceIdentifier(this.localConfiguration)
+        );
+    }
+
+    /**
+     * Save the configuration of a provider as snapshot and keep it in
+     * the reload cache, if enabled. Configurations of the providers
+     * that are not persistent are only kept in memory.
+     *
+     * @param provider            The remote configuration provider
+     * @param remoteConfiguration The configuration to save
+     * @since 26.10.18
+     */
+    private void saveSnapshot(final RemoteConfigProvider provider, final Config remoteConfiguration) {
+        if (this.reloadCache != null) {
+            this.reloadCache.putConfiguration(
+                provider,
+                provider.getSourceIdentifier(this.localConfiguration),
+                remoteConfiguration
+            );
+        }
+        if (this.snapshotCache != null && provider.isPersistent(this.localConfiguration)) {
+            this.snapshotCache.save(
+                provider.getShortName(),
+                provider.getSourceIdentifier(this.localConfiguration),
+                remoteConfiguration
+            );
+        }
+    }
+}
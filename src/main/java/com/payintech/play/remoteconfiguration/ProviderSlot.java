@@ -0,0 +1,160 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 PayinTech
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.payintech.play.remoteconfiguration;
+
+import com.payintech.play.remoteconfiguration.provider.RemoteConfigProvider;
+import com.typesafe.config.Config;
+
+/**
+ * A provider taking part in the configuration composition, with
+ * its own settings and the last configuration it has retrieved.
+ *
+ * @author Thibault Meyer
+ * @version 26.10.18
+ * @since 26.10.18
+ */
+final class ProviderSlot {
+
+    /**
+     * The remote configuration provider.
+     *
+     * @since 26.10.18
+     */
+    private final RemoteConfigProvider provider;
+
+    /**
+     * Maximum time (in milliseconds) to wait for the provider
+     * during the application start. Zero means no limit.
+     *
+     * @since 26.10.18
+     */
+    private final long timeout;
+
+    /**
+     * Can the application start without this provider?
+     *
+     * @since 26.10.18
+     */
+    private final boolean optional;
+
+    /**
+     * The last configuration retrieved from the provider.
+     *
+     * @since 26.10.18
+     */
+    private volatile Config configuration;
+
+    /**
+     * Must the configuration be retrieved again in background?
+     *
+     * @since 26.10.18
+     */
+    private boolean refreshNeeded;
+
+    /**
+     * Build a new instance.
+     *
+     * @param provider The remote configuration provider
+     * @param timeout  Maximum time (in milliseconds) to wait for the provider
+     * @param optional Can the application start without this provider?
+     * @since 26.10.18
+     */
+    ProviderSlot(final RemoteConfigProvider provider, final long timeout, final boolean optional) {
+        this.provider = provider;
+        this.timeout = timeout;
+        this.optional = optional;
+    }
+
+    /**
+     * Retrieve the remote configuration provider.
+     *
+     * @return The remote configuration provider
+     * @since 26.10.18
+     */
+    RemoteConfigProvider getProvider() {
+        return this.provider;
+    }
+
+    /**
+     * Retrieve the maximum time (in milliseconds) to wait for
+     * the provider during the application start.
+     *
+     * @return The timeout, zero means no limit
+     * @since 26.10.18
+     */
+    long getTimeout() {
+        return this.timeout;
+    }
+
+    /**
+     * Check if the application can start without this provider.
+     *
+     * @return {@code true} if the provider is optional
+     * @since 26.10.18
+     */
+    boolean isOptional() {
+        return this.optional;
+    }
+
+    /**
+     * Retrieve the last configuration retrieved from the provider.
+     *
+     * @return The configuration, or {@code null} if not available
+     * @since 26.10.18
+     */
+    Config getConfiguration() {
+        return this.configuration;
+    }
+
+    /**
+     * Set the last configuration retrieved from the provider.
+     *
+     * @param configuration The configuration
+     * @since 26.10.18
+     */
+    void setConfiguration(final Config configuration) {
+        this.configuration = configuration;
+    }
+
+    /**
+     * Check if the configuration must be retrieved again in background
+     * (ie: it comes from a snapshot or the provider has been skipped).
+     *
+     * @return {@code true} if a refresh is needed
+     * @since 26.10.18
+     */
+    boolean isRefreshNeeded() {
+        return this.refreshNeeded;
+    }
+
+    /**
+     * Set if the configuration must be retrieved again in background.
+     *
+     * @param refreshNeeded {@code true} if a refresh is needed
+     * @since 26.10.18
+     */
+    void setRefreshNeeded(final boolean refreshNeeded) {
+        this.refreshNeeded = refreshNeeded;
+    }
+}
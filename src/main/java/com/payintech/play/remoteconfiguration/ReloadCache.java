@@ -0,0 +1,238 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 PayinTech
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.payintech.play.remoteconfiguration;
+
+import com.payintech.play.remoteconfiguration.provider.RemoteConfigProvider;
+import com.typesafe.config.Config;
+import play.Mode;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Keeps the resolved providers and the retrieved configurations in
+ * memory, so they can be reused when the application is reloaded
+ * (ie: on each code change in DEV mode). A configuration is reused
+ * only by the provider instance which retrieved it, with the same
+ * local settings, and until its time to live expires. This cache is
+ * never used in PROD mode.
+ *
+ * @author Thibault Meyer
+ * @version 26.10.18
+ * @since 26.10.18
+ */
+final class ReloadCache {
+
+    /**
+     * The resolved providers, by upper case short name.
+     *
+     * @since 26.10.18
+     */
+    private static final Map<String, RemoteConfigProvider> PROVIDERS = new ConcurrentHashMap<>();
+
+    /**
+     * The retrieved configurations, by provider short name.
+     *
+     * @since 26.10.18
+     */
+    private static final Map<String, CachedConfiguration> CONFIGURATIONS = new ConcurrentHashMap<>();
+
+    /**
+     * The local settings of the remote configuration.
+     *
+     * @since 26.10.18
+     */
+    private final Config settings;
+
+    /**
+     * The time to live (in nanoseconds) of a retrieved configuration.
+     *
+     * @since 26.10.18
+     */
+    private final long timeToLive;
+
+    /**
+     * Build a new instance.
+     *
+     * @param settings   The local settings of the remote configuration
+     * @param timeToLive The time to live (in nanoseconds) of a retrieved configuration
+     * @since 26.10.18
+     */
+    private ReloadCache(final Config settings, final long timeToLive) {
+        this.settings = settings;
+        this.timeToLive = timeToLive;
+    }
+
+    /**
+     * Build a new instance from the local configuration.
+     *
+     * @param mode               The current running mode
+     * @param localConfiguration The local configuration
+     * @return A new instance, or {@code null} if the cache is disabled for this mode
+     * @since 26.10.18
+     */
+    static ReloadCache create(final Mode mode, final Config localConfiguration) {
+        final List<String> modes = localConfiguration.getStringList("remote-configuration.reloadCache.modes");
+        boolean enabled = false;
+        for (final String name : modes) {
+            if (!"DEV".equalsIgnoreCase(name) && !"TEST".equalsIgnoreCase(name)) {
+                throw new RuntimeException("Bad configuration");
+            }
+            enabled |= mode.name().equalsIgnoreCase(name);
+        }
+        if (!enabled) {
+            return null;
+        }
+        return new ReloadCache(
+            localConfiguration.getConfig("remote-configuration"),
+            localConfiguration.getDuration("remote-configuration.reloadCache.ttl", TimeUnit.NANOSECONDS)
+        );
+    }
+
+    /**
+     * Discard all resolved providers and retrieved configurations.
+     * The next application reload resolves the providers and
+     * retrieves the configurations again.
+     *
+     * @since 26.10.18
+     */
+    static void invalidate() {
+        PROVIDERS.clear();
+        CONFIGURATIONS.clear();
+    }
+
+    /**
+     * Retrieve the provider having the given short name.
+     *
+     * @param shortName The provider short name
+     * @param resolver  Resolves the provider if not already resolved
+     * @return The {@code RemoteConfigProvider}
+     * @since 26.10.18
+     */
+    RemoteConfigProvider getProvider(final String shortName, final Function<String, RemoteConfigProvider> resolver) {
+        return PROVIDERS.computeIfAbsent(shortName.toUpperCase(), key -> resolver.apply(shortName));
+    }
+
+    /**
+     * Retrieve the configuration previously retrieved by a provider.
+     *
+     * @param provider         The remote configuration provider
+     * @param sourceIdentifier The identifier of the remote source
+     * @return The configuration, or {@code null} if not available
+     * @since 26.10.18
+     */
+    Config getConfiguration(final RemoteConfigProvider provider, final String sourceIdentifier) {
+        final CachedConfiguration cachedConfiguration = CONFIGURATIONS.get(provider.getShortName());
+        if (cachedConfiguration == null
+            || cachedConfiguration.provider != provider
+            || !cachedConfiguration.sourceIdentifier.equals(sourceIdentifier)
+            || !cachedConfiguration.settings.equals(this.settings)
+            || System.nanoTime() - cachedConfiguration.creationTime > this.timeToLive) {
+            return null;
+        }
+        return cachedConfiguration.configuration;
+    }
+
+    /**
+     * Keep the configuration retrieved by a provider.
+     *
+     * @param provider         The remote configuration provider
+     * @param sourceIdentifier The identifier of the remote source
+     * @param configuration    The retrieved configuration
+     * @since 26.10.18
+     */
+    void putConfiguration(final RemoteConfigProvider provider, final String sourceIdentifier, final Config configuration) {
+        CONFIGURATIONS.put(
+            provider.getShortName(),
+            new CachedConfiguration(provider, sourceIdentifier, this.settings, configuration)
+        );
+    }
+
+    /**
+     * A configuration retrieved by a provider.
+     *
+     * @since 26.10.18
+     */
+    private static final class CachedConfiguration {
+
+        /**
+         * The provider which retrieved the configuration.
+         *
+         * @since 26.10.18
+         */
+        private final RemoteConfigProvider provider;
+
+        /**
+         * The identifier of the remote source.
+         *
+         * @since 26.10.18
+         */
+        private final String sourceIdentifier;
+
+        /**
+         * The local settings used to retrieve the configuration.
+         *
+         * @since 26.10.18
+         */
+        private final Config settings;
+
+        /**
+         * The retrieved configuration.
+         *
+         * @since 26.10.18
+         */
+        private final Config configuration;
+
+        /**
+         * The time the configuration has been retrieved, as
+         * returned by {@code System.nanoTime()}.
+         *
+         * @since 26.10.18
+         */
+        private final long creationTime;
+
+        /**
+         * Build a new instance.
+         *
+         * @param provider         The provider which retrieved the configuration
+         * @param sourceIdentifier The identifier of the remote source
+         * @param settings         The local settings used to retrieve the configuration
+         * @param configuration    The retrieved configuration
+         * @since 26.10.18
+         */
+        CachedConfiguration(final RemoteConfigProvider provider,
+                            final String sourceIdentifier,
+                            final Config settings,
+                            final Config configuration) {
+            this.provider = provider;
+            this.sourceIdentifier = sourceIdentifier;
+            this.settings = settings;
+            this.configuration = configuration;
+            this.creationTime = System.nanoTime();
+        }
+    }
+}
@@ -0,0 +1,345 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 PayinTech
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.payintech.play.remoteconfiguration;
+
+import com.payintech.play.remoteconfiguration.provider.LazyKeyValueStore;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import play.Logger;
+import play.api.inject.ApplicationLifecycle;
+
+import javax.inject.Inject;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holds the current configuration (the remote configuration merged with
+ * the local one). When the provider supports live reload, the held
+ * configuration is atomically replaced each time a change is detected.
+ * Reading the current configuration never locks. Components can
+ * subscribe to the changes of a path to receive the added, removed
+ * and changed keys. A flattened view of the current configuration is
+ * available for hot-path lookups.
+ *
+ * @author Thibault Meyer
+ * @version 26.10.18
+ * @since 26.10.18
+ */
+public final class RemoteConfiguration implements Closeable {
+
+    /**
+     * The current configuration.
+     *
+     * @since 26.10.18
+     */
+    private final AtomicReference<Config> configuration;
+
+    /**
+     * The flattened view of the current configuration, built on first
+     * access, then rebuilt on each change.
+     *
+     * @since 26.10.18
+     */
+    private final AtomicReference<FlatConfiguration> flatConfiguration;
+
+    /**
+     * The running provider watchers.
+     *
+     * @since 26.10.18
+     */
+    private final List<Closeable> watchers;
+
+    /**
+     * The Key/Value stores of the providers using lazy loading.
+     *
+     * @since 26.10.18
+     */
+    private final List<LazyKeyValueStore> lazyKeyValueStores;
+
+    /**
+     * The change subscriptions.
+     *
+     * @since 26.10.18
+     */
+    private final List<Subscription> subscriptions;
+
+    /**
+     * The executor notifying the listeners, created on first subscription.
+     *
+     * @since 26.10.18
+     */
+    private ExecutorService listenerExecutor;
+
+    /**
+     * Has the instance been closed?
+     *
+     * @since 26.10.18
+     */
+    private volatile boolean closed;
+
+    /**
+     * Build a new instance.
+     *
+     * @param configuration The initial configuration
+     * @since 26.10.18
+     */
+    public RemoteConfiguration(final Config configuration) {
+        this.configuration = new AtomicReference<>(configuration);
+        this.flatConfiguration = new AtomicReference<>();
+        this.watchers = new CopyOnWriteArrayList<>();
+        this.lazyKeyValueStores = new CopyOnWriteArrayList<>();
+        this.subscriptions = new CopyOnWriteArrayList<>();
+    }
+
+    /**
+     * Retrieve the current configuration.
+     *
+     * @return The current configuration
+     * @since 26.10.18
+     */
+    public Config get() {
+        return this.configuration.get();
+    }
+
+    /**
+     * Retrieve the flattened view of the current configuration. The
+     * view is built on first access, then rebuilt in background each
+     * time the configuration changes: once built, retrieving it never
+     * locks and never allocates.
+     *
+     * @return The flattened view of the current configuration
+     * @since 26.10.18
+     */
+    public FlatConfiguration getFlat() {
+        final Config currentConfiguration = this.configuration.get();
+        final FlatConfiguration currentFlatConfiguration = this.flatConfiguration.get();
+        if (currentFlatConfiguration != null && currentFlatConfiguration.getConfig() == currentConfiguration) {
+            return currentFlatConfiguration;
+        }
+        final FlatConfiguration newFlatConfiguration = FlatConfiguration.of(currentConfiguration);
+        this.flatConfiguration.compareAndSet(currentFlatConfiguration, newFlatConfiguration);
+        return newFlatConfiguration;
+    }
+
+    /**
+     * Retrieve the configuration located at the given path, including
+     * the values of the providers using lazy loading. Lazily loaded
+     * values are retrieved on first access, then kept in cache. Values
+     * of the current configuration take precedence.
+     *
+     * @param path The configuration path
+     * @return The configuration
+     * @since 26.10.18
+     */
+    public Config fetch(final String path) {
+        Config lazyConfiguration = ConfigFactory.empty();
+        for (final LazyKeyValueStore lazyKeyValueStore : this.lazyKeyValueStores) {
+            try {
+                lazyConfiguration = lazyKeyValueStore.getConfig(path).withFallback(lazyConfiguration);
+            } catch (final IOException ex) {
+                throw new RuntimeException("Can't retrieve lazily loaded configuration '" + path + "'", ex);
+            }
+        }
+        return this.get().withFallback(lazyConfiguration);
+    }
+
+    /**
+     * Subscribe to the changes of the keys located under a path. The
+     * listener is notified from a dedicated thread, so slow listeners
+     * never delay the reload of the configuration. Lazily loaded values
+     * are not watched.
+     *
+     * @param path     The path to watch (ie: "db.default"), an empty path watches all keys
+     * @param listener The listener to notify
+     * @since 26.10.18
+     */
+    public void subscribe(final String path, final ConfigurationListener listener) {
+        synchronized (this.subscriptions) {
+            if (this.listenerExecutor == null) {
+                this.listenerExecutor = Executors.newSingleThreadExecutor(runnable -> {
+                    final Thread thread = new Thread(runnable, "remote-configuration-listener");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            this.subscriptions.add(new Subscription(path.trim(), listener));
+        }
+    }
+
+    /**
+     * Remove all subscriptions of a listener.
+     *
+     * @param listener The listener to remove
+     * @since 26.10.18
+     */
+    public void unsubscribe(final ConfigurationListener listener) {
+        this.subscriptions.removeIf(subscription -> subscription.listener == listener);
+    }
+
+    /**
+     * Compute the change between two versions of the configuration and
+     * notify the listeners subscribed to the changed paths.
+     *
+     * @param oldConfiguration The configuration before the change
+     * @param newConfiguration The configuration after the change
+     * @since 26.10.18
+     */
+    private void notifyListeners(final Config oldConfiguration, final Config newConfiguration) {
+        final ConfigurationChange change = ConfigurationChange.compute(oldConfiguration, newConfiguration);
+        for (final Subscription subscription : this.subscriptions) {
+            final ConfigurationChange subscriptionChange = change.filter(subscription.path);
+            if (!subscriptionChange.isEmpty()) {
+                try {
+                    subscription.listener.onChange(subscriptionChange);
+                } catch (final RuntimeException ex) {
+                    Logger.warn("Remote configuration listener failed on '{}': {}", subscription.path, ex.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Register the Key/Value store of a provider using lazy loading.
+     * Stores registered last take precedence.
+     *
+     * @param lazyKeyValueStore The store to register
+     * @since 26.10.18
+     */
+    void addLazyKeyValueStore(final LazyKeyValueStore lazyKeyValueStore) {
+        if (!this.lazyKeyValueStores.contains(lazyKeyValueStore)) {
+            this.lazyKeyValueStores.add(lazyKeyValueStore);
+        }
+    }
+
+    /**
+     * Replace the current configuration.
+     *
+     * @param newConfiguration The new configuration
+     * @return {@code true} if the configuration has changed
+     * @since 26.10.18
+     */
+    boolean update(final Config newConfiguration) {
+        final Config oldConfiguration = this.configuration.getAndSet(newConfiguration);
+        final boolean changed = !oldConfiguration.equals(newConfiguration);
+        if (this.flatConfiguration.get() != null) {
+            this.flatConfiguration.set(FlatConfiguration.of(newConfiguration));
+        }
+        if (changed && !this.subscriptions.isEmpty()) {
+            synchronized (this.subscriptions) {
+                if (!this.closed) {
+                    this.listenerExecutor.execute(() -> this.notifyListeners(oldConfiguration, newConfiguration));
+                }
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Register a provider watcher. Registered watchers are closed
+     * when the application stops. If the application is already
+     * stopped, the watcher is immediately closed.
+     *
+     * @param watcher The watcher to register
+     * @since 26.10.18
+     */
+    void addWatcher(final Closeable watcher) {
+        this.watchers.add(watcher);
+        if (this.closed) {
+            this.close();
+        }
+    }
+
+    /**
+     * Register the stop hook closing the provider watchers.
+     *
+     * @param applicationLifecycle The application lifecycle
+     * @since 26.10.18
+     */
+    @Inject
+    void registerStopHook(final ApplicationLifecycle applicationLifecycle) {
+        applicationLifecycle.addStopHook(() -> {
+            this.close();
+            return CompletableFuture.completedFuture(null);
+        });
+    }
+
+    @Override
+    public void close() {
+        this.closed = true;
+        synchronized (this.subscriptions) {
+            if (this.listenerExecutor != null) {
+                this.listenerExecutor.shutdown();
+            }
+        }
+        for (final Closeable watcher : this.watchers) {
+            if (this.watchers.remove(watcher)) {
+                try {
+                    watcher.close();
+                } catch (final IOException ex) {
+                    Logger.warn("Can't stop remote configuration watcher: {}", ex.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * A subscription to the changes of a path.
+     *
+     * @since 26.10.18
+     */
+    private static final class Subscription {
+
+        /**
+         * The watched path.
+         *
+         * @since 26.10.18
+         */
+        private final String path;
+
+        /**
+         * The listener to notify.
+         *
+         * @since 26.10.18
+         */
+        private final ConfigurationListener listener;
+
+        /**
+         * Build a new instance.
+         *
+         * @param path     The watched path
+         * @param listener The listener to notify
+         * @since 26.10.18
+         */
+        Subscription(final String path, final ConfigurationListener listener) {
+            this.path = path;
+            this.listener = listener;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 PayinTech
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.payintech.play.remoteconfiguration;
+
+import com.google.inject.AbstractModule;
+
+/**
+ * Guice module exposing the remote configuration
+ * components to the application.
+ *
+ * @author Thibault Meyer
+ * @version 26.10.18
+ * @since 26.10.18
+ */
+public final class RemoteConfigurationModule extends AbstractModule {
+
+    /**
+     * The remote configuration holder.
+     *
+     * @since 26.10.18
+     */
+    private final RemoteConfiguration remoteConfiguration;
+
+    /**
+     * Build a new instance.
+     *
+     * @param remoteConfiguration The remote configuration holder
+     * @since 26.10.18
+     */
+    public RemoteConfigurationModule(final RemoteConfiguration remoteConfiguration) {
+        this.remoteConfiguration = remoteConfiguration;
+    }
+
+    @Override
+    protected void configure() {
+        this.bind(RemoteConfiguration.class).toInstance(this.remoteConfiguration);
+        this.bind(FlatConfiguration.class).toProvider(this.remoteConfiguration::getFlat);
+    }
+}
@@ -0,0 +1,294 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 PayinTech
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.payintech.play.remoteconfiguration;
+
+import com.payintech.play.remoteconfiguration.provider.LargeValueStore;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import com.typesafe.config.ConfigParseOptions;
+import com.typesafe.config.ConfigRenderOptions;
+import play.Logger;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Stores each successfully retrieved remote configuration on the local
+ * file system. A snapshot is a small binary file composed of a header
+ * (magic, format version, creation time, source key, CRC32 and length)
+ * followed by the configuration rendered as concise JSON. Snapshots are
+ * read through a memory-mapped buffer.
+ *
+ * @author Thibault Meyer
+ * @version 26.10.18
+ * @since 26.10.18
+ */
+final class SnapshotCache {
+
+    /**
+     * Snapshot file magic number ("RCSN").
+     *
+     * @since 26.10.18
+     */
+    private static final int MAGIC = 0x5243534E;
+
+    /**
+     * Snapshot file format version.
+     *
+     * @since 26.10.18
+     */
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * Maximum length of the source key stored in the header.
+     *
+     * @since 26.10.18
+     */
+    private static final int MAX_KEY_LENGTH = 4096;
+
+    /**
+     * The directory where snapshots are stored.
+     *
+     * @since 26.10.18
+     */
+    private final Path directory;
+
+    /**
+     * The maximum age (in milliseconds) of a usable snapshot.
+     *
+     * @since 26.10.18
+     */
+    private final long maxAge;
+
+    /**
+     * Use the snapshot instead of retrieving the remote configuration?
+     *
+     * @since 26.10.18
+     */
+    private final boolean fastPath;
+
+    /**
+     * Build a new instance.
+     *
+     * @param directory The directory where snapshots are stored
+     * @param maxAge    The maximum age (in milliseconds) of a usable snapshot
+     * @param fastPath  Use the snapshot instead of retrieving the remote configuration?
+     * @since 26.10.18
+     */
+    SnapshotCache(final Path directory, final long maxAge, final boolean fastPath) {
+        this.directory = directory;
+        this.maxAge = maxAge;
+        this.fastPath = fastPath;
+    }
+
+    /**
+     * Build a new instance from the local configuration.
+     *
+     * @param localConfiguration The local configuration
+     * @return A new instance, or {@code null} if snapshots are disabled
+     * @since 26.10.18
+     */
+    static SnapshotCache create(final Config localConfiguration) {
+        if (!localConfiguration.getBoolean("remote-configuration.snapshot.enabled")) {
+            return null;
+        }
+        final String mode = localConfiguration.getString("remote-configuration.snapshot.mode");
+        if (!"FALLBACK".equalsIgnoreCase(mode) && !"FAST_PATH".equalsIgnoreCase(mode)) {
+            throw new RuntimeException("Bad configuration");
+        }
+        return new SnapshotCache(
+            Paths.get(localConfiguration.getString("remote-configuration.snapshot.directory")),
+            localConfiguration.getDuration("remote-configuration.snapshot.maxAge", TimeUnit.MILLISECONDS),
+            "FAST_PATH".equalsIgnoreCase(mode)
+        );
+    }
+
+    /**
+     * Compute the key identifying the snapshot of a source.
+     *
+     * @param providerName     The provider short name
+     * @param sourceIdentifier The source identifier
+     * @return The snapshot key
+     * @since 26.10.18
+     */
+    private static String toKey(final String providerName, final String sourceIdentifier) {
+        return providerName + ":" + sourceIdentifier;
+    }
+
+    /**
+     * Check if snapshots must be used instead of
+     * retrieving the remote configuration.
+     *
+     * @return {@code true} if snapshots are used as fast path
+     * @since 26.10.18
+     */
+    boolean isFastPath() {
+        return this.fastPath;
+    }
+
+    /**
+     * Resolve the snapshot file of a source.
+     *
+     * @param providerName     The provider short name
+     * @param sourceIdentifier The source identifier
+     * @return The snapshot file
+     * @since 26.10.18
+     */
+    Path resolvePath(final String providerName, final String sourceIdentifier) {
+        try {
+            final MessageDigest messageDigest = MessageDigest.getInstance("SHA-1");
+            final byte[] digest = messageDigest.digest(sourceIdentifier.getBytes(StandardCharsets.UTF_8));
+            final StringBuilder stringBuilder = new StringBuilder(providerName.length() + 50);
+            stringBuilder.append(providerName.toLowerCase()).append('-');
+            for (final byte b : digest) {
+                stringBuilder.append(String.format("%02x", b));
+            }
+            return this.directory.resolve(stringBuilder.append(".snapshot").toString());
+        } catch (final NoSuchAlgorithmException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * Load the snapshot of a source.
+     *
+     * @param providerName     The provider short name
+     * @param sourceIdentifier The source identifier
+     * @return The configuration, or {@code null} if no valid snapshot exists
+     * @since 26.10.18
+     */
+    Config load(final String providerName, final String sourceIdentifier) {
+        final Path path = this.resolvePath(providerName, sourceIdentifier);
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < 20 || buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                Logger.warn("Snapshot {} is not valid", path);
+                return null;
+            }
+            final long createdAt = buffer.getLong();
+            final long age = System.currentTimeMillis() - createdAt;
+            if (age > this.maxAge) {
+                Logger.debug("Snapshot {} is too old ({}s)", path, TimeUnit.MILLISECONDS.toSeconds(age));
+                return null;
+            }
+            final int keyLength = buffer.getInt();
+            if (keyLength < 0 || keyLength > MAX_KEY_LENGTH || buffer.remaining() < keyLength + 8) {
+                Logger.warn("Snapshot {} is not valid", path);
+                return null;
+            }
+            final byte[] key = new byte[keyLength];
+            buffer.get(key);
+            if (!toKey(providerName, sourceIdentifier).equals(new String(key, StandardCharsets.UTF_8))) {
+                return null;
+            }
+            final int checksum = buffer.getInt();
+            final int payloadLength = buffer.getInt();
+            if (payloadLength != buffer.remaining()) {
+                Logger.warn("Snapshot {} is truncated", path);
+                return null;
+            }
+            final ByteBuffer payload = buffer.slice();
+            final CRC32 crc32 = new CRC32();
+            crc32.update(payload.duplicate());
+            if ((int) crc32.getValue() != checksum) {
+                Logger.warn("Snapshot {} is corrupted", path);
+                return null;
+            }
+            Logger.debug("Snapshot {} loaded ({}s old)", path, TimeUnit.MILLISECONDS.toSeconds(age));
+            return ConfigFactory.parseString(
+                StandardCharsets.UTF_8.decode(payload).toString(),
+                ConfigParseOptions.defaults().setOriginDescription("snapshot " + path)
+            );
+        } catch (final IOException | RuntimeException ex) {
+            Logger.warn("Can't read snapshot {}: {}", path, ex.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Save the snapshot of a source. The snapshot is written in a
+     * temporary file, then atomically moved to its final location.
+     * Configurations holding references to large values, only valid in
+     * the current process, are not saved and the previous snapshot of
+     * the source is removed.
+     *
+     * @param providerName     The provider short name
+     * @param sourceIdentifier The source identifier
+     * @param configuration    The configuration to save
+     * @since 26.10.18
+     */
+    void save(final String providerName, final String sourceIdentifier, final Config configuration) {
+        final Path path = this.resolvePath(providerName, sourceIdentifier);
+        try {
+            Files.createDirectories(this.directory);
+            final String renderedConfiguration = configuration.root().render(ConfigRenderOptions.concise());
+            if (LargeValueStore.containsReference(renderedConfiguration)) {
+                Files.deleteIfExists(path);
+                Logger.debug("Snapshot {} not saved: the configuration holds off-heap values", path);
+                return;
+            }
+            final byte[] key = toKey(providerName, sourceIdentifier).getBytes(StandardCharsets.UTF_8);
+            final byte[] payload = renderedConfiguration.getBytes(StandardCharsets.UTF_8);
+            final CRC32 crc32 = new CRC32();
+            crc32.update(payload);
+            final Path temporaryPath = Files.createTempFile(this.directory, path.getFileName().toString(), ".tmp");
+            try {
+                try (final OutputStream os = Files.newOutputStream(temporaryPath);
+                     final DataOutputStream dos = new DataOutputStream(os)) {
+                    dos.writeInt(MAGIC);
+                    dos.writeInt(FORMAT_VERSION);
+                    dos.writeLong(System.currentTimeMillis());
+                    dos.writeInt(key.length);
+                    dos.write(key);
+                    dos.writeInt((int) crc32.getValue());
+                    dos.writeInt(payload.length);
+                    dos.write(payload);
+                }
+                Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temporaryPath);
+            }
+            Logger.debug("Snapshot {} saved", path);
+        } catch (final IOException | RuntimeException ex) {
+            Logger.warn("Can't write snapshot {}: {}", path, ex.getMessage());
+        }
+    }
+}
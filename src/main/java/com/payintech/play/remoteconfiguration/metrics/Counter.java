@@ -0,0 +1,105 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 PayinTech
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.payintech.play.remoteconfiguration.metrics;
+
+/**
+ * The counted events of a configuration load.
+ *
+ * @author Thibault Meyer
+ * @version 26.10.18
+ * @since 26.10.18
+ */
+public enum Counter {
+
+    /**
+     * Number of bytes received (compressed size).
+     *
+     * @since 26.10.18
+     */
+    RECEIVED_BYTES,
+
+    /**
+     * Number of bytes given to the parsers (decompressed size).
+     *
+     * @since 26.10.18
+     */
+    DECODED_BYTES,
+
+    /**
+     * Number of responses received compressed (gzip or deflate).
+     *
+     * @since 26.10.18
+     */
+    COMPRESSED_RESPONSES,
+
+    /**
+     * Number of responses received without compression.
+     *
+     * @since 26.10.18
+     */
+    UNCOMPRESSED_RESPONSES,
+
+    /**
+     * Number of successful configuration retrievals.
+     *
+     * @since 26.10.18
+     */
+    LOADS,
+
+    /**
+     * Number of failed configuration retrievals.
+     *
+     * @since 26.10.18
+     */
+    FAILURES,
+
+    /**
+     * Number of watch rounds retried after an error.
+     *
+     * @since 26.10.18
+     */
+    RETRIES,
+
+    /**
+     * Number of configuration changes applied without restart.
+     *
+     * @since 26.10.18
+     */
+    RELOADS,
+
+    /**
+     * Number of requests retried after a failure or a server error.
+     *
+     * @since 26.10.18
+     */
+    FAILOVERS,
+
+    /**
+     * Number of requests sent to a second endpoint because the
+     * first one was too slow to answer.
+     *
+     * @since 26.10.18
+     */
+    HEDGES
+}
@@ -0,0 +1,70 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 PayinTech
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.payintech.play.remoteconfiguration.metrics;
+
+/**
+ * Receives the metrics recorded while the configuration is loaded
+ * and reloaded. Listeners can be registered programmatically or with
+ * the {@code ServiceLoader}. Listeners are called synchronously and
+ * must return quickly.
+ *
+ * @author Thibault Meyer
+ * @version 26.10.18
+ * @since 26.10.18
+ */
+public interface MetricsListener {
+
+    /**
+     * Called each time a phase is completed.
+     *
+     * @param source   The source (ie: the provider name)
+     * @param phase    The completed phase
+     * @param duration The phase duration in nanoseconds
+     * @since 26.10.18
+     */
+    default void onTiming(final String source, final Phase phase, final long duration) {
+    }
+
+    /**
+     * Called each time a counter is incremented.
+     *
+     * @param source  The source (ie: the provider name)
+     * @param counter The incremented counter
+     * @param delta   The increment
+     * @since 26.10.18
+     */
+    default void onCount(final String source, final Counter counter, final long delta) {
+    }
+
+    /**
+     * Called each time a value is measured.
+     *
+     * @param source The source (ie: the provider name)
+     * @param gauge  The measured gauge
+     * @param value  The measured value
+     * @since 26.10.18
+     */
+    default void onGauge(final String source, final Gauge gauge, final long value) {
+    }
+}
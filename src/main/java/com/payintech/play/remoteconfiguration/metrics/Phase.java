@@ -0,0 +1,93 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 PayinTech
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.payintech.play.remoteconfiguration.metrics;
+
+/**
+ * The timed phases of a configuration load.
+ *
+ * @author Thibault Meyer
+ * @version 26.10.18
+ * @since 26.10.18
+ */
+public enum Phase {
+
+    /**
+     * Resolution of the provider with the {@code ServiceLoader}.
+     *
+     * @since 26.10.18
+     */
+    PROVIDER_RESOLUTION,
+
+    /**
+     * Connection to the remote server (DNS resolution,
+     * TCP connection and TLS handshake).
+     *
+     * @since 26.10.18
+     */
+    CONNECT,
+
+    /**
+     * From the connection to the reception of the response headers.
+     *
+     * @since 26.10.18
+     */
+    FIRST_BYTE,
+
+    /**
+     * From the reception of the response headers to the end of the
+     * response body. When the body is parsed while it is received,
+     * this includes the decoding time.
+     *
+     * @since 26.10.18
+     */
+    DOWNLOAD,
+
+    /**
+     * Decoding of the response (Json or HOCON parsing).
+     *
+     * @since 26.10.18
+     */
+    DECODE,
+
+    /**
+     * Construction of the configuration tree from the decoded values.
+     *
+     * @since 26.10.18
+     */
+    BUILD,
+
+    /**
+     * Whole configuration retrieval by a provider.
+     *
+     * @since 26.10.18
+     */
+    LOAD,
+
+    /**
+     * Merge of the remote configurations with the local configuration.
+     *
+     * @since 26.10.18
+     */
+    MERGE
+}
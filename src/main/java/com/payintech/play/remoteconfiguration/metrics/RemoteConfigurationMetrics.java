@@ -0,0 +1,280 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 PayinTech
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.payintech.play.remoteconfiguration.metrics;
+
+import play.Logger;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records the metrics of the configuration loads and reloads. Metrics
+ * are aggregated by source and forwarded to the registered listeners.
+ * The aggregated metrics can be exposed through JMX.
+ *
+ * @author Thibault Meyer
+ * @version 26.10.18
+ * @since 26.10.18
+ */
+public final class RemoteConfigurationMetrics implements RemoteConfigurationMetricsMXBean {
+
+    /**
+     * The JMX object name.
+     *
+     * @since 26.10.18
+     */
+    public static final String OBJECT_NAME = "com.payintech.play.remoteconfiguration:type=RemoteConfigurationMetrics";
+
+    /**
+     * The source used for the metrics not related to a specific provider.
+     *
+     * @since 26.10.18
+     */
+    public static final String COMPOSITION_SOURCE = "Composition";
+
+    /**
+     * The unique instance.
+     *
+     * @since 26.10.18
+     */
+    private static final RemoteConfigurationMetrics INSTANCE = new RemoteConfigurationMetrics();
+
+    /**
+     * The registered listeners.
+     *
+     * @since 26.10.18
+     */
+    private final List<MetricsListener> listeners;
+
+    /**
+     * Duration of the last occurrence of each phase, in nanoseconds.
+     *
+     * @since 26.10.18
+     */
+    private final ConcurrentMap<String, AtomicLong> lastDurations;
+
+    /**
+     * Cumulated duration of each phase, in nanoseconds.
+     *
+     * @since 26.10.18
+     */
+    private final ConcurrentMap<String, LongAdder> totalDurations;
+
+    /**
+     * Value of each counter.
+     *
+     * @since 26.10.18
+     */
+    private final ConcurrentMap<String, LongAdder> counters;
+
+    /**
+     * Last value of each gauge.
+     *
+     * @since 26.10.18
+     */
+    private final ConcurrentMap<String, AtomicLong> gauges;
+
+    /**
+     * Build a new instance.
+     *
+     * @since 26.10.18
+     */
+    private RemoteConfigurationMetrics() {
+        this.listeners = new CopyOnWriteArrayList<>();
+        this.lastDurations = new ConcurrentHashMap<>();
+        this.totalDurations = new ConcurrentHashMap<>();
+        this.counters = new ConcurrentHashMap<>();
+        this.gauges = new ConcurrentHashMap<>();
+        for (final MetricsListener listener : ServiceLoader.load(MetricsListener.class)) {
+            this.listeners.add(listener);
+        }
+    }
+
+    /**
+     * Get the unique instance.
+     *
+     * @return The unique instance
+     * @since 26.10.18
+     */
+    public static RemoteConfigurationMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Record the duration of a phase.
+     *
+     * @param source    The source (ie: the provider name)
+     * @param phase     The completed phase
+     * @param startTime The phase start time, as returned by {@code System.nanoTime()}
+     * @since 26.10.18
+     */
+    public static void timing(final String source, final Phase phase, final long startTime) {
+        final long duration = System.nanoTime() - startTime;
+        final String key = source + "/" + phase.name();
+        INSTANCE.lastDurations.computeIfAbsent(key, k -> new AtomicLong()).set(duration);
+        INSTANCE.totalDurations.computeIfAbsent(key, k -> new LongAdder()).add(duration);
+        for (final MetricsListener listener : INSTANCE.listeners) {
+            try {
+                listener.onTiming(source, phase, duration);
+            } catch (final RuntimeException ex) {
+                Logger.warn("Metrics listener {} failed: {}", listener.getClass().getName(), ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Increment a counter.
+     *
+     * @param source  The source (ie: the provider name)
+     * @param counter The counter to increment
+     * @param delta   The increment
+     * @since 26.10.18
+     */
+    public static void count(final String source, final Counter counter, final long delta) {
+        INSTANCE.counters.computeIfAbsent(source + "/" + counter.name(), k -> new LongAdder()).add(delta);
+        for (final MetricsListener listener : INSTANCE.listeners) {
+            try {
+                listener.onCount(source, counter, delta);
+            } catch (final RuntimeException ex) {
+                Logger.warn("Metrics listener {} failed: {}", listener.getClass().getName(), ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Record the value of a gauge.
+     *
+     * @param source The source (ie: the provider name)
+     * @param gauge  The measured gauge
+     * @param value  The measured value
+     * @since 26.10.18
+     */
+    public static void gauge(final String source, final Gauge gauge, final long value) {
+        INSTANCE.gauges.computeIfAbsent(source + "/" + gauge.name(), k -> new AtomicLong()).set(value);
+        for (final MetricsListener listener : INSTANCE.listeners) {
+            try {
+                listener.onGauge(source, gauge, value);
+            } catch (final RuntimeException ex) {
+                Logger.warn("Metrics listener {} failed: {}", listener.getClass().getName(), ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Convert the values of a map from nanoseconds to microseconds.
+     *
+     * @param durations The durations in nanoseconds
+     * @return The durations in microseconds, sorted by key
+     * @since 26.10.18
+     */
+    private static Map<String, Long> toMicroseconds(final Map<String, ? extends Number> durations) {
+        final Map<String, Long> result = new TreeMap<>();
+        durations.forEach((key, value) -> result.put(key, TimeUnit.NANOSECONDS.toMicros(value.longValue())));
+        return result;
+    }
+
+    /**
+     * Register a listener.
+     *
+     * @param listener The listener to register
+     * @since 26.10.18
+     */
+    public void addListener(final MetricsListener listener) {
+        this.listeners.add(listener);
+    }
+
+    /**
+     * Unregister a listener.
+     *
+     * @param listener The listener to unregister
+     * @since 26.10.18
+     */
+    public void removeListener(final MetricsListener listener) {
+        this.listeners.remove(listener);
+    }
+
+    /**
+     * Register the metrics on the platform MBean server. Calling
+     * this method many times has no effect.
+     *
+     * @since 26.10.18
+     */
+    public void registerMBean() {
+        final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        try {
+            final ObjectName objectName = new ObjectName(OBJECT_NAME);
+            if (!mBeanServer.isRegistered(objectName)) {
+                mBeanServer.registerMBean(this, objectName);
+            }
+        } catch (final InstanceAlreadyExistsException ignore) {
+        } catch (final JMException ex) {
+            Logger.warn("Can't register remote configuration metrics MBean: {}", ex.getMessage());
+        }
+    }
+
+    @Override
+    public Map<String, Long> getLastDurations() {
+        return toMicroseconds(this.lastDurations);
+    }
+
+    @Override
+    public Map<String, Long> getTotalDurations() {
+        return toMicroseconds(this.totalDurations);
+    }
+
+    @Override
+    public Map<String, Long> getCounters() {
+        final Map<String, Long> result = new TreeMap<>();
+        this.counters.forEach((key, value) -> result.put(key, value.sum()));
+        return result;
+    }
+
+    @Override
+    public Map<String, Long> getGauges() {
+        final Map<String, Long> result = new TreeMap<>();
+        this.gauges.forEach((key, value) -> result.put(key, value.get()));
+        return result;
+    }
+
+    @Override
+    public void reset() {
+        this.lastDurations.clear();
+        this.totalDurations.clear();
+        this.counters.clear();
+        this.gauges.clear();
+    }
+}
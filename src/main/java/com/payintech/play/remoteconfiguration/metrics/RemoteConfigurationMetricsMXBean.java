@@ -0,0 +1,77 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 PayinTech
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.payintech.play.remoteconfiguration.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of the recorded metrics. Keys are composed of
+ * the source and the phase, counter or gauge name, separated by
+ * a slash (ie: "HashiCorp Consul/DECODE").
+ *
+ * @author Thibault Meyer
+ * @version 26.10.18
+ * @since 26.10.18
+ */
+public interface RemoteConfigurationMetricsMXBean {
+
+    /**
+     * Retrieve the duration of the last occurrence of each phase.
+     *
+     * @return The durations in microseconds
+     * @since 26.10.18
+     */
+    Map<String, Long> getLastDurations();
+
+    /**
+     * Retrieve the cumulated duration of each phase.
+     *
+     * @return The durations in microseconds
+     * @since 26.10.18
+     */
+    Map<String, Long> getTotalDurations();
+
+    /**
+     * Retrieve the value of each counter.
+     *
+     * @return The counter values
+     * @since 26.10.18
+     */
+    Map<String, Long> getCounters();
+
+    /**
+     * Retrieve the last value of each gauge.
+     *
+     * @return The gauge values
+     * @since 26.10.18
+     */
+    Map<String, Long> getGauges();
+
+    /**
+     * Reset all metrics.
+     *
+     * @since 26.10.18
+     */
+    void reset();
+}
@@ -23,28 +23,81 @@
  */
 package com.payintech.play.remoteconfiguration.provider;
 
+import com.fasterxml.jackson.core.Base64Variants;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.payintech.play.remoteconfiguration.metrics.Phase;
+import com.payintech.play.remoteconfiguration.metrics.RemoteConfigurationMetrics;
 import com.typesafe.config.Config;
 import com.typesafe.config.ConfigFactory;
 import play.Logger;
 import play.Mode;
 
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.HttpURLConnection;
 import java.net.URL;
-import java.util.Base64;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 /**
  * Configuration provider implementation for HashiCorp Consul.
  *
  * @author Thibault Meyer
- * @version 17.08.21
+ * @version 26.10.18
  * @since 17.08.20
  */
 public final class ConsulProvider implements RemoteConfigProvider {
 
+    /**
+     * The factory used to create Json parsers.
+     *
+     * @since 26.10.18
+     */
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    /**
+     * Maximum number of operations in a Consul transaction.
+     *
+     * @since 26.10.18
+     */
+    private static final int MAX_TXN_OPERATIONS = 64;
+
+    /**
+     * The last known Consul index (value of the "X-Consul-Index" header).
+     *
+     * @since 26.10.18
+     */
+    private volatile long consulIndex;
+
+    /**
+     * The lazily retrieved Key/Value couples (lazy mode only).
+     *
+     * @since 26.10.18
+     */
+    private volatile LazyKeyValueStore lazyKeyValueStore;
+
+    /**
+     * The store of the large values, if enabled.
+     *
+     * @since 26.10.18
+     */
+    private volatile LargeValueStore largeValueStore;
+
     @Override
     public String getShortName() {
         return "CONSUL";
@@ -55,73 +108,746 @@ public final class ConsulProvider implements RemoteConfigProvider {
         return "HashiCorp Consul";
     }
 
-    @Override
-    public Config loadConfiguration(final Mode mode, final Config localConfig) throws IOException {
-        final StringBuilder stringBuilder = new StringBuilder(1024);
-        final String consulAccessToken = localConfig.getString("remote-configuration.consul.authToken");
-        String consulEndpoint = localConfig.getString("remote-configuration.consul.endpoint");
-        String consulPrefix = localConfig.getString("remote-configuration.consul.prefix").trim();
-        if (consulEndpoint != null && consulEndpoint.startsWith("http")) {
-            if (!consulEndpoint.endsWith("/")) {
-                consulEndpoint += "/";
-            }
-            if (consulPrefix.endsWith("/")) {
-                consulPrefix = consulPrefix.substring(0, consulPrefix.length() - 1);
-            }
-            if (consulPrefix.startsWith("/")) {
-                consulPrefix = consulPrefix.substring(1, consulPrefix.length());
-            }
-            InputStream is = null;
-            try {
-                final URL consulUrl = new URL(
-                    String.format(
-                        "%sv1/kv/%s/?recurse&token=%s",
-                        consulEndpoint,
-                        consulPrefix,
-                        consulAccessToken
-                    )
+    /**
+     * Retrieve the Consul endpoints from the local configuration.
+     *
+     * @param localConfig The local configuration
+     * @return The Consul endpoints
+     * @since 26.10.18
+     */
+    private EndpointGroup getEndpointGroup(final Config localConfig) {
+        return EndpointGroup.fromConfig(this.getName(), localConfig, "remote-configuration.consul.endpoint");
+    }
+
+    /**
+     * Retrieve the query parameters of the configured consistency mode.
+     * The Consul agent cache does not support the KV endpoints, so the
+     * CACHED mode is read like the STALE mode.
+     *
+     * @param localConfig The local configuration
+     * @return The query parameters, starting with "&amp;", or an empty string
+     * @since 26.10.18
+     */
+    private static String getConsistencyParameters(final Config localConfig) {
+        switch (localConfig.getString("remote-configuration.consul.consistency").trim().toUpperCase()) {
+            case "DEFAULT":
+                return "";
+            case "STALE":
+            case "CACHED":
+                return "&stale";
+            case "CONSISTENT":
+                return "&consistent";
+            default:
+                throw new RuntimeException("Bad configuration");
+        }
+    }
+
+    /**
+     * Create a read request.
+     *
+     * @param localConfig           The local configuration
+     * @param endpoint              The endpoint
+     * @param query                 The query, relative to the endpoint
+     * @param consistencyParameters The query parameters of the consistency mode
+     * @param customizer            Customizes the request
+     * @return The request
+     * @throws IOException When the request can't be created
+     * @since 26.10.18
+     */
+    private HttpRequest createReadRequest(final Config localConfig,
+                                          final String endpoint,
+                                          final String query,
+                                          final String consistencyParameters,
+                                          final Consumer<HttpRequest> customizer) throws IOException {
+        final HttpRequest request = HttpTransports.newRequest(
+            localConfig,
+            this.getName(),
+            new URL(endpoint + query + consistencyParameters)
+        );
+        customizer.accept(request);
+        return request;
+    }
+
+    /**
+     * Execute a read request with the configured consistency mode. When
+     * a stale response lags the leader by more than the maximum
+     * staleness, or when the server has lost the leader, the request is
+     * sent again with the default consistency mode.
+     *
+     * @param localConfig The local configuration
+     * @param query       The query, relative to the endpoint
+     * @param blocking    Is the request a blocking query?
+     * @param customizer  Customizes the request
+     * @return The response
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    private HttpResponse executeRead(final Config localConfig,
+                                     final String query,
+                                     final boolean blocking,
+                                     final Consumer<HttpRequest> customizer) throws IOException {
+        final EndpointGroup endpointGroup = this.getEndpointGroup(localConfig);
+        final String consistencyParameters = getConsistencyParameters(localConfig);
+        final HttpResponse response = endpointGroup.execute(
+            endpoint -> this.createReadRequest(localConfig, endpoint, query, consistencyParameters, customizer),
+            blocking
+        );
+        if (consistencyParameters.contains("stale") && response.getStatus() / 100 == 2) {
+            final long maxStale = localConfig.getDuration("remote-configuration.consul.maxStale", TimeUnit.MILLISECONDS);
+            final long staleness = response.getHeaderLong("X-Consul-LastContact", 0);
+            if (staleness > maxStale || "false".equals(response.getHeader("X-Consul-KnownLeader"))) {
+                Logger.debug(
+                    "Provider {}> Response is {}ms behind the leader, reading again with default consistency",
+                    this.getName(),
+                    staleness
                 );
-                Logger.debug("Provider {}> {}", this.getName(), consulUrl.toString());
-                final HttpURLConnection conn = (HttpURLConnection) consulUrl.openConnection();
-                conn.setConnectTimeout(1500);
-                if (conn.getResponseCode() / 100 == 2) {
-                    is = conn.getInputStream();
-                    final ObjectMapper mapper = new ObjectMapper();
-                    final JsonNode jsonDocument = mapper.readTree(is);
-                    final Base64.Decoder decoder = Base64.getDecoder();
-                    for (final JsonNode entry : jsonDocument) {
-                        if (entry.hasNonNull("Value")) {
-                            stringBuilder.append(
-                                entry.get("Key")
-                                    .asText()
-                                    .replace(consulPrefix.isEmpty() ? "" : consulPrefix + "/", "")
-                                    .replace("/", ".")
-                            );
-                            stringBuilder.append(" = ");
-                            stringBuilder.append(
-                                new String(
-                                    decoder.decode(
-                                        entry.get("Value").asText()
-                                    )
-                                )
-                            );
-                            stringBuilder.append('\n');
-                        }
+                response.close();
+                return endpointGroup.execute(
+                    endpoint -> this.createReadRequest(localConfig, endpoint, query, "", customizer),
+                    blocking
+                );
+            }
+        }
+        return response;
+    }
+
+    /**
+     * Retrieve the store of the large values.
+     *
+     * @param localConfig The local configuration
+     * @return The store of the large values, or {@code null} if disabled
+     * @since 26.10.18
+     */
+    private LargeValueStore getLargeValueStore(final Config localConfig) {
+        if (this.largeValueStore == null) {
+            this.largeValueStore = LargeValueStore.fromConfig(
+                this.getName(),
+                localConfig,
+                "remote-configuration.consul.largeValues"
+            );
+        }
+        return this.largeValueStore;
+    }
+
+    /**
+     * Retrieve the Consul key selection from the local configuration.
+     *
+     * @param localConfig The local configuration
+     * @return The Consul key selection
+     * @since 26.10.18
+     */
+    private KeySelection getSelection(final Config localConfig) {
+        return KeySelection.fromConfig(localConfig, "remote-configuration.consul");
+    }
+
+    /**
+     * Convert a raw value to a configuration value. Values larger than
+     * the threshold of the large values store are kept off-heap.
+     *
+     * @param value       The raw value
+     * @param largeValues The store of the large values, can be {@code null}
+     * @return The configuration value
+     * @throws IOException If the value can't be stored
+     * @since 26.10.18
+     */
+    private static String toValue(final byte[] value, final LargeValueStore largeValues) throws IOException {
+        return largeValues == null ? new String(value, StandardCharsets.UTF_8) : largeValues.toValue(value);
+    }
+
+    /**
+     * Read the Key/Value couples from a Consul response. The response
+     * is streamed: values are base64-decoded directly from the parser
+     * buffer and added to the configuration builder.
+     *
+     * @param is           The response to read
+     * @param consulPrefix The key prefix to remove
+     * @param builder      The configuration builder
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    static void readKeyValues(final InputStream is,
+                              final String consulPrefix,
+                              final KeyValueConfigBuilder builder) throws IOException {
+        readKeyValues(is, consulPrefix, null, null, builder::put);
+    }
+
+    /**
+     * Read the Key/Value couples from a Consul response. The response
+     * is streamed: values are base64-decoded directly from the parser
+     * buffer and given to the consumer with their configuration path.
+     *
+     * @param is              The response to read
+     * @param consulPrefix    The key prefix to remove
+     * @param selection       The key selection used to filter keys, can be {@code null}
+     * @param largeValues     The store of the large values, can be {@code null}
+     * @param consumer        The consumer of the Key/Value couples
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    static void readKeyValues(final InputStream is,
+                              final String consulPrefix,
+                              final KeySelection selection,
+                              final LargeValueStore largeValues,
+                              final BiConsumer<String, String> consumer) throws IOException {
+        final String keyPrefix = consulPrefix.isEmpty() ? "" : consulPrefix + "/";
+        try (final JsonParser parser = JSON_FACTORY.createParser(is)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException("Provider return an unexpected document");
+            }
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                String key = null;
+                byte[] value = null;
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    final String fieldName = parser.getCurrentName();
+                    final JsonToken token = parser.nextToken();
+                    if ("Key".equals(fieldName)) {
+                        key = parser.getText();
+                    } else if ("Value".equals(fieldName) && token == JsonToken.VALUE_STRING) {
+                        value = parser.getBinaryValue(Base64Variants.MIME_NO_LINEFEEDS);
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                if (key != null && value != null) {
+                    final String relativeKey = key.startsWith(keyPrefix) ? key.substring(keyPrefix.length()) : key;
+                    if (selection == null || selection.accept(relativeKey)) {
+                        consumer.accept(relativeKey.replace('/', '.'), toValue(value, largeValues));
                     }
+                }
+            }
+        }
+    }
+
+    /**
+     * Read the keys from a Consul response. Folders are ignored.
+     *
+     * @param is The response to read
+     * @return The Consul keys
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    static List<String> readKeys(final InputStream is) throws IOException {
+        final List<String> keys = new ArrayList<>();
+        try (final JsonParser parser = JSON_FACTORY.createParser(is)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException("Provider return an unexpected document");
+            }
+            while (parser.nextToken() == JsonToken.VALUE_STRING) {
+                final String key = parser.getText();
+                if (!key.endsWith("/")) {
+                    keys.add(key);
+                }
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Retrieve the configuration paths of the selected keys located
+     * under the given prefix.
+     *
+     * @param keys         The Consul keys
+     * @param consulPrefix The key prefix to remove
+     * @param selection    The key selection used to filter keys
+     * @return The Consul keys, by configuration path
+     * @since 26.10.18
+     */
+    private static Map<String, String> toPaths(final List<String> keys,
+                                               final String consulPrefix,
+                                               final KeySelection selection) {
+        final String keyPrefix = consulPrefix.isEmpty() ? "" : consulPrefix + "/";
+        final Map<String, String> paths = new LinkedHashMap<>();
+        for (final String key : keys) {
+            if (key.startsWith(keyPrefix) && selection.accept(key.substring(keyPrefix.length()))) {
+                paths.put(key.substring(keyPrefix.length()).replace('/', '.'), key);
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * Retrieve values from Consul with a single transaction. Keys
+     * removed since they have been listed are ignored.
+     *
+     * @param localConfig The local configuration
+     * @param keys        The Consul keys (at most 64)
+     * @return The raw values, by Consul key
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    private Map<String, byte[]> fetchValues(final Config localConfig, final List<String> keys) throws IOException {
+        final String txnQuery = String.format(
+            "v1/txn?token=%s",
+            localConfig.getString("remote-configuration.consul.authToken")
+        );
+        final List<String> pendingKeys = new ArrayList<>(keys);
+        final Map<String, byte[]> values = new HashMap<>();
+        while (!pendingKeys.isEmpty()) {
+            final ByteArrayOutputStream body = new ByteArrayOutputStream(pendingKeys.size() * 64);
+            try (final JsonGenerator generator = JSON_FACTORY.createGenerator(body)) {
+                generator.writeStartArray();
+                for (final String key : pendingKeys) {
+                    generator.writeStartObject();
+                    generator.writeObjectFieldStart("KV");
+                    generator.writeStringField("Verb", "get");
+                    generator.writeStringField("Key", key);
+                    generator.writeEndObject();
+                    generator.writeEndObject();
+                }
+                generator.writeEndArray();
+            }
+            final byte[] txnBody = body.toByteArray();
+            try (final HttpResponse response = this.executeRead(
+                localConfig,
+                txnQuery,
+                false,
+                request -> request.setMethod("PUT").setBody(txnBody)
+            )) {
+                final InputStream is = response.getBody();
+                final JsonNode jsonDocument = is == null ? null : new ObjectMapper().readTree(is);
+                if (response.getStatus() == 409 && jsonDocument != null && jsonDocument.path("Errors").isArray()) {
+                    // Some keys don't exist anymore: the whole transaction is rolled back
+                    final List<String> removedKeys = new ArrayList<>();
+                    for (final JsonNode error : jsonDocument.get("Errors")) {
+                        removedKeys.add(pendingKeys.get(error.path("OpIndex").asInt()));
+                    }
+                    pendingKeys.removeAll(removedKeys);
+                } else if (response.getStatus() / 100 != 2 || jsonDocument == null) {
+                    throw new IOException(String.format("Provider return non 200 status: %d", response.getStatus()));
                 } else {
-                    Logger.warn("Provider {} return non 200 status: {}", this.getName(), conn.getResponseCode());
+                    for (final JsonNode result : jsonDocument.path("Results")) {
+                        final JsonNode kv = result.path("KV");
+                        if (kv.hasNonNull("Value")) {
+                            values.put(kv.get("Key").asText(), kv.get("Value").binaryValue());
+                        }
+                    }
+                    pendingKeys.clear();
                 }
-            } finally {
-                if (is != null) {
-                    try {
-                        is.close();
-                    } catch (final IOException ignore) {
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Build the configuration in lazy mode. Only the values located
+     * under the paths to prefetch are retrieved; other values will be
+     * retrieved on demand from the lazy Key/Value store.
+     *
+     * @param localConfig The local configuration
+     * @param keys        The Consul keys, by configuration path
+     * @return The configuration
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    private Config loadLazyConfiguration(final Config localConfig, final Map<String, String> keys) throws IOException {
+        if (this.lazyKeyValueStore == null) {
+            final int batchSize = localConfig.getInt("remote-configuration.consul.lazy.batchSize");
+            if (batchSize < 1 || batchSize > MAX_TXN_OPERATIONS) {
+                throw new RuntimeException("Bad configuration");
+            }
+            this.lazyKeyValueStore = new LazyKeyValueStore(
+                this.getName(),
+                batch -> {
+                    final Map<String, String> values = new HashMap<>();
+                    for (final Map.Entry<String, byte[]> entry : this.fetchValues(localConfig, batch).entrySet()) {
+                        values.put(entry.getKey(), toValue(entry.getValue(), null));
                     }
+                    return values;
+                },
+                batchSize
+            );
+        }
+        this.lazyKeyValueStore.reset(keys);
+        final List<String> prefetchPaths = localConfig.getStringList("remote-configuration.consul.lazy.prefetch");
+        final List<String> paths = new ArrayList<>();
+        for (final String path : keys.keySet()) {
+            for (final String prefetchPath : prefetchPaths) {
+                if (path.equals(prefetchPath) || path.startsWith(prefetchPath + ".")) {
+                    paths.add(path);
+                    break;
+                }
+            }
+        }
+        this.lazyKeyValueStore.prefetch(paths);
+        Config configuration = ConfigFactory.empty();
+        for (final String prefetchPath : prefetchPaths) {
+            configuration = configuration.withFallback(this.lazyKeyValueStore.getConfig(prefetchPath));
+        }
+        Logger.debug(
+            "Provider {}> Lazy mode: {} keys listed, {} values retrieved",
+            this.getName(),
+            keys.size(),
+            paths.size()
+        );
+        return configuration;
+    }
+
+    /**
+     * Issue a Consul KV request on a prefix. If the given index is greater
+     * than zero, a blocking query is issued: Consul will answer as soon as
+     * the index changes or when the wait time is reached.
+     *
+     * @param localConfig  The local configuration
+     * @param consulPrefix The prefix to request
+     * @param keysOnly     If {@code true}, only the keys are listed
+     * @param index        The last known index, or zero
+     * @param waitTime     The blocking query maximum duration in seconds
+     * @param watcher      The watcher running the request, can be {@code null}. Without watcher, non 200 status are only logged
+     * @param reader       Reads the response body
+     * @return The new index, or {@code -1} if the index has not changed
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    private long queryPrefix(final Config localConfig,
+                             final String consulPrefix,
+                             final boolean keysOnly,
+                             final long index,
+                             final long waitTime,
+                             final ProviderWatcher watcher,
+                             final BodyReader reader) throws IOException {
+        final String query = String.format(
+            "v1/kv/%s/?%s&token=%s%s",
+            consulPrefix,
+            keysOnly ? "keys" : "recurse",
+            localConfig.getString("remote-configuration.consul.authToken"),
+            index > 0 ? String.format("&index=%d&wait=%ds", index, waitTime) : ""
+        );
+        try (final HttpResponse response = this.executeRead(localConfig, query, index > 0, request -> {
+            if (index > 0) {
+                // Consul adds a random jitter of up to wait / 16 to the wait time
+                final long readTimeout = TimeUnit.SECONDS.toMillis(waitTime + waitTime / 16 + 5);
+                request.setReadTimeout(readTimeout).setDeadline(request.getConnectTimeout() + readTimeout);
+                watcher.setAbortAction(request::cancel);
+            }
+        })) {
+            final int responseCode = response.getStatus();
+            if (responseCode / 100 != 2 && watcher != null && responseCode != 404) {
+                throw new IOException(String.format("Provider return non 200 status: %d", responseCode));
+            }
+            final long newIndex = response.getHeaderLong("X-Consul-Index", 0);
+            if (index > 0 && newIndex == index) {
+                return -1;
+            }
+            if (responseCode / 100 == 2) {
+                final long startTime = System.nanoTime();
+                reader.read(response.getBody());
+                RemoteConfigurationMetrics.timing(this.getName(), Phase.DECODE, startTime);
+            } else {
+                Logger.warn("Provider {} return non 200 status: {}", this.getName(), responseCode);
+            }
+            return newIndex;
+        }
+    }
+
+    /**
+     * Split the keys of a large prefix into sub-prefixes. Sub-prefixes
+     * still holding more keys than the threshold are split again. Keys
+     * that can't be grouped are returned as leaves.
+     *
+     * @param relativeKeys The keys, relative to the prefix
+     * @param base         The sub-prefix being split
+     * @param threshold    Maximum number of keys by sub-prefix
+     * @param subPrefixes  The list where to put sub-prefixes
+     * @param leaves       The list where to put leaves
+     * @since 26.10.18
+     */
+    private static void shard(final List<String> relativeKeys,
+                              final String base,
+                              final int threshold,
+                              final List<String> subPrefixes,
+                              final List<String> leaves) {
+        final Map<String, List<String>> groups = new LinkedHashMap<>();
+        for (final String key : relativeKeys) {
+            final int idx = key.indexOf('/', base.length());
+            if (idx < 0) {
+                leaves.add(key);
+            } else {
+                groups.computeIfAbsent(key.substring(0, idx + 1), k -> new ArrayList<>()).add(key);
+            }
+        }
+        for (final Map.Entry<String, List<String>> group : groups.entrySet()) {
+            final int groupLength = group.getKey().length();
+            if (group.getValue().size() > threshold
+                && group.getValue().stream().filter(k -> k.indexOf('/', groupLength) < 0).count() <= MAX_TXN_OPERATIONS) {
+                shard(group.getValue(), group.getKey(), threshold, subPrefixes, leaves);
+            } else {
+                subPrefixes.add(group.getKey());
+            }
+        }
+    }
+
+    /**
+     * Create the requests retrieving the values of a prefix. A prefix
+     * holding more keys than the threshold is sharded: each sub-prefix
+     * is retrieved with its own request and keys located directly under
+     * a split prefix are retrieved with transactions.
+     *
+     * @param localConfig     The local configuration
+     * @param consulPrefix    The prefix
+     * @param keys            The Consul keys located under the prefix, by configuration path, or {@code null}
+     * @param selection       The key selection
+     * @param largeValues     The store of the large values, can be {@code null}
+     * @param watcher         The watcher running the requests, can be {@code null}
+     * @return The requests
+     * @since 26.10.18
+     */
+    private List<Callable<PrefixContent>> createFetchTasks(final Config localConfig,
+                                                           final String consulPrefix,
+                                                           final Map<String, String> keys,
+                                                           final KeySelection selection,
+                                                           final LargeValueStore largeValues,
+                                                           final ProviderWatcher watcher) {
+        final String keyPrefix = consulPrefix.isEmpty() ? "" : consulPrefix + "/";
+        final int shardThreshold = localConfig.getInt("remote-configuration.consul.shardThreshold");
+        final List<String> subPrefixes = new ArrayList<>();
+        final List<String> leaves = new ArrayList<>();
+        if (keys != null && keys.size() > shardThreshold) {
+            final List<String> relativeKeys = new ArrayList<>(keys.size());
+            for (final String key : keys.values()) {
+                relativeKeys.add(key.substring(keyPrefix.length()));
+            }
+            shard(relativeKeys, "", shardThreshold, subPrefixes, leaves);
+        }
+        if (subPrefixes.isEmpty() && leaves.isEmpty()
+            || leaves.stream().filter(k -> k.indexOf('/') < 0).count() > MAX_TXN_OPERATIONS) {
+            // Not sharded, or too many keys located directly under the prefix
+            subPrefixes.clear();
+            leaves.clear();
+            subPrefixes.add("");
+        }
+        final List<Callable<PrefixContent>> tasks = new ArrayList<>();
+        for (final String subPrefix : subPrefixes) {
+            final String requestPrefix = subPrefix.isEmpty()
+                ? consulPrefix
+                : keyPrefix + subPrefix.substring(0, subPrefix.length() - 1);
+            tasks.add(() -> {
+                final PrefixContent content = new PrefixContent();
+                content.index = this.queryPrefix(localConfig, requestPrefix, false, 0, 0, watcher,
+                    is -> readKeyValues(is, consulPrefix, selection, largeValues, content.values::put)
+                );
+                return content;
+            });
+        }
+        for (int idx = 0; idx < leaves.size(); idx += MAX_TXN_OPERATIONS) {
+            final List<String> batch = new ArrayList<>(MAX_TXN_OPERATIONS);
+            for (final String leaf : leaves.subList(idx, Math.min(idx + MAX_TXN_OPERATIONS, leaves.size()))) {
+                batch.add(keyPrefix + leaf);
+            }
+            tasks.add(() -> {
+                final PrefixContent content = new PrefixContent();
+                for (final Map.Entry<String, byte[]> entry : this.fetchValues(localConfig, batch).entrySet()) {
+                    content.values.put(
+                        entry.getKey().substring(keyPrefix.length()).replace('/', '.'),
+                        toValue(entry.getValue(), largeValues)
+                    );
+                }
+                return content;
+            });
+        }
+        if (tasks.size() > 1) {
+            Logger.debug("Provider {}> Prefix '{}' sharded in {} requests", this.getName(), consulPrefix, tasks.size());
+        }
+        return tasks;
+    }
+
+    /**
+     * Retrieve the configuration from Consul. If the given index is greater
+     * than zero, a blocking query is issued: Consul will answer as soon as
+     * the index changes or when the wait time is reached. With many
+     * prefixes, the blocking query lists the keys of their common prefix
+     * and the prefixes are then retrieved concurrently. In lazy mode,
+     * only the keys are listed.
+     *
+     * @param localConfig The local configuration
+     * @param index       The last known index, or zero
+     * @param waitTime    The blocking query maximum duration in seconds
+     * @param watcher     The watcher running the request, can be {@code null}
+     * @return The retrieved configuration, or {@code null} if the index has not changed
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    private Config fetchConfiguration(final Config localConfig,
+                                      final long index,
+                                      final long waitTime,
+                                      final ProviderWatcher watcher) throws IOException {
+        final KeySelection selection = this.getSelection(localConfig);
+        final List<String> consulPrefixes = selection.getPrefixes();
+        final boolean lazy = localConfig.getBoolean("remote-configuration.consul.lazy.enabled");
+        final boolean listed = lazy || localConfig.getInt("remote-configuration.consul.shardThreshold") > 0;
+        final int parallelism = localConfig.getInt("remote-configuration.consul.parallelism");
+        final KeyValueConfigBuilder builder = new KeyValueConfigBuilder(this.getName());
+        final LargeValueStore largeValues = lazy ? null : this.getLargeValueStore(localConfig);
+        if (largeValues != null) {
+            largeValues.begin();
+        }
+        if (consulPrefixes.size() == 1 && !listed) {
+            // Single request: the blocking query directly returns the new configuration
+            final String consulPrefix = consulPrefixes.get(0);
+            final long newIndex = this.queryPrefix(localConfig, consulPrefix, false, index, waitTime, watcher,
+                is -> readKeyValues(is, consulPrefix, selection, largeValues, builder::put)
+            );
+            if (newIndex < 0) {
+                return null;
+            }
+            this.consulIndex = newIndex < index ? 0 : Math.max(newIndex, 1);
+            if (largeValues != null) {
+                largeValues.commit();
+            }
+            return builder.build();
+        }
+        final List<PrefixContent> contents = new ArrayList<>();
+        long newIndex = Long.MAX_VALUE;
+        if (index > 0) {
+            final List<String> commonKeys = new ArrayList<>();
+            newIndex = this.queryPrefix(localConfig, selection.getCommonPrefix(), true, index, waitTime, watcher,
+                is -> commonKeys.addAll(readKeys(is))
+            );
+            if (newIndex < 0) {
+                return null;
+            }
+            for (final String consulPrefix : consulPrefixes) {
+                final PrefixContent content = new PrefixContent();
+                content.keys = listed ? toPaths(commonKeys, consulPrefix, selection) : null;
+                contents.add(content);
+            }
+        } else if (listed) {
+            final List<Callable<PrefixContent>> tasks = new ArrayList<>();
+            for (final String consulPrefix : consulPrefixes) {
+                tasks.add(() -> {
+                    final PrefixContent content = new PrefixContent();
+                    content.keys = Collections.emptyMap();
+                    content.index = this.queryPrefix(localConfig, consulPrefix, true, 0, 0, watcher, is -> {
+                        content.keys = toPaths(readKeys(is), consulPrefix, selection);
+                    });
+                    return content;
+                });
+            }
+            contents.addAll(ParallelFetcher.invokeAll(this.getName(), parallelism, tasks));
+        } else {
+            for (int idx = 0; idx < consulPrefixes.size(); ++idx) {
+                contents.add(new PrefixContent());
+            }
+        }
+        final Config configuration;
+        if (lazy) {
+            final Map<String, String> keys = new LinkedHashMap<>();
+            for (final PrefixContent content : contents) {
+                keys.putAll(content.keys);
+            }
+            configuration = this.loadLazyConfiguration(localConfig, keys);
+        } else {
+            final List<Callable<PrefixContent>> tasks = new ArrayList<>();
+            for (int idx = 0; idx < consulPrefixes.size(); ++idx) {
+                tasks.addAll(this.createFetchTasks(
+                    localConfig,
+                    consulPrefixes.get(idx),
+                    contents.get(idx).keys,
+                    selection,
+                    largeValues,
+                    watcher
+                ));
+            }
+            final List<PrefixContent> fetchedContents = ParallelFetcher.invokeAll(this.getName(), parallelism, tasks);
+            for (final PrefixContent content : fetchedContents) {
+                for (final Map.Entry<String, String> entry : content.values.entrySet()) {
+                    builder.put(entry.getKey(), entry.getValue());
                 }
             }
+            contents.addAll(fetchedContents);
+            configuration = builder.build();
+            if (largeValues != null) {
+                largeValues.commit();
+            }
+        }
+        if (index > 0) {
+            this.consulIndex = newIndex < index ? 0 : Math.max(newIndex, 1);
         } else {
-            throw new RuntimeException("Bad configuration");
+            // Use the oldest index to not miss a change made between two requests
+            for (final PrefixContent content : contents) {
+                if (content.index > 0) {
+                    newIndex = Math.min(newIndex, content.index);
+                }
+            }
+            this.consulIndex = newIndex == Long.MAX_VALUE ? 1 : newIndex;
+        }
+        return configuration;
+    }
+
+    @Override
+    public String getSourceIdentifier(final Config localConfig) {
+        return this.getSelection(localConfig).toString();
+    }
+
+    @Override
+    public Config loadConfiguration(final Mode mode, final Config localConfig) throws IOException {
+        return this.fetchConfiguration(localConfig, 0, 0, null);
+    }
+
+    @Override
+    public LazyKeyValueStore getLazyKeyValueStore() {
+        return this.lazyKeyValueStore;
+    }
+
+    @Override
+    public Closeable watchConfiguration(final Mode mode, final Config localConfig, final Consumer<Config> consumer) {
+        if (!localConfig.getBoolean("remote-configuration.consul.watch.enabled")) {
+            return null;
         }
-        return ConfigFactory.parseString(stringBuilder.toString());
+        final long waitTime = localConfig.getDuration("remote-configuration.consul.watch.wait", TimeUnit.SECONDS);
+        final long errorDelay = localConfig.getDuration("remote-configuration.consul.watch.errorDelay", TimeUnit.MILLISECONDS);
+        return new ProviderWatcher(this.getName(), watcher -> {
+            final Config remoteConfiguration = this.fetchConfiguration(localConfig, this.consulIndex, waitTime, watcher);
+            if (remoteConfiguration != null && watcher.isRunning()) {
+                Logger.debug("Provider {}> Configuration changed (index {})", this.getName(), this.consulIndex);
+                consumer.accept(remoteConfiguration);
+            }
+        }, errorDelay).start();
+    }
+
+    /**
+     * Reads the body of a Consul response.
+     *
+     * @since 26.10.18
+     */
+    @FunctionalInterface
+    private interface BodyReader {
+
+        /**
+         * Read the response body.
+         *
+         * @param is The response body
+         * @throws IOException When I/O related errors occur
+         * @since 26.10.18
+         */
+        void read(final InputStream is) throws IOException;
+    }
+
+    /**
+     * Content retrieved from a prefix (or a part of a prefix).
+     *
+     * @since 26.10.18
+     */
+    private static final class PrefixContent {
+
+        /**
+         * The values, by configuration path.
+         *
+         * @since 26.10.18
+         */
+        private final Map<String, String> values = new LinkedHashMap<>();
+
+        /**
+         * The Consul index of the response, or zero.
+         *
+         * @since 26.10.18
+         */
+        private long index;
+
+        /**
+         * The listed Consul keys, by configuration path, or {@code null} if keys have not been listed.
+         *
+         * @since 26.10.18
+         */
+        private Map<String, String> keys;
     }
 }
@@ -0,0 +1,731 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 PayinTech
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.payintech.play.remoteconfiguration.provider;
+
+import com.payintech.play.remoteconfiguration.metrics.Counter;
+import com.payintech.play.remoteconfiguration.metrics.RemoteConfigurationMetrics;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigValueType;
+import play.Logger;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The endpoints of a provider. Requests are sent to the first healthy
+ * endpoint and retried on the others, with an exponential backoff and
+ * jitter. Each endpoint has a circuit breaker: after too many
+ * consecutive failures, the endpoint is only used when no other one is
+ * available, until the open duration is elapsed. When a response is
+ * slower than the 95th percentile of the previous response times, the
+ * request is hedged: a second request is sent to another endpoint and
+ * the first good response is used.
+ *
+ * @author Thibault Meyer
+ * @version 26.10.18
+ * @since 26.10.18
+ */
+final class EndpointGroup {
+
+    /**
+     * Number of response times kept by endpoint.
+     *
+     * @since 26.10.18
+     */
+    private static final int LATENCY_SAMPLES = 64;
+
+    /**
+     * Minimum number of response times needed to compute the hedge
+     * delay. Until then, the maximum hedge delay is used.
+     *
+     * @since 26.10.18
+     */
+    private static final int MIN_LATENCY_SAMPLES = 8;
+
+    /**
+     * The state of the known endpoints, by URL. The state is shared
+     * by all providers and kept across configuration loads.
+     *
+     * @since 26.10.18
+     */
+    private static final Map<String, EndpointState> STATES = new ConcurrentHashMap<>();
+
+    /**
+     * Runs the hedged requests.
+     *
+     * @since 26.10.18
+     */
+    private static final ExecutorService HEDGE_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        final Thread thread = new Thread(runnable, "remote-configuration-hedge");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * The provider name.
+     *
+     * @since 26.10.18
+     */
+    private final String providerName;
+
+    /**
+     * The endpoints, always ending with a slash.
+     *
+     * @since 26.10.18
+     */
+    private final List<String> endpoints;
+
+    /**
+     * The HTTP transport.
+     *
+     * @since 26.10.18
+     */
+    private final HttpTransport transport;
+
+    /**
+     * Maximum number of attempts by request.
+     *
+     * @since 26.10.18
+     */
+    private final int maxAttempts;
+
+    /**
+     * Delay before the first retry in milliseconds.
+     *
+     * @since 26.10.18
+     */
+    private final long backoff;
+
+    /**
+     * Maximum delay between two attempts in milliseconds.
+     *
+     * @since 26.10.18
+     */
+    private final long maxBackoff;
+
+    /**
+     * Number of consecutive failures opening the circuit breaker of an endpoint.
+     *
+     * @since 26.10.18
+     */
+    private final int failureThreshold;
+
+    /**
+     * Duration an endpoint stays in open state in milliseconds.
+     *
+     * @since 26.10.18
+     */
+    private final long openDuration;
+
+    /**
+     * Minimum hedge delay in milliseconds.
+     *
+     * @since 26.10.18
+     */
+    private final long minHedgeDelay;
+
+    /**
+     * Maximum hedge delay in milliseconds. Zero disables hedging.
+     *
+     * @since 26.10.18
+     */
+    private final long maxHedgeDelay;
+
+    /**
+     * Build a new instance.
+     *
+     * @param providerName The provider name
+     * @param endpoints    The endpoints, always ending with a slash
+     * @param localConfig  The local configuration
+     * @since 26.10.18
+     */
+    private EndpointGroup(final String providerName, final List<String> endpoints, final Config localConfig) {
+        this.providerName = providerName;
+        this.endpoints = Collections.unmodifiableList(endpoints);
+        this.transport = HttpTransports.get(localConfig);
+        this.maxAttempts = localConfig.getInt("remote-configuration.failover.maxAttempts");
+        this.backoff = localConfig.getDuration("remote-configuration.failover.backoff", TimeUnit.MILLISECONDS);
+        this.maxBackoff = localConfig.getDuration("remote-configuration.failover.maxBackoff", TimeUnit.MILLISECONDS);
+        this.failureThreshold = localConfig.getInt("remote-configuration.failover.failureThreshold");
+        this.openDuration = localConfig.getDuration("remote-configuration.failover.openDuration", TimeUnit.MILLISECONDS);
+        this.minHedgeDelay = localConfig.getDuration("remote-configuration.failover.minHedgeDelay", TimeUnit.MILLISECONDS);
+        this.maxHedgeDelay = localConfig.getDuration("remote-configuration.failover.maxHedgeDelay", TimeUnit.MILLISECONDS);
+        if (this.maxAttempts < 1 || this.failureThreshold < 1) {
+            throw new RuntimeException("Bad configuration");
+        }
+    }
+
+    /**
+     * Read the endpoints of a provider from the local configuration.
+     * The endpoint can be a single URL, a comma-separated list or a list.
+     *
+     * @param providerName The provider name
+     * @param localConfig  The local configuration
+     * @param path         The endpoint configuration path (ie: "remote-configuration.consul.endpoint")
+     * @return The endpoint group
+     * @since 26.10.18
+     */
+    static EndpointGroup fromConfig(final String providerName, final Config localConfig, final String path) {
+        final List<String> rawEndpoints = new ArrayList<>();
+        if (localConfig.getValue(path).valueType() == ConfigValueType.LIST) {
+            rawEndpoints.addAll(localConfig.getStringList(path));
+        } else {
+            rawEndpoints.addAll(Arrays.asList(localConfig.getString(path).split(",")));
+        }
+        final List<String> endpoints = new ArrayList<>();
+        for (final String rawEndpoint : rawEndpoints) {
+            final String endpoint = rawEndpoint.trim();
+            if (!endpoint.startsWith("http")) {
+                throw new RuntimeException("Bad configuration");
+            }
+            endpoints.add(endpoint.endsWith("/") ? endpoint : endpoint + "/");
+        }
+        if (endpoints.isEmpty()) {
+            throw new RuntimeException("Bad configuration");
+        }
+        return new EndpointGroup(providerName, endpoints, localConfig);
+    }
+
+    /**
+     * Check if a response status must be retried on another endpoint.
+     *
+     * @param status The HTTP status code
+     * @return {@code true} if the request has to be retried
+     * @since 26.10.18
+     */
+    private static boolean isRetryable(final int status) {
+        return status >= 500 || status == 429;
+    }
+
+    /**
+     * Close a response, ignoring errors.
+     *
+     * @param response The response to close
+     * @since 26.10.18
+     */
+    private static void closeQuietly(final HttpResponse response) {
+        try {
+            response.close();
+        } catch (final IOException ignore) {
+            // The response is discarded anyway
+        }
+    }
+
+    /**
+     * Retrieve the endpoints.
+     *
+     * @return The endpoints, always ending with a slash
+     * @since 26.10.18
+     */
+    List<String> getEndpoints() {
+        return this.endpoints;
+    }
+
+    /**
+     * Execute a request. Failed requests and server errors are retried
+     * on the next endpoint. The response of the last attempt is
+     * returned, whatever its status. Cancelled requests are never
+     * retried.
+     * <p>
+     * Blocking requests (ie: watches) are expected to be slow and to
+     * time out: they are sent once, to the first healthy endpoint,
+     * without hedging. The caller is in charge of retrying them.
+     *
+     * @param requestFactory Creates the request for a given endpoint
+     * @param blocking       Is the request a blocking request?
+     * @return The response
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    HttpResponse execute(final RequestFactory requestFactory, final boolean blocking) throws IOException {
+        final Set<String> failedEndpoints = new HashSet<>();
+        final int attempts = blocking ? 1 : this.maxAttempts;
+        IOException lastException = null;
+        for (int attempt = 0; attempt < attempts; ++attempt) {
+            if (attempt > 0) {
+                this.sleepBeforeRetry(attempt);
+            }
+            final List<String> candidates = this.orderEndpoints(failedEndpoints);
+            final Attempt result;
+            if (!blocking && this.maxHedgeDelay > 0 && candidates.size() > 1 && !failedEndpoints.contains(candidates.get(1))) {
+                result = this.executeHedged(requestFactory, candidates.get(0), candidates.get(1));
+            } else {
+                result = new Attempt(requestFactory, candidates.get(0), blocking, null);
+                result.run();
+            }
+            if (result.runtimeFailure != null) {
+                throw result.runtimeFailure;
+            }
+            if (result.response != null
+                && (!isRetryable(result.response.getStatus()) || attempt + 1 == attempts)) {
+                return result.response;
+            }
+            if (result.response != null) {
+                lastException = new IOException(String.format(
+                    "Provider return non 200 status: %d",
+                    result.response.getStatus()
+                ));
+                result.response.close();
+            } else {
+                lastException = result.failure;
+                if (result.request != null && result.request.isCancelled()
+                    || Thread.currentThread().isInterrupted()) {
+                    throw lastException;
+                }
+            }
+            failedEndpoints.add(result.endpoint);
+            Logger.debug("Provider {}> Request to {} failed: {}", this.providerName, result.endpoint, lastException.getMessage());
+        }
+        throw lastException;
+    }
+
+    /**
+     * Order the endpoints: healthy endpoints not already tried first,
+     * in the declared order, then the other healthy endpoints, then the
+     * endpoints whose circuit breaker is open, the soonest closed first.
+     *
+     * @param failedEndpoints The endpoints already tried
+     * @return The ordered endpoints
+     * @since 26.10.18
+     */
+    private List<String> orderEndpoints(final Set<String> failedEndpoints) {
+        final long now = System.nanoTime();
+        final List<String> orderedEndpoints = new ArrayList<>(this.endpoints.size());
+        final List<String> unavailableEndpoints = new ArrayList<>();
+        for (final String endpoint : this.endpoints) {
+            if (!state(endpoint).isAvailable(now)) {
+                unavailableEndpoints.add(endpoint);
+            } else if (!failedEndpoints.contains(endpoint)) {
+                orderedEndpoints.add(endpoint);
+            }
+        }
+        for (final String endpoint : this.endpoints) {
+            if (failedEndpoints.contains(endpoint) && state(endpoint).isAvailable(now)) {
+                orderedEndpoints.add(endpoint);
+            }
+        }
+        unavailableEndpoints.sort(Comparator.comparingLong(endpoint -> state(endpoint).getOpenUntil()));
+        orderedEndpoints.addAll(unavailableEndpoints);
+        return orderedEndpoints;
+    }
+
+    /**
+     * Retrieve the state of an endpoint.
+     *
+     * @param endpoint The endpoint
+     * @return The endpoint state
+     * @since 26.10.18
+     */
+    private static EndpointState state(final String endpoint) {
+        return STATES.computeIfAbsent(endpoint, k -> new EndpointState());
+    }
+
+    /**
+     * Wait before retrying a request. The delay grows exponentially
+     * with the number of attempts; a random jitter of up to half the
+     * delay is subtracted to spread the retries of many instances.
+     *
+     * @param attempt The attempt number (starting from 1)
+     * @throws InterruptedIOException If the current thread is interrupted
+     * @since 26.10.18
+     */
+    private void sleepBeforeRetry(final int attempt) throws InterruptedIOException {
+        final long delay = Math.min(this.maxBackoff, this.backoff << Math.min(attempt - 1, 20));
+        final long jitteredDelay = delay - ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+        RemoteConfigurationMetrics.count(this.providerName, Counter.FAILOVERS, 1);
+        try {
+            Thread.sleep(jitteredDelay);
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted");
+        }
+    }
+
+    /**
+     * Execute a request on the primary endpoint. If no response has been
+     * received after the hedge delay, the request is also sent to the
+     * secondary endpoint. The first good response is used, the other
+     * request is cancelled.
+     *
+     * @param requestFactory Creates the request for a given endpoint
+     * @param primary        The primary endpoint
+     * @param secondary      The secondary endpoint
+     * @return The attempt to use
+     * @throws InterruptedIOException If the current thread is interrupted
+     * @since 26.10.18
+     */
+    private Attempt executeHedged(final RequestFactory requestFactory,
+                                  final String primary,
+                                  final String secondary) throws InterruptedIOException {
+        final BlockingQueue<Attempt> completedAttempts = new LinkedBlockingQueue<>();
+        final List<Attempt> attempts = new ArrayList<>(2);
+        attempts.add(new Attempt(requestFactory, primary, false, completedAttempts));
+        HEDGE_EXECUTOR.execute(attempts.get(0));
+        Attempt result = null;
+        try {
+            final long hedgeDelay = state(primary).getHedgeDelay(this.minHedgeDelay, this.maxHedgeDelay);
+            result = completedAttempts.poll(hedgeDelay, TimeUnit.MILLISECONDS);
+            if (result == null) {
+                Logger.debug("Provider {}> No response from {} after {}ms, hedging to {}", this.providerName, primary, hedgeDelay, secondary);
+                RemoteConfigurationMetrics.count(this.providerName, Counter.HEDGES, 1);
+                attempts.add(new Attempt(requestFactory, secondary, false, completedAttempts));
+                HEDGE_EXECUTOR.execute(attempts.get(1));
+                result = completedAttempts.take();
+                if (!result.isGood()) {
+                    final Attempt otherResult = completedAttempts.take();
+                    if (otherResult.isGood()) {
+                        result = otherResult;
+                    }
+                }
+            }
+            return result;
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted");
+        } finally {
+            for (final Attempt attempt : attempts) {
+                if (attempt != result) {
+                    attempt.discard();
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates the request to send to an endpoint.
+     *
+     * @since 26.10.18
+     */
+    @FunctionalInterface
+    interface RequestFactory {
+
+        /**
+         * Create the request.
+         *
+         * @param endpoint The endpoint, always ending with a slash
+         * @return The request
+         * @throws IOException When the request can't be created
+         * @since 26.10.18
+         */
+        HttpRequest create(final String endpoint) throws IOException;
+    }
+
+    /**
+     * Health and response times of an endpoint.
+     *
+     * @since 26.10.18
+     */
+    private static final class EndpointState {
+
+        /**
+         * The last response times in milliseconds (circular buffer).
+         *
+         * @since 26.10.18
+         */
+        private final long[] latencies = new long[LATENCY_SAMPLES];
+
+        /**
+         * Number of recorded response times.
+         *
+         * @since 26.10.18
+         */
+        private int latencyCount;
+
+        /**
+         * Number of consecutive failures.
+         *
+         * @since 26.10.18
+         */
+        private int failures;
+
+        /**
+         * Time until the circuit breaker is open, as returned by {@code System.nanoTime()}.
+         *
+         * @since 26.10.18
+         */
+        private volatile long openUntil;
+
+        /**
+         * Is the endpoint available (circuit breaker closed or half-open)?
+         *
+         * @param now The current time, as returned by {@code System.nanoTime()}
+         * @return {@code true} if the endpoint is available
+         * @since 26.10.18
+         */
+        boolean isAvailable(final long now) {
+            final long until = this.openUntil;
+            return until == 0 || now - until >= 0;
+        }
+
+        /**
+         * Retrieve the time until the circuit breaker is open.
+         *
+         * @return The time, as returned by {@code System.nanoTime()}
+         * @since 26.10.18
+         */
+        long getOpenUntil() {
+            return this.openUntil;
+        }
+
+        /**
+         * Record a successful request.
+         *
+         * @param latency The response time in milliseconds
+         * @since 26.10.18
+         */
+        synchronized void recordSuccess(final long latency) {
+            this.latencies[this.latencyCount % LATENCY_SAMPLES] = latency;
+            ++this.latencyCount;
+            this.failures = 0;
+            this.openUntil = 0;
+        }
+
+        /**
+         * Record a failed request. The circuit breaker is opened when
+         * the number of consecutive failures reaches the threshold.
+         *
+         * @param failureThreshold Number of consecutive failures opening the circuit breaker
+         * @param openDuration     Duration the circuit breaker stays open in milliseconds
+         * @return {@code true} if the circuit breaker was closed and has been opened
+         * @since 26.10.18
+         */
+        synchronized boolean recordFailure(final int failureThreshold, final long openDuration) {
+            final long now = System.nanoTime();
+            final boolean wasAvailable = this.isAvailable(now);
+            ++this.failures;
+            if (this.failures >= failureThreshold) {
+                this.openUntil = now + TimeUnit.MILLISECONDS.toNanos(openDuration);
+                return wasAvailable;
+            }
+            return false;
+        }
+
+        /**
+         * Compute the hedge delay: the 95th percentile of the last
+         * response times, bounded by the given limits.
+         *
+         * @param minDelay The minimum delay in milliseconds
+         * @param maxDelay The maximum delay in milliseconds
+         * @return The hedge delay in milliseconds
+         * @since 26.10.18
+         */
+        synchronized long getHedgeDelay(final long minDelay, final long maxDelay) {
+            if (this.latencyCount < MIN_LATENCY_SAMPLES) {
+                return maxDelay;
+            }
+            final long[] sortedLatencies = Arrays.copyOf(this.latencies, Math.min(this.latencyCount, LATENCY_SAMPLES));
+            Arrays.sort(sortedLatencies);
+            final long p95 = sortedLatencies[(int) Math.ceil(sortedLatencies.length * 0.95) - 1];
+            return Math.max(minDelay, Math.min(maxDelay, p95));
+        }
+    }
+
+    /**
+     * A request sent to an endpoint.
+     *
+     * @since 26.10.18
+     */
+    private final class Attempt implements Runnable {
+
+        /**
+         * Creates the request.
+         *
+         * @since 26.10.18
+         */
+        private final RequestFactory requestFactory;
+
+        /**
+         * The endpoint.
+         *
+         * @since 26.10.18
+         */
+        private final String endpoint;
+
+        /**
+         * Is the request a blocking request? Timeouts of blocking
+         * requests are not reported as endpoint failures.
+         *
+         * @since 26.10.18
+         */
+        private final boolean blocking;
+
+        /**
+         * Where to put the attempt once completed, can be {@code null}.
+         *
+         * @since 26.10.18
+         */
+        private final BlockingQueue<Attempt> completedAttempts;
+
+        /**
+         * The request.
+         *
+         * @since 26.10.18
+         */
+        private HttpRequest request;
+
+        /**
+         * The response, if received.
+         *
+         * @since 26.10.18
+         */
+        private HttpResponse response;
+
+        /**
+         * The failure, if any.
+         *
+         * @since 26.10.18
+         */
+        private IOException failure;
+
+        /**
+         * The unexpected failure, if any.
+         *
+         * @since 26.10.18
+         */
+        private RuntimeException runtimeFailure;
+
+        /**
+         * Has the attempt been discarded?
+         *
+         * @since 26.10.18
+         */
+        private boolean discarded;
+
+        /**
+         * Build a new instance.
+         *
+         * @param requestFactory    Creates the request
+         * @param endpoint          The endpoint
+         * @param blocking          Is the request a blocking request?
+         * @param completedAttempts Where to put the attempt once completed, can be {@code null}
+         * @since 26.10.18
+         */
+        Attempt(final RequestFactory requestFactory,
+                final String endpoint,
+                final boolean blocking,
+                final BlockingQueue<Attempt> completedAttempts) {
+            this.requestFactory = requestFactory;
+            this.endpoint = endpoint;
+            this.blocking = blocking;
+            this.completedAttempts = completedAttempts;
+        }
+
+        /**
+         * Has a usable response been received?
+         *
+         * @return {@code true} if a non retryable response has been received
+         * @since 26.10.18
+         */
+        boolean isGood() {
+            return this.response != null && !isRetryable(this.response.getStatus());
+        }
+
+        /**
+         * Discard the attempt: the request is cancelled and the response
+         * closed as soon as it is received.
+         *
+         * @since 26.10.18
+         */
+        synchronized void discard() {
+            this.discarded = true;
+            if (this.response != null) {
+                closeQuietly(this.response);
+            } else if (this.request != null) {
+                this.request.cancel();
+            }
+        }
+
+        @Override
+        public void run() {
+            final EndpointState endpointState = state(this.endpoint);
+            final long startTime = System.nanoTime();
+            try {
+                final HttpRequest newRequest = this.requestFactory.create(this.endpoint);
+                synchronized (this) {
+                    this.request = newRequest;
+                    if (this.discarded) {
+                        newRequest.cancel();
+                    }
+                }
+                final HttpResponse newResponse = EndpointGroup.this.transport.execute(newRequest);
+                if (isRetryable(newResponse.getStatus())) {
+                    this.recordFailure(endpointState);
+                } else {
+                    endpointState.recordSuccess(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+                }
+                synchronized (this) {
+                    this.response = newResponse;
+                    if (this.discarded) {
+                        closeQuietly(newResponse);
+                    }
+                }
+            } catch (final IOException ex) {
+                this.failure = ex;
+                final boolean cancelled = this.request != null && this.request.isCancelled();
+                if (!cancelled && !(this.blocking && ex instanceof SocketTimeoutException)) {
+                    this.recordFailure(endpointState);
+                }
+            } catch (final RuntimeException ex) {
+                this.runtimeFailure = ex;
+            } finally {
+                if (this.completedAttempts != null) {
+                    this.completedAttempts.add(this);
+                }
+            }
+        }
+
+        /**
+         * Record a failure of the endpoint.
+         *
+         * @param endpointState The endpoint state
+         * @since 26.10.18
+         */
+        private void recordFailure(final EndpointState endpointState) {
+            if (endpointState.recordFailure(EndpointGroup.this.failureThreshold, EndpointGroup.this.openDuration)) {
+                Logger.warn(
+                    "Provider {}> Endpoint {} is failing, using other endpoints for {}ms",
+                    EndpointGroup.this.providerName,
+                    this.endpoint,
+                    EndpointGroup.this.openDuration
+                );
+            }
+        }
+    }
+}
@@ -0,0 +1,624 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 PayinTech
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.payintech.play.remoteconfiguration.provider;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.payintech.play.remoteconfiguration.metrics.Phase;
+import com.payintech.play.remoteconfiguration.metrics.RemoteConfigurationMetrics;
+import com.typesafe.config.Config;
+import play.Logger;
+import play.Mode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Configuration provider implementation for etcd, using the v3 API
+ * through the Json gateway. Prefixes are retrieved with paginated range
+ * requests, all pinned to the same revision: the retrieved keys are a
+ * consistent snapshot of the keyspace, whatever the number of pages.
+ * Keys are expected to follow the etcd v2 layout (ie: "/prefix/db/url"),
+ * as produced by the etcd v2 to v3 migration.
+ *
+ * @author Thibault Meyer
+ * @version 26.10.18
+ * @since 26.10.18
+ */
+public class Etcd3Provider implements RemoteConfigProvider {
+
+    /**
+     * Error code returned by the gateway when the requested
+     * revision has been compacted (gRPC "OUT_OF_RANGE").
+     *
+     * @since 26.10.18
+     */
+    private static final int ERROR_REVISION_COMPACTED = 11;
+
+    /**
+     * The factory used to create Json parsers and generators.
+     *
+     * @since 26.10.18
+     */
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    /**
+     * The authentication token, if authentication is enabled.
+     *
+     * @since 26.10.18
+     */
+    private volatile String authToken;
+
+    /**
+     * The revision of the last retrieved snapshot.
+     *
+     * @since 26.10.18
+     */
+    private volatile long revision;
+
+    /**
+     * The number of keys and the last modification revision of
+     * each prefix, at the revision of the last retrieved snapshot.
+     *
+     * @since 26.10.18
+     */
+    private volatile List<Long> fingerprint;
+
+    @Override
+    public String getShortName() {
+        return "ETCD3";
+    }
+
+    @Override
+    public String getName() {
+        return "etcd v3";
+    }
+
+    /**
+     * Retrieve the etcd keys range of a prefix.
+     *
+     * @param prefix The prefix
+     * @return The first etcd key of the range (inclusive)
+     * @since 26.10.18
+     */
+    private static byte[] toKeyPrefix(final String prefix) {
+        return (prefix.isEmpty() ? "/" : "/" + prefix + "/").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Retrieve the end of the range holding all keys starting with
+     * the given key prefix.
+     *
+     * @param keyPrefix The key prefix
+     * @return The last etcd key of the range (exclusive)
+     * @since 26.10.18
+     */
+    static byte[] toRangeEnd(final byte[] keyPrefix) {
+        for (int idx = keyPrefix.length - 1; idx >= 0; --idx) {
+            if (keyPrefix[idx] != (byte) 0xff) {
+                final byte[] rangeEnd = Arrays.copyOf(keyPrefix, idx + 1);
+                rangeEnd[idx] += 1;
+                return rangeEnd;
+            }
+        }
+        // All keys greater than or equal to the key prefix
+        return new byte[]{0};
+    }
+
+    /**
+     * Read a range response. Key/Value couples are streamed to the
+     * consumer, if any, while the response is parsed.
+     *
+     * @param is       The Json document to read
+     * @param consumer The Key/Value couples consumer, can be {@code null}
+     * @return The range page
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    static RangePage readRange(final InputStream is, final BiConsumer<String, String> consumer) throws IOException {
+        final RangePage page = new RangePage();
+        try (final JsonParser parser = JSON_FACTORY.createParser(is)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Malformed range response");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String fieldName = parser.getCurrentName();
+                final JsonToken token = parser.nextToken();
+                if ("header".equals(fieldName) && token == JsonToken.START_OBJECT) {
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        final String headerFieldName = parser.getCurrentName();
+                        parser.nextToken();
+                        if ("revision".equals(headerFieldName)) {
+                            page.revision = parser.getValueAsLong();
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                } else if ("kvs".equals(fieldName) && token == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        byte[] key = null;
+                        String value = null;
+                        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                            final String kvFieldName = parser.getCurrentName();
+                            parser.nextToken();
+                            if ("key".equals(kvFieldName)) {
+                                key = parser.getBinaryValue();
+                            } else if ("value".equals(kvFieldName)) {
+                                value = new String(parser.getBinaryValue(), StandardCharsets.UTF_8);
+                            } else if ("mod_revision".equals(kvFieldName)) {
+                                page.maxModRevision = Math.max(page.maxModRevision, parser.getValueAsLong());
+                            } else {
+                                parser.skipChildren();
+                            }
+                        }
+                        if (key != null) {
+                            page.lastKey = key;
+                            if (consumer != null) {
+                                // Empty values are omitted by the gateway
+                                consumer.accept(new String(key, StandardCharsets.UTF_8), value == null ? "" : value);
+                            }
+                        }
+                    }
+                } else if ("more".equals(fieldName)) {
+                    page.more = token == JsonToken.VALUE_TRUE;
+                } else if ("count".equals(fieldName)) {
+                    page.count = parser.getValueAsLong();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Retrieve the etcd endpoints from the local configuration.
+     *
+     * @param localConfig The local configuration
+     * @return The etcd endpoints
+     * @since 26.10.18
+     */
+    private EndpointGroup getEndpointGroup(final Config localConfig) {
+        return EndpointGroup.fromConfig(this.getName(), localConfig, "remote-configuration.etcd3.endpoint");
+    }
+
+    /**
+     * Retrieve the etcd key selection from the local configuration.
+     *
+     * @param localConfig The local configuration
+     * @return The etcd key selection
+     * @since 26.10.18
+     */
+    private KeySelection getSelection(final Config localConfig) {
+        return KeySelection.fromConfig(localConfig, "remote-configuration.etcd3");
+    }
+
+    /**
+     * Retrieve a new authentication token.
+     *
+     * @param localConfig The local configuration
+     * @param username    The username
+     * @return The authentication token
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    private String authenticate(final Config localConfig, final String username) throws IOException {
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (final JsonGenerator generator = JSON_FACTORY.createGenerator(body)) {
+            generator.writeStartObject();
+            generator.writeStringField("name", username);
+            generator.writeStringField("password", localConfig.getString("remote-configuration.etcd3.password"));
+            generator.writeEndObject();
+        }
+        final byte[] authBody = body.toByteArray();
+        try (final HttpResponse response = this.getEndpointGroup(localConfig).execute(
+            endpoint -> HttpTransports.newRequest(localConfig, this.getName(), new URL(endpoint + "v3/auth/authenticate"))
+                .setMethod("POST")
+                .setBody(authBody),
+            false
+        )) {
+            if (response.getStatus() / 100 != 2) {
+                throw new IOException(String.format("Provider return non 200 status: %d", response.getStatus()));
+            }
+            final JsonNode jsonDocument = new ObjectMapper().readTree(response.getBody());
+            if (!jsonDocument.hasNonNull("token")) {
+                throw new IOException("Provider return no authentication token");
+            }
+            return jsonDocument.get("token").asText();
+        }
+    }
+
+    /**
+     * Execute a request on the v3 API. Authentication is added if
+     * configured; an expired token is renewed once.
+     *
+     * @param localConfig The local configuration
+     * @param path        The API path, relative to the endpoint
+     * @param body        The request body
+     * @return The response
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    private HttpResponse execute(final Config localConfig, final String path, final byte[] body) throws IOException {
+        final String username = localConfig.getString("remote-configuration.etcd3.username");
+        if (!username.isEmpty() && this.authToken == null) {
+            this.authToken = this.authenticate(localConfig, username);
+        }
+        final String token = this.authToken;
+        final HttpResponse response = this.getEndpointGroup(localConfig).execute(endpoint -> {
+            final HttpRequest request = HttpTransports.newRequest(localConfig, this.getName(), new URL(endpoint + path))
+                .setMethod("POST")
+                .setBody(body);
+            if (token != null) {
+                request.setHeader("Authorization", token);
+            }
+            return request;
+        }, false);
+        if (response.getStatus() == 401 && token != null) {
+            Logger.debug("Provider {}> Authentication token rejected, authenticating again", this.getName());
+            response.close();
+            this.authToken = null;
+            return this.execute(localConfig, path, body);
+        }
+        return response;
+    }
+
+    /**
+     * Request a range of keys.
+     *
+     * @param localConfig   The local configuration
+     * @param key           The first etcd key of the range (inclusive)
+     * @param rangeEnd      The last etcd key of the range (exclusive)
+     * @param rangeRevision The revision to read, or zero to read the latest one
+     * @param options       Customizes the request (limit, keys_only, etc.)
+     * @param consumer      The Key/Value couples consumer, can be {@code null}
+     * @return The range page, or {@code null} if the revision has been compacted
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    private RangePage queryRange(final Config localConfig,
+                                 final byte[] key,
+                                 final byte[] rangeEnd,
+                                 final long rangeRevision,
+                                 final RangeOptions options,
+                                 final BiConsumer<String, String> consumer) throws IOException {
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (final JsonGenerator generator = JSON_FACTORY.createGenerator(body)) {
+            generator.writeStartObject();
+            generator.writeBinaryField("key", key);
+            generator.writeBinaryField("range_end", rangeEnd);
+            if (rangeRevision > 0) {
+                generator.writeNumberField("revision", rangeRevision);
+            }
+            options.write(generator);
+            generator.writeEndObject();
+        }
+        try (final HttpResponse response = this.execute(localConfig, "v3/kv/range", body.toByteArray())) {
+            if (response.getStatus() / 100 != 2) {
+                final InputStream is = response.getBody();
+                final JsonNode jsonDocument = is == null ? null : new ObjectMapper().readTree(is);
+                if (jsonDocument != null && jsonDocument.path("code").asInt() == ERROR_REVISION_COMPACTED) {
+                    return null;
+                }
+                throw new IOException(String.format("Provider return non 200 status: %d", response.getStatus()));
+            }
+            final long startTime = System.nanoTime();
+            final RangePage page = readRange(response.getBody(), consumer);
+            RemoteConfigurationMetrics.timing(this.getName(), Phase.DECODE, startTime);
+            return page;
+        }
+    }
+
+    /**
+     * Retrieve all Key/Value couples located under a prefix, page
+     * by page, at the given revision.
+     *
+     * @param localConfig     The local configuration
+     * @param etcdPrefix      The prefix
+     * @param rangeRevision   The revision to read
+     * @param prefixKeyValues The map where to put Key/Value couples
+     * @return The last modification revision of the prefix, or -1 if the revision has been compacted
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    private long fetchKeyValues(final Config localConfig,
+                                   final String etcdPrefix,
+                                   final long rangeRevision,
+                                   final Map<String, String> prefixKeyValues) throws IOException {
+        final int pageSize = localConfig.getInt("remote-configuration.etcd3.pageSize");
+        if (pageSize <= 0) {
+            throw new RuntimeException("Bad configuration");
+        }
+        final byte[] keyPrefix = toKeyPrefix(etcdPrefix);
+        final byte[] rangeEnd = toRangeEnd(keyPrefix);
+        byte[] key = keyPrefix;
+        long maxModRevision = 0;
+        RangePage page;
+        do {
+            page = this.queryRange(
+                localConfig,
+                key,
+                rangeEnd,
+                rangeRevision,
+                generator -> generator.writeNumberField("limit", pageSize),
+                prefixKeyValues::put
+            );
+            if (page == null) {
+                return -1;
+            }
+            maxModRevision = Math.max(maxModRevision, page.maxModRevision);
+            if (page.lastKey != null) {
+                // The smallest key greater than the last retrieved one
+                key = Arrays.copyOf(page.lastKey, page.lastKey.length + 1);
+            }
+        } while (page.more && page.lastKey != null);
+        return maxModRevision;
+    }
+
+    /**
+     * Retrieve the current revision. Only the number of keys located
+     * under the common prefix is requested.
+     *
+     * @param localConfig The local configuration
+     * @param selection   The key selection
+     * @return The current revision
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    private long fetchRevision(final Config localConfig, final KeySelection selection) throws IOException {
+        final byte[] keyPrefix = toKeyPrefix(selection.getCommonPrefix());
+        final RangePage page = this.queryRange(
+            localConfig,
+            keyPrefix,
+            toRangeEnd(keyPrefix),
+            0,
+            generator -> generator.writeBooleanField("count_only", true),
+            null
+        );
+        if (page == null || page.revision <= 0) {
+            throw new IOException("Provider return no revision");
+        }
+        return page.revision;
+    }
+
+    /**
+     * Retrieve the number of keys and the last modification revision
+     * of each prefix. Only the most recently modified key of each
+     * prefix is requested, without its value.
+     *
+     * @param localConfig The local configuration
+     * @param selection   The key selection
+     * @return The fingerprint of the prefixes
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    private List<Long> fetchFingerprint(final Config localConfig, final KeySelection selection) throws IOException {
+        final List<Long> prefixesFingerprint = new ArrayList<>();
+        for (final String etcdPrefix : selection.getPrefixes()) {
+            final byte[] keyPrefix = toKeyPrefix(etcdPrefix);
+            final RangePage page = this.queryRange(localConfig, keyPrefix, toRangeEnd(keyPrefix), 0, generator -> {
+                generator.writeNumberField("limit", 1);
+                generator.writeBooleanField("keys_only", true);
+                generator.writeStringField("sort_order", "DESCEND");
+                generator.writeStringField("sort_target", "MOD");
+            }, null);
+            if (page == null) {
+                throw new IOException("Provider return no range");
+            }
+            prefixesFingerprint.add(page.count);
+            prefixesFingerprint.add(page.maxModRevision);
+        }
+        return prefixesFingerprint;
+    }
+
+    /**
+     * Retrieve the configuration. All prefixes are retrieved
+     * concurrently at the same revision and merged in the declared
+     * order. If the revision is compacted meanwhile, the snapshot
+     * is retrieved again at the latest revision.
+     *
+     * @param localConfig The local configuration
+     * @return The configuration
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    private Config fetchConfiguration(final Config localConfig) throws IOException {
+        final KeySelection selection = this.getSelection(localConfig);
+        final List<String> etcdPrefixes = selection.getPrefixes();
+        while (true) {
+            final long snapshotRevision = this.fetchRevision(localConfig, selection);
+            final List<Callable<Map<String, String>>> tasks = new ArrayList<>();
+            final long[] maxModRevisions = new long[etcdPrefixes.size()];
+            for (final String etcdPrefix : etcdPrefixes) {
+                final int idx = tasks.size();
+                tasks.add(() -> {
+                    final Map<String, String> prefixKeyValues = new HashMap<>();
+                    maxModRevisions[idx] = this.fetchKeyValues(localConfig, etcdPrefix, snapshotRevision, prefixKeyValues);
+                    return maxModRevisions[idx] < 0 ? null : prefixKeyValues;
+                });
+            }
+            final List<Map<String, String>> results = ParallelFetcher.invokeAll(
+                this.getName(),
+                localConfig.getInt("remote-configuration.etcd3.parallelism"),
+                tasks
+            );
+            if (results.contains(null)) {
+                Logger.info("Provider {}> Revision {} compacted, retrieving all keys again", this.getName(), snapshotRevision);
+                continue;
+            }
+            final KeyValueConfigBuilder builder = new KeyValueConfigBuilder(this.getName());
+            final List<Long> snapshotFingerprint = new ArrayList<>();
+            for (int idx = 0; idx < etcdPrefixes.size(); ++idx) {
+                snapshotFingerprint.add((long) results.get(idx).size());
+                snapshotFingerprint.add(maxModRevisions[idx]);
+                final int keyPrefixLength = toKeyPrefix(etcdPrefixes.get(idx)).length;
+                for (final Map.Entry<String, String> entry : results.get(idx).entrySet()) {
+                    final String relativeKey = entry.getKey().substring(keyPrefixLength);
+                    if (selection.accept(relativeKey)) {
+                        builder.put(relativeKey.replace('/', '.'), entry.getValue());
+                    }
+                }
+            }
+            this.revision = snapshotRevision;
+            this.fingerprint = snapshotFingerprint;
+            return builder.build();
+        }
+    }
+
+    /**
+     * Check if the selected prefixes have changed since the last
+     * retrieved snapshot. The current revision is requested first: if
+     * it has not changed, nothing has been written to etcd. Otherwise,
+     * the number of keys and the last modification revision of each
+     * prefix are compared to the ones of the snapshot.
+     *
+     * @param localConfig The local configuration
+     * @return {@code true} if the selected prefixes have changed
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    private boolean hasChanged(final Config localConfig) throws IOException {
+        final KeySelection selection = this.getSelection(localConfig);
+        final long currentRevision = this.fetchRevision(localConfig, selection);
+        if (currentRevision == this.revision) {
+            return false;
+        }
+        if (this.fetchFingerprint(localConfig, selection).equals(this.fingerprint)) {
+            // Changes made outside of the selected prefixes
+            this.revision = currentRevision;
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public String getSourceIdentifier(final Config localConfig) {
+        return this.getSelection(localConfig).toString();
+    }
+
+    @Override
+    public Config loadConfiguration(final Mode mode, final Config localConfig) throws IOException {
+        return this.fetchConfiguration(localConfig);
+    }
+
+    @Override
+    public Closeable watchConfiguration(final Mode mode, final Config localConfig, final Consumer<Config> consumer) {
+        if (!localConfig.getBoolean("remote-configuration.etcd3.watch.enabled")) {
+            return null;
+        }
+        final long interval = localConfig.getDuration("remote-configuration.etcd3.watch.interval", TimeUnit.MILLISECONDS);
+        final long errorDelay = localConfig.getDuration("remote-configuration.etcd3.watch.errorDelay", TimeUnit.MILLISECONDS);
+        if (interval <= 0) {
+            throw new RuntimeException("Bad configuration");
+        }
+        return new ProviderWatcher(this.getName(), watcher -> {
+            Thread.sleep(interval);
+            if (this.hasChanged(localConfig)) {
+                final Config remoteConfiguration = this.fetchConfiguration(localConfig);
+                if (watcher.isRunning()) {
+                    Logger.debug("Provider {}> Configuration changed (revision {})", this.getName(), this.revision);
+                    consumer.accept(remoteConfiguration);
+                }
+            }
+        }, errorDelay).start();
+    }
+
+    /**
+     * Writes the options of a range request.
+     *
+     * @since 26.10.18
+     */
+    @FunctionalInterface
+    private interface RangeOptions {
+
+        /**
+         * Write the options as fields of the request body.
+         *
+         * @param generator The request body generator
+         * @throws IOException When I/O related errors occur
+         * @since 26.10.18
+         */
+        void write(final JsonGenerator generator) throws IOException;
+    }
+
+    /**
+     * A page of a range response.
+     *
+     * @since 26.10.18
+     */
+    static final class RangePage {
+
+        /**
+         * The revision of the keyspace when the request was served.
+         *
+         * @since 26.10.18
+         */
+        private long revision;
+
+        /**
+         * The total number of keys in the requested range.
+         *
+         * @since 26.10.18
+         */
+        private long count;
+
+        /**
+         * Are there more keys after this page?
+         *
+         * @since 26.10.18
+         */
+        private boolean more;
+
+        /**
+         * The last key of the page, or {@code null} if empty.
+         *
+         * @since 26.10.18
+         */
+        private byte[] lastKey;
+
+        /**
+         * The highest modification revision of the keys of the page.
+         *
+         * @since 26.10.18
+         */
+        private long maxModRevision;
+    }
+}
@@ -23,30 +23,97 @@
  */
 package com.payintech.play.remoteconfiguration.provider;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.payintech.play.remoteconfiguration.metrics.Phase;
+import com.payintech.play.remoteconfiguration.metrics.RemoteConfigurationMetrics;
 import com.typesafe.config.Config;
-import com.typesafe.config.ConfigFactory;
-import org.apache.commons.lang3.StringUtils;
 import play.Logger;
 import play.Mode;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
 import java.net.URL;
-import java.util.Base64;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
  * Configuration provider implementation for CoreOS etcd.
  *
  * @author Thibault Meyer
  * @author Pierre Adam
- * @version 17.11.24
+ * @version 26.10.18
  * @since 17.08.21
  */
 public class EtcdProvider implements RemoteConfigProvider {
 
+    /**
+     * Error code returned by etcd when the requested
+     * index has been cleared from the event history.
+     *
+     * @since 26.10.18
+     */
+    private static final int ERROR_EVENT_INDEX_CLEARED = 401;
+
+    /**
+     * Maximum time to wait for the next change, in milliseconds, when
+     * applied changes have not been published yet.
+     *
+     * @since 26.10.18
+     */
+    private static final long PENDING_CHANGES_WAIT = 1000;
+
+    /**
+     * The factory used to create Json parsers.
+     *
+     * @since 26.10.18
+     */
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    /**
+     * The retrieved Key/Value couples, indexed by etcd key.
+     *
+     * @since 26.10.18
+     */
+    private final NavigableMap<String, String> keyValues;
+
+    /**
+     * The last known etcd index.
+     *
+     * @since 26.10.18
+     */
+    private volatile long etcdIndex;
+
+    /**
+     * Have changes been applied since the configuration was last built?
+     *
+     * @since 26.10.18
+     */
+    private boolean pendingChanges;
+
+    /**
+     * Build a new instance.
+     *
+     * @since 26.10.18
+     */
+    public EtcdProvider() {
+        this.keyValues = new TreeMap<>();
+    }
+
     @Override
     public String getShortName() {
         return "ETCD";
@@ -58,104 +125,384 @@ public class EtcdProvider implements RemoteConfigProvider {
     }
 
     /**
-     * Explore the Json document to retrieve valid Key/Value couples.
+     * Explore the Json document to retrieve valid Key/Value couples. The
+     * document is streamed and explored iteratively: each Json object
+     * is a frame on a stack, and a frame holding a value is added to the
+     * Key/Value couples when the end of the object is reached.
      *
-     * @param prefix        The key prefix to remove
-     * @param stringBuilder The buffer to put configuration
-     * @param jsonNode      The Json node to explore
+     * @param is        The Json document to explore
+     * @param keyValues The map where to put Key/Value couples
+     * @return {@code false} if the prefix does not reference a directory
+     * @throws IOException When I/O related errors occur
      * @since 17.08.21
      */
-    private void exploreJsonNode(final String prefix, final StringBuilder stringBuilder, final JsonNode jsonNode) {
-        for (final JsonNode entry : jsonNode) {
-            if (entry.hasNonNull("dir") && entry.get("dir").asBoolean()) {
-                this.exploreJsonNode(prefix, stringBuilder, entry.get("nodes"));
-            } else if (entry.hasNonNull("value")) {
-                if (prefix.isEmpty()) {
-                    stringBuilder.append(
-                        StringUtils.removeFirst(
-                            entry.get("key").asText(),
-                            "/"
-                        ).replace("/", ".")
-                    );
-                } else {
-                    stringBuilder.append(
-                        entry.get("key")
-                            .asText()
-                            .replace("/" + prefix + "/", "")
-                            .replace("/", ".")
-                    );
+    static boolean exploreJsonNode(final InputStream is, final Map<String, String> keyValues) throws IOException {
+        boolean isDirectory = true;
+        try (final JsonParser parser = JSON_FACTORY.createParser(is)) {
+            final Deque<NodeFrame> frames = new ArrayDeque<>();
+            JsonToken token = parser.nextToken();
+            while (token != null) {
+                switch (token) {
+                    case START_OBJECT:
+                        frames.push(new NodeFrame());
+                        break;
+                    case END_OBJECT:
+                        final NodeFrame frame = frames.pop();
+                        if (frames.size() == 1 && !frame.dir) {
+                            isDirectory = false;
+                        } else if (!frame.dir && frame.key != null && frame.value != null) {
+                            keyValues.put(frame.key, frame.value);
+                        }
+                        break;
+                    case FIELD_NAME:
+                        final String fieldName = parser.getCurrentName();
+                        token = parser.nextToken();
+                        if ("key".equals(fieldName)) {
+                            frames.peek().key = parser.getText();
+                        } else if ("value".equals(fieldName) && token == JsonToken.VALUE_STRING) {
+                            frames.peek().value = parser.getText();
+                        } else if ("dir".equals(fieldName)) {
+                            frames.peek().dir = token == JsonToken.VALUE_TRUE;
+                        } else if (!"node".equals(fieldName) && !"nodes".equals(fieldName)) {
+                            parser.skipChildren();
+                        } else if (token == JsonToken.START_OBJECT) {
+                            frames.push(new NodeFrame());
+                        }
+                        break;
+                    default:
+                        break;
                 }
-                stringBuilder.append(" = ");
-                stringBuilder.append(
-                    entry.get("value").asText()
-                );
-                stringBuilder.append('\n');
+                token = parser.nextToken();
             }
         }
+        return isDirectory;
     }
 
-    @Override
-    public Config loadConfiguration(final Mode mode, final Config localConfig) throws IOException {
-        final StringBuilder stringBuilder = new StringBuilder(1024);
-        String etcdEndpoint = localConfig.getString("remote-configuration.etcd.endpoint");
-        String etcdPrefix = localConfig.getString("remote-configuration.etcd.prefix").trim();
-        if (etcdEndpoint != null && etcdEndpoint.startsWith("http")) {
-            if (!etcdEndpoint.endsWith("/")) {
-                etcdEndpoint += "/";
+    /**
+     * Retrieve the etcd endpoints from the local configuration.
+     *
+     * @param localConfig The local configuration
+     * @return The etcd endpoints
+     * @since 26.10.18
+     */
+    private EndpointGroup getEndpointGroup(final Config localConfig) {
+        return EndpointGroup.fromConfig(this.getName(), localConfig, "remote-configuration.etcd.endpoint");
+    }
+
+    /**
+     * Retrieve the etcd key selection from the local configuration.
+     *
+     * @param localConfig The local configuration
+     * @return The etcd key selection
+     * @since 26.10.18
+     */
+    private KeySelection getSelection(final Config localConfig) {
+        return KeySelection.fromConfig(localConfig, "remote-configuration.etcd");
+    }
+
+    /**
+     * Create a new request to etcd. Authentication is added if configured.
+     *
+     * @param localConfig The local configuration
+     * @param etcdUrl     The URL to request
+     * @return The new request
+     * @since 26.10.18
+     */
+    private HttpRequest newRequest(final Config localConfig, final URL etcdUrl) {
+        final HttpRequest request = HttpTransports.newRequest(localConfig, this.getName(), etcdUrl);
+        if (localConfig.hasPath("remote-configuration.etcd.username")
+            && localConfig.hasPath("remote-configuration.etcd.password")) {
+            final String username = localConfig.getString("remote-configuration.etcd.username");
+            final String password = localConfig.getString("remote-configuration.etcd.password");
+            if (!username.isEmpty()) {
+                request.setBasicAuth(username, password);
             }
-            if (etcdPrefix.endsWith("/")) {
-                etcdPrefix = etcdPrefix.substring(0, etcdPrefix.length() - 1);
+        }
+        return request;
+    }
+
+    /**
+     * Retrieve the etcd keys range of a prefix.
+     *
+     * @param prefix The prefix
+     * @return The first etcd key of the range (inclusive)
+     * @since 26.10.18
+     */
+    private static String toKeyPrefix(final String prefix) {
+        return prefix.isEmpty() ? "/" : "/" + prefix + "/";
+    }
+
+    /**
+     * Check if an etcd key is located under one of the selected prefixes.
+     *
+     * @param selection The key selection
+     * @param key       The etcd key
+     * @return {@code true} if the key is located under a selected prefix
+     * @since 26.10.18
+     */
+    private static boolean isSelected(final KeySelection selection, final String key) {
+        for (final String prefix : selection.getPrefixes()) {
+            if (key.startsWith(toKeyPrefix(prefix))) {
+                return true;
             }
-            if (etcdPrefix.startsWith("/")) {
-                etcdPrefix = etcdPrefix.substring(1, etcdPrefix.length());
+        }
+        return false;
+    }
+
+    /**
+     * Build the configuration from the retrieved Key/Value couples.
+     * Prefixes are merged in the declared order.
+     *
+     * @param selection The key selection
+     * @return The configuration
+     * @since 26.10.18
+     */
+    private Config buildConfiguration(final KeySelection selection) {
+        final KeyValueConfigBuilder builder = new KeyValueConfigBuilder(this.getName());
+        for (final String prefix : selection.getPrefixes()) {
+            final String keyPrefix = toKeyPrefix(prefix);
+            // '0' is the character following '/': the range holds all keys starting with the key prefix
+            final String keyPrefixEnd = keyPrefix.substring(0, keyPrefix.length() - 1) + '0';
+            for (final Map.Entry<String, String> entry : this.keyValues.subMap(keyPrefix, keyPrefixEnd).entrySet()) {
+                final String relativeKey = entry.getKey().substring(keyPrefix.length());
+                if (selection.accept(relativeKey)) {
+                    builder.put(relativeKey.replace('/', '.'), entry.getValue());
+                }
             }
-            InputStream is = null;
-            try {
-                final URL consulUrl = new URL(
-                    String.format(
-                        "%sv2/keys/%s/?recursive=true",
-                        etcdEndpoint,
-                        etcdPrefix
-                    )
-                );
-                Logger.debug("Provider {}> {}", this.getName(), consulUrl.toString());
-                final HttpURLConnection conn = (HttpURLConnection) consulUrl.openConnection();
-                if (localConfig.hasPath("remote-configuration.etcd.username")
-                    && localConfig.hasPath("remote-configuration.etcd.password")) {
-                    final String username = localConfig.getString("remote-configuration.etcd.username");
-                    final String password = localConfig.getString("remote-configuration.etcd.password");
-                    if (!username.isEmpty()) {
-                        final String basicAuth = "Basic " + Base64.getEncoder().encodeToString(
-                            (username + ":" + password).getBytes()
-                        );
-                        conn.setRequestProperty("Authorization", basicAuth);
-                    }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Retrieve all Key/Value couples located under a prefix.
+     *
+     * @param localConfig     The local configuration
+     * @param etcdPrefix      The prefix
+     * @param strict          If {@code true}, non 200 status are reported as error
+     * @param prefixKeyValues The map where to put Key/Value couples
+     * @return The etcd index of the response, or zero if the prefix can't be retrieved
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    private long fetchKeyValues(final Config localConfig,
+                                final String etcdPrefix,
+                                final boolean strict,
+                                final Map<String, String> prefixKeyValues) throws IOException {
+        final String query = String.format("v2/keys/%s/?recursive=true", etcdPrefix);
+        try (final HttpResponse response = this.getEndpointGroup(localConfig).execute(
+            endpoint -> this.newRequest(localConfig, new URL(endpoint + query)),
+            false
+        )) {
+            if (response.getStatus() / 100 == 2) {
+                final long startTime = System.nanoTime();
+                if (!exploreJsonNode(response.getBody(), prefixKeyValues)) {
+                    Logger.warn("Provider {} prefix must reference a directory", this.getName());
                 }
-                conn.setConnectTimeout(1500);
-                if (conn.getResponseCode() / 100 == 2) {
-                    is = conn.getInputStream();
-                    final ObjectMapper mapper = new ObjectMapper();
-                    JsonNode jsonNode = mapper.readTree(is).get("node");
-                    if (jsonNode.get("dir").asBoolean()) {
-                        jsonNode = jsonNode.get("nodes");
-                        this.exploreJsonNode(etcdPrefix, stringBuilder, jsonNode);
-                    } else {
-                        Logger.warn("Provider {} prefix must reference a directory", this.getName());
-                    }
-                } else {
-                    Logger.warn("Provider {} return non 200 status: {}", this.getName(), conn.getResponseCode());
+                RemoteConfigurationMetrics.timing(this.getName(), Phase.DECODE, startTime);
+                return response.getHeaderLong("X-Etcd-Index", 0);
+            } else if (strict) {
+                throw new IOException(String.format("Provider return non 200 status: %d", response.getStatus()));
+            }
+            Logger.warn("Provider {} return non 200 status: {}", this.getName(), response.getStatus());
+            return 0;
+        }
+    }
+
+    /**
+     * Retrieve all Key/Value couples located under the selected
+     * prefixes. Prefixes are retrieved concurrently.
+     *
+     * @param localConfig The local configuration
+     * @param strict      If {@code true}, non 200 status are reported as error
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    private void fetchKeyValues(final Config localConfig, final boolean strict) throws IOException {
+        final List<String> etcdPrefixes = this.getSelection(localConfig).getPrefixes();
+        final List<Callable<Map<String, String>>> tasks = new ArrayList<>();
+        final long[] indexes = new long[etcdPrefixes.size()];
+        for (final String etcdPrefix : etcdPrefixes) {
+            final int idx = tasks.size();
+            tasks.add(() -> {
+                final Map<String, String> prefixKeyValues = new HashMap<>();
+                indexes[idx] = this.fetchKeyValues(localConfig, etcdPrefix, strict, prefixKeyValues);
+                return prefixKeyValues;
+            });
+        }
+        final List<Map<String, String>> results = ParallelFetcher.invokeAll(
+            this.getName(),
+            localConfig.getInt("remote-configuration.etcd.parallelism"),
+            tasks
+        );
+        this.keyValues.clear();
+        for (final Map<String, String> prefixKeyValues : results) {
+            this.keyValues.putAll(prefixKeyValues);
+        }
+        // Use the oldest index to not miss a change made between two requests
+        long newIndex = Long.MAX_VALUE;
+        for (final long index : indexes) {
+            if (index > 0) {
+                newIndex = Math.min(newIndex, index);
+            }
+        }
+        if (newIndex != Long.MAX_VALUE) {
+            this.etcdIndex = newIndex;
+        }
+        this.pendingChanges = true;
+    }
+
+    /**
+     * Wait for the next change and apply it to the retrieved Key/Value
+     * couples. With many prefixes, changes are watched on their common
+     * prefix and changes located outside the prefixes are ignored. If
+     * the next index has been cleared from the etcd event history, all
+     * Key/Value couples are retrieved again.
+     * <p>
+     * Applied changes are published once no more change is waiting in
+     * the event history. As "X-Etcd-Index" also counts the changes
+     * located outside the watched prefix, pending changes are published
+     * as well when the next wait returns nothing; this wait is shortened
+     * while changes are pending.
+     *
+     * @param localConfig The local configuration
+     * @param watcher     The watcher running the request
+     * @param readTimeout The maximum time to wait for a change in milliseconds
+     * @return {@code true} if all pending changes have been applied
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    private boolean waitForChange(final Config localConfig,
+                                  final ProviderWatcher watcher,
+                                  final long readTimeout) throws IOException {
+        final KeySelection selection = this.getSelection(localConfig);
+        final long waitTime = this.pendingChanges ? Math.min(readTimeout, PENDING_CHANGES_WAIT) : readTimeout;
+        final String query = String.format(
+            "v2/keys/%s/?wait=true&recursive=true&waitIndex=%d",
+            selection.getCommonPrefix(),
+            this.etcdIndex + 1
+        );
+        try (final HttpResponse response = this.getEndpointGroup(localConfig).execute(endpoint -> {
+            final HttpRequest request = this.newRequest(localConfig, new URL(endpoint + query));
+            request.setReadTimeout(waitTime).setDeadline(request.getConnectTimeout() + waitTime + 5000);
+            watcher.setAbortAction(request::cancel);
+            return request;
+        }, true)) {
+            final int responseCode = response.getStatus();
+            final InputStream is = response.getBody();
+            final JsonNode jsonDocument = is == null ? null : new ObjectMapper().readTree(is);
+            if (responseCode / 100 != 2) {
+                if (jsonDocument != null && jsonDocument.path("errorCode").asInt() == ERROR_EVENT_INDEX_CLEARED) {
+                    Logger.info("Provider {}> Event index cleared, retrieving all keys again", this.getName());
+                    this.fetchKeyValues(localConfig, true);
+                    this.pendingChanges = false;
+                    return true;
                 }
-            } finally {
-                if (is != null) {
-                    try {
-                        is.close();
-                    } catch (final IOException ignore) {
+                throw new IOException(String.format("Provider return non 200 status: %d", responseCode));
+            }
+            if (jsonDocument == null || !jsonDocument.hasNonNull("node")) {
+                return this.publishPendingChanges();
+            }
+            final JsonNode node = jsonDocument.get("node");
+            final String key = node.get("key").asText();
+            final String action = isSelected(selection, key + "/") ? jsonDocument.path("action").asText() : "";
+            switch (action) {
+                case "set":
+                case "create":
+                case "update":
+                case "compareAndSwap":
+                    if (!node.path("dir").asBoolean() && node.hasNonNull("value")) {
+                        this.keyValues.put(key, node.get("value").asText());
+                        this.pendingChanges = true;
                     }
-                }
+                    break;
+                case "delete":
+                case "expire":
+                case "compareAndDelete":
+                    this.keyValues.remove(key);
+                    this.keyValues.keySet().removeIf(k -> k.startsWith(key + "/"));
+                    this.pendingChanges = true;
+                    break;
+                default:
+                    Logger.debug("Provider {}> Ignored action {} on {}", this.getName(), jsonDocument.path("action").asText(), key);
+                    break;
+            }
+            this.etcdIndex = node.path("modifiedIndex").asLong(this.etcdIndex + 1);
+            if (response.getHeaderLong("X-Etcd-Index", 0) <= this.etcdIndex) {
+                // The wait has blocked: no more change is waiting in the history
+                return this.publishPendingChanges();
             }
-        } else {
-            throw new RuntimeException("Bad configuration");
+            return false;
+        } catch (final SocketTimeoutException ignore) {
+            return this.publishPendingChanges();
         }
-        return ConfigFactory.parseString(stringBuilder.toString());
+    }
+
+    /**
+     * Mark the pending changes as published.
+     *
+     * @return {@code true} if changes were pending
+     * @since 26.10.18
+     */
+    private boolean publishPendingChanges() {
+        final boolean changed = this.pendingChanges;
+        this.pendingChanges = false;
+        return changed;
+    }
+
+    @Override
+    public String getSourceIdentifier(final Config localConfig) {
+        return this.getSelection(localConfig).toString();
+    }
+
+    @Override
+    public Config loadConfiguration(final Mode mode, final Config localConfig) throws IOException {
+        this.fetchKeyValues(localConfig, false);
+        this.pendingChanges = false;
+        return this.buildConfiguration(this.getSelection(localConfig));
+    }
+
+    @Override
+    public Closeable watchConfiguration(final Mode mode, final Config localConfig, final Consumer<Config> consumer) {
+        if (!localConfig.getBoolean("remote-configuration.etcd.watch.enabled")) {
+            return null;
+        }
+        final long readTimeout = localConfig.getDuration("remote-configuration.etcd.watch.wait", TimeUnit.MILLISECONDS);
+        final long errorDelay = localConfig.getDuration("remote-configuration.etcd.watch.errorDelay", TimeUnit.MILLISECONDS);
+        final KeySelection selection = this.getSelection(localConfig);
+        return new ProviderWatcher(this.getName(), watcher -> {
+            if (this.waitForChange(localConfig, watcher, readTimeout) && watcher.isRunning()) {
+                Logger.debug("Provider {}> Configuration changed (index {})", this.getName(), this.etcdIndex);
+                consumer.accept(this.buildConfiguration(selection));
+            }
+        }, errorDelay).start();
+    }
+
+    /**
+     * A Json object being explored.
+     *
+     * @since 26.10.18
+     */
+    private static final class NodeFrame {
+
+        /**
+         * The etcd key.
+         *
+         * @since 26.10.18
+         */
+        private String key;
+
+        /**
+         * The value.
+         *
+         * @since 26.10.18
+         */
+        private String value;
+
+        /**
+         * Is this node a directory?
+         *
+         * @since 26.10.18
+         */
+        private boolean dir;
     }
 }
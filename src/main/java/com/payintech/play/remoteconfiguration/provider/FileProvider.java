@@ -0,0 +1,445 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 PayinTech
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.payintech.play.remoteconfiguration.provider;
+
+import com.payintech.play.remoteconfiguration.metrics.Gauge;
+import com.payintech.play.remoteconfiguration.metrics.Phase;
+import com.payintech.play.remoteconfiguration.metrics.RemoteConfigurationMetrics;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import com.typesafe.config.ConfigParseOptions;
+import com.typesafe.config.ConfigSyntax;
+import play.Logger;
+import play.Mode;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Configuration provider implementation for local files, as rendered
+ * by a sidecar (ie: consul-template or vault-agent). The path can
+ * reference a single configuration document (HOCON, JSON or
+ * properties), or a directory tree where each file is a value and its
+ * path relative to the directory is the key ("db/default/url" becomes
+ * "db.default.url"), like with Consul and etcd. File contents (ie:
+ * certificates, keys, raw secrets) are used literally as strings,
+ * without their trailing newline, and are never parsed as HOCON.
+ * Hidden files and directories are ignored. Files are read through
+ * memory mapping.
+ * Changes are detected with a {@code WatchService} and only the
+ * modified files are read again.
+ *
+ * @author Thibault Meyer
+ * @version 26.10.18
+ * @since 26.10.18
+ */
+public class FileProvider implements RemoteConfigProvider {
+
+    /**
+     * The values of the directory tree, indexed by relative path.
+     *
+     * @since 26.10.18
+     */
+    private final NavigableMap<String, String> keyValues;
+
+    /**
+     * Build a new instance.
+     *
+     * @since 26.10.18
+     */
+    public FileProvider() {
+        this.keyValues = new TreeMap<>();
+    }
+
+    @Override
+    public String getShortName() {
+        return "FILE";
+    }
+
+    @Override
+    public String getName() {
+        return "Local files";
+    }
+
+    /**
+     * Read a file through memory mapping.
+     *
+     * @param file The file to read
+     * @return The file content
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    private static String readFile(final Path file) throws IOException {
+        try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return StandardCharsets.UTF_8.decode(buffer).toString();
+        }
+    }
+
+    /**
+     * Guess the syntax of a configuration document from its extension.
+     *
+     * @param file The configuration document
+     * @return The document syntax
+     * @since 26.10.18
+     */
+    private static ConfigSyntax guessSyntax(final Path file) {
+        final String fileName = file.getFileName().toString();
+        if (fileName.endsWith(".json")) {
+            return ConfigSyntax.JSON;
+        } else if (fileName.endsWith(".properties")) {
+            return ConfigSyntax.PROPERTIES;
+        }
+        return ConfigSyntax.CONF;
+    }
+
+    /**
+     * Check if a file or a directory must be ignored.
+     *
+     * @param path The file or directory
+     * @return {@code true} if hidden
+     * @since 26.10.18
+     */
+    private static boolean isHidden(final Path path) {
+        return path.getFileName() != null && path.getFileName().toString().startsWith(".");
+    }
+
+    /**
+     * Retrieve the path from the local configuration.
+     *
+     * @param localConfig The local configuration
+     * @return The file or directory to read
+     * @since 26.10.18
+     */
+    private Path getPath(final Config localConfig) {
+        final String path = localConfig.getString("remote-configuration.file.path");
+        if (path.trim().isEmpty()) {
+            throw new RuntimeException("Bad configuration");
+        }
+        return Paths.get(path.trim()).toAbsolutePath().normalize();
+    }
+
+    /**
+     * Convert a file located in the directory tree to its key.
+     *
+     * @param root The root directory
+     * @param file The file
+     * @return The key, with "/" as separator
+     * @since 26.10.18
+     */
+    private static String toKey(final Path root, final Path file) {
+        return root.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+    }
+
+    /**
+     * Read a file of the directory tree and update its value. A file
+     * removed meanwhile is removed from the values.
+     *
+     * @param root The root directory
+     * @param file The file
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    private void readValue(final Path root, final Path file) throws IOException {
+        final String key = toKey(root, file);
+        try {
+            this.keyValues.put(key, readFile(file));
+        } catch (final NoSuchFileException ignore) {
+            this.keyValues.remove(key);
+        }
+    }
+
+    /**
+     * Read all files located under a directory.
+     *
+     * @param root      The root directory
+     * @param directory The directory to read
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    private void readDirectory(final Path root, final Path directory) throws IOException {
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+
+            @Override
+            public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) {
+                return isHidden(dir) && !dir.equals(root) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
+                if (attrs.isRegularFile() && !isHidden(file)) {
+                    FileProvider.this.readValue(root, file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Remove the trailing newline of a file content, if any.
+     *
+     * @param content The file content
+     * @return The content without its trailing newline
+     * @since 26.10.18
+     */
+    private static String trimTrailingNewline(final String content) {
+        if (content.endsWith("\r\n")) {
+            return content.substring(0, content.length() - 2);
+        } else if (content.endsWith("\n")) {
+            return content.substring(0, content.length() - 1);
+        }
+        return content;
+    }
+
+    /**
+     * Build the configuration from the values of the directory tree.
+     * File contents are used literally.
+     *
+     * @return The configuration
+     * @since 26.10.18
+     */
+    private Config buildConfiguration() {
+        final KeyValueConfigBuilder builder = new KeyValueConfigBuilder(this.getName());
+        for (final Map.Entry<String, String> entry : this.keyValues.entrySet()) {
+            builder.putLiteral(entry.getKey().replace('/', '.'), trimTrailingNewline(entry.getValue()));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Read a single configuration document.
+     *
+     * @param file The configuration document
+     * @return The configuration
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    private Config readDocument(final Path file) throws IOException {
+        final String document = readFile(file);
+        final long startTime = System.nanoTime();
+        final Config configuration = ConfigFactory.parseString(
+            document,
+            ConfigParseOptions.defaults()
+                .setOriginDescription(file.toString())
+                .setSyntax(guessSyntax(file))
+        );
+        RemoteConfigurationMetrics.timing(this.getName(), Phase.DECODE, startTime);
+        RemoteConfigurationMetrics.gauge(this.getName(), Gauge.KEYS, configuration.entrySet().size());
+        return configuration;
+    }
+
+    /**
+     * Register a directory and its sub-directories on the watch service.
+     *
+     * @param watchService The watch service
+     * @param directory    The directory to register
+     * @param watchKeys    The registered directories, by watch key
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    private static void register(final WatchService watchService,
+                                 final Path directory,
+                                 final Map<WatchKey, Path> watchKeys) throws IOException {
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+
+            @Override
+            public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) throws IOException {
+                if (isHidden(dir) && !dir.equals(directory)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                watchKeys.put(
+                    dir.register(
+                        watchService,
+                        StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY,
+                        StandardWatchEventKinds.ENTRY_DELETE
+                    ),
+                    dir
+                );
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Apply the events of a watched directory to the values of the
+     * directory tree. Created directories are registered and read,
+     * deleted directories are removed with their content.
+     *
+     * @param root         The root directory
+     * @param directory    The watched directory
+     * @param watchKey     The signalled key
+     * @param watchService The watch service
+     * @param watchKeys    The registered directories, by watch key
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    private void applyEvents(final Path root,
+                             final Path directory,
+                             final WatchKey watchKey,
+                             final WatchService watchService,
+                             final Map<WatchKey, Path> watchKeys) throws IOException {
+        for (final WatchEvent<?> event : watchKey.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                Logger.debug("Provider {}> Events lost, reading all files again", this.getName());
+                this.keyValues.clear();
+                this.readDirectory(root, root);
+                continue;
+            }
+            final Path path = directory.resolve((Path) event.context());
+            if (isHidden(path)) {
+                continue;
+            }
+            final String key = toKey(root, path);
+            if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                this.keyValues.remove(key);
+                this.keyValues.keySet().removeIf(k -> k.startsWith(key + "/"));
+            } else if (Files.isDirectory(path)) {
+                register(watchService, path, watchKeys);
+                this.readDirectory(root, path);
+            } else if (Files.isRegularFile(path)) {
+                this.readValue(root, path);
+            }
+        }
+    }
+
+    @Override
+    public String getSourceIdentifier(final Config localConfig) {
+        return this.getPath(localConfig).toString();
+    }
+
+    @Override
+    public Config loadConfiguration(final Mode mode, final Config localConfig) throws IOException {
+        final Path path = this.getPath(localConfig);
+        if (!Files.isDirectory(path)) {
+            return this.readDocument(path);
+        }
+        final long startTime = System.nanoTime();
+        this.keyValues.clear();
+        this.readDirectory(path, path);
+        RemoteConfigurationMetrics.timing(this.getName(), Phase.DECODE, startTime);
+        return this.buildConfiguration();
+    }
+
+    @Override
+    public Closeable watchConfiguration(final Mode mode, final Config localConfig, final Consumer<Config> consumer) {
+        if (!localConfig.getBoolean("remote-configuration.file.watch.enabled")) {
+            return null;
+        }
+        final long debounce = localConfig.getDuration("remote-configuration.file.watch.debounce", TimeUnit.MILLISECONDS);
+        final long errorDelay = localConfig.getDuration("remote-configuration.file.watch.errorDelay", TimeUnit.MILLISECONDS);
+        final Path path = this.getPath(localConfig);
+        final boolean directoryTree = Files.isDirectory(path);
+        final Path root = directoryTree ? path : path.getParent();
+        final Map<WatchKey, Path> watchKeys = new HashMap<>();
+        final WatchService watchService;
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            if (directoryTree) {
+                register(watchService, root, watchKeys);
+            } else {
+                watchKeys.put(
+                    root.register(
+                        watchService,
+                        StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY,
+                        StandardWatchEventKinds.ENTRY_DELETE
+                    ),
+                    root
+                );
+            }
+            if (directoryTree && this.keyValues.isEmpty()) {
+                // The configuration has been loaded from a snapshot
+                this.readDirectory(root, root);
+            }
+        } catch (final IOException ex) {
+            throw new RuntimeException("Can't watch " + path, ex);
+        }
+        return new ProviderWatcher(this.getName(), watcher -> {
+            watcher.setAbortAction(() -> {
+                try {
+                    watchService.close();
+                } catch (final IOException ignore) {
+                    // Already closed
+                }
+            });
+            boolean changed = false;
+            try {
+                WatchKey watchKey = watchService.take();
+                // Wait a bit to process the files written together at once
+                Thread.sleep(debounce);
+                while (watchKey != null) {
+                    final Path directory = watchKeys.get(watchKey);
+                    if (directory == null) {
+                        watchKey.pollEvents();
+                    } else if (directoryTree) {
+                        this.applyEvents(root, directory, watchKey, watchService, watchKeys);
+                        changed = true;
+                    } else {
+                        for (final WatchEvent<?> event : watchKey.pollEvents()) {
+                            changed |= event.kind() == StandardWatchEventKinds.OVERFLOW
+                                || path.getFileName().equals(event.context());
+                        }
+                    }
+                    if (!watchKey.reset()) {
+                        watchKeys.remove(watchKey);
+                    }
+                    watchKey = watchService.poll();
+                }
+            } catch (final ClosedWatchServiceException ex) {
+                throw new InterruptedException("Watch service closed");
+            } catch (final InterruptedException ex) {
+                watchService.close();
+                throw ex;
+            }
+            if (changed && watcher.isRunning() && (directoryTree || Files.exists(path))) {
+                Logger.debug("Provider {}> Configuration changed", this.getName());
+                consumer.accept(directoryTree ? this.buildConfiguration() : this.readDocument(path));
+            }
+        }, errorDelay).start();
+    }
+}
@@ -23,23 +23,235 @@
  */
 package com.payintech.play.remoteconfiguration.provider;
 
+import com.payintech.play.remoteconfiguration.metrics.Gauge;
+import com.payintech.play.remoteconfiguration.metrics.Phase;
+import com.payintech.play.remoteconfiguration.metrics.RemoteConfigurationMetrics;
 import com.typesafe.config.Config;
+import com.typesafe.config.ConfigException;
 import com.typesafe.config.ConfigFactory;
+import com.typesafe.config.ConfigIncludeContext;
+import com.typesafe.config.ConfigIncluder;
+import com.typesafe.config.ConfigObject;
+import com.typesafe.config.ConfigParseOptions;
+import com.typesafe.config.ConfigSyntax;
 import play.Logger;
 import play.Mode;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
  * Configuration provider implementation for simple HTTP.
  *
  * @author Thibault Meyer
- * @version 17.12.16
+ * @version 26.10.18
  * @since 17.11.28
  */
 public class HttpBasicProvider implements RemoteConfigProvider {
 
+    /**
+     * The entity tag of the last retrieved document (value
+     * of the "ETag" header).
+     *
+     * @since 26.10.18
+     */
+    private volatile String entityTag;
+
+    /**
+     * The modification date of the last retrieved document
+     * (value of the "Last-Modified" header).
+     *
+     * @since 26.10.18
+     */
+    private volatile String lastModified;
+
+    /**
+     * The SHA-1 digest of the last retrieved document.
+     *
+     * @since 26.10.18
+     */
+    private volatile byte[] documentDigest;
+
+    /**
+     * The current polling interval in milliseconds.
+     *
+     * @since 26.10.18
+     */
+    private volatile long pollInterval;
+
+    /**
+     * Guess the syntax of the document like {@code ConfigFactory.parseURL}
+     * does: from the content type first, then from the URL extension.
+     *
+     * @param contentType The document content type, can be {@code null}
+     * @param url         The document URL
+     * @return The document syntax, or {@code null} if unknown
+     * @since 26.10.18
+     */
+    private static ConfigSyntax guessSyntax(final String contentType, final URL url) {
+        if (contentType != null) {
+            final String mimeType = contentType.split(";")[0].trim().toLowerCase();
+            switch (mimeType) {
+                case "application/json":
+                    return ConfigSyntax.JSON;
+                case "text/x-java-properties":
+                    return ConfigSyntax.PROPERTIES;
+                case "application/hocon":
+                    return ConfigSyntax.CONF;
+                default:
+                    break;
+            }
+        }
+        final String path = url.getPath();
+        if (path.endsWith(".json")) {
+            return ConfigSyntax.JSON;
+        } else if (path.endsWith(".properties")) {
+            return ConfigSyntax.PROPERTIES;
+        } else if (path.endsWith(".conf")) {
+            return ConfigSyntax.CONF;
+        }
+        return null;
+    }
+
+    /**
+     * Retrieve the charset of the document.
+     *
+     * @param contentType The document content type, can be {@code null}
+     * @return The document charset, UTF-8 if not specified
+     * @since 26.10.18
+     */
+    private static Charset guessCharset(final String contentType) {
+        if (contentType != null) {
+            for (final String parameter : contentType.split(";")) {
+                final String[] keyValue = parameter.trim().split("=", 2);
+                if (keyValue.length == 2 && "charset".equalsIgnoreCase(keyValue[0].trim())) {
+                    return Charset.forName(keyValue[1].trim().replace("\"", ""));
+                }
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    /**
+     * Compute the SHA-1 digest of a document.
+     *
+     * @param document The document
+     * @return The document digest
+     * @since 26.10.18
+     */
+    private static byte[] digest(final byte[] document) {
+        try {
+            return MessageDigest.getInstance("SHA-1").digest(document);
+        } catch (final NoSuchAlgorithmException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * Get the URL of the configuration document.
+     *
+     * @param localConfig The local configuration
+     * @return The URL
+     * @throws IOException When the URL is malformed
+     * @since 26.10.18
+     */
+    private URL getUrl(final Config localConfig) throws IOException {
+        final String configurationUrl = localConfig.getString("remote-configuration.http.url");
+        if (configurationUrl != null && configurationUrl.startsWith("http")) {
+            return new URL(configurationUrl);
+        } else {
+            throw new RuntimeException("Bad configuration");
+        }
+    }
+
+    /**
+     * Retrieve the configuration document. If conditional, the validators
+     * of the last retrieved document are sent and nothing is parsed when
+     * the document has not changed. Like with
+     * {@link ConfigFactory#parseURL(URL)}, a missing document is an empty
+     * configuration and relative includes are resolved against the URL.
+     *
+     * @param localConfig The local configuration
+     * @param conditional Issue a conditional request?
+     * @param watcher     The watcher running the request, can be {@code null}
+     * @return The retrieved configuration, or {@code null} if the document has not changed
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    private Config fetchConfiguration(final Config localConfig,
+                                      final boolean conditional,
+                                      final ProviderWatcher watcher) throws IOException {
+        final URL httpUrl = this.getUrl(localConfig);
+        final HttpRequest request = HttpTransports.newRequest(localConfig, this.getName(), httpUrl);
+        if (conditional) {
+            if (this.entityTag != null) {
+                request.setHeader("If-None-Match", this.entityTag);
+            }
+            if (this.lastModified != null) {
+                request.setHeader("If-Modified-Since", this.lastModified);
+            }
+        }
+        if (watcher != null) {
+            watcher.setAbortAction(request::cancel);
+        }
+        final ByteArrayOutputStream document = new ByteArrayOutputStream(4096);
+        final String contentType;
+        try (final HttpResponse response = HttpTransports.get(localConfig).execute(request)) {
+            final int responseCode = response.getStatus();
+            if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED && conditional) {
+                return null;
+            } else if (responseCode == HttpURLConnection.HTTP_NOT_FOUND) {
+                Logger.debug("Provider {}> Document not found, using an empty configuration", this.getName());
+                this.entityTag = null;
+                this.lastModified = null;
+                contentType = null;
+            } else if (responseCode / 100 != 2) {
+                throw new IOException(String.format("Provider return non 200 status: %d", responseCode));
+            } else {
+                final InputStream is = response.getBody();
+                final byte[] buffer = new byte[8192];
+                int length;
+                while ((length = is.read(buffer)) != -1) {
+                    document.write(buffer, 0, length);
+                }
+                this.entityTag = response.getHeader("ETag");
+                this.lastModified = response.getHeader("Last-Modified");
+                contentType = response.getHeader("Content-Type");
+            }
+        }
+        final byte[] newDigest = digest(document.toByteArray());
+        if (conditional && Arrays.equals(newDigest, this.documentDigest)) {
+            return null;
+        }
+        this.documentDigest = newDigest;
+        final long startTime = System.nanoTime();
+        final Config configuration = ConfigFactory.parseReader(
+            new InputStreamReader(new ByteArrayInputStream(document.toByteArray()), guessCharset(contentType)),
+            ConfigParseOptions.defaults()
+                .setOriginDescription(httpUrl.toString())
+                .setSyntax(guessSyntax(contentType, httpUrl))
+                .setIncluder(new RelativeUrlIncluder(httpUrl))
+        );
+        RemoteConfigurationMetrics.timing(this.getName(), Phase.DECODE, startTime);
+        RemoteConfigurationMetrics.gauge(this.getName(), Gauge.KEYS, configuration.entrySet().size());
+        return configuration;
+    }
+
     @Override
     public String getShortName() {
         return "HTTP_BASIC";
@@ -50,15 +262,85 @@ public class HttpBasicProvider implements RemoteConfigProvider {
         return "HTTP (Basic Implementation)";
     }
 
+    @Override
+    public String getSourceIdentifier(final Config localConfig) {
+        return localConfig.getString("remote-configuration.http.url");
+    }
+
     @Override
     public Config loadConfiguration(final Mode mode, final Config localConfig) throws IOException {
-        final String configurationUrl = localConfig.getString("remote-configuration.http.url");
-        if (configurationUrl != null && configurationUrl.startsWith("http")) {
-            final URL httpUrl = new URL(configurationUrl);
-            Logger.debug("Provider {}> {}", this.getName(), httpUrl.toString());
-            return ConfigFactory.parseURL(httpUrl);
-        } else {
+        return this.fetchConfiguration(localConfig, false, null);
+    }
+
+    @Override
+    public Closeable watchConfiguration(final Mode mode, final Config localConfig, final Consumer<Config> consumer) {
+        if (!localConfig.getBoolean("remote-configuration.http.watch.enabled")) {
+            return null;
+        }
+        final long minInterval = localConfig.getDuration("remote-configuration.http.watch.interval", TimeUnit.MILLISECONDS);
+        final long maxInterval = localConfig.getDuration("remote-configuration.http.watch.maxInterval", TimeUnit.MILLISECONDS);
+        final double jitter = localConfig.getDouble("remote-configuration.http.watch.jitter");
+        final long errorDelay = localConfig.getDuration("remote-configuration.http.watch.errorDelay", TimeUnit.MILLISECONDS);
+        if (minInterval <= 0 || maxInterval < minInterval || jitter < 0 || jitter >= 1) {
             throw new RuntimeException("Bad configuration");
         }
+        this.pollInterval = minInterval;
+        return new ProviderWatcher(this.getName(), watcher -> {
+            final double jitterFactor = 1 + jitter * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+            Thread.sleep((long) (this.pollInterval * jitterFactor));
+            final Config remoteConfiguration = this.fetchConfiguration(localConfig, true, watcher);
+            if (remoteConfiguration == null) {
+                // The document has not changed, slow down
+                this.pollInterval = Math.min(this.pollInterval * 2, maxInterval);
+            } else if (watcher.isRunning()) {
+                Logger.debug("Provider {}> Configuration changed", this.getName());
+                this.pollInterval = minInterval;
+                consumer.accept(remoteConfiguration);
+            }
+        }, errorDelay).start();
+    }
+
+    /**
+     * Resolves the includes of a remote document relative to its URL,
+     * as {@link ConfigFactory#parseURL(URL)} does. The included
+     * documents are parsed with the default includer.
+     *
+     * @since 26.10.18
+     */
+    private static final class RelativeUrlIncluder implements ConfigIncluder {
+
+        /**
+         * The URL of the including document.
+         *
+         * @since 26.10.18
+         */
+        private final URL baseUrl;
+
+        /**
+         * Build a new instance.
+         *
+         * @param baseUrl The URL of the including document
+         * @since 26.10.18
+         */
+        RelativeUrlIncluder(final URL baseUrl) {
+            this.baseUrl = baseUrl;
+        }
+
+        @Override
+        public ConfigIncluder withFallback(final ConfigIncluder fallback) {
+            return this;
+        }
+
+        @Override
+        public ConfigObject include(final ConfigIncludeContext context, final String what) {
+            try {
+                return ConfigFactory.parseURL(
+                    new URL(this.baseUrl, what),
+                    ConfigParseOptions.defaults().setAllowMissing(context.parseOptions().getAllowMissing())
+                ).root();
+            } catch (final MalformedURLException ex) {
+                throw new ConfigException.BadPath(what, ex.getMessage(), ex);
+            }
+        }
     }
 }
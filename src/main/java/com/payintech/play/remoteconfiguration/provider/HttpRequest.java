@@ -0,0 +1,338 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 PayinTech
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.payintech.play.remoteconfiguration.provider;
+
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Request to execute with a {@link HttpTransport}.
+ *
+ * @author Thibault Meyer
+ * @version 26.10.18
+ * @since 26.10.18
+ */
+public final class HttpRequest {
+
+    /**
+     * The name of the provider issuing the request (used for logging).
+     *
+     * @since 26.10.18
+     */
+    private final String origin;
+
+    /**
+     * The request URL.
+     *
+     * @since 26.10.18
+     */
+    private final URL url;
+
+    /**
+     * The request headers.
+     *
+     * @since 26.10.18
+     */
+    private final Map<String, String> headers;
+
+    /**
+     * The request method.
+     *
+     * @since 26.10.18
+     */
+    private String method;
+
+    /**
+     * The request body, can be {@code null}.
+     *
+     * @since 26.10.18
+     */
+    private byte[] body;
+
+    /**
+     * Maximum time (in milliseconds) to establish the connection.
+     *
+     * @since 26.10.18
+     */
+    private long connectTimeout;
+
+    /**
+     * Maximum time (in milliseconds) to wait for data.
+     *
+     * @since 26.10.18
+     */
+    private long readTimeout;
+
+    /**
+     * Maximum time (in milliseconds) for the whole exchange, from
+     * the connection to the end of the response body. Zero means
+     * no limit.
+     *
+     * @since 26.10.18
+     */
+    private long deadline;
+
+    /**
+     * Has the request been cancelled?
+     *
+     * @since 26.10.18
+     */
+    private volatile boolean cancelled;
+
+    /**
+     * Action to call to abort the request.
+     *
+     * @since 26.10.18
+     */
+    private volatile Runnable cancelAction;
+
+    /**
+     * Build a new instance.
+     *
+     * @param origin The name of the provider issuing the request
+     * @param url    The request URL
+     * @since 26.10.18
+     */
+    public HttpRequest(final String origin, final URL url) {
+        this.origin = origin;
+        this.url = url;
+        this.headers = new LinkedHashMap<>();
+        this.method = "GET";
+    }
+
+    /**
+     * Retrieve the name of the provider issuing the request.
+     *
+     * @return The provider name
+     * @since 26.10.18
+     */
+    public String getOrigin() {
+        return this.origin;
+    }
+
+    /**
+     * Retrieve the request URL.
+     *
+     * @return The request URL
+     * @since 26.10.18
+     */
+    public URL getUrl() {
+        return this.url;
+    }
+
+    /**
+     * Retrieve the request headers.
+     *
+     * @return The request headers
+     * @since 26.10.18
+     */
+    public Map<String, String> getHeaders() {
+        return Collections.unmodifiableMap(this.headers);
+    }
+
+    /**
+     * Set a request header.
+     *
+     * @param name  The header name
+     * @param value The header value
+     * @return The current instance
+     * @since 26.10.18
+     */
+    public HttpRequest setHeader(final String name, final String value) {
+        this.headers.put(name, value);
+        return this;
+    }
+
+    /**
+     * Set the "Authorization" header for a basic authentication.
+     *
+     * @param username The username
+     * @param password The password
+     * @return The current instance
+     * @since 26.10.18
+     */
+    public HttpRequest setBasicAuth(final String username, final String password) {
+        return this.setHeader(
+            "Authorization",
+            "Basic " + Base64.getEncoder().encodeToString((username + ":" + password).getBytes(StandardCharsets.UTF_8))
+        );
+    }
+
+    /**
+     * Retrieve the request method.
+     *
+     * @return The request method
+     * @since 26.10.18
+     */
+    public String getMethod() {
+        return this.method;
+    }
+
+    /**
+     * Set the request method.
+     *
+     * @param method The request method
+     * @return The current instance
+     * @since 26.10.18
+     */
+    public HttpRequest setMethod(final String method) {
+        this.method = method;
+        return this;
+    }
+
+    /**
+     * Retrieve the request body.
+     *
+     * @return The request body, can be {@code null}
+     * @since 26.10.18
+     */
+    public byte[] getBody() {
+        return this.body;
+    }
+
+    /**
+     * Set the request body.
+     *
+     * @param body The request body
+     * @return The current instance
+     * @since 26.10.18
+     */
+    public HttpRequest setBody(final byte[] body) {
+        this.body = body;
+        return this;
+    }
+
+    /**
+     * Retrieve the maximum time (in milliseconds) to establish the connection.
+     *
+     * @return The connect timeout
+     * @since 26.10.18
+     */
+    public long getConnectTimeout() {
+        return this.connectTimeout;
+    }
+
+    /**
+     * Set the maximum time (in milliseconds) to establish the connection.
+     *
+     * @param connectTimeout The connect timeout
+     * @return The current instance
+     * @since 26.10.18
+     */
+    public HttpRequest setConnectTimeout(final long connectTimeout) {
+        this.connectTimeout = connectTimeout;
+        return this;
+    }
+
+    /**
+     * Retrieve the maximum time (in milliseconds) to wait for data.
+     *
+     * @return The read timeout
+     * @since 26.10.18
+     */
+    public long getReadTimeout() {
+        return this.readTimeout;
+    }
+
+    /**
+     * Set the maximum time (in milliseconds) to wait for data.
+     *
+     * @param readTimeout The read timeout
+     * @return The current instance
+     * @since 26.10.18
+     */
+    public HttpRequest setReadTimeout(final long readTimeout) {
+        this.readTimeout = readTimeout;
+        return this;
+    }
+
+    /**
+     * Retrieve the maximum time (in milliseconds) for the whole exchange.
+     *
+     * @return The deadline, zero means no limit
+     * @since 26.10.18
+     */
+    public long getDeadline() {
+        return this.deadline;
+    }
+
+    /**
+     * Set the maximum time (in milliseconds) for the whole exchange.
+     *
+     * @param deadline The deadline, zero means no limit
+     * @return The current instance
+     * @since 26.10.18
+     */
+    public HttpRequest setDeadline(final long deadline) {
+        this.deadline = deadline;
+        return this;
+    }
+
+    /**
+     * Check if the request has been cancelled.
+     *
+     * @return {@code true} if the request has been cancelled
+     * @since 26.10.18
+     */
+    public boolean isCancelled() {
+        return this.cancelled;
+    }
+
+    /**
+     * Set the action to call to abort the request. This method is
+     * called by the transport. If the request is already cancelled,
+     * the action is immediately called.
+     *
+     * @param cancelAction The action to call, can be {@code null}
+     * @since 26.10.18
+     */
+    public void setCancelAction(final Runnable cancelAction) {
+        this.cancelAction = cancelAction;
+        if (this.cancelled && cancelAction != null) {
+            cancelAction.run();
+        }
+    }
+
+    /**
+     * Cancel the request. The in-flight exchange is aborted.
+     *
+     * @since 26.10.18
+     */
+    public void cancel() {
+        this.cancelled = true;
+        final Runnable action = this.cancelAction;
+        if (action != null) {
+            action.run();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return this.method + " " + this.url;
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 PayinTech
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.payintech.play.remoteconfiguration.provider;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Response of a request executed by a {@link HttpTransport}.
+ *
+ * @author Thibault Meyer
+ * @version 26.10.18
+ * @since 26.10.18
+ */
+public interface HttpResponse extends Closeable {
+
+    /**
+     * Retrieve the HTTP status code.
+     *
+     * @return The status code
+     * @since 26.10.18
+     */
+    int getStatus();
+
+    /**
+     * Retrieve the value of a response header.
+     *
+     * @param name The header name
+     * @return The header value, or {@code null} if not present
+     * @since 26.10.18
+     */
+    String getHeader(final String name);
+
+    /**
+     * Retrieve the value of a response header as number.
+     *
+     * @param name         The header name
+     * @param defaultValue The value to return if the header is missing or malformed
+     * @return The header value
+     * @since 26.10.18
+     */
+    default long getHeaderLong(final String name, final long defaultValue) {
+        final String value = this.getHeader(name);
+        if (value != null) {
+            try {
+                return Long.parseLong(value.trim());
+            } catch (final NumberFormatException ignore) {
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Retrieve the decoded (ie: decompressed) response body. With
+     * non 2xx status, the error body is returned.
+     *
+     * @return The response body, or {@code null} if the response has no body
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    InputStream getBody() throws IOException;
+}
@@ -0,0 +1,263 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 PayinTech
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.payintech.play.remoteconfiguration.provider;
+
+import com.payintech.play.remoteconfiguration.metrics.Counter;
+import com.payintech.play.remoteconfiguration.metrics.RemoteConfigurationMetrics;
+import play.Logger;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Helpers for the HTTP based providers. Responses can be transferred
+ * compressed (gzip or deflate) and are transparently decompressed
+ * while they are read by the parsers.
+ *
+ * @author Thibault Meyer
+ * @version 26.10.18
+ * @since 26.10.18
+ */
+final class HttpTransfer {
+
+    /**
+     * The supported content codings.
+     *
+     * @since 26.10.18
+     */
+    static final String ACCEPT_ENCODING = "gzip, deflate";
+
+    /**
+     * Build a new instance.
+     *
+     * @since 26.10.18
+     */
+    private HttpTransfer() {
+    }
+
+    /**
+     * Wrap a response stream to decompress it according to the
+     * "Content-Encoding" header and count the transferred bytes.
+     *
+     * @param providerName    The provider name (used for logging)
+     * @param contentEncoding The "Content-Encoding" header value, can be {@code null}
+     * @param is              The response stream, can be {@code null}
+     * @return The decoded response stream, or {@code null}
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    static InputStream decode(final String providerName,
+                              final String contentEncoding,
+                              final InputStream is) throws IOException {
+        if (is == null) {
+            return null;
+        }
+        final String coding = contentEncoding == null ? "identity" : contentEncoding.trim().toLowerCase();
+        final CountingInputStream receivedStream = new CountingInputStream(is);
+        final InputStream decodedStream;
+        switch (coding) {
+            case "gzip":
+            case "x-gzip":
+                decodedStream = new GZIPInputStream(receivedStream, 8192);
+                break;
+            case "deflate":
+                decodedStream = inflate(receivedStream);
+                break;
+            case "identity":
+                decodedStream = receivedStream;
+                break;
+            default:
+                receivedStream.close();
+                throw new IOException("Unsupported content encoding: " + coding);
+        }
+        return new DecodedInputStream(decodedStream, receivedStream, providerName, coding);
+    }
+
+    /**
+     * Decompress a "deflate" stream. The specification requires the zlib
+     * format, but some servers send raw deflate data: the zlib header is
+     * checked to select the right format.
+     *
+     * @param is The compressed stream
+     * @return The decompressed stream
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    private static InputStream inflate(final InputStream is) throws IOException {
+        final PushbackInputStream pushbackStream = new PushbackInputStream(is, 2);
+        final int cmf = pushbackStream.read();
+        final int flg = cmf == -1 ? -1 : pushbackStream.read();
+        if (flg != -1) {
+            pushbackStream.unread(flg);
+        }
+        if (cmf != -1) {
+            pushbackStream.unread(cmf);
+        }
+        final boolean zlibWrapped = flg != -1 && (cmf & 0x0F) == 8 && ((cmf << 8) | flg) % 31 == 0;
+        return new InflaterInputStream(pushbackStream, new Inflater(!zlibWrapped), 8192);
+    }
+
+    /**
+     * Counts the bytes read from a stream.
+     *
+     * @since 26.10.18
+     */
+    private static class CountingInputStream extends FilterInputStream {
+
+        /**
+         * Number of bytes read.
+         *
+         * @since 26.10.18
+         */
+        private long count;
+
+        /**
+         * Build a new instance.
+         *
+         * @param in The stream to read from
+         * @since 26.10.18
+         */
+        CountingInputStream(final InputStream in) {
+            super(in);
+        }
+
+        /**
+         * Retrieve the number of bytes read.
+         *
+         * @return The number of bytes
+         * @since 26.10.18
+         */
+        long getCount() {
+            return this.count;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if (b != -1) {
+                ++this.count;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            final int length = super.read(b, off, len);
+            if (length > 0) {
+                this.count += length;
+            }
+            return length;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            final long length = super.skip(n);
+            this.count += length;
+            return length;
+        }
+    }
+
+    /**
+     * Counts the decoded bytes and records the transfer
+     * statistics once the stream is closed.
+     *
+     * @since 26.10.18
+     */
+    private static final class DecodedInputStream extends CountingInputStream {
+
+        /**
+         * The stream counting the received bytes.
+         *
+         * @since 26.10.18
+         */
+        private final CountingInputStream receivedStream;
+
+        /**
+         * The provider name (used for logging).
+         *
+         * @since 26.10.18
+         */
+        private final String providerName;
+
+        /**
+         * The content coding of the response.
+         *
+         * @since 26.10.18
+         */
+        private final String contentEncoding;
+
+        /**
+         * Has the stream been closed?
+         *
+         * @since 26.10.18
+         */
+        private boolean closed;
+
+        /**
+         * Build a new instance.
+         *
+         * @param in              The decoded stream to read from
+         * @param receivedStream  The stream counting the received bytes
+         * @param providerName    The provider name
+         * @param contentEncoding The content coding of the response
+         * @since 26.10.18
+         */
+        DecodedInputStream(final InputStream in,
+                           final CountingInputStream receivedStream,
+                           final String providerName,
+                           final String contentEncoding) {
+            super(in);
+            this.receivedStream = receivedStream;
+            this.providerName = providerName;
+            this.contentEncoding = contentEncoding;
+        }
+
+        @Override
+        public void close() throws IOException {
+            super.close();
+            if (!this.closed) {
+                this.closed = true;
+                RemoteConfigurationMetrics.count(this.providerName, Counter.RECEIVED_BYTES, this.receivedStream.getCount());
+                RemoteConfigurationMetrics.count(this.providerName, Counter.DECODED_BYTES, this.getCount());
+                RemoteConfigurationMetrics.count(
+                    this.providerName,
+                    "identity".equals(this.contentEncoding) ? Counter.UNCOMPRESSED_RESPONSES : Counter.COMPRESSED_RESPONSES,
+                    1
+                );
+                Logger.debug(
+                    "Provider {}> Received {} bytes ({} bytes decoded, {})",
+                    this.providerName,
+                    this.receivedStream.getCount(),
+                    this.getCount(),
+                    this.contentEncoding
+                );
+            }
+        }
+    }
+}
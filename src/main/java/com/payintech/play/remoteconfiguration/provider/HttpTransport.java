@@ -0,0 +1,61 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 PayinTech
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.payintech.play.remoteconfiguration.provider;
+
+import java.io.IOException;
+
+/**
+ * HTTP transport used by the HTTP based providers. A single transport
+ * instance is shared by all providers. Implementations are loaded with
+ * the {@code ServiceLoader} and selected with the configuration key
+ * "remote-configuration.transport.implementation".
+ *
+ * @author Thibault Meyer
+ * @version 26.10.18
+ * @since 26.10.18
+ */
+public interface HttpTransport {
+
+    /**
+     * Retrieve the transport short name. This name
+     * must be unique along all available transports.
+     *
+     * @return The transport short name
+     * @since 26.10.18
+     */
+    String getShortName();
+
+    /**
+     * Execute a request. This method returns as soon as the response
+     * headers are received. The returned response must be closed to
+     * release the connection. Implementations must honor the request
+     * timeouts, the request deadline and the request cancellation.
+     *
+     * @param request The request to execute
+     * @return The response
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    HttpResponse execute(final HttpRequest request) throws IOException;
+}
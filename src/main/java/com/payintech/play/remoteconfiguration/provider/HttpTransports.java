@@ -0,0 +1,103 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 PayinTech
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.payintech.play.remoteconfiguration.provider;
+
+import com.typesafe.config.Config;
+
+import java.net.URL;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolves the HTTP transport shared by all providers and
+ * creates requests with the configured timeouts.
+ *
+ * @author Thibault Meyer
+ * @version 26.10.18
+ * @since 26.10.18
+ */
+final class HttpTransports {
+
+    /**
+     * The already resolved transports, by short name.
+     *
+     * @since 26.10.18
+     */
+    private static final Map<String, HttpTransport> TRANSPORTS = new ConcurrentHashMap<>();
+
+    /**
+     * Build a new instance.
+     *
+     * @since 26.10.18
+     */
+    private HttpTransports() {
+    }
+
+    /**
+     * Get the transport to use.
+     *
+     * @param localConfig The local configuration
+     * @return The transport
+     * @since 26.10.18
+     */
+    static HttpTransport get(final Config localConfig) {
+        final String shortName = localConfig.getString("remote-configuration.transport.implementation").trim().toUpperCase();
+        return TRANSPORTS.computeIfAbsent(shortName, HttpTransports::load);
+    }
+
+    /**
+     * Look for the transport having the given short name.
+     *
+     * @param shortName The transport short name
+     * @return The transport
+     * @since 26.10.18
+     */
+    private static HttpTransport load(final String shortName) {
+        final ServiceLoader<HttpTransport> serviceLoaderHT = ServiceLoader.load(HttpTransport.class);
+        for (final HttpTransport transport : serviceLoaderHT) {
+            if (transport.getShortName().compareToIgnoreCase(shortName) == 0) {
+                return transport;
+            }
+        }
+        throw new RuntimeException("Can't resolve the HTTP transport '" + shortName + "'");
+    }
+
+    /**
+     * Create a new request with the configured timeouts.
+     *
+     * @param localConfig The local configuration
+     * @param origin      The name of the provider issuing the request
+     * @param url         The request URL
+     * @return The new request
+     * @since 26.10.18
+     */
+    static HttpRequest newRequest(final Config localConfig, final String origin, final URL url) {
+        return new HttpRequest(origin, url)
+            .setConnectTimeout(localConfig.getDuration("remote-configuration.transport.connectTimeout", TimeUnit.MILLISECONDS))
+            .setReadTimeout(localConfig.getDuration("remote-configuration.transport.readTimeout", TimeUnit.MILLISECONDS))
+            .setDeadline(localConfig.getDuration("remote-configuration.transport.deadline", TimeUnit.MILLISECONDS));
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 PayinTech
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.payintech.play.remoteconfiguration.provider;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigValueType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Keys to retrieve from a Key/Value provider: one or many prefixes,
+ * merged in the declared order, and optional include / exclude glob
+ * patterns. Patterns are matched against the keys relative to their
+ * prefix: {@code *} matches any part of a key element, {@code **}
+ * matches any number of key elements and {@code ?} matches a single
+ * character.
+ *
+ * @author Thibault Meyer
+ * @version 26.10.18
+ * @since 26.10.18
+ */
+final class KeySelection {
+
+    /**
+     * The prefixes, without leading and trailing slashes.
+     *
+     * @since 26.10.18
+     */
+    private final List<String> prefixes;
+
+    /**
+     * The include patterns. If empty, all keys are included.
+     *
+     * @since 26.10.18
+     */
+    private final List<Pattern> includes;
+
+    /**
+     * The exclude patterns.
+     *
+     * @since 26.10.18
+     */
+    private final List<Pattern> excludes;
+
+    /**
+     * Build a new instance.
+     *
+     * @param prefixes The prefixes, without leading and trailing slashes
+     * @param includes The include patterns
+     * @param excludes The exclude patterns
+     * @since 26.10.18
+     */
+    private KeySelection(final List<String> prefixes, final List<Pattern> includes, final List<Pattern> excludes) {
+        this.prefixes = Collections.unmodifiableList(prefixes);
+        this.includes = includes;
+        this.excludes = excludes;
+    }
+
+    /**
+     * Read the key selection of a provider from the local configuration.
+     * The prefix can be a single prefix, a comma-separated list or a
+     * list.
+     *
+     * @param localConfig The local configuration
+     * @param path        The provider configuration path (ie: "remote-configuration.consul")
+     * @return The key selection
+     * @since 26.10.18
+     */
+    static KeySelection fromConfig(final Config localConfig, final String path) {
+        final List<String> rawPrefixes = new ArrayList<>();
+        if (localConfig.getValue(path + ".prefix").valueType() == ConfigValueType.LIST) {
+            rawPrefixes.addAll(localConfig.getStringList(path + ".prefix"));
+        } else {
+            Collections.addAll(rawPrefixes, localConfig.getString(path + ".prefix").split(","));
+        }
+        final List<String> prefixes = new ArrayList<>();
+        for (final String rawPrefix : rawPrefixes) {
+            final String prefix = normalize(rawPrefix);
+            if (!prefixes.contains(prefix)) {
+                prefixes.add(prefix);
+            }
+        }
+        if (prefixes.isEmpty()) {
+            throw new RuntimeException("Bad configuration");
+        }
+        final List<Pattern> includes = new ArrayList<>();
+        final List<Pattern> excludes = new ArrayList<>();
+        if (localConfig.hasPath(path + ".includedKeys")) {
+            for (final String glob : localConfig.getStringList(path + ".includedKeys")) {
+                includes.add(compileGlob(glob));
+            }
+        }
+        if (localConfig.hasPath(path + ".excludedKeys")) {
+            for (final String glob : localConfig.getStringList(path + ".excludedKeys")) {
+                excludes.add(compileGlob(glob));
+            }
+        }
+        return new KeySelection(prefixes, includes, excludes);
+    }
+
+    /**
+     * Remove the leading and trailing slashes of a prefix.
+     *
+     * @param rawPrefix The prefix
+     * @return The normalized prefix
+     * @since 26.10.18
+     */
+    private static String normalize(final String rawPrefix) {
+        String prefix = rawPrefix.trim();
+        if (prefix.endsWith("/")) {
+            prefix = prefix.substring(0, prefix.length() - 1);
+        }
+        if (prefix.startsWith("/")) {
+            prefix = prefix.substring(1);
+        }
+        return prefix;
+    }
+
+    /**
+     * Compile a glob pattern.
+     *
+     * @param glob The glob pattern
+     * @return The compiled pattern
+     * @since 26.10.18
+     */
+    private static Pattern compileGlob(final String glob) {
+        final String trimmedGlob = normalize(glob);
+        final StringBuilder regex = new StringBuilder(trimmedGlob.length() + 16);
+        final StringBuilder literal = new StringBuilder();
+        for (int idx = 0; idx < trimmedGlob.length(); ++idx) {
+            final char c = trimmedGlob.charAt(idx);
+            if (c == '*' || c == '?') {
+                if (literal.length() > 0) {
+                    regex.append(Pattern.quote(literal.toString()));
+                    literal.setLength(0);
+                }
+                if (c == '?') {
+                    regex.append("[^/]");
+                } else if (idx + 1 < trimmedGlob.length() && trimmedGlob.charAt(idx + 1) == '*') {
+                    regex.append(".*");
+                    ++idx;
+                } else {
+                    regex.append("[^/]*");
+                }
+            } else {
+                literal.append(c);
+            }
+        }
+        if (literal.length() > 0) {
+            regex.append(Pattern.quote(literal.toString()));
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    /**
+     * Retrieve the prefixes, in the declared order.
+     *
+     * @return The prefixes, without leading and trailing slashes
+     * @since 26.10.18
+     */
+    List<String> getPrefixes() {
+        return this.prefixes;
+    }
+
+    /**
+     * Retrieve the longest prefix shared by all prefixes. Only whole
+     * key elements are considered.
+     *
+     * @return The common prefix, without leading and trailing slashes
+     * @since 26.10.18
+     */
+    String getCommonPrefix() {
+        String commonPrefix = this.prefixes.get(0);
+        for (final String prefix : this.prefixes) {
+            while (!commonPrefix.isEmpty()
+                && !prefix.equals(commonPrefix)
+                && !prefix.startsWith(commonPrefix + "/")) {
+                final int idx = commonPrefix.lastIndexOf('/');
+                commonPrefix = idx < 0 ? "" : commonPrefix.substring(0, idx);
+            }
+        }
+        return commonPrefix;
+    }
+
+    /**
+     * Is a filter defined?
+     *
+     * @return {@code true} if at least one include or exclude pattern is defined
+     * @since 26.10.18
+     */
+    boolean isFiltered() {
+        return !this.includes.isEmpty() || !this.excludes.isEmpty();
+    }
+
+    /**
+     * Check if a key has to be retrieved.
+     *
+     * @param relativeKey The key, relative to its prefix
+     * @return {@code true} if the key is accepted by the filters
+     * @since 26.10.18
+     */
+    boolean accept(final String relativeKey) {
+        boolean accepted = this.includes.isEmpty();
+        for (int idx = 0; !accepted && idx < this.includes.size(); ++idx) {
+            accepted = this.includes.get(idx).matcher(relativeKey).matches();
+        }
+        for (int idx = 0; accepted && idx < this.excludes.size(); ++idx) {
+            accepted = !this.excludes.get(idx).matcher(relativeKey).matches();
+        }
+        return accepted;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder(String.join(",", this.prefixes));
+        if (this.isFiltered()) {
+            sb.append(";include=").append(this.includes).append(";exclude=").append(this.excludes);
+        }
+        return sb.toString();
+    }
+}
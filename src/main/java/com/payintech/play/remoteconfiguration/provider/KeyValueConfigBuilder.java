@@ -0,0 +1,334 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 PayinTech
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.payintech.play.remoteconfiguration.provider;
+
+import com.payintech.play.remoteconfiguration.metrics.Gauge;
+import com.payintech.play.remoteconfiguration.metrics.Phase;
+import com.payintech.play.remoteconfiguration.metrics.RemoteConfigurationMetrics;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import com.typesafe.config.ConfigObject;
+import com.typesafe.config.ConfigParseOptions;
+import com.typesafe.config.ConfigUtil;
+import com.typesafe.config.ConfigValue;
+import com.typesafe.config.ConfigValueFactory;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds a configuration directly from Key/Value couples, without
+ * rendering and parsing an intermediate HOCON document. Keys are path
+ * expressions and values are HOCON values, exactly as if each couple
+ * was written as {@code key = value} in a configuration file. Simple
+ * values (integers, booleans and unquoted strings) are converted
+ * without calling the HOCON parser. Opaque values (ie: secrets, file
+ * contents) can be added literally with {@link #putLiteral(String, Object)}.
+ *
+ * @author Thibault Meyer
+ * @version 26.10.18
+ * @since 26.10.18
+ */
+public final class KeyValueConfigBuilder {
+
+    /**
+     * Characters not allowed in a HOCON unquoted string.
+     *
+     * @since 26.10.18
+     */
+    private static final String FORBIDDEN_UNQUOTED_CHARS = "$\"{}[]:=,+#`^?!@*&\\";
+
+    /**
+     * The origin description of the built configuration.
+     *
+     * @since 26.10.18
+     */
+    private final String originDescription;
+
+    /**
+     * The parse options used for non simple values.
+     *
+     * @since 26.10.18
+     */
+    private final ConfigParseOptions parseOptions;
+
+    /**
+     * The configuration tree.
+     *
+     * @since 26.10.18
+     */
+    private final Map<String, Object> root;
+
+    /**
+     * The number of added Key/Value couples.
+     *
+     * @since 26.10.18
+     */
+    private int size;
+
+    /**
+     * Build a new instance.
+     *
+     * @param originDescription The origin description of the built configuration
+     * @since 26.10.18
+     */
+    public KeyValueConfigBuilder(final String originDescription) {
+        this.originDescription = originDescription;
+        this.parseOptions = ConfigParseOptions.defaults().setOriginDescription(originDescription);
+        this.root = new LinkedHashMap<>();
+    }
+
+    /**
+     * Split a path expression. Simple paths are split without
+     * calling the HOCON path parser.
+     *
+     * @param path The path expression
+     * @return The path elements
+     * @since 26.10.18
+     */
+    private static List<String> splitPath(final String path) {
+        boolean simplePath = !path.isEmpty() && path.charAt(0) != '.' && path.charAt(path.length() - 1) != '.';
+        for (int idx = 0; simplePath && idx < path.length(); ++idx) {
+            final char c = path.charAt(idx);
+            simplePath = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                || c == '_' || c == '-' || (c == '.' && path.charAt(idx - 1) != '.');
+        }
+        return simplePath ? Arrays.asList(path.split("\\.")) : ConfigUtil.splitPath(path);
+    }
+
+    /**
+     * Check if the value can be used as-is as a string. This is the
+     * case if the HOCON parser would return the exact same string.
+     *
+     * @param value The value to check
+     * @return {@code true} if the value is a simple string
+     * @since 26.10.18
+     */
+    private static boolean isSimpleString(final String value) {
+        final char first = value.charAt(0);
+        final char last = value.charAt(value.length() - 1);
+        if ((first >= '0' && first <= '9') || first == '-' || first == '.' || first == ' ' || last == ' '
+            || "null".equals(value) || value.contains("//")) {
+            return false;
+        }
+        for (int idx = 0; idx < value.length(); ++idx) {
+            final char c = value.charAt(idx);
+            if (FORBIDDEN_UNQUOTED_CHARS.indexOf(c) >= 0 || Character.isISOControl(c)
+                || (c != ' ' && (Character.isWhitespace(c) || Character.isSpaceChar(c)))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check if the value is an integer without leading zeros.
+     *
+     * @param value The value to check
+     * @return {@code true} if the value is a simple integer
+     * @since 26.10.18
+     */
+    private static boolean isSimpleInteger(final String value) {
+        final int start = value.charAt(0) == '-' ? 1 : 0;
+        final int length = value.length() - start;
+        if (length == 0 || length > 18 || (value.charAt(start) == '0' && length > 1)) {
+            return false;
+        }
+        for (int idx = start; idx < value.length(); ++idx) {
+            final char c = value.charAt(idx);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Convert a raw value to a configuration value.
+     *
+     * @param value The raw value
+     * @return The configuration value
+     * @since 26.10.18
+     */
+    private ConfigValue toConfigValue(final String value) {
+        if (value.isEmpty()) {
+            return ConfigValueFactory.fromAnyRef("", this.originDescription);
+        } else if ("true".equals(value) || "false".equals(value)) {
+            return ConfigValueFactory.fromAnyRef(Boolean.valueOf(value), this.originDescription);
+        } else if (isSimpleInteger(value)) {
+            final long number = Long.parseLong(value);
+            if (number >= Integer.MIN_VALUE && number <= Integer.MAX_VALUE) {
+                return ConfigValueFactory.fromAnyRef((int) number, this.originDescription);
+            }
+            return ConfigValueFactory.fromAnyRef(number, this.originDescription);
+        } else if (isSimpleString(value)) {
+            return ConfigValueFactory.fromAnyRef(value, this.originDescription);
+        }
+        return ConfigFactory.parseString("v = " + value, this.parseOptions).root().get("v");
+    }
+
+    /**
+     * Check if a value of the configuration tree is a node being
+     * built. Parsed objects are immutable and are not nodes.
+     *
+     * @param value The value to check
+     * @return {@code true} if the value is a node
+     * @since 26.10.18
+     */
+    private static boolean isNode(final Object value) {
+        return value instanceof Map && !(value instanceof ConfigValue);
+    }
+
+    /**
+     * Merge an object into a node of the configuration tree.
+     *
+     * @param node   The node
+     * @param object The object to merge
+     * @since 26.10.18
+     */
+    @SuppressWarnings("unchecked")
+    private void merge(final Map<String, Object> node, final ConfigObject object) {
+        for (final Map.Entry<String, ConfigValue> entry : object.entrySet()) {
+            final Object current = node.get(entry.getKey());
+            if (entry.getValue() instanceof ConfigObject && isNode(current)) {
+                this.merge((Map<String, Object>) current, (ConfigObject) entry.getValue());
+            } else {
+                this.set(node, entry.getKey(), entry.getValue(), current);
+            }
+        }
+    }
+
+    /**
+     * Set a value of a node. Like in a HOCON document, the current
+     * value is used as fallback: objects are merged and optional
+     * substitutions that can't be resolved keep the current value.
+     *
+     * @param node    The node
+     * @param key     The key
+     * @param value   The new value
+     * @param current The current value, can be {@code null}
+     * @since 26.10.18
+     */
+    @SuppressWarnings("unchecked")
+    private void set(final Map<String, Object> node, final String key, final ConfigValue value, final Object current) {
+        if (current == null) {
+            node.put(key, value);
+        } else if (isNode(current)) {
+            node.put(key, value.withFallback(ConfigValueFactory.fromMap((Map<String, Object>) current, this.originDescription)));
+        } else {
+            node.put(key, value.withFallback((ConfigValue) current));
+        }
+    }
+
+    /**
+     * Add a Key/Value couple. If the key is already defined, the value
+     * is replaced as in a HOCON document: objects are merged and
+     * unresolvable optional substitutions keep the current value.
+     *
+     * @param path  The key, as a path expression
+     * @param value The raw value
+     * @return The current instance
+     * @since 26.10.18
+     */
+    public KeyValueConfigBuilder put(final String path, final String value) {
+        this.putValue(path, this.toConfigValue(value.trim()));
+        return this;
+    }
+
+    /**
+     * Add a Key/Value couple whose value is used literally, never
+     * parsed as HOCON: a string is kept exactly as given. Lists and
+     * maps are converted like with {@link ConfigValueFactory#fromAnyRef(Object)}.
+     *
+     * @param path  The key, as a path expression
+     * @param value The value (string, number, boolean, list or map)
+     * @return The current instance
+     * @since 26.10.18
+     */
+    public KeyValueConfigBuilder putLiteral(final String path, final Object value) {
+        this.putValue(path, ConfigValueFactory.fromAnyRef(value, this.originDescription));
+        return this;
+    }
+
+    /**
+     * Add a configuration value. If the key is already defined, the
+     * value is replaced as in a HOCON document.
+     *
+     * @param path        The key, as a path expression
+     * @param configValue The configuration value
+     * @since 26.10.18
+     */
+    @SuppressWarnings("unchecked")
+    private void putValue(final String path, final ConfigValue configValue) {
+        final List<String> elements = splitPath(path);
+        Map<String, Object> node = this.root;
+        for (final String element : elements.subList(0, elements.size() - 1)) {
+            final Object child = node.get(element);
+            if (isNode(child)) {
+                node = (Map<String, Object>) child;
+            } else {
+                final Map<String, Object> newChild = new LinkedHashMap<>();
+                if (child instanceof ConfigObject) {
+                    newChild.putAll((ConfigObject) child);
+                }
+                node.put(element, newChild);
+                node = newChild;
+            }
+        }
+        final String key = elements.get(elements.size() - 1);
+        final Object current = node.get(key);
+        if (configValue instanceof ConfigObject && isNode(current)) {
+            this.merge((Map<String, Object>) current, (ConfigObject) configValue);
+        } else {
+            this.set(node, key, configValue, current);
+        }
+        this.size += 1;
+    }
+
+    /**
+     * Retrieve the number of added Key/Value couples.
+     *
+     * @return The number of added Key/Value couples
+     * @since 26.10.18
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Build the configuration.
+     *
+     * @return The configuration
+     * @since 26.10.18
+     */
+    public Config build() {
+        final long startTime = System.nanoTime();
+        final Config configuration = ConfigValueFactory.fromMap(this.root, this.originDescription).toConfig();
+        RemoteConfigurationMetrics.timing(this.originDescription, Phase.BUILD, startTime);
+        RemoteConfigurationMetrics.gauge(this.originDescription, Gauge.KEYS, this.size);
+        return configuration;
+    }
+}
@@ -0,0 +1,455 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 PayinTech
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.payintech.play.remoteconfiguration.provider;
+
+import com.payintech.play.remoteconfiguration.metrics.Gauge;
+import com.payintech.play.remoteconfiguration.metrics.RemoteConfigurationMetrics;
+import com.typesafe.config.Config;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps the large values retrieved by a provider out of the Java heap,
+ * in direct buffers or in memory-mapped temporary files. The
+ * configuration only holds a reference to the value (ie:
+ * "offheap-9f86d0..."), which can be read with {@link #getBuffer(String)}
+ * or {@link #getInputStream(String)}. References are derived from the
+ * value content: an unchanged value keeps the same reference across
+ * reloads. The values of the first retrieved configuration, given to
+ * Play at startup, are kept as long as the store. Other values are
+ * released once the last retrieved configuration no longer references
+ * them: the configurations retrieved after startup must be read from
+ * {@link com.payintech.play.remoteconfiguration.RemoteConfiguration}.
+ * References are only valid in the current process, configurations
+ * holding them are neither saved as snapshot nor shared with the
+ * other processes of the host.
+ *
+ * @author Thibault Meyer
+ * @version 26.10.18
+ * @since 26.10.18
+ */
+public final class LargeValueStore {
+
+    /**
+     * The prefix of the references.
+     *
+     * @since 26.10.18
+     */
+    private static final String REFERENCE_PREFIX = "offheap-";
+
+    /**
+     * The pattern matching the references.
+     *
+     * @since 26.10.18
+     */
+    private static final Pattern REFERENCE_PATTERN = Pattern.compile(REFERENCE_PREFIX + "[0-9a-f]{64}");
+
+    /**
+     * The stored values, by reference.
+     *
+     * @since 26.10.18
+     */
+    private static final Map<String, StoredValue> VALUES = new ConcurrentHashMap<>();
+
+    /**
+     * The name of the provider using this store.
+     *
+     * @since 26.10.18
+     */
+    private final String providerName;
+
+    /**
+     * Values larger than this threshold (in bytes) are stored off-heap.
+     *
+     * @since 26.10.18
+     */
+    private final long threshold;
+
+    /**
+     * The directory of the memory-mapped files, or {@code null} to
+     * use direct buffers.
+     *
+     * @since 26.10.18
+     */
+    private final Path directory;
+
+    /**
+     * The references used by the configuration being retrieved.
+     *
+     * @since 26.10.18
+     */
+    private volatile Set<String> currentReferences;
+
+    /**
+     * The references used by the last retrieved configuration.
+     *
+     * @since 26.10.18
+     */
+    private Set<String> previousReferences;
+
+    /**
+     * The references used by the first retrieved configuration, never
+     * released, or {@code null} if no configuration has been retrieved.
+     *
+     * @since 26.10.18
+     */
+    private Set<String> pinnedReferences;
+
+    /**
+     * Build a new instance.
+     *
+     * @param providerName The name of the provider using this store
+     * @param threshold    Values larger than this threshold (in bytes) are stored off-heap
+     * @param directory    The directory of the memory-mapped files, or {@code null} to use direct buffers
+     * @since 26.10.18
+     */
+    private LargeValueStore(final String providerName, final long threshold, final Path directory) {
+        this.providerName = providerName;
+        this.threshold = threshold;
+        this.directory = directory;
+        this.currentReferences = ConcurrentHashMap.newKeySet();
+        this.previousReferences = new HashSet<>();
+    }
+
+    /**
+     * Build a new instance from the local configuration.
+     *
+     * @param providerName The name of the provider using this store
+     * @param localConfig  The local configuration
+     * @param path         The path of the large values settings
+     * @return A new instance, or {@code null} if large values are kept on-heap
+     * @since 26.10.18
+     */
+    static LargeValueStore fromConfig(final String providerName, final Config localConfig, final String path) {
+        final long threshold = localConfig.getBytes(path + ".threshold");
+        if (threshold <= 0) {
+            return null;
+        }
+        final String storage = localConfig.getString(path + ".storage");
+        if ("DIRECT".equalsIgnoreCase(storage)) {
+            return new LargeValueStore(providerName, threshold, null);
+        } else if ("MAPPED".equalsIgnoreCase(storage)) {
+            return new LargeValueStore(providerName, threshold, Paths.get(localConfig.getString(path + ".directory")));
+        }
+        throw new RuntimeException("Bad configuration");
+    }
+
+    /**
+     * Check if a configuration value is a reference to a large value.
+     *
+     * @param value The configuration value
+     * @return {@code true} if the value is a reference
+     * @since 26.10.18
+     */
+    public static boolean isReference(final String value) {
+        return value != null && value.startsWith(REFERENCE_PREFIX) && VALUES.containsKey(value);
+    }
+
+    /**
+     * Check if a text holds references to large values (ie: a rendered
+     * configuration).
+     *
+     * @param text The text to check
+     * @return {@code true} if the text holds at least one reference
+     * @since 26.10.18
+     */
+    public static boolean containsReference(final CharSequence text) {
+        final Matcher matcher = REFERENCE_PATTERN.matcher(text);
+        while (matcher.find()) {
+            if (VALUES.containsKey(matcher.group())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Retrieve a large value as a read-only buffer.
+     *
+     * @param reference The reference held by the configuration
+     * @return The value, or {@code null} if the reference is unknown
+     * @since 26.10.18
+     */
+    public static ByteBuffer getBuffer(final String reference) {
+        final StoredValue storedValue = reference == null ? null : VALUES.get(reference);
+        return storedValue == null ? null : storedValue.buffer.asReadOnlyBuffer();
+    }
+
+    /**
+     * Retrieve a large value as a stream.
+     *
+     * @param reference The reference held by the configuration
+     * @return The value, or {@code null} if the reference is unknown
+     * @since 26.10.18
+     */
+    public static InputStream getInputStream(final String reference) {
+        final ByteBuffer buffer = getBuffer(reference);
+        return buffer == null ? null : new ByteBufferInputStream(buffer);
+    }
+
+    /**
+     * Compute the reference of a value.
+     *
+     * @param value The value
+     * @return The reference
+     * @since 26.10.18
+     */
+    private static String toReference(final byte[] value) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-256").digest(value);
+            final StringBuilder sb = new StringBuilder(REFERENCE_PREFIX.length() + digest.length * 2);
+            sb.append(REFERENCE_PREFIX);
+            for (final byte b : digest) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (final NoSuchAlgorithmException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * Remove this store from the owners of a value. The value is
+     * released once it has no owner left. Values of the first
+     * retrieved configuration are kept.
+     *
+     * @param reference The reference of the value
+     * @since 26.10.18
+     */
+    private void release(final String reference) {
+        if (this.pinnedReferences != null && this.pinnedReferences.contains(reference)) {
+            return;
+        }
+        final StoredValue storedValue = VALUES.get(reference);
+        if (storedValue != null) {
+            storedValue.owners.remove(this);
+            if (storedValue.owners.isEmpty()) {
+                VALUES.remove(reference);
+            }
+        }
+    }
+
+    /**
+     * Start retrieving a new configuration. The values stored by an
+     * incomplete retrieval are released.
+     *
+     * @since 26.10.18
+     */
+    synchronized void begin() {
+        synchronized (VALUES) {
+            for (final String reference : this.currentReferences) {
+                if (!this.previousReferences.contains(reference)) {
+                    this.release(reference);
+                }
+            }
+        }
+        this.currentReferences = ConcurrentHashMap.newKeySet();
+    }
+
+    /**
+     * Convert a raw value to a configuration value. Values larger than
+     * the threshold are stored off-heap and replaced by their reference.
+     *
+     * @param value The raw value
+     * @return The configuration value
+     * @throws IOException If the value can't be stored
+     * @since 26.10.18
+     */
+    String toValue(final byte[] value) throws IOException {
+        if (value.length <= this.threshold) {
+            return new String(value, StandardCharsets.UTF_8);
+        }
+        final String reference = toReference(value);
+        synchronized (VALUES) {
+            StoredValue storedValue = VALUES.get(reference);
+            if (storedValue == null) {
+                storedValue = new StoredValue(this.allocate(value));
+                VALUES.put(reference, storedValue);
+            }
+            if (this.currentReferences.add(reference)) {
+                storedValue.owners.add(this);
+            }
+        }
+        return reference;
+    }
+
+    /**
+     * Release the values no longer referenced since the configuration
+     * being retrieved is complete. The values of the first complete
+     * configuration are pinned.
+     *
+     * @since 26.10.18
+     */
+    synchronized void commit() {
+        final Set<String> references = this.currentReferences;
+        if (this.pinnedReferences == null) {
+            this.pinnedReferences = new HashSet<>(references);
+        }
+        final Set<String> storedReferences = new HashSet<>(references);
+        storedReferences.addAll(this.pinnedReferences);
+        long size = 0;
+        synchronized (VALUES) {
+            for (final String reference : this.previousReferences) {
+                if (!references.contains(reference)) {
+                    this.release(reference);
+                }
+            }
+            for (final String reference : storedReferences) {
+                final StoredValue storedValue = VALUES.get(reference);
+                if (storedValue != null) {
+                    size += storedValue.buffer.capacity();
+                }
+            }
+        }
+        this.previousReferences = new HashSet<>(references);
+        RemoteConfigurationMetrics.gauge(this.providerName, Gauge.LARGE_VALUE_BYTES, size);
+    }
+
+    /**
+     * Copy a value out of the Java heap.
+     *
+     * @param value The value
+     * @return The buffer holding the value
+     * @throws IOException If the value can't be written
+     * @since 26.10.18
+     */
+    private ByteBuffer allocate(final byte[] value) throws IOException {
+        if (this.directory == null) {
+            final ByteBuffer buffer = ByteBuffer.allocateDirect(value.length);
+            buffer.put(value).flip();
+            return buffer;
+        }
+        Files.createDirectories(this.directory);
+        final Path file = Files.createTempFile(this.directory, "value-", ".bin");
+        try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            final ByteBuffer source = ByteBuffer.wrap(value);
+            while (source.hasRemaining()) {
+                channel.write(source);
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, value.length);
+        } finally {
+            // The mapping remains valid once the file is deleted
+            if (!file.toFile().delete()) {
+                file.toFile().deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * A value stored off-heap.
+     *
+     * @since 26.10.18
+     */
+    private static final class StoredValue {
+
+        /**
+         * The buffer holding the value.
+         *
+         * @since 26.10.18
+         */
+        private final ByteBuffer buffer;
+
+        /**
+         * The stores referencing the value.
+         *
+         * @since 26.10.18
+         */
+        private final Set<LargeValueStore> owners;
+
+        /**
+         * Build a new instance.
+         *
+         * @param buffer The buffer holding the value
+         * @since 26.10.18
+         */
+        StoredValue(final ByteBuffer buffer) {
+            this.buffer = buffer;
+            this.owners = new HashSet<>();
+        }
+    }
+
+    /**
+     * Stream reading a buffer.
+     *
+     * @since 26.10.18
+     */
+    private static final class ByteBufferInputStream extends InputStream {
+
+        /**
+         * The buffer to read.
+         *
+         * @since 26.10.18
+         */
+        private final ByteBuffer buffer;
+
+        /**
+         * Build a new instance.
+         *
+         * @param buffer The buffer to read
+         * @since 26.10.18
+         */
+        ByteBufferInputStream(final ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return this.buffer.hasRemaining() ? this.buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!this.buffer.hasRemaining()) {
+                return -1;
+            }
+            final int length = Math.min(len, this.buffer.remaining());
+            this.buffer.get(b, off, length);
+            return length;
+        }
+
+        @Override
+        public int available() {
+            return this.buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 PayinTech
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.payintech.play.remoteconfiguration.provider;
+
+import com.typesafe.config.Config;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Key/Value couples whose values are only retrieved on first access.
+ * Keys are known in advance; values are retrieved by batches and kept
+ * in cache until the keys are reset.
+ *
+ * @author Thibault Meyer
+ * @version 26.10.18
+ * @since 26.10.18
+ */
+public final class LazyKeyValueStore {
+
+    /**
+     * The provider name.
+     *
+     * @since 26.10.18
+     */
+    private final String providerName;
+
+    /**
+     * Retrieves values by batches.
+     *
+     * @since 26.10.18
+     */
+    private final BatchFetcher batchFetcher;
+
+    /**
+     * Maximum number of values retrieved at once.
+     *
+     * @since 26.10.18
+     */
+    private final int batchSize;
+
+    /**
+     * The retrieved values, by configuration path. Values removed
+     * since the keys have been listed are empty.
+     *
+     * @since 26.10.18
+     */
+    private final ConcurrentMap<String, Optional<String>> values;
+
+    /**
+     * The remote keys, by configuration path.
+     *
+     * @since 26.10.18
+     */
+    private volatile Map<String, String> keys;
+
+    /**
+     * Build a new instance.
+     *
+     * @param providerName The provider name
+     * @param batchFetcher Retrieves values by batches
+     * @param batchSize    Maximum number of values retrieved at once
+     * @since 26.10.18
+     */
+    LazyKeyValueStore(final String providerName, final BatchFetcher batchFetcher, final int batchSize) {
+        this.providerName = providerName;
+        this.batchFetcher = batchFetcher;
+        this.batchSize = batchSize;
+        this.values = new ConcurrentHashMap<>();
+        this.keys = Collections.emptyMap();
+    }
+
+    /**
+     * Replace the known keys. All cached values are discarded.
+     *
+     * @param newKeys The remote keys, by configuration path
+     * @since 26.10.18
+     */
+    synchronized void reset(final Map<String, String> newKeys) {
+        this.keys = Collections.unmodifiableMap(newKeys);
+        this.values.clear();
+    }
+
+    /**
+     * Retrieve all known configuration paths.
+     *
+     * @return The configuration paths
+     * @since 26.10.18
+     */
+    public Set<String> getPaths() {
+        return this.keys.keySet();
+    }
+
+    /**
+     * Check if a value exists at the given configuration path
+     * or under it. Values are not retrieved.
+     *
+     * @param path The configuration path
+     * @return {@code true} if at least one value exists
+     * @since 26.10.18
+     */
+    public boolean hasPath(final String path) {
+        if (this.keys.containsKey(path)) {
+            return true;
+        }
+        final String pathPrefix = path + ".";
+        return this.keys.keySet().stream().anyMatch(p -> p.startsWith(pathPrefix));
+    }
+
+    /**
+     * Retrieve the configuration located at the given path. Missing
+     * values are retrieved by batches. The returned configuration
+     * only contains values located at or under the given path.
+     *
+     * @param path The configuration path, empty to retrieve everything
+     * @return The configuration
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    public Config getConfig(final String path) throws IOException {
+        final Map<String, String> currentKeys = this.keys;
+        final String pathPrefix = path + ".";
+        final List<String> paths = new ArrayList<>();
+        for (final String p : currentKeys.keySet()) {
+            if (path.isEmpty() || p.equals(path) || p.startsWith(pathPrefix)) {
+                paths.add(p);
+            }
+        }
+        this.prefetch(paths);
+        final KeyValueConfigBuilder builder = new KeyValueConfigBuilder(this.providerName);
+        for (final String p : paths) {
+            final Optional<String> value = this.values.get(p);
+            if (value != null && value.isPresent()) {
+                builder.put(p, value.get());
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Retrieve the values of the given configuration paths
+     * which are not already in cache.
+     *
+     * @param paths The configuration paths
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    public void prefetch(final Collection<String> paths) throws IOException {
+        final Map<String, String> currentKeys = this.keys;
+        final List<String> missingKeys = new ArrayList<>();
+        final Map<String, String> pathByKey = new HashMap<>();
+        for (final String path : paths) {
+            final String key = currentKeys.get(path);
+            if (key != null && !this.values.containsKey(path)) {
+                missingKeys.add(key);
+                pathByKey.put(key, path);
+            }
+        }
+        for (int idx = 0; idx < missingKeys.size(); idx += this.batchSize) {
+            final List<String> batch = missingKeys.subList(idx, Math.min(idx + this.batchSize, missingKeys.size()));
+            final Map<String, String> fetchedValues = this.batchFetcher.fetch(batch);
+            synchronized (this) {
+                if (currentKeys != this.keys) {
+                    // Keys have been reset meanwhile, values may be outdated
+                    return;
+                }
+                for (final String key : batch) {
+                    this.values.put(pathByKey.get(key), Optional.ofNullable(fetchedValues.get(key)));
+                }
+            }
+        }
+    }
+
+    /**
+     * Retrieves values by batches.
+     *
+     * @since 26.10.18
+     */
+    @FunctionalInterface
+    interface BatchFetcher {
+
+        /**
+         * Retrieve the values of the given remote keys.
+         *
+         * @param keys The remote keys
+         * @return The values, by remote key. Missing keys are not returned
+         * @throws IOException When I/O related errors occur
+         * @since 26.10.18
+         */
+        Map<String, String> fetch(final List<String> keys) throws IOException;
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 PayinTech
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.payintech.play.remoteconfiguration.provider;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs the requests of a provider concurrently, with a bounded number
+ * of simultaneous requests. Results are returned in the order of the
+ * requests. The first failure cancels the remaining requests.
+ *
+ * @author Thibault Meyer
+ * @version 26.10.18
+ * @since 26.10.18
+ */
+final class ParallelFetcher {
+
+    /**
+     * Build a new instance.
+     *
+     * @since 26.10.18
+     */
+    private ParallelFetcher() {
+    }
+
+    /**
+     * Run the given requests.
+     *
+     * @param providerName The provider name
+     * @param parallelism  Maximum number of simultaneous requests
+     * @param tasks        The requests to run
+     * @param <T>          The type of the request results
+     * @return The results, in the order of the requests
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    static <T> List<T> invokeAll(final String providerName,
+                                 final int parallelism,
+                                 final List<Callable<T>> tasks) throws IOException {
+        if (parallelism < 1) {
+            throw new RuntimeException("Bad configuration");
+        }
+        final List<T> results = new ArrayList<>(tasks.size());
+        if (tasks.size() == 1 || parallelism == 1) {
+            for (final Callable<T> task : tasks) {
+                try {
+                    results.add(task.call());
+                } catch (final IOException | RuntimeException ex) {
+                    throw ex;
+                } catch (final Exception ex) {
+                    throw new IOException(ex);
+                }
+            }
+            return results;
+        }
+        final ExecutorService executorService = Executors.newFixedThreadPool(
+            Math.min(parallelism, tasks.size()),
+            runnable -> {
+                final Thread thread = new Thread(runnable, "remote-configuration-fetch");
+                thread.setDaemon(true);
+                return thread;
+            }
+        );
+        try {
+            final List<Future<T>> futures = new ArrayList<>(tasks.size());
+            for (final Callable<T> task : tasks) {
+                futures.add(executorService.submit(task));
+            }
+            for (final Future<T> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (final ExecutionException ex) {
+            final Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(String.format("Provider %s request failed", providerName), cause);
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted");
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+}
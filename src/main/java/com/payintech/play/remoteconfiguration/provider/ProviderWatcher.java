@@ -0,0 +1,194 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 PayinTech
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.payintech.play.remoteconfiguration.provider;
+
+import com.payintech.play.remoteconfiguration.metrics.Counter;
+import com.payintech.play.remoteconfiguration.metrics.RemoteConfigurationMetrics;
+import play.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Runs a provider watch loop in a dedicated daemon thread until closed.
+ * Each round is expected to block until the remote configuration changes
+ * or until a provider specific wait time is reached.
+ *
+ * @author Thibault Meyer
+ * @version 26.10.18
+ * @since 26.10.18
+ */
+final class ProviderWatcher implements Closeable {
+
+    /**
+     * The provider name (used for logging).
+     *
+     * @since 26.10.18
+     */
+    private final String providerName;
+
+    /**
+     * The watch round to execute in loop.
+     *
+     * @since 26.10.18
+     */
+    private final WatchRound watchRound;
+
+    /**
+     * Delay (in milliseconds) to wait after a failed round.
+     *
+     * @since 26.10.18
+     */
+    private final long errorDelay;
+
+    /**
+     * The thread running the watch loop.
+     *
+     * @since 26.10.18
+     */
+    private final Thread thread;
+
+    /**
+     * Is the watcher still running?
+     *
+     * @since 26.10.18
+     */
+    private volatile boolean running;
+
+    /**
+     * Action to call to abort the in-flight request.
+     *
+     * @since 26.10.18
+     */
+    private volatile Runnable abortAction;
+
+    /**
+     * Build a new instance.
+     *
+     * @param providerName The provider name
+     * @param watchRound   The watch round to execute in loop
+     * @param errorDelay   Delay (in milliseconds) to wait after a failed round
+     * @since 26.10.18
+     */
+    ProviderWatcher(final String providerName, final WatchRound watchRound, final long errorDelay) {
+        this.providerName = providerName;
+        this.watchRound = watchRound;
+        this.errorDelay = errorDelay;
+        this.running = true;
+        this.thread = new Thread(this::loop, "remote-configuration-watcher");
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * Start the watch loop.
+     *
+     * @return The current instance
+     * @since 26.10.18
+     */
+    ProviderWatcher start() {
+        this.thread.start();
+        return this;
+    }
+
+    /**
+     * Check if the watcher is still running. Rounds must not
+     * publish any configuration once the watcher is closed.
+     *
+     * @return {@code true} if the watcher is still running
+     * @since 26.10.18
+     */
+    boolean isRunning() {
+        return this.running;
+    }
+
+    /**
+     * Set the action to call to abort the in-flight request
+     * when the watcher is closed.
+     *
+     * @param abortAction The action to call, can be {@code null}
+     * @since 26.10.18
+     */
+    void setAbortAction(final Runnable abortAction) {
+        this.abortAction = abortAction;
+    }
+
+    /**
+     * The watch loop.
+     *
+     * @since 26.10.18
+     */
+    private void loop() {
+        Logger.debug("Provider {}> Watcher started", this.providerName);
+        while (this.running) {
+            try {
+                this.watchRound.execute(this);
+            } catch (final InterruptedException ignore) {
+                break;
+            } catch (final IOException | RuntimeException ex) {
+                if (!this.running) {
+                    break;
+                }
+                Logger.warn("Provider {}> Can't watch remote configuration: {}", this.providerName, ex.getMessage());
+                RemoteConfigurationMetrics.count(this.providerName, Counter.RETRIES, 1);
+                try {
+                    Thread.sleep(this.errorDelay);
+                } catch (final InterruptedException ignore) {
+                    break;
+                }
+            } finally {
+                this.abortAction = null;
+            }
+        }
+        Logger.debug("Provider {}> Watcher stopped", this.providerName);
+    }
+
+    @Override
+    public void close() {
+        this.running = false;
+        final Runnable action = this.abortAction;
+        if (action != null) {
+            action.run();
+        }
+        this.thread.interrupt();
+    }
+
+    /**
+     * A single round of a watch loop.
+     *
+     * @since 26.10.18
+     */
+    @FunctionalInterface
+    interface WatchRound {
+
+        /**
+         * Execute the round.
+         *
+         * @param watcher The watcher running this round
+         * @throws IOException          When I/O related errors occur
+         * @throws InterruptedException When the watcher is closed
+         * @since 26.10.18
+         */
+        void execute(final ProviderWatcher watcher) throws IOException, InterruptedException;
+    }
+}
@@ -0,0 +1,316 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 PayinTech
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.payintech.play.remoteconfiguration.provider;
+
+import com.payintech.play.remoteconfiguration.metrics.Counter;
+import com.payintech.play.remoteconfiguration.metrics.Phase;
+import com.payintech.play.remoteconfiguration.metrics.RemoteConfigurationMetrics;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Minimal Redis client speaking the RESP protocol over a single
+ * connection. Commands are buffered until {@link #flush()}, so many
+ * commands can be sent at once (pipelining) and their replies read in
+ * order with {@link #read()}. Replies are returned as {@code String}
+ * (simple strings), {@code Long} (integers), {@code byte[]} (bulk
+ * strings) and {@code List<Object>} (arrays). Missing values are
+ * returned as {@code null}, errors are thrown as {@code IOException}.
+ *
+ * @author Thibault Meyer
+ * @version 26.10.18
+ * @since 26.10.18
+ */
+final class RedisConnection implements Closeable {
+
+    /**
+     * The line terminator.
+     *
+     * @since 26.10.18
+     */
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    /**
+     * The name of the provider using this connection.
+     *
+     * @since 26.10.18
+     */
+    private final String providerName;
+
+    /**
+     * The socket.
+     *
+     * @since 26.10.18
+     */
+    private final Socket socket;
+
+    /**
+     * The buffered input stream.
+     *
+     * @since 26.10.18
+     */
+    private final InputStream input;
+
+    /**
+     * The buffered output stream.
+     *
+     * @since 26.10.18
+     */
+    private final OutputStream output;
+
+    /**
+     * The number of bytes of the reply being read.
+     *
+     * @since 26.10.18
+     */
+    private long receivedBytes;
+
+    /**
+     * Open a new connection.
+     *
+     * @param providerName   The name of the provider using this connection
+     * @param host           The Redis host
+     * @param port           The Redis port
+     * @param connectTimeout Maximum time (in milliseconds) to establish the connection
+     * @param readTimeout    Maximum time (in milliseconds) to wait for data, 0 to wait forever
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    RedisConnection(final String providerName,
+                    final String host,
+                    final int port,
+                    final int connectTimeout,
+                    final int readTimeout) throws IOException {
+        this.providerName = providerName;
+        this.socket = new Socket();
+        try {
+            final long startTime = System.nanoTime();
+            this.socket.connect(new InetSocketAddress(host, port), connectTimeout);
+            RemoteConfigurationMetrics.timing(providerName, Phase.CONNECT, startTime);
+            this.socket.setSoTimeout(readTimeout);
+            this.socket.setTcpNoDelay(true);
+            this.socket.setKeepAlive(true);
+            this.input = new BufferedInputStream(this.socket.getInputStream(), 64 * 1024);
+            this.output = new BufferedOutputStream(this.socket.getOutputStream(), 64 * 1024);
+        } catch (final IOException ex) {
+            this.socket.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Authenticate and select the database. Both commands are sent at
+     * once.
+     *
+     * @param password The password, can be empty
+     * @param database The database number
+     * @return The current instance
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    RedisConnection initialize(final String password, final int database) throws IOException {
+        int replies = 0;
+        if (!password.isEmpty()) {
+            this.send("AUTH", password);
+            replies += 1;
+        }
+        if (database != 0) {
+            this.send("SELECT", String.valueOf(database));
+            replies += 1;
+        }
+        this.flush();
+        for (int i = 0; i < replies; ++i) {
+            this.read();
+        }
+        return this;
+    }
+
+    /**
+     * Buffer a command. Nothing is sent until {@link #flush()}.
+     *
+     * @param args The command and its arguments
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    void send(final String... args) throws IOException {
+        this.output.write('*');
+        this.output.write(String.valueOf(args.length).getBytes(StandardCharsets.US_ASCII));
+        this.output.write(CRLF);
+        for (final String arg : args) {
+            final byte[] bytes = arg.getBytes(StandardCharsets.UTF_8);
+            this.output.write('$');
+            this.output.write(String.valueOf(bytes.length).getBytes(StandardCharsets.US_ASCII));
+            this.output.write(CRLF);
+            this.output.write(bytes);
+            this.output.write(CRLF);
+        }
+    }
+
+    /**
+     * Buffer a command made of a name and a list of arguments.
+     *
+     * @param command The command name
+     * @param args    The arguments
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    void send(final String command, final List<String> args) throws IOException {
+        final String[] commandArgs = new String[args.size() + 1];
+        commandArgs[0] = command;
+        for (int i = 0; i < args.size(); ++i) {
+            commandArgs[i + 1] = args.get(i);
+        }
+        this.send(commandArgs);
+    }
+
+    /**
+     * Send all buffered commands.
+     *
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    void flush() throws IOException {
+        this.output.flush();
+    }
+
+    /**
+     * Check if a reply has already been received and can be read
+     * without blocking.
+     *
+     * @return {@code true} if data is available
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    boolean isReplyAvailable() throws IOException {
+        return this.input.available() > 0;
+    }
+
+    /**
+     * Read the next reply. The received bytes are recorded once the
+     * reply has been read.
+     *
+     * @return The reply
+     * @throws IOException When I/O related errors occur or when Redis returns an error
+     * @since 26.10.18
+     */
+    Object read() throws IOException {
+        try {
+            return this.readReply();
+        } finally {
+            RemoteConfigurationMetrics.count(this.providerName, Counter.RECEIVED_BYTES, this.receivedBytes);
+            this.receivedBytes = 0;
+        }
+    }
+
+    /**
+     * Read a reply or an element of a multi-bulk reply.
+     *
+     * @return The reply
+     * @throws IOException When I/O related errors occur or when Redis returns an error
+     * @since 26.10.18
+     */
+    private Object readReply() throws IOException {
+        final int type = this.input.read();
+        if (type != -1) {
+            this.receivedBytes += 1;
+        }
+        final String line = this.readLine();
+        switch (type) {
+            case '+':
+                return line;
+            case '-':
+                throw new IOException("Redis error: " + line);
+            case ':':
+                return Long.parseLong(line);
+            case '$':
+                final int length = Integer.parseInt(line);
+                if (length < 0) {
+                    return null;
+                }
+                final byte[] value = new byte[length];
+                int offset = 0;
+                while (offset < length) {
+                    final int count = this.input.read(value, offset, length - offset);
+                    if (count < 0) {
+                        throw new EOFException("Connection closed by Redis");
+                    }
+                    offset += count;
+                }
+                this.receivedBytes += length;
+                this.readLine();
+                return value;
+            case '*':
+                final int size = Integer.parseInt(line);
+                if (size < 0) {
+                    return null;
+                }
+                final List<Object> values = new ArrayList<>(size);
+                for (int i = 0; i < size; ++i) {
+                    values.add(this.readReply());
+                }
+                return values;
+            case -1:
+                throw new EOFException("Connection closed by Redis");
+            default:
+                throw new IOException("Unexpected Redis reply type: " + (char) type);
+        }
+    }
+
+    /**
+     * Read a line of the protocol.
+     *
+     * @return The line, without terminator
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    private String readLine() throws IOException {
+        final StringBuilder sb = new StringBuilder();
+        int c = this.input.read();
+        while (c != '\r' && c != -1) {
+            sb.append((char) c);
+            c = this.input.read();
+        }
+        if (c == -1 || this.input.read() != '\n') {
+            throw new EOFException("Connection closed by Redis");
+        }
+        this.receivedBytes += sb.length() + 2;
+        return sb.toString();
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.socket.close();
+    }
+}
@@ -0,0 +1,377 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 PayinTech
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.payintech.play.remoteconfiguration.provider;
+
+import com.payintech.play.remoteconfiguration.metrics.Phase;
+import com.payintech.play.remoteconfiguration.metrics.RemoteConfigurationMetrics;
+import com.typesafe.config.Config;
+import play.Logger;
+import play.Mode;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Configuration provider implementation for Redis. Values are read
+ * from the keys located under a prefix ("prefix:db:default:url" is
+ * read as "db.default.url"), or from the fields of a hash. Keys are
+ * listed with {@code SCAN} and each page of keys is retrieved with a
+ * single {@code MGET} sent together with the request of the next page,
+ * so loading the whole keyspace takes one round trip per page. Live
+ * reload relies on keyspace notifications: only the notified keys are
+ * read again.
+ *
+ * @author Thibault Meyer
+ * @version 26.10.18
+ * @since 26.10.18
+ */
+public class RedisProvider implements RemoteConfigProvider {
+
+    /**
+     * The retrieved values, indexed by Redis key (or hash field).
+     *
+     * @since 26.10.18
+     */
+    private final NavigableMap<String, String> keyValues;
+
+    /**
+     * Build a new instance.
+     *
+     * @since 26.10.18
+     */
+    public RedisProvider() {
+        this.keyValues = new TreeMap<>();
+    }
+
+    @Override
+    public String getShortName() {
+        return "REDIS";
+    }
+
+    @Override
+    public String getName() {
+        return "Redis";
+    }
+
+    /**
+     * Cast a reply to an array.
+     *
+     * @param reply The reply
+     * @return The array
+     * @since 26.10.18
+     */
+    @SuppressWarnings("unchecked")
+    private static List<Object> asList(final Object reply) {
+        return reply == null ? Collections.emptyList() : (List<Object>) reply;
+    }
+
+    /**
+     * Cast a reply to a string.
+     *
+     * @param reply The reply
+     * @return The string, or {@code null} if the value doesn't exist
+     * @since 26.10.18
+     */
+    private static String asString(final Object reply) {
+        if (reply instanceof byte[]) {
+            return new String((byte[]) reply, StandardCharsets.UTF_8);
+        }
+        return reply == null ? null : reply.toString();
+    }
+
+    /**
+     * Escape the special characters of a {@code SCAN} pattern.
+     *
+     * @param value The value to escape
+     * @return The escaped value
+     * @since 26.10.18
+     */
+    private static String escapePattern(final String value) {
+        return value.replaceAll("([*?\\[\\]\\\\])", "\\\\$1");
+    }
+
+    /**
+     * Retrieve the prefix of the keys to read.
+     *
+     * @param localConfig The local configuration
+     * @return The key prefix, including the separator, or an empty string to read all keys
+     * @since 26.10.18
+     */
+    private static String getKeyPrefix(final Config localConfig) {
+        final String prefix = localConfig.getString("remote-configuration.redis.prefix").trim();
+        return prefix.isEmpty() ? "" : prefix + localConfig.getString("remote-configuration.redis.separator");
+    }
+
+    /**
+     * Open a connection to the Redis server.
+     *
+     * @param localConfig The local configuration
+     * @param readTimeout Maximum time (in milliseconds) to wait for data, 0 to wait forever
+     * @return The connection
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    private RedisConnection openConnection(final Config localConfig, final int readTimeout) throws IOException {
+        final RedisConnection conn = new RedisConnection(
+            this.getName(),
+            localConfig.getString("remote-configuration.redis.host"),
+            localConfig.getInt("remote-configuration.redis.port"),
+            (int) localConfig.getDuration("remote-configuration.redis.connectTimeout", TimeUnit.MILLISECONDS),
+            readTimeout
+        );
+        try {
+            return conn.initialize(
+                localConfig.getString("remote-configuration.redis.password"),
+                localConfig.getInt("remote-configuration.redis.database")
+            );
+        } catch (final IOException ex) {
+            conn.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Put the values returned by {@code MGET}. Missing values are
+     * removed.
+     *
+     * @param keys   The requested keys
+     * @param reply  The {@code MGET} reply
+     * @param target The map where to put the values
+     * @return {@code true} if the map has changed
+     * @since 26.10.18
+     */
+    private static boolean putValues(final List<String> keys, final Object reply, final Map<String, String> target) {
+        final List<Object> values = asList(reply);
+        boolean changed = false;
+        for (int i = 0; i < keys.size(); ++i) {
+            final String value = asString(values.get(i));
+            final String previous = value == null ? target.remove(keys.get(i)) : target.put(keys.get(i), value);
+            changed |= !Objects.equals(previous, value);
+        }
+        return changed;
+    }
+
+    /**
+     * Read all keys matching a pattern. The values of a page are
+     * retrieved with the request of the next page.
+     *
+     * @param conn      The connection
+     * @param pattern   The pattern of the keys
+     * @param scanCount The number of keys to scan by request
+     * @param target    The map where to put the values
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    private static void scanKeys(final RedisConnection conn,
+                                 final String pattern,
+                                 final String scanCount,
+                                 final Map<String, String> target) throws IOException {
+        String cursor = "0";
+        List<String> pendingKeys = Collections.emptyList();
+        do {
+            conn.send("SCAN", cursor, "MATCH", pattern, "COUNT", scanCount);
+            if (!pendingKeys.isEmpty()) {
+                conn.send("MGET", pendingKeys);
+            }
+            conn.flush();
+            final List<Object> page = asList(conn.read());
+            if (!pendingKeys.isEmpty()) {
+                putValues(pendingKeys, conn.read(), target);
+            }
+            cursor = asString(page.get(0));
+            pendingKeys = new ArrayList<>();
+            for (final Object key : asList(page.get(1))) {
+                pendingKeys.add(asString(key));
+            }
+        } while (!"0".equals(cursor));
+        if (!pendingKeys.isEmpty()) {
+            conn.send("MGET", pendingKeys);
+            conn.flush();
+            putValues(pendingKeys, conn.read(), target);
+        }
+    }
+
+    /**
+     * Read all fields of a hash.
+     *
+     * @param conn      The connection
+     * @param hash      The hash
+     * @param scanCount The number of fields to scan by request
+     * @param target    The map where to put the values
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    private static void scanHash(final RedisConnection conn,
+                                 final String hash,
+                                 final String scanCount,
+                                 final Map<String, String> target) throws IOException {
+        String cursor = "0";
+        do {
+            conn.send("HSCAN", hash, cursor, "COUNT", scanCount);
+            conn.flush();
+            final List<Object> page = asList(conn.read());
+            cursor = asString(page.get(0));
+            final List<Object> fieldValues = asList(page.get(1));
+            for (int i = 0; i + 1 < fieldValues.size(); i += 2) {
+                target.put(asString(fieldValues.get(i)), asString(fieldValues.get(i + 1)));
+            }
+        } while (!"0".equals(cursor));
+    }
+
+    /**
+     * Retrieve all values and replace the current ones.
+     *
+     * @param localConfig The local configuration
+     * @param conn        The connection
+     * @return {@code true} if the values have changed
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    private boolean fetchKeyValues(final Config localConfig, final RedisConnection conn) throws IOException {
+        final String hash = localConfig.getString("remote-configuration.redis.hash").trim();
+        final String scanCount = String.valueOf(localConfig.getInt("remote-configuration.redis.scanCount"));
+        final Map<String, String> fetchedKeyValues = new TreeMap<>();
+        final long startTime = System.nanoTime();
+        if (hash.isEmpty()) {
+            scanKeys(conn, escapePattern(getKeyPrefix(localConfig)) + "*", scanCount, fetchedKeyValues);
+        } else {
+            scanHash(conn, hash, scanCount, fetchedKeyValues);
+        }
+        RemoteConfigurationMetrics.timing(this.getName(), Phase.DOWNLOAD, startTime);
+        if (fetchedKeyValues.equals(this.keyValues)) {
+            return false;
+        }
+        this.keyValues.clear();
+        this.keyValues.putAll(fetchedKeyValues);
+        return true;
+    }
+
+    /**
+     * Build the configuration from the retrieved values.
+     *
+     * @param localConfig The local configuration
+     * @return The configuration
+     * @since 26.10.18
+     */
+    private Config buildConfiguration(final Config localConfig) {
+        final String separator = localConfig.getString("remote-configuration.redis.separator");
+        final int keyPrefixLength = localConfig.getString("remote-configuration.redis.hash").trim().isEmpty()
+            ? getKeyPrefix(localConfig).length()
+            : 0;
+        final KeyValueConfigBuilder builder = new KeyValueConfigBuilder(this.getName());
+        for (final Map.Entry<String, String> entry : this.keyValues.entrySet()) {
+            final String relativeKey = entry.getKey().substring(keyPrefixLength);
+            builder.put(separator.isEmpty() ? relativeKey : relativeKey.replace(separator, "."), entry.getValue());
+        }
+        return builder.build();
+    }
+
+    @Override
+    public String getSourceIdentifier(final Config localConfig) {
+        final String hash = localConfig.getString("remote-configuration.redis.hash").trim();
+        return String.format(
+            "%s:%d/%d/%s",
+            localConfig.getString("remote-configuration.redis.host"),
+            localConfig.getInt("remote-configuration.redis.port"),
+            localConfig.getInt("remote-configuration.redis.database"),
+            hash.isEmpty() ? getKeyPrefix(localConfig) + "*" : hash
+        );
+    }
+
+    @Override
+    public Config loadConfiguration(final Mode mode, final Config localConfig) throws IOException {
+        final int readTimeout = (int) localConfig.getDuration("remote-configuration.redis.readTimeout", TimeUnit.MILLISECONDS);
+        try (final RedisConnection conn = this.openConnection(localConfig, readTimeout)) {
+            this.fetchKeyValues(localConfig, conn);
+        }
+        return this.buildConfiguration(localConfig);
+    }
+
+    @Override
+    public Closeable watchConfiguration(final Mode mode, final Config localConfig, final Consumer<Config> consumer) {
+        if (!localConfig.getBoolean("remote-configuration.redis.watch.enabled")) {
+            return null;
+        }
+        final int readTimeout = (int) localConfig.getDuration("remote-configuration.redis.readTimeout", TimeUnit.MILLISECONDS);
+        final long errorDelay = localConfig.getDuration("remote-configuration.redis.watch.errorDelay", TimeUnit.MILLISECONDS);
+        final String hash = localConfig.getString("remote-configuration.redis.hash").trim();
+        final String channelPrefix = "__keyspace@" + localConfig.getInt("remote-configuration.redis.database") + "__:";
+        final String channelPattern = channelPrefix + (hash.isEmpty() ? escapePattern(getKeyPrefix(localConfig)) + "*" : escapePattern(hash));
+        return new ProviderWatcher(this.getName(), watcher -> {
+            try (final RedisConnection subscriber = this.openConnection(localConfig, 0);
+                 final RedisConnection conn = this.openConnection(localConfig, readTimeout)) {
+                // Closing the subscriber from another thread unblocks the pending read
+                final Closeable subscription = subscriber;
+                watcher.setAbortAction(() -> {
+                    try {
+                        subscription.close();
+                    } catch (final IOException ignore) {
+                        // Already closed
+                    }
+                });
+                subscriber.send("PSUBSCRIBE", channelPattern);
+                subscriber.flush();
+                subscriber.read();
+                // Changes may have been missed before the subscription
+                boolean changed = this.fetchKeyValues(localConfig, conn);
+                while (watcher.isRunning()) {
+                    if (changed) {
+                        Logger.debug("Provider {}> Configuration changed", this.getName());
+                        consumer.accept(this.buildConfiguration(localConfig));
+                    }
+                    // Wait for a notification, then take all notifications already received
+                    final Set<String> changedKeys = new TreeSet<>();
+                    do {
+                        final List<Object> message = asList(subscriber.read());
+                        if (message.size() == 4 && "pmessage".equals(asString(message.get(0)))) {
+                            changedKeys.add(asString(message.get(2)).substring(channelPrefix.length()));
+                        }
+                    } while (subscriber.isReplyAvailable());
+                    if (!watcher.isRunning() || changedKeys.isEmpty()) {
+                        changed = false;
+                    } else if (hash.isEmpty()) {
+                        final List<String> keys = new ArrayList<>(changedKeys);
+                        conn.send("MGET", keys);
+                        conn.flush();
+                        changed = putValues(keys, conn.read(), this.keyValues);
+                    } else {
+                        changed = this.fetchKeyValues(localConfig, conn);
+                    }
+                }
+            }
+        }, errorDelay).start();
+    }
+}
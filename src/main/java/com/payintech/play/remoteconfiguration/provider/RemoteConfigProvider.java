@@ -26,13 +26,18 @@ package com.payintech.play.remoteconfiguration.provider;
 import com.typesafe.config.Config;
 import play.Mode;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 
 /**
  * Remote configuration provider.
  *
  * @author Thibault Meyer
- * @version 17.08.20
+ * @version 26.10.18
  * @since 17.08.20
  */
 public interface RemoteConfigProvider {
@@ -54,6 +59,32 @@ public interface RemoteConfigProvider {
      */
     String getName();
 
+    /**
+     * Retrieve the identifier of the remote configuration source
+     * (ie: the prefix). Two sources having the same identifier are
+     * expected to return the same configuration.
+     *
+     * @param localConfig The local configuration
+     * @return The source identifier
+     * @since 26.10.18
+     */
+    default String getSourceIdentifier(final Config localConfig) {
+        return "";
+    }
+
+    /**
+     * Check if the retrieved configuration can be written on the local
+     * filesystem (snapshots, host-level coalescing). Providers returning
+     * secrets should not allow it by default.
+     *
+     * @param localConfig The local configuration
+     * @return {@code true} if the configuration can be written on disk
+     * @since 26.10.18
+     */
+    default boolean isPersistent(final Config localConfig) {
+        return true;
+    }
+
     /**
      * Retrieve configuration from the provider.
      *
@@ -64,4 +95,58 @@ public interface RemoteConfigProvider {
      * @since 17.08.20
      */
     Config loadConfiguration(final Mode mode, final Config localConfig) throws IOException;
+
+    /**
+     * Retrieve configuration from the provider without blocking the
+     * caller. The default implementation runs
+     * {@link #loadConfiguration(Mode, Config)} on the given executor.
+     * Providers able to issue non-blocking requests can override it.
+     *
+     * @param mode        The current running mode
+     * @param localConfig The local configuration
+     * @param executor    The executor to use for blocking work
+     * @return The retrieved configuration, completed exceptionally on failure
+     * @since 26.10.18
+     */
+    default CompletionStage<Config> loadConfigurationAsync(final Mode mode,
+                                                           final Config localConfig,
+                                                           final Executor executor) {
+        final CompletableFuture<Config> future = new CompletableFuture<>();
+        executor.execute(() -> {
+            try {
+                future.complete(this.loadConfiguration(mode, localConfig));
+            } catch (final Throwable ex) {
+                future.completeExceptionally(ex);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Retrieve the Key/Value couples whose values are only retrieved
+     * on demand. Providers not supporting lazy loading don't have to
+     * implement this method.
+     *
+     * @return The lazy Key/Value store, or {@code null} if lazy loading is not supported or disabled
+     * @since 26.10.18
+     */
+    default LazyKeyValueStore getLazyKeyValueStore() {
+        return null;
+    }
+
+    /**
+     * Watch the remote configuration for changes. Each time a change
+     * is detected, the new configuration is given to the consumer.
+     * Providers not supporting live reload don't have to implement
+     * this method.
+     *
+     * @param mode        The current running mode
+     * @param localConfig The local configuration
+     * @param consumer    The consumer to call with the new configuration
+     * @return A handle to stop watching, or {@code null} if the watch is not supported or disabled
+     * @since 26.10.18
+     */
+    default Closeable watchConfiguration(final Mode mode, final Config localConfig, final Consumer<Config> consumer) {
+        return null;
+    }
 }
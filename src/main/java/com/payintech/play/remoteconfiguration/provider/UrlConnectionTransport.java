@@ -0,0 +1,300 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 PayinTech
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.payintech.play.remoteconfiguration.provider;
+
+import com.payintech.play.remoteconfiguration.metrics.Phase;
+import com.payintech.play.remoteconfiguration.metrics.RemoteConfigurationMetrics;
+import play.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Default HTTP transport, based on {@code HttpURLConnection}. Connections
+ * are kept alive and reused by the JDK as long as responses are fully
+ * read: response bodies are drained when the response is closed. The
+ * default SSL socket factory is shared, so TLS sessions are resumed.
+ * Deadlines are enforced by a single shared daemon thread.
+ *
+ * @author Thibault Meyer
+ * @version 26.10.18
+ * @since 26.10.18
+ */
+public final class UrlConnectionTransport implements HttpTransport {
+
+    /**
+     * Maximum number of remaining bytes to read from an unread
+     * response body to be able to reuse the connection.
+     *
+     * @since 26.10.18
+     */
+    private static final int DRAIN_LIMIT = 64 * 1024;
+
+    /**
+     * Scheduler used to abort the requests exceeding their deadline.
+     *
+     * @since 26.10.18
+     */
+    private static final ScheduledExecutorService DEADLINE_SCHEDULER = Executors.newSingleThreadScheduledExecutor(
+        runnable -> {
+            final Thread thread = new Thread(runnable, "remote-configuration-deadline");
+            thread.setDaemon(true);
+            return thread;
+        }
+    );
+
+    @Override
+    public String getShortName() {
+        return "URL_CONNECTION";
+    }
+
+    @Override
+    public HttpResponse execute(final HttpRequest request) throws IOException {
+        if (request.isCancelled()) {
+            throw new IOException("Request cancelled");
+        }
+        Logger.debug("Provider {}> {}", request.getOrigin(), request.getUrl().toString());
+        final HttpURLConnection conn = (HttpURLConnection) request.getUrl().openConnection();
+        conn.setRequestMethod(request.getMethod());
+        conn.setConnectTimeout((int) request.getConnectTimeout());
+        conn.setReadTimeout((int) request.getReadTimeout());
+        conn.setRequestProperty("Accept-Encoding", HttpTransfer.ACCEPT_ENCODING);
+        for (final Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            conn.setRequestProperty(header.getKey(), header.getValue());
+        }
+        final UrlConnectionResponse response = new UrlConnectionResponse(request, conn);
+        request.setCancelAction(response::abort);
+        if (request.getDeadline() > 0) {
+            response.deadlineTask = DEADLINE_SCHEDULER.schedule(
+                response::expire,
+                request.getDeadline(),
+                TimeUnit.MILLISECONDS
+            );
+        }
+        try {
+            conn.setDoOutput(request.getBody() != null);
+            long startTime = System.nanoTime();
+            conn.connect();
+            RemoteConfigurationMetrics.timing(request.getOrigin(), Phase.CONNECT, startTime);
+            startTime = System.nanoTime();
+            if (request.getBody() != null) {
+                try (final OutputStream os = conn.getOutputStream()) {
+                    os.write(request.getBody());
+                }
+            }
+            response.status = conn.getResponseCode();
+            RemoteConfigurationMetrics.timing(request.getOrigin(), Phase.FIRST_BYTE, startTime);
+            response.headersTime = System.nanoTime();
+            return response;
+        } catch (final IOException | RuntimeException ex) {
+            response.release();
+            if (response.expired) {
+                throw new SocketTimeoutException("Deadline exceeded");
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Response of a request executed with {@code HttpURLConnection}.
+     *
+     * @since 26.10.18
+     */
+    private static final class UrlConnectionResponse implements HttpResponse {
+
+        /**
+         * The request.
+         *
+         * @since 26.10.18
+         */
+        private final HttpRequest request;
+
+        /**
+         * The connection.
+         *
+         * @since 26.10.18
+         */
+        private final HttpURLConnection conn;
+
+        /**
+         * The HTTP status code.
+         *
+         * @since 26.10.18
+         */
+        private int status;
+
+        /**
+         * The time the response headers have been received, as
+         * returned by {@code System.nanoTime()}.
+         *
+         * @since 26.10.18
+         */
+        private long headersTime;
+
+        /**
+         * The task aborting the request when the deadline is exceeded.
+         *
+         * @since 26.10.18
+         */
+        private ScheduledFuture<?> deadlineTask;
+
+        /**
+         * The raw response body.
+         *
+         * @since 26.10.18
+         */
+        private InputStream rawBody;
+
+        /**
+         * The decoded response body.
+         *
+         * @since 26.10.18
+         */
+        private InputStream body;
+
+        /**
+         * Has the deadline been exceeded?
+         *
+         * @since 26.10.18
+         */
+        private volatile boolean expired;
+
+        /**
+         * Has the exchange been aborted?
+         *
+         * @since 26.10.18
+         */
+        private volatile boolean aborted;
+
+        /**
+         * Build a new instance.
+         *
+         * @param request The request
+         * @param conn    The connection
+         * @since 26.10.18
+         */
+        UrlConnectionResponse(final HttpRequest request, final HttpURLConnection conn) {
+            this.request = request;
+            this.conn = conn;
+        }
+
+        /**
+         * Abort the exchange. The connection is closed.
+         *
+         * @since 26.10.18
+         */
+        void abort() {
+            this.aborted = true;
+            this.conn.disconnect();
+        }
+
+        /**
+         * Abort the exchange because the deadline is exceeded.
+         *
+         * @since 26.10.18
+         */
+        void expire() {
+            this.expired = true;
+            Logger.debug("Provider {}> Deadline exceeded: {}", this.request.getOrigin(), this.request);
+            this.abort();
+        }
+
+        /**
+         * Release the resources associated to the exchange.
+         *
+         * @since 26.10.18
+         */
+        void release() {
+            if (this.deadlineTask != null) {
+                this.deadlineTask.cancel(false);
+            }
+            this.request.setCancelAction(null);
+        }
+
+        @Override
+        public int getStatus() {
+            return this.status;
+        }
+
+        @Override
+        public String getHeader(final String name) {
+            return this.conn.getHeaderField(name);
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            if (this.body == null) {
+                try {
+                    this.rawBody = this.status / 100 == 2 ? this.conn.getInputStream() : this.conn.getErrorStream();
+                } catch (final IOException ex) {
+                    throw this.expired ? new SocketTimeoutException("Deadline exceeded") : ex;
+                }
+                this.body = HttpTransfer.decode(this.request.getOrigin(), this.conn.getContentEncoding(), this.rawBody);
+            }
+            return this.body;
+        }
+
+        @Override
+        public void close() {
+            try {
+                if (!this.aborted) {
+                    if (this.rawBody == null) {
+                        this.getBody();
+                    }
+                    if (this.rawBody != null) {
+                        // Read the rest of the body to allow the connection to be reused
+                        final byte[] buffer = new byte[8192];
+                        int drained = 0;
+                        int length = this.rawBody.read(buffer);
+                        while (length != -1 && drained < DRAIN_LIMIT) {
+                            drained += length;
+                            length = this.rawBody.read(buffer);
+                        }
+                        if (length != -1) {
+                            this.conn.disconnect();
+                        }
+                    }
+                }
+                if (this.body != null) {
+                    this.body.close();
+                }
+            } catch (final IOException ignore) {
+                this.conn.disconnect();
+            } finally {
+                this.release();
+                if (this.headersTime != 0 && !this.aborted) {
+                    RemoteConfigurationMetrics.timing(this.request.getOrigin(), Phase.DOWNLOAD, this.headersTime);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,395 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 PayinTech
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.payintech.play.remoteconfiguration.provider;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.typesafe.config.Config;
+import play.Logger;
+import play.Mode;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Configuration provider implementation for the KV secrets engine of
+ * HashiCorp Vault (version 1 or 2). The secret tree is listed level by
+ * level, then the secrets are read concurrently. Each field of a
+ * secret is a value: the field "url" of the secret "db/default" is
+ * read as "db.default.url". Secrets are kept for their lease duration,
+ * at most for the configured TTL (the watch interval by default), so
+ * refreshes only read again the new and expired secrets. Secrets are
+ * not written on disk (snapshots, host-level coalescing) unless
+ * allowed by the configuration.
+ *
+ * @author Thibault Meyer
+ * @version 26.10.18
+ * @since 26.10.18
+ */
+public class VaultProvider implements RemoteConfigProvider {
+
+    /**
+     * The Json object mapper.
+     *
+     * @since 26.10.18
+     */
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    /**
+     * The retrieved secrets, indexed by path relative to the configured path.
+     *
+     * @since 26.10.18
+     */
+    private Map<String, CachedSecret> secrets;
+
+    /**
+     * Build a new instance.
+     *
+     * @since 26.10.18
+     */
+    public VaultProvider() {
+        this.secrets = Collections.emptyMap();
+    }
+
+    @Override
+    public String getShortName() {
+        return "VAULT";
+    }
+
+    @Override
+    public String getName() {
+        return "HashiCorp Vault";
+    }
+
+    /**
+     * Retrieve the Vault endpoints from the local configuration.
+     *
+     * @param localConfig The local configuration
+     * @return The Vault endpoints
+     * @since 26.10.18
+     */
+    private EndpointGroup getEndpointGroup(final Config localConfig) {
+        return EndpointGroup.fromConfig(this.getName(), localConfig, "remote-configuration.vault.endpoint");
+    }
+
+    /**
+     * Retrieve the path of the secret tree, without leading and
+     * trailing slashes.
+     *
+     * @param localConfig The local configuration
+     * @return The path of the secret tree
+     * @since 26.10.18
+     */
+    private static String getBasePath(final Config localConfig) {
+        return localConfig.getString("remote-configuration.vault.path").trim().replaceAll("^/+|/+$", "");
+    }
+
+    /**
+     * Build the API path of a secret or of a directory of the tree.
+     *
+     * @param localConfig  The local configuration
+     * @param relativePath The path relative to the secret tree
+     * @param listing      {@code true} to list a directory, {@code false} to read a secret
+     * @return The API path, relative to the endpoint
+     * @since 26.10.18
+     */
+    private static String toApiPath(final Config localConfig, final String relativePath, final boolean listing) {
+        final String mount = localConfig.getString("remote-configuration.vault.mount").trim().replaceAll("^/+|/+$", "");
+        final String basePath = getBasePath(localConfig);
+        final String secretPath = basePath.isEmpty() || relativePath.isEmpty() ? basePath + relativePath : basePath + "/" + relativePath;
+        switch (localConfig.getInt("remote-configuration.vault.version")) {
+            case 1:
+                return "v1/" + mount + "/" + secretPath + (listing ? "?list=true" : "");
+            case 2:
+                return "v1/" + mount + (listing ? "/metadata/" + secretPath + "?list=true" : "/data/" + secretPath);
+            default:
+                throw new RuntimeException("Bad configuration");
+        }
+    }
+
+    /**
+     * Execute a GET request on the Vault API.
+     *
+     * @param localConfig The local configuration
+     * @param apiPath     The API path, relative to the endpoint
+     * @return The response document, or {@code null} if not found
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    private JsonNode get(final Config localConfig, final String apiPath) throws IOException {
+        final String token = localConfig.getString("remote-configuration.vault.token");
+        try (final HttpResponse response = this.getEndpointGroup(localConfig).execute(endpoint -> {
+            final HttpRequest request = HttpTransports.newRequest(localConfig, this.getName(), new URL(endpoint + apiPath));
+            if (!token.isEmpty()) {
+                request.setHeader("X-Vault-Token", token);
+            }
+            return request;
+        }, false)) {
+            if (response.getStatus() == 404) {
+                return null;
+            } else if (response.getStatus() / 100 != 2) {
+                throw new IOException(String.format("Provider return non 200 status: %d", response.getStatus()));
+            }
+            return OBJECT_MAPPER.readTree(response.getBody());
+        }
+    }
+
+    /**
+     * List all secrets of the tree. The directories of a same level
+     * are listed concurrently.
+     *
+     * @param localConfig The local configuration
+     * @param parallelism Maximum number of concurrent requests
+     * @return The secret paths, relative to the secret tree
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    private List<String> listSecrets(final Config localConfig, final int parallelism) throws IOException {
+        final List<String> secretPaths = new ArrayList<>();
+        List<String> directories = Collections.singletonList("");
+        while (!directories.isEmpty()) {
+            final List<Callable<JsonNode>> tasks = new ArrayList<>();
+            for (final String directory : directories) {
+                tasks.add(() -> this.get(localConfig, toApiPath(localConfig, directory, true)));
+            }
+            final List<JsonNode> results = ParallelFetcher.invokeAll(this.getName(), parallelism, tasks);
+            final List<String> subDirectories = new ArrayList<>();
+            for (int idx = 0; idx < directories.size(); ++idx) {
+                final JsonNode result = results.get(idx);
+                if (result == null) {
+                    continue;
+                }
+                for (final JsonNode key : result.path("data").path("keys")) {
+                    final String path = directories.get(idx) + key.asText();
+                    if (path.endsWith("/")) {
+                        subDirectories.add(path);
+                    } else {
+                        secretPaths.add(path);
+                    }
+                }
+            }
+            directories = subDirectories;
+        }
+        return secretPaths;
+    }
+
+    /**
+     * Read a secret. The secret is kept for its lease duration, at most
+     * for the cache TTL: KV version 1 leases (768h by default) would
+     * hide the changes from the watch.
+     *
+     * @param localConfig The local configuration
+     * @param secretPath  The secret path, relative to the secret tree
+     * @param cacheTtl    How long (in milliseconds) to keep a secret at most
+     * @return The secret, or {@code null} if it doesn't exist anymore
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    private CachedSecret readSecret(final Config localConfig, final String secretPath, final long cacheTtl) throws IOException {
+        final JsonNode jsonDocument = this.get(localConfig, toApiPath(localConfig, secretPath, false));
+        if (jsonDocument == null) {
+            return null;
+        }
+        final boolean versioned = localConfig.getInt("remote-configuration.vault.version") == 2;
+        final JsonNode data = versioned ? jsonDocument.path("data").path("data") : jsonDocument.path("data");
+        final long leaseDuration = jsonDocument.path("lease_duration").asLong(0) * 1000;
+        final CachedSecret secret = new CachedSecret(
+            versioned ? jsonDocument.path("data").path("metadata").path("version").asLong(0) : 0,
+            System.currentTimeMillis() + (leaseDuration > 0 ? Math.min(leaseDuration, cacheTtl) : cacheTtl)
+        );
+        final Iterator<Map.Entry<String, JsonNode>> fields = data.fields();
+        while (fields.hasNext()) {
+            final Map.Entry<String, JsonNode> field = fields.next();
+            // Secrets are opaque: Json values are kept as-is, never parsed as HOCON
+            secret.values.put(field.getKey(), OBJECT_MAPPER.convertValue(field.getValue(), Object.class));
+        }
+        return secret;
+    }
+
+    /**
+     * Retrieve the secrets. The tree is always listed, but only the
+     * new and expired secrets are read.
+     *
+     * @param localConfig The local configuration
+     * @return {@code true} if the secrets have changed
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    private boolean fetchSecrets(final Config localConfig) throws IOException {
+        final int parallelism = localConfig.getInt("remote-configuration.vault.parallelism");
+        final long cacheTtl = localConfig.getDuration(
+            localConfig.hasPath("remote-configuration.vault.cacheTtl")
+                ? "remote-configuration.vault.cacheTtl"
+                : "remote-configuration.vault.watch.interval",
+            TimeUnit.MILLISECONDS
+        );
+        final long now = System.currentTimeMillis();
+        final Map<String, CachedSecret> fetchedSecrets = new TreeMap<>();
+        final List<String> expiredPaths = new ArrayList<>();
+        final List<Callable<CachedSecret>> tasks = new ArrayList<>();
+        for (final String secretPath : this.listSecrets(localConfig, parallelism)) {
+            final CachedSecret cachedSecret = this.secrets.get(secretPath);
+            if (cachedSecret != null && cachedSecret.expiresAt > now) {
+                fetchedSecrets.put(secretPath, cachedSecret);
+            } else {
+                expiredPaths.add(secretPath);
+                tasks.add(() -> this.readSecret(localConfig, secretPath, cacheTtl));
+            }
+        }
+        if (!tasks.isEmpty()) {
+            Logger.debug("Provider {}> Reading {} secret(s)", this.getName(), tasks.size());
+            final List<CachedSecret> results = ParallelFetcher.invokeAll(this.getName(), parallelism, tasks);
+            for (int idx = 0; idx < expiredPaths.size(); ++idx) {
+                if (results.get(idx) != null) {
+                    fetchedSecrets.put(expiredPaths.get(idx), results.get(idx));
+                }
+            }
+        }
+        final boolean changed = !fetchedSecrets.equals(this.secrets);
+        this.secrets = fetchedSecrets;
+        return changed;
+    }
+
+    /**
+     * Build the configuration from the retrieved secrets.
+     *
+     * @return The configuration
+     * @since 26.10.18
+     */
+    private Config buildConfiguration() {
+        final KeyValueConfigBuilder builder = new KeyValueConfigBuilder(this.getName());
+        for (final Map.Entry<String, CachedSecret> secret : this.secrets.entrySet()) {
+            final String prefix = secret.getKey().replace('/', '.');
+            for (final Map.Entry<String, Object> entry : secret.getValue().values.entrySet()) {
+                builder.putLiteral(prefix + "." + entry.getKey(), entry.getValue());
+            }
+        }
+        return builder.build();
+    }
+
+    @Override
+    public String getSourceIdentifier(final Config localConfig) {
+        return String.format(
+            "%s%s",
+            this.getEndpointGroup(localConfig).getEndpoints(),
+            toApiPath(localConfig, "", true)
+        );
+    }
+
+    @Override
+    public boolean isPersistent(final Config localConfig) {
+        return localConfig.getBoolean("remote-configuration.vault.persist");
+    }
+
+    @Override
+    public Config loadConfiguration(final Mode mode, final Config localConfig) throws IOException {
+        this.fetchSecrets(localConfig);
+        return this.buildConfiguration();
+    }
+
+    @Override
+    public Closeable watchConfiguration(final Mode mode, final Config localConfig, final Consumer<Config> consumer) {
+        if (!localConfig.getBoolean("remote-configuration.vault.watch.enabled")) {
+            return null;
+        }
+        final long interval = localConfig.getDuration("remote-configuration.vault.watch.interval", TimeUnit.MILLISECONDS);
+        final long errorDelay = localConfig.getDuration("remote-configuration.vault.watch.errorDelay", TimeUnit.MILLISECONDS);
+        if (interval <= 0) {
+            throw new RuntimeException("Bad configuration");
+        }
+        return new ProviderWatcher(this.getName(), watcher -> {
+            Thread.sleep(interval);
+            if (this.fetchSecrets(localConfig) && watcher.isRunning()) {
+                Logger.debug("Provider {}> Configuration changed", this.getName());
+                consumer.accept(this.buildConfiguration());
+            }
+        }, errorDelay).start();
+    }
+
+    /**
+     * A secret kept until its lease expires.
+     *
+     * @since 26.10.18
+     */
+    private static final class CachedSecret {
+
+        /**
+         * The secret fields.
+         *
+         * @since 26.10.18
+         */
+        private final Map<String, Object> values;
+
+        /**
+         * The secret version (KV version 2 only).
+         *
+         * @since 26.10.18
+         */
+        private final long version;
+
+        /**
+         * The time the lease expires, in milliseconds since epoch.
+         *
+         * @since 26.10.18
+         */
+        private final long expiresAt;
+
+        /**
+         * Build a new instance.
+         *
+         * @param version   The secret version
+         * @param expiresAt The time the lease expires
+         * @since 26.10.18
+         */
+        CachedSecret(final long version, final long expiresAt) {
+            this.values = new TreeMap<>();
+            this.version = version;
+            this.expiresAt = expiresAt;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof CachedSecret)) {
+                return false;
+            }
+            final CachedSecret other = (CachedSecret) obj;
+            return this.version == other.version && this.values.equals(other.values);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.values.hashCode();
+        }
+    }
+}
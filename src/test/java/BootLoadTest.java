@@ -0,0 +1,148 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 PayinTech
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import com.payintech.play.remoteconfiguration.testkit.BootLoadHarness;
+import com.payintech.play.remoteconfiguration.testkit.FakeServer;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+import java.io.IOException;
+
+/**
+ * BootLoadTest. The load sweep ({@code bootLoadTest_004}) only runs
+ * when requested, ie:
+ * <pre>
+ * mvn test -Dtest=BootLoadTest -Dload.provider=CONSUL -Dload.keys=100,1000,10000 -Dload.fleet=1,8,32 -Dload.latency=20
+ * </pre>
+ * Available properties: load.provider (CONSUL, ETCD, ETCD3, HTTP_BASIC),
+ * load.keys, load.fleet, load.latency (ms), load.jitter (ms),
+ * load.bandwidth (bytes/s by response), load.errorRate and load.dropRate.
+ *
+ * @author Thibault Meyer
+ * @version 26.10.18
+ * @since 26.10.18
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class BootLoadTest {
+
+    /**
+     * @since 26.10.18
+     */
+    @Test
+    public void bootLoadTest_001() throws IOException, InterruptedException {
+        try (final FakeServer fakeServer = BootLoadHarness.createServer("CONSUL")) {
+            fakeServer.start();
+            fakeServer.getFaults().setLatency(5).setJitter(5);
+            final BootLoadHarness.Workload workload = BootLoadHarness.seed("CONSUL", fakeServer, 500);
+            final BootLoadHarness.Report report = BootLoadHarness.run(workload, fakeServer, 8);
+
+            Assert.assertTrue(report.getFailures().toString(), report.getFailures().isEmpty());
+            Assert.assertTrue(report.getRequestCount() >= 8);
+            Assert.assertTrue(report.getBytesSent() > 8 * 500 * 10);
+            Assert.assertTrue(report.getPeakActiveRequests() >= 1);
+            Assert.assertTrue(report.getBootTime(50) >= 5);
+        }
+    }
+
+    /**
+     * @since 26.10.18
+     */
+    @Test
+    public void bootLoadTest_002() throws IOException, InterruptedException {
+        try (final FakeServer fakeServer = BootLoadHarness.createServer("ETCD")) {
+            fakeServer.start();
+            final BootLoadHarness.Workload workload = BootLoadHarness.seed("ETCD", fakeServer, 300);
+            BootLoadHarness.Report report = BootLoadHarness.run(workload, fakeServer, 2);
+            Assert.assertTrue(report.getFailures().toString(), report.getFailures().isEmpty());
+
+            // Each response is sent in at least 250ms
+            final long bytesByInstance = report.getBytesSent() / 2;
+            fakeServer.getFaults().setBandwidth(bytesByInstance * 4);
+            report = BootLoadHarness.run(workload, fakeServer, 2);
+
+            Assert.assertTrue(report.getFailures().toString(), report.getFailures().isEmpty());
+            Assert.assertTrue(report.getBootTime(0) >= 200);
+        }
+    }
+
+    /**
+     * @since 26.10.18
+     */
+    @Test
+    public void bootLoadTest_003() throws IOException, InterruptedException {
+        for (final String provider : new String[]{"HTTP_BASIC", "ETCD3"}) {
+            try (final FakeServer fakeServer = BootLoadHarness.createServer(provider)) {
+                fakeServer.start();
+                final BootLoadHarness.Workload workload = BootLoadHarness.seed(provider, fakeServer, 50);
+
+                fakeServer.getFaults().setErrorRate(1);
+                BootLoadHarness.Report report = BootLoadHarness.run(workload, fakeServer, 2);
+                Assert.assertEquals(2, report.getFailures().size());
+                Assert.assertTrue(report.getFaultCount() >= 2);
+
+                fakeServer.getFaults().reset().setDropRate(1);
+                report = BootLoadHarness.run(workload, fakeServer, 2);
+                Assert.assertEquals(2, report.getFailures().size());
+                Assert.assertTrue(report.getFaultCount() >= 2);
+
+                fakeServer.getFaults().reset();
+                report = BootLoadHarness.run(workload, fakeServer, 2);
+                Assert.assertTrue(report.getFailures().toString(), report.getFailures().isEmpty());
+                Assert.assertEquals(0, report.getFaultCount());
+            }
+        }
+    }
+
+    /**
+     * @since 26.10.18
+     */
+    @Test
+    public void bootLoadTest_004() throws IOException, InterruptedException {
+        Assume.assumeNotNull(System.getProperty("load.keys"));
+        final String provider = System.getProperty("load.provider", "CONSUL");
+        try (final FakeServer fakeServer = BootLoadHarness.createServer(provider)) {
+            // Warm up the JVM, results are not reported
+            fakeServer.start();
+            BootLoadHarness.run(BootLoadHarness.seed(provider, fakeServer, 10), fakeServer, 1);
+        }
+        for (final String keyCount : System.getProperty("load.keys").split(",")) {
+            try (final FakeServer fakeServer = BootLoadHarness.createServer(provider)) {
+                fakeServer.start();
+                final BootLoadHarness.Workload workload = BootLoadHarness.seed(provider, fakeServer, Integer.parseInt(keyCount.trim()));
+                fakeServer.getFaults()
+                    .setLatency(Long.getLong("load.latency", 0))
+                    .setJitter(Long.getLong("load.jitter", 0))
+                    .setBandwidth(Long.getLong("load.bandwidth", 0))
+                    .setErrorRate(Double.parseDouble(System.getProperty("load.errorRate", "0")))
+                    .setDropRate(Double.parseDouble(System.getProperty("load.dropRate", "0")));
+                for (final String fleetSize : System.getProperty("load.fleet", "1,8,32").split(",")) {
+                    System.out.println(provider + " " + BootLoadHarness.run(workload, fakeServer, Integer.parseInt(fleetSize.trim())));
+                }
+            }
+        }
+    }
+}
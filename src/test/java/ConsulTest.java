@@ -22,8 +22,18 @@
  * SOFTWARE.
  */
 
+import com.payintech.play.remoteconfiguration.ConfigurationChange;
+import com.payintech.play.remoteconfiguration.FlatConfiguration;
 import com.payintech.play.remoteconfiguration.PlayApplicationLoader;
+import com.payintech.play.remoteconfiguration.RemoteConfiguration;
+import com.payintech.play.remoteconfiguration.metrics.RemoteConfigurationMetrics;
+import com.payintech.play.remoteconfiguration.provider.LargeValueStore;
+import com.payintech.play.remoteconfiguration.testkit.FakeConsulServer;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigValue;
+import org.junit.AfterClass;
 import org.junit.Assert;
+import org.junit.BeforeClass;
 import org.junit.FixMethodOrder;
 import org.junit.Test;
 import org.junit.runners.MethodSorters;
@@ -32,19 +42,80 @@ import play.ApplicationLoader;
 import play.Environment;
 import play.Mode;
 
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 /**
  * ConsulTest.
  *
  * @author Thibault Meyer
- * @version 17.08.20
+ * @version 26.10.18
  * @since 17.08.20
  */
 @FixMethodOrder(MethodSorters.NAME_ASCENDING)
 public class ConsulTest {
 
+    /**
+     * Embedded Consul server, {@code null} when a Consul agent is already
+     * listening on the default port.
+     *
+     * @since 26.10.18
+     */
+    private static FakeConsulServer fakeConsulServer;
+
+    /**
+     * Start an embedded Consul server holding the test keys, unless
+     * a Consul agent is already listening on the default port.
+     *
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    @BeforeClass
+    public static void startServer() throws IOException {
+        fakeConsulServer = FakeConsulServer.startIfAbsent(8500);
+        if (fakeConsulServer != null) {
+            fakeConsulServer.put("test/db.default.driver", "org.postgresql.Driver");
+            fakeConsulServer.put("test/db/default/driver2", "org.postgresql.Driver");
+            fakeConsulServer.put("test/db/default/timeout", "5000");
+            fakeConsulServer.put("test/db/default/excludedIds", "[1,2,3,4,5]");
+            fakeConsulServer.put("test/db/default/disabled", "false");
+            fakeConsulServer.put("my/key", "Hello World");
+        }
+    }
+
+    /**
+     * Stop the embedded Consul server.
+     *
+     * @since 26.10.18
+     */
+    @AfterClass
+    public static void stopServer() {
+        if (fakeConsulServer != null) {
+            fakeConsulServer.close();
+        }
+    }
+
     /**
      * Build a preconfigured application.
      *
@@ -62,6 +133,51 @@ public class ConsulTest {
         )).build();
     }
 
+    /**
+     * Put a value on the local Consul agent.
+     *
+     * @param key   The key
+     * @param value The value
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    private void putValue(final String key, final String value) throws IOException {
+        this.putValue(key, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Delete all the keys of a prefix on the local Consul agent.
+     *
+     * @param prefix The prefix
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    private void deleteValues(final String prefix) throws IOException {
+        final URL url = new URL("http://127.0.0.1:8500/v1/kv/" + prefix + "?recurse");
+        final HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        conn.setRequestMethod("DELETE");
+        Assert.assertEquals(200, conn.getResponseCode());
+    }
+
+    /**
+     * Put a raw value on the local Consul agent.
+     *
+     * @param key   The key
+     * @param value The raw value
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    private void putValue(final String key, final byte[] value) throws IOException {
+        final URL url = new URL("http://127.0.0.1:8500/v1/kv/" + key);
+        final HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        conn.setRequestMethod("PUT");
+        conn.setDoOutput(true);
+        try (final OutputStream os = conn.getOutputStream()) {
+            os.write(value);
+        }
+        Assert.assertEquals(200, conn.getResponseCode());
+    }
+
     /**
      * @since 17.08.20
      */
@@ -136,4 +252,552 @@ public class ConsulTest {
 
         application.asScala().stop();
     }
+
+    /**
+     * @since 26.10.18
+     */
+    @Test
+    public void consulTest_004() throws IOException, InterruptedException {
+        this.putValue("watch/my/key", "Hello World");
+        final Application application = new PlayApplicationLoader().builder(new ApplicationLoader.Context(
+            new Environment(Mode.TEST),
+            new HashMap<String, Object>() {{
+                put("remote-configuration.provider", "CONSUL");
+                put("remote-configuration.consul.prefix", "/watch");
+                put("remote-configuration.consul.watch.enabled", true);
+                put("remote-configuration.consul.watch.wait", "10s");
+            }}
+        )).build();
+        final RemoteConfiguration remoteConfiguration = application.injector().instanceOf(RemoteConfiguration.class);
+
+        Assert.assertEquals(
+            "Hello World",
+            remoteConfiguration.get().getString("my.key")
+        );
+
+        final BlockingQueue<ConfigurationChange> changes = new LinkedBlockingQueue<>();
+        remoteConfiguration.subscribe("my", changes::add);
+        remoteConfiguration.subscribe("db", changes::add);
+
+        this.putValue("watch/my/key", "Hello Consul");
+        for (int i = 0; i < 50 && "Hello World".equals(remoteConfiguration.get().getString("my.key")); ++i) {
+            Thread.sleep(100);
+        }
+
+        final ConfigurationChange change = changes.poll(5, TimeUnit.SECONDS);
+        Assert.assertNotNull(change);
+        Assert.assertTrue(change.getAdded().isEmpty());
+        Assert.assertTrue(change.getRemoved().isEmpty());
+        Assert.assertEquals(1, change.getChanged().size());
+        Assert.assertEquals("Hello World", change.getChanged().get("my.key").getOldValue().unwrapped());
+        Assert.assertEquals("Hello Consul", change.getChanged().get("my.key").getNewValue().unwrapped());
+        Assert.assertNull(changes.poll(200, TimeUnit.MILLISECONDS));
+
+        Assert.assertEquals(
+            "Hello Consul",
+            remoteConfiguration.get().getString("my.key")
+        );
+
+        Assert.assertEquals(
+            "Hello World",
+            application.config().getString("my.key")
+        );
+
+        application.asScala().stop();
+    }
+
+    /**
+     * @since 26.10.18
+     */
+    @Test
+    public void consulTest_005() throws IOException {
+        final Path snapshotDirectory = Files.createTempDirectory("rconf");
+        final Application application = new PlayApplicationLoader().builder(new ApplicationLoader.Context(
+            new Environment(Mode.TEST),
+            new HashMap<String, Object>() {{
+                put("remote-configuration.provider", "CONSUL");
+                put("remote-configuration.consul.prefix", "/test");
+                put("remote-configuration.snapshot.enabled", true);
+                put("remote-configuration.snapshot.directory", snapshotDirectory.toString());
+            }}
+        )).build();
+        application.asScala().stop();
+
+        final Application offlineApplication = new PlayApplicationLoader().builder(new ApplicationLoader.Context(
+            new Environment(Mode.TEST),
+            new HashMap<String, Object>() {{
+                put("remote-configuration.provider", "CONSUL");
+                put("remote-configuration.consul.endpoint", "http://127.0.0.1:1/");
+                put("remote-configuration.consul.prefix", "/test");
+                put("remote-configuration.snapshot.enabled", true);
+                put("remote-configuration.snapshot.directory", snapshotDirectory.toString());
+            }}
+        )).build();
+
+        Assert.assertEquals(
+            5000,
+            offlineApplication.config().getInt("db.default.timeout")
+        );
+
+        Assert.assertEquals(
+            Arrays.asList(1, 2, 3, 4, 5),
+            offlineApplication.config().getIntList("db.default.excludedIds")
+        );
+
+        offlineApplication.asScala().stop();
+    }
+
+    /**
+     * @since 26.10.18
+     */
+    @Test
+    public void consulTest_006() {
+        final Application application = new PlayApplicationLoader().builder(new ApplicationLoader.Context(
+            new Environment(Mode.TEST),
+            new HashMap<String, Object>() {{
+                put("remote-configuration.provider", "HTTP_BASIC, CONSUL");
+                put("remote-configuration.http.url", "http://127.0.0.1:1/application.conf");
+                put("remote-configuration.consul.prefix", "/test");
+                put("remote-configuration.composition.optional", Collections.singletonList("HTTP_BASIC"));
+                put("remote-configuration.composition.timeouts.CONSUL", "10s");
+            }}
+        )).build();
+
+        Assert.assertEquals(
+            5000,
+            application.config().getInt("db.default.timeout")
+        );
+
+        application.asScala().stop();
+    }
+
+    /**
+     * @since 26.10.18
+     */
+    @Test
+    public void consulTest_007() throws JMException {
+        final Application application = this.buildApplication("/test");
+        final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName objectName = new ObjectName(RemoteConfigurationMetrics.OBJECT_NAME);
+
+        Assert.assertTrue(mBeanServer.isRegistered(objectName));
+
+        final Map<String, Long> gauges = RemoteConfigurationMetrics.getInstance().getGauges();
+        Assert.assertEquals(
+            Long.valueOf(5),
+            gauges.get("HashiCorp Consul/KEYS")
+        );
+
+        final Map<String, Long> lastDurations = RemoteConfigurationMetrics.getInstance().getLastDurations();
+        Assert.assertTrue(lastDurations.containsKey("HashiCorp Consul/FIRST_BYTE"));
+        Assert.assertTrue(lastDurations.containsKey("HashiCorp Consul/DECODE"));
+        Assert.assertTrue(lastDurations.containsKey("Composition/MERGE"));
+
+        application.asScala().stop();
+    }
+
+    /**
+     * @since 26.10.18
+     */
+    @Test
+    public void consulTest_008() {
+        final Application application = new PlayApplicationLoader().builder(new ApplicationLoader.Context(
+            new Environment(Mode.TEST),
+            new HashMap<String, Object>() {{
+                put("remote-configuration.provider", "CONSUL");
+                put("remote-configuration.consul.prefix", "/test");
+                put("remote-configuration.consul.lazy.enabled", true);
+                put("remote-configuration.consul.lazy.prefetch", Collections.singletonList("db.default.timeout"));
+                put("remote-configuration.consul.lazy.batchSize", 2);
+            }}
+        )).build();
+        final RemoteConfiguration remoteConfiguration = application.injector().instanceOf(RemoteConfiguration.class);
+
+        Assert.assertEquals(
+            5000,
+            application.config().getInt("db.default.timeout")
+        );
+
+        Assert.assertFalse(application.config().hasPath("db.default.driver2"));
+
+        final Config lazyConfiguration = remoteConfiguration.fetch("db.default");
+
+        Assert.assertEquals(
+            "org.postgresql.Driver",
+            lazyConfiguration.getString("db.default.driver2")
+        );
+
+        Assert.assertEquals(
+            Arrays.asList(1, 2, 3, 4, 5),
+            lazyConfiguration.getIntList("db.default.excludedIds")
+        );
+
+        application.asScala().stop();
+    }
+
+    /**
+     * @since 26.10.18
+     */
+    @Test
+    public void consulTest_009() throws IOException {
+        this.putValue("override/db/default/timeout", "6000");
+        this.putValue("shard/a/x", "1");
+        this.putValue("shard/a/y", "2");
+        this.putValue("shard/b/z", "3");
+        this.putValue("shard/c", "4");
+        final Application application = new PlayApplicationLoader().builder(new ApplicationLoader.Context(
+            new Environment(Mode.TEST),
+            new HashMap<String, Object>() {{
+                put("remote-configuration.provider", "CONSUL");
+                put("remote-configuration.consul.prefix", Arrays.asList("/test", "shard", "override/"));
+                put("remote-configuration.consul.excludedKeys", Collections.singletonList("**/disabled"));
+                put("remote-configuration.consul.shardThreshold", 1);
+            }}
+        )).build();
+
+        Assert.assertEquals(
+            6000,
+            application.config().getInt("db.default.timeout")
+        );
+
+        Assert.assertEquals(
+            "org.postgresql.Driver",
+            application.config().getString("db.default.driver2")
+        );
+
+        Assert.assertFalse(application.config().hasPath("db.default.disabled"));
+
+        Assert.assertEquals(
+            Arrays.asList(1, 2, 3, 4),
+            Arrays.asList(
+                application.config().getInt("a.x"),
+                application.config().getInt("a.y"),
+                application.config().getInt("b.z"),
+                application.config().getInt("c")
+            )
+        );
+
+        application.asScala().stop();
+    }
+
+    /**
+     * @since 26.10.18
+     */
+    @Test
+    public void consulTest_010() throws IOException {
+        // Accepts connections but never answers
+        try (final ServerSocket silentServer = new ServerSocket(0)) {
+            final long startTime = System.currentTimeMillis();
+            final Application application = new PlayApplicationLoader().builder(new ApplicationLoader.Context(
+                new Environment(Mode.TEST),
+                new HashMap<String, Object>() {{
+                    put("remote-configuration.provider", "CONSUL");
+                    put("remote-configuration.consul.endpoint", Arrays.asList(
+                        "http://127.0.0.1:1/",
+                        "http://127.0.0.1:" + silentServer.getLocalPort() + "/",
+                        "http://127.0.0.1:8500/"
+                    ));
+                    put("remote-configuration.consul.prefix", "/test");
+                    put("remote-configuration.failover.maxHedgeDelay", "200ms");
+                    put("remote-configuration.transport.readTimeout", "20s");
+                }}
+            )).build();
+
+            Assert.assertEquals(
+                5000,
+                application.config().getInt("db.default.timeout")
+            );
+
+            Assert.assertTrue(System.currentTimeMillis() - startTime < 10000);
+
+            final Map<String, Long> counters = RemoteConfigurationMetrics.getInstance().getCounters();
+            Assert.assertTrue(counters.get("HashiCorp Consul/FAILOVERS") >= 1);
+            Assert.assertTrue(counters.get("HashiCorp Consul/HEDGES") >= 1);
+
+            application.asScala().stop();
+        }
+    }
+
+    /**
+     * @since 26.10.18
+     */
+    @Test
+    public void consulTest_011() {
+        for (final String maxStale : Arrays.asList("5s", "1ms")) {
+            final Application application = new PlayApplicationLoader().builder(new ApplicationLoader.Context(
+                new Environment(Mode.TEST),
+                new HashMap<String, Object>() {{
+                    put("remote-configuration.provider", "CONSUL");
+                    put("remote-configuration.consul.endpoint", "http://127.0.0.1:8500/");
+                    put("remote-configuration.consul.prefix", "/test");
+                    put("remote-configuration.consul.consistency", "stale");
+                    put("remote-configuration.consul.maxStale", maxStale);
+                }}
+            )).build();
+
+            Assert.assertEquals(
+                5000,
+                application.config().getInt("db.default.timeout")
+            );
+
+            application.asScala().stop();
+        }
+    }
+
+    /**
+     * @since 26.10.18
+     */
+    @Test
+    public void consulTest_012() throws IOException {
+        this.putValue("reload/my/key", "Hello World");
+        final Map<String, Object> settings = new HashMap<String, Object>() {{
+            put("remote-configuration.provider", "CONSUL");
+            put("remote-configuration.consul.endpoint", "http://127.0.0.1:8500/");
+            put("remote-configuration.consul.prefix", "/reload");
+            put("remote-configuration.reloadCache.modes", Collections.singletonList("TEST"));
+        }};
+        PlayApplicationLoader.invalidateReloadCache();
+        Application application = new PlayApplicationLoader().builder(
+            new ApplicationLoader.Context(new Environment(Mode.TEST), settings)
+        ).build();
+        Assert.assertEquals("Hello World", application.config().getString("my.key"));
+        application.asScala().stop();
+
+        // The reloaded application reuses the retrieved configuration
+        this.putValue("reload/my/key", "Hello Consul");
+        application = new PlayApplicationLoader().builder(
+            new ApplicationLoader.Context(new Environment(Mode.TEST), settings)
+        ).build();
+        Assert.assertEquals("Hello World", application.config().getString("my.key"));
+        application.asScala().stop();
+
+        PlayApplicationLoader.invalidateReloadCache();
+        application = new PlayApplicationLoader().builder(
+            new ApplicationLoader.Context(new Environment(Mode.TEST), settings)
+        ).build();
+        Assert.assertEquals("Hello Consul", application.config().getString("my.key"));
+        application.asScala().stop();
+    }
+
+    /**
+     * @since 26.10.18
+     */
+    @Test
+    public void consulTest_013() throws IOException {
+        final StringBuilder certificate = new StringBuilder("MIIDdzCCAl");
+        for (int i = 0; i < 100; ++i) {
+            certificate.append("gAwIBAgIEbV6fCzANBgkqhkiG9w0BAQsFADBsMRAwDgYDVQQGEwdV");
+        }
+        this.putValue("large/tls/certificate", certificate.toString());
+        this.putValue("large/tls/enabled", "true");
+        for (final String storage : Arrays.asList("DIRECT", "MAPPED")) {
+            final Application application = new PlayApplicationLoader().builder(new ApplicationLoader.Context(
+                new Environment(Mode.TEST),
+                new HashMap<String, Object>() {{
+                    put("remote-configuration.provider", "CONSUL");
+                    put("remote-configuration.consul.endpoint", "http://127.0.0.1:8500/");
+                    put("remote-configuration.consul.prefix", "/large");
+                    put("remote-configuration.consul.largeValues.threshold", "1K");
+                    put("remote-configuration.consul.largeValues.storage", storage);
+                }}
+            )).build();
+
+            Assert.assertTrue(application.config().getBoolean("tls.enabled"));
+
+            final String reference = application.config().getString("tls.certificate");
+            Assert.assertTrue(LargeValueStore.isReference(reference));
+            Assert.assertEquals(certificate.length(), LargeValueStore.getBuffer(reference).remaining());
+            try (final InputStream is = LargeValueStore.getInputStream(reference)) {
+                final ByteArrayOutputStream os = new ByteArrayOutputStream();
+                final byte[] buffer = new byte[1000];
+                int length = is.read(buffer);
+                while (length != -1) {
+                    os.write(buffer, 0, length);
+                    length = is.read(buffer);
+                }
+                Assert.assertEquals(certificate.toString(), os.toString("UTF-8"));
+            }
+
+            application.asScala().stop();
+        }
+    }
+
+    /**
+     * @since 26.10.18
+     */
+    @Test
+    public void consulTest_014() throws IOException {
+        this.putValue("coalescing/my/key", "Hello World");
+        final Path directory = Files.createTempDirectory("rconf-shared");
+        final Map<String, Object> settings = new HashMap<String, Object>() {{
+            put("remote-configuration.provider", "CONSUL");
+            put("remote-configuration.consul.endpoint", "http://127.0.0.1:8500/");
+            put("remote-configuration.consul.prefix", "/coalescing");
+            put("remote-configuration.coalescing.enabled", true);
+            put("remote-configuration.coalescing.directory", directory.toString());
+            put("remote-configuration.coalescing.maxAge", "1m");
+            put("remote-configuration.coalescing.startJitter", "100ms");
+        }};
+        Application application = new PlayApplicationLoader().builder(
+            new ApplicationLoader.Context(new Environment(Mode.TEST), settings)
+        ).build();
+        Assert.assertEquals("Hello World", application.config().getString("my.key"));
+        application.asScala().stop();
+
+        // Another process of the host reuses the shared configuration
+        this.putValue("coalescing/my/key", "Hello Consul");
+        application = new PlayApplicationLoader().builder(
+            new ApplicationLoader.Context(new Environment(Mode.TEST), settings)
+        ).build();
+        Assert.assertEquals("Hello World", application.config().getString("my.key"));
+        application.asScala().stop();
+
+        // Once the shared configuration is too old, it is retrieved again
+        settings.put("remote-configuration.coalescing.maxAge", "1ms");
+        application = new PlayApplicationLoader().builder(
+            new ApplicationLoader.Context(new Environment(Mode.TEST), settings)
+        ).build();
+        Assert.assertEquals("Hello Consul", application.config().getString("my.key"));
+        application.asScala().stop();
+    }
+
+    /**
+     * @since 26.10.18
+     */
+    @Test
+    public void consulTest_015() throws IOException, InterruptedException {
+        this.putValue("flat/db/default/driver", "org.postgresql.Driver");
+        this.putValue("flat/db/default/timeout", "5s");
+        this.putValue("flat/db/default/poolSize", "8");
+        this.putValue("flat/db/default/disabled", "false");
+        this.putValue("flat/db/default/excludedIds", "[1,2,3,4,5]");
+        final Application application = new PlayApplicationLoader().builder(new ApplicationLoader.Context(
+            new Environment(Mode.TEST),
+            new HashMap<String, Object>() {{
+                put("remote-configuration.provider", "CONSUL");
+                put("remote-configuration.consul.endpoint", "http://127.0.0.1:8500/");
+                put("remote-configuration.consul.prefix", "/flat");
+                put("remote-configuration.consul.watch.enabled", true);
+                put("remote-configuration.consul.watch.wait", "1s");
+            }}
+        )).build();
+        final RemoteConfiguration remoteConfiguration = application.injector().instanceOf(RemoteConfiguration.class);
+        final FlatConfiguration flatConfiguration = remoteConfiguration.getFlat();
+
+        Assert.assertSame(flatConfiguration, remoteConfiguration.getFlat());
+        Assert.assertSame(flatConfiguration, application.injector().instanceOf(FlatConfiguration.class));
+        Assert.assertEquals(application.config().entrySet().size(), flatConfiguration.size());
+        Assert.assertEquals("org.postgresql.Driver", flatConfiguration.getString("db.default.driver"));
+        Assert.assertEquals(5000, flatConfiguration.getDuration("db.default.timeout", TimeUnit.MILLISECONDS));
+        Assert.assertEquals(8, flatConfiguration.getInt("db.default.poolSize"));
+        Assert.assertEquals(8L, flatConfiguration.getLong("db.default.poolSize"));
+        Assert.assertEquals("8", flatConfiguration.getString("db.default.poolSize"));
+        Assert.assertFalse(flatConfiguration.getBoolean("db.default.disabled"));
+        Assert.assertArrayEquals(new int[]{1, 2, 3, 4, 5}, flatConfiguration.getIntArray("db.default.excludedIds"));
+        flatConfiguration.getIntArray("db.default.excludedIds")[0] = 42;
+        Assert.assertArrayEquals(new int[]{1, 2, 3, 4, 5}, flatConfiguration.getIntArray("db.default.excludedIds"));
+        Assert.assertFalse(flatConfiguration.hasPath("db.default.missing"));
+        for (final Map.Entry<String, ConfigValue> entry : application.config().entrySet()) {
+            Assert.assertTrue(flatConfiguration.hasPath(entry.getKey()));
+        }
+
+        // The flattened view is swapped on reload
+        this.putValue("flat/db/default/poolSize", "16");
+        for (int i = 0; i < 50 && remoteConfiguration.getFlat().getInt("db.default.poolSize") == 8; ++i) {
+            Thread.sleep(100);
+        }
+        Assert.assertEquals(16, remoteConfiguration.getFlat().getInt("db.default.poolSize"));
+        Assert.assertEquals(8, flatConfiguration.getInt("db.default.poolSize"));
+
+        application.asScala().stop();
+    }
+
+    /**
+     * @since 26.10.18
+     */
+    @Test
+    public void consulTest_016() throws IOException {
+        final byte[] keystore = new byte[4096];
+        for (int i = 0; i < keystore.length; ++i) {
+            keystore[i] = (byte) (i * 31 + 0x80);
+        }
+        this.putValue("sharded-large/tls/keystore", keystore);
+        this.putValue("sharded-large/tls/enabled", "true");
+        this.putValue("sharded-large/tls/protocol", "TLSv1.2");
+        try {
+            final Application application = new PlayApplicationLoader().builder(new ApplicationLoader.Context(
+                new Environment(Mode.TEST),
+                new HashMap<String, Object>() {{
+                    put("remote-configuration.provider", "CONSUL");
+                    put("remote-configuration.consul.endpoint", "http://127.0.0.1:8500/");
+                    put("remote-configuration.consul.prefix", "/sharded-large");
+                    put("remote-configuration.consul.shardThreshold", 1);
+                    put("remote-configuration.consul.largeValues.threshold", "1K");
+                    put("remote-configuration.consul.largeValues.storage", "DIRECT");
+                }}
+            )).build();
+
+            Assert.assertTrue(application.config().getBoolean("tls.enabled"));
+            Assert.assertEquals("TLSv1.2", application.config().getString("tls.protocol"));
+
+            // Binary values retrieved with transactions are stored unchanged
+            final ByteBuffer buffer = LargeValueStore.getBuffer(application.config().getString("tls.keystore"));
+            Assert.assertNotNull(buffer);
+            final byte[] storedKeystore = new byte[buffer.remaining()];
+            buffer.get(storedKeystore);
+            Assert.assertArrayEquals(keystore, storedKeystore);
+
+            application.asScala().stop();
+        } finally {
+            // Binary values can't be read by the tests retrieving all keys
+            this.deleteValues("sharded-large/");
+        }
+    }
+
+    /**
+     * @since 26.10.18
+     */
+    @Test
+    public void consulTest_017() throws IOException, InterruptedException {
+        final StringBuilder certificate = new StringBuilder("MIIDdzCCAl");
+        for (int i = 0; i < 100; ++i) {
+            certificate.append("gAwIBAgIEbV6fCzANBgkqhkiG9w0BAQsFADBsMRAwDgYDVQQGEwdV");
+        }
+        this.putValue("watch-large/tls/certificate", certificate.toString());
+        final Path directory = Files.createTempDirectory("rconf-snapshot");
+        final Application application = new PlayApplicationLoader().builder(new ApplicationLoader.Context(
+            new Environment(Mode.TEST),
+            new HashMap<String, Object>() {{
+                put("remote-configuration.provider", "CONSUL");
+                put("remote-configuration.consul.endpoint", "http://127.0.0.1:8500/");
+                put("remote-configuration.consul.prefix", "/watch-large");
+                put("remote-configuration.consul.largeValues.threshold", "1K");
+                put("remote-configuration.consul.watch.enabled", true);
+                put("remote-configuration.consul.watch.wait", "10s");
+                put("remote-configuration.snapshot.enabled", true);
+                put("remote-configuration.snapshot.directory", directory.toString());
+            }}
+        )).build();
+        final RemoteConfiguration remoteConfiguration = application.injector().instanceOf(RemoteConfiguration.class);
+        final String initialReference = application.config().getString("tls.certificate");
+        Assert.assertTrue(LargeValueStore.isReference(initialReference));
+
+        // References are only valid in this process
+        try (final DirectoryStream<Path> snapshots = Files.newDirectoryStream(directory)) {
+            Assert.assertFalse(snapshots.iterator().hasNext());
+        }
+
+        this.putValue("watch-large/tls/certificate", certificate.append("AQAB").toString());
+        for (int i = 0; i < 50 && initialReference.equals(remoteConfiguration.get().getString("tls.certificate")); ++i) {
+            Thread.sleep(100);
+        }
+        final String reference = remoteConfiguration.get().getString("tls.certificate");
+        Assert.assertNotEquals(initialReference, reference);
+        Assert.assertEquals(certificate.length(), LargeValueStore.getBuffer(reference).remaining());
+
+        // The value given to Play at startup is still readable
+        Assert.assertEquals(certificate.length() - 4, LargeValueStore.getBuffer(initialReference).remaining());
+
+        application.asScala().stop();
+    }
 }
@@ -0,0 +1,196 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 PayinTech
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import com.payintech.play.remoteconfiguration.PlayApplicationLoader;
+import com.payintech.play.remoteconfiguration.RemoteConfiguration;
+import com.payintech.play.remoteconfiguration.testkit.FakeEtcdServer;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+import play.Application;
+import play.ApplicationLoader;
+import play.Environment;
+import play.Mode;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+
+/**
+ * Etcd3Test.
+ *
+ * @author Thibault Meyer
+ * @version 26.10.18
+ * @since 26.10.18
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class Etcd3Test {
+
+    /**
+     * Embedded etcd server, {@code null} when an etcd server is already
+     * listening on the default port.
+     *
+     * @since 26.10.18
+     */
+    private static FakeEtcdServer fakeEtcdServer;
+
+    /**
+     * Start an embedded etcd server holding the test keys, unless
+     * an etcd server is already listening on the default port.
+     *
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    @BeforeClass
+    public static void startServer() throws IOException {
+        fakeEtcdServer = FakeEtcdServer.startIfAbsent(2379);
+        if (fakeEtcdServer != null) {
+            fakeEtcdServer.putV3("/test3/db.default.driver", "org.postgresql.Driver");
+            fakeEtcdServer.putV3("/test3/db/default/timeout", "5000");
+            fakeEtcdServer.putV3("/test3/db/default/disabled", "false");
+            fakeEtcdServer.putV3("/other3/key", "Hello World");
+            for (int i = 0; i < 25; ++i) {
+                fakeEtcdServer.putV3(String.format("/test3/pages/key%02d", i), String.valueOf(i));
+            }
+        }
+    }
+
+    /**
+     * Stop the embedded etcd server.
+     *
+     * @since 26.10.18
+     */
+    @AfterClass
+    public static void stopServer() {
+        if (fakeEtcdServer != null) {
+            fakeEtcdServer.close();
+        }
+    }
+
+    /**
+     * Put a value on the local etcd server.
+     *
+     * @param key   The key
+     * @param value The value
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    private void putValue(final String key, final String value) throws IOException {
+        final URL url = new URL("http://127.0.0.1:2379/v3/kv/put");
+        final HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        conn.setRequestMethod("POST");
+        conn.setDoOutput(true);
+        try (final OutputStream os = conn.getOutputStream()) {
+            os.write(String.format(
+                "{\"key\": \"%s\", \"value\": \"%s\"}",
+                Base64.getEncoder().encodeToString(key.getBytes(StandardCharsets.UTF_8)),
+                Base64.getEncoder().encodeToString(value.getBytes(StandardCharsets.UTF_8))
+            ).getBytes(StandardCharsets.UTF_8));
+        }
+        Assert.assertEquals(2, conn.getResponseCode() / 100);
+    }
+
+    /**
+     * @since 26.10.18
+     */
+    @Test
+    public void etcd3Test_001() {
+        final Application application = new PlayApplicationLoader().builder(new ApplicationLoader.Context(
+            new Environment(Mode.TEST),
+            new HashMap<String, Object>() {{
+                put("remote-configuration.provider", "ETCD3");
+                put("remote-configuration.etcd3.prefix", "test3");
+                put("remote-configuration.etcd3.pageSize", 10);
+            }}
+        )).build();
+
+        Assert.assertEquals(
+            "org.postgresql.Driver",
+            application.config().getString("db.default.driver")
+        );
+
+        Assert.assertEquals(
+            5000,
+            application.config().getInt("db.default.timeout")
+        );
+
+        Assert.assertEquals(
+            false,
+            application.config().getBoolean("db.default.disabled")
+        );
+
+        // Spread over three pages
+        Assert.assertEquals(
+            25,
+            application.config().getConfig("pages").entrySet().size()
+        );
+
+        Assert.assertFalse(application.config().hasPath("key"));
+
+        application.asScala().stop();
+    }
+
+    /**
+     * @since 26.10.18
+     */
+    @Test
+    public void etcd3Test_002() throws IOException, InterruptedException {
+        this.putValue("/watch3/my/key", "Hello World");
+        final Application application = new PlayApplicationLoader().builder(new ApplicationLoader.Context(
+            new Environment(Mode.TEST),
+            new HashMap<String, Object>() {{
+                put("remote-configuration.provider", "ETCD3");
+                put("remote-configuration.etcd3.prefix", "watch3");
+                put("remote-configuration.etcd3.watch.enabled", true);
+                put("remote-configuration.etcd3.watch.interval", "100ms");
+            }}
+        )).build();
+        final RemoteConfiguration remoteConfiguration = application.injector().instanceOf(RemoteConfiguration.class);
+
+        Assert.assertEquals(
+            "Hello World",
+            remoteConfiguration.get().getString("my.key")
+        );
+
+        this.putValue("/unwatched3/my/key", "Hello");
+        this.putValue("/watch3/my/key", "Hello etcd");
+        for (int i = 0; i < 50 && "Hello World".equals(remoteConfiguration.get().getString("my.key")); ++i) {
+            Thread.sleep(100);
+        }
+
+        Assert.assertEquals(
+            "Hello etcd",
+            remoteConfiguration.get().getString("my.key")
+        );
+
+        application.asScala().stop();
+    }
+}
@@ -23,7 +23,11 @@
  */
 
 import com.payintech.play.remoteconfiguration.PlayApplicationLoader;
+import com.payintech.play.remoteconfiguration.RemoteConfiguration;
+import com.payintech.play.remoteconfiguration.testkit.FakeEtcdServer;
+import org.junit.AfterClass;
 import org.junit.Assert;
+import org.junit.BeforeClass;
 import org.junit.FixMethodOrder;
 import org.junit.Test;
 import org.junit.runners.MethodSorters;
@@ -32,19 +36,65 @@ import play.ApplicationLoader;
 import play.Environment;
 import play.Mode;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.Base64;
 import java.util.HashMap;
 
 /**
  * EtcdTest.
  *
  * @author Thibault Meyer
- * @version 17.08.21
+ * @version 26.10.18
  * @since 17.08.21
  */
 @FixMethodOrder(MethodSorters.NAME_ASCENDING)
 public class EtcdTest {
 
+    /**
+     * Embedded etcd server, {@code null} when an etcd server is already
+     * listening on the default port.
+     *
+     * @since 26.10.18
+     */
+    private static FakeEtcdServer fakeEtcdServer;
+
+    /**
+     * Start an embedded etcd server holding the test keys, unless
+     * an etcd server is already listening on the default port.
+     *
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    @BeforeClass
+    public static void startServer() throws IOException {
+        fakeEtcdServer = FakeEtcdServer.startIfAbsent(2379);
+        if (fakeEtcdServer != null) {
+            fakeEtcdServer.put("/test/db.default.driver", "org.postgresql.Driver");
+            fakeEtcdServer.put("/test/db/default/driver2", "org.postgresql.Driver");
+            fakeEtcdServer.put("/test/db/default/timeout", "5000");
+            fakeEtcdServer.put("/test/db/default/excludedIds", "[1,2,3,4,5]");
+            fakeEtcdServer.put("/test/db/default/disabled", "false");
+            fakeEtcdServer.put("/my/key", "Hello World");
+        }
+    }
+
+    /**
+     * Stop the embedded etcd server.
+     *
+     * @since 26.10.18
+     */
+    @AfterClass
+    public static void stopServer() {
+        if (fakeEtcdServer != null) {
+            fakeEtcdServer.close();
+        }
+    }
+
     /**
      * Build a preconfigured application.
      *
@@ -64,6 +114,30 @@ public class EtcdTest {
         )).build();
     }
 
+    /**
+     * Put a value on the local etcd server.
+     *
+     * @param key   The key
+     * @param value The value
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    private void putValue(final String key, final String value) throws IOException {
+        final URL url = new URL("http://127.0.0.1:2379/v2/keys/" + key);
+        final HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        conn.setRequestMethod("PUT");
+        conn.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+        conn.setRequestProperty(
+            "Authorization",
+            "Basic " + Base64.getEncoder().encodeToString("root:123456".getBytes(StandardCharsets.UTF_8))
+        );
+        conn.setDoOutput(true);
+        try (final OutputStream os = conn.getOutputStream()) {
+            os.write(("value=" + value.replace(" ", "+")).getBytes(StandardCharsets.UTF_8));
+        }
+        Assert.assertEquals(2, conn.getResponseCode() / 100);
+    }
+
     /**
      * @since 17.08.20
      */
@@ -138,4 +212,136 @@ public class EtcdTest {
 
         application.asScala().stop();
     }
+
+    /**
+     * @since 26.10.18
+     */
+    @Test
+    public void etcdTest_004() throws IOException, InterruptedException {
+        this.putValue("watch/my/key", "Hello World");
+        final Application application = new PlayApplicationLoader().builder(new ApplicationLoader.Context(
+            new Environment(Mode.TEST),
+            new HashMap<String, Object>() {{
+                put("remote-configuration.provider", "ETCD");
+                put("remote-configuration.etcd.prefix", "watch");
+                put("remote-configuration.etcd.username", "root");
+                put("remote-configuration.etcd.password", "123456");
+                put("remote-configuration.etcd.watch.enabled", true);
+                put("remote-configuration.etcd.watch.wait", "10s");
+            }}
+        )).build();
+        final RemoteConfiguration remoteConfiguration = application.injector().instanceOf(RemoteConfiguration.class);
+
+        Assert.assertEquals(
+            "Hello World",
+            remoteConfiguration.get().getString("my.key")
+        );
+
+        this.putValue("watch/my/key", "Hello etcd");
+        for (int i = 0; i < 50 && "Hello World".equals(remoteConfiguration.get().getString("my.key")); ++i) {
+            Thread.sleep(100);
+        }
+
+        Assert.assertEquals(
+            "Hello etcd",
+            remoteConfiguration.get().getString("my.key")
+        );
+
+        application.asScala().stop();
+    }
+
+    /**
+     * @since 26.10.18
+     */
+    @Test
+    public void etcdTest_005() throws IOException, InterruptedException {
+        this.putValue("watch2/my/key", "Hello World");
+        this.putValue("watch2/db/default/timeout", "5500");
+        final Application application = new PlayApplicationLoader().builder(new ApplicationLoader.Context(
+            new Environment(Mode.TEST),
+            new HashMap<String, Object>() {{
+                put("remote-configuration.provider", "ETCD");
+                put("remote-configuration.etcd.prefix", "test, /watch2/");
+                put("remote-configuration.etcd.excludedKeys", Arrays.asList("**/disabled", "db.*"));
+                put("remote-configuration.etcd.username", "root");
+                put("remote-configuration.etcd.password", "123456");
+                put("remote-configuration.etcd.watch.enabled", true);
+                put("remote-configuration.etcd.watch.wait", "10s");
+            }}
+        )).build();
+        final RemoteConfiguration remoteConfiguration = application.injector().instanceOf(RemoteConfiguration.class);
+
+        Assert.assertEquals(
+            "Hello World",
+            remoteConfiguration.get().getString("my.key")
+        );
+
+        Assert.assertEquals(
+            5500,
+            remoteConfiguration.get().getInt("db.default.timeout")
+        );
+
+        Assert.assertEquals(
+            "org.postgresql.Driver",
+            remoteConfiguration.get().getString("db.default.driver2")
+        );
+
+        Assert.assertFalse(remoteConfiguration.get().hasPath("db.default.disabled"));
+        Assert.assertFalse(remoteConfiguration.get().hasPath("db.default.driver"));
+
+        this.putValue("unwatched/db/default/timeout", "6000");
+        this.putValue("watch2/db/default/timeout", "7000");
+        for (int i = 0; i < 50 && remoteConfiguration.get().getInt("db.default.timeout") == 5500; ++i) {
+            Thread.sleep(100);
+        }
+
+        Assert.assertEquals(
+            7000,
+            remoteConfiguration.get().getInt("db.default.timeout")
+        );
+
+        application.asScala().stop();
+    }
+
+    /**
+     * @since 26.10.18
+     */
+    @Test
+    public void etcdTest_006() throws IOException, InterruptedException {
+        try (final FakeEtcdServer fakeServer = new FakeEtcdServer()) {
+            fakeServer.start();
+            fakeServer.put("/pending/my/key", "Hello World");
+            // Delays the watches, so both changes are in the history when the next watch starts
+            fakeServer.getFaults().setLatency(500);
+            final Application application = new PlayApplicationLoader().builder(new ApplicationLoader.Context(
+                new Environment(Mode.TEST),
+                new HashMap<String, Object>() {{
+                    put("remote-configuration.provider", "ETCD");
+                    put("remote-configuration.etcd.endpoint", fakeServer.getEndpoint());
+                    put("remote-configuration.etcd.prefix", "pending");
+                    put("remote-configuration.etcd.watch.enabled", true);
+                    put("remote-configuration.etcd.watch.wait", "30s");
+                }}
+            )).build();
+            final RemoteConfiguration remoteConfiguration = application.injector().instanceOf(RemoteConfiguration.class);
+
+            Assert.assertEquals(
+                "Hello World",
+                remoteConfiguration.get().getString("my.key")
+            );
+
+            fakeServer.put("/pending/my/key", "Hello etcd");
+            fakeServer.put("/unwatched/my/key", "Hello");
+            for (int i = 0; i < 100 && "Hello World".equals(remoteConfiguration.get().getString("my.key")); ++i) {
+                Thread.sleep(100);
+            }
+
+            Assert.assertEquals(
+                "Hello etcd",
+                remoteConfiguration.get().getString("my.key")
+            );
+
+            application.asScala().stop();
+        }
+    }
 }
@@ -0,0 +1,209 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 PayinTech
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+import com.payintech.play.remoteconfiguration.PlayApplicationLoader;
+import com.payintech.play.remoteconfiguration.RemoteConfiguration;
+import org.junit.Assert;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+import play.Application;
+import play.ApplicationLoader;
+import play.Environment;
+import play.Mode;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class FileTest {
+
+    /**
+     * Write a file, creating the parent directories.
+     *
+     * @param file    The file
+     * @param content The content
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    private void writeFile(final Path file, final String content) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @since 26.10.18
+     */
+    @Test
+    public void fileTest_001() throws IOException {
+        final Path root = Files.createTempDirectory("rconf");
+        this.writeFile(root.resolve("db/default/driver"), "org.postgresql.Driver");
+        this.writeFile(root.resolve("db/default/timeout"), "5000");
+        this.writeFile(root.resolve("db/default/excludedIds"), "[1,2,3,4,5]");
+        this.writeFile(root.resolve("db/default/disabled"), "false");
+        this.writeFile(root.resolve(".hidden/key"), "Hidden");
+        this.writeFile(root.resolve("db/.key"), "Hidden");
+        final Application application = new PlayApplicationLoader().builder(new ApplicationLoader.Context(
+            new Environment(Mode.TEST),
+            new HashMap<String, Object>() {{
+                put("remote-configuration.provider", "FILE");
+                put("remote-configuration.file.path", root.toString());
+            }}
+        )).build();
+
+        Assert.assertEquals(
+            "org.postgresql.Driver",
+            application.config().getString("db.default.driver")
+        );
+
+        Assert.assertEquals(
+            5000,
+            application.config().getInt("db.default.timeout")
+        );
+
+        Assert.assertEquals(
+            "[1,2,3,4,5]",
+            application.config().getString("db.default.excludedIds")
+        );
+
+        Assert.assertEquals(
+            false,
+            application.config().getBoolean("db.default.disabled")
+        );
+
+        Assert.assertFalse(application.config().hasPath("hidden"));
+        Assert.assertFalse(application.config().hasPath("db.key"));
+
+        application.asScala().stop();
+    }
+
+    /**
+     * @since 26.10.18
+     */
+    @Test
+    public void fileTest_002() throws IOException {
+        final Path file = Files.createTempDirectory("rconf").resolve("application.json");
+        this.writeFile(file, "{\"db\": {\"default\": {\"driver\": \"org.postgresql.Driver\", \"timeout\": 5000}}}");
+        final Application application = new PlayApplicationLoader().builder(new ApplicationLoader.Context(
+            new Environment(Mode.TEST),
+            new HashMap<String, Object>() {{
+                put("remote-configuration.provider", "FILE");
+                put("remote-configuration.file.path", file.toString());
+            }}
+        )).build();
+
+        Assert.assertEquals(
+            "org.postgresql.Driver",
+            application.config().getString("db.default.driver")
+        );
+
+        Assert.assertEquals(
+            5000,
+            application.config().getInt("db.default.timeout")
+        );
+
+        application.asScala().stop();
+    }
+
+    /**
+     * @since 26.10.18
+     */
+    @Test
+    public void fileTest_003() throws IOException, InterruptedException {
+        final Path root = Files.createTempDirectory("rconf");
+        this.writeFile(root.resolve("my/key"), "Hello World");
+        this.writeFile(root.resolve("my/old/key"), "Hello");
+        final Application application = new PlayApplicationLoader().builder(new ApplicationLoader.Context(
+            new Environment(Mode.TEST),
+            new HashMap<String, Object>() {{
+                put("remote-configuration.provider", "FILE");
+                put("remote-configuration.file.path", root.toString());
+                put("remote-configuration.file.watch.enabled", true);
+            }}
+        )).build();
+        final RemoteConfiguration remoteConfiguration = application.injector().instanceOf(RemoteConfiguration.class);
+
+        Assert.assertEquals(
+            "Hello World",
+            remoteConfiguration.get().getString("my.key")
+        );
+
+        this.writeFile(root.resolve("my/key"), "Hello files");
+        this.writeFile(root.resolve("my/new/key"), "Hello");
+        Files.delete(root.resolve("my/old/key"));
+        Files.delete(root.resolve("my/old"));
+        for (int i = 0; i < 100 && remoteConfiguration.get().hasPath("my.old.key"); ++i) {
+            Thread.sleep(100);
+        }
+
+        Assert.assertEquals(
+            "Hello files",
+            remoteConfiguration.get().getString("my.key")
+        );
+
+        Assert.assertEquals(
+            "Hello",
+            remoteConfiguration.get().getString("my.new.key")
+        );
+
+        Assert.assertFalse(remoteConfiguration.get().hasPath("my.old"));
+
+        application.asScala().stop();
+    }
+
+    /**
+     * @since 26.10.18
+     */
+    @Test
+    public void fileTest_004() throws IOException {
+        final String certificate = "-----BEGIN CERTIFICATE-----\n"
+            + "MIIBszCCAVmgAwIBAgIUQ2Vy: dGlmaWNhdGUgZm9yIHRlc3Rz\n"
+            + "aW5nIHB1cnBvc2VzIG9ubHk=\n"
+            + "-----END CERTIFICATE-----";
+        final Path root = Files.createTempDirectory("rconf");
+        this.writeFile(root.resolve("tls/cert"), certificate + "\n");
+        this.writeFile(root.resolve("db/default/password"), "abc#123//x");
+        final Application application = new PlayApplicationLoader().builder(new ApplicationLoader.Context(
+            new Environment(Mode.TEST),
+            new HashMap<String, Object>() {{
+                put("remote-configuration.provider", "FILE");
+                put("remote-configuration.file.path", root.toString());
+            }}
+        )).build();
+
+        Assert.assertEquals(
+            certificate,
+            application.config().getString("tls.cert")
+        );
+
+        Assert.assertEquals(
+            "abc#123//x",
+            application.config().getString("db.default.password")
+        );
+
+        application.asScala().stop();
+    }
+}
@@ -0,0 +1,328 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 PayinTech
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+import com.payintech.play.remoteconfiguration.PlayApplicationLoader;
+import com.payintech.play.remoteconfiguration.RemoteConfiguration;
+import com.payintech.play.remoteconfiguration.metrics.RemoteConfigurationMetrics;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+import play.Application;
+import play.ApplicationLoader;
+import play.Environment;
+import play.Mode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * HttpBasicTest.
+ *
+ * @author Thibault Meyer
+ * @version 26.10.18
+ * @since 26.10.18
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class HttpBasicTest {
+
+    /**
+     * Number of full documents sent.
+     *
+     * @since 26.10.18
+     */
+    private final AtomicInteger documentCount = new AtomicInteger();
+
+    /**
+     * Current document.
+     *
+     * @since 26.10.18
+     */
+    private volatile String document = "my.key = \"Hello World\"";
+
+    /**
+     * Local HTTP server.
+     *
+     * @since 26.10.18
+     */
+    private HttpServer server;
+
+    /**
+     * @since 26.10.18
+     */
+    @Before
+    public void startServer() throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.server.createContext("/application.conf", exchange -> {
+            final String currentDocument = this.document;
+            final String entityTag = "\"" + Integer.toHexString(currentDocument.hashCode()) + "\"";
+            exchange.getResponseHeaders().set("ETag", entityTag);
+            if (entityTag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+            } else {
+                final byte[] body = currentDocument.getBytes(StandardCharsets.UTF_8);
+                this.documentCount.incrementAndGet();
+                exchange.sendResponseHeaders(200, body.length);
+                try (final OutputStream os = exchange.getResponseBody()) {
+                    os.write(body);
+                }
+            }
+            exchange.close();
+        });
+        this.server.createContext("/compressed.conf", exchange -> {
+            final ByteArrayOutputStream body = new ByteArrayOutputStream();
+            try (final OutputStream os = new GZIPOutputStream(body)) {
+                os.write(this.document.getBytes(StandardCharsets.UTF_8));
+            }
+            Assert.assertTrue(exchange.getRequestHeaders().getFirst("Accept-Encoding").contains("gzip"));
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            exchange.sendResponseHeaders(200, body.size());
+            try (final OutputStream os = exchange.getResponseBody()) {
+                body.writeTo(os);
+            }
+            exchange.close();
+        });
+        this.server.createContext("/configs/", exchange -> {
+            final String path = exchange.getRequestURI().getPath();
+            final String body;
+            if ("/configs/main.conf".equals(path)) {
+                body = "include \"common.conf\"\nmy.key = \"Hello World\"";
+            } else if ("/configs/common.conf".equals(path)) {
+                body = "common.greeting = \"Hello include\"";
+            } else {
+                body = null;
+            }
+            if (body == null) {
+                exchange.sendResponseHeaders(404, -1);
+            } else {
+                final byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(200, bytes.length);
+                try (final OutputStream os = exchange.getResponseBody()) {
+                    os.write(bytes);
+                }
+            }
+            exchange.close();
+        });
+        this.server.createContext("/slow.conf", exchange -> {
+            try {
+                Thread.sleep(1000);
+            } catch (final InterruptedException ignore) {
+            }
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        this.server.start();
+    }
+
+    /**
+     * @since 26.10.18
+     */
+    @After
+    public void stopServer() {
+        this.server.stop(0);
+    }
+
+    /**
+     * Build a preconfigured application.
+     *
+     * @param watch Enable the polling?
+     * @return The newly created application
+     * @since 26.10.18
+     */
+    private Application buildApplication(final boolean watch) {
+        return new PlayApplicationLoader().builder(new ApplicationLoader.Context(
+            new Environment(Mode.TEST),
+            new HashMap<String, Object>() {{
+                put("remote-configuration.provider", "HTTP_BASIC");
+                put("remote-configuration.http.url", String.format(
+                    "http://127.0.0.1:%d/application.conf",
+                    server.getAddress().getPort()
+                ));
+                put("remote-configuration.http.watch.enabled", watch);
+                put("remote-configuration.http.watch.interval", "50ms");
+                put("remote-configuration.http.watch.maxInterval", "100ms");
+            }}
+        )).build();
+    }
+
+    /**
+     * Get the number of compressed responses received by the provider.
+     *
+     * @return The number of compressed responses
+     * @since 26.10.18
+     */
+    private long getCompressedResponses() {
+        return RemoteConfigurationMetrics.getInstance()
+            .getCounters()
+            .getOrDefault("HTTP (Basic Implementation)/COMPRESSED_RESPONSES", 0L);
+    }
+
+    /**
+     * @since 26.10.18
+     */
+    @Test
+    public void httpBasicTest_001() {
+        final Application application = this.buildApplication(false);
+
+        Assert.assertEquals(
+            "Hello World",
+            application.config().getString("my.key")
+        );
+
+        application.asScala().stop();
+    }
+
+    /**
+     * @since 26.10.18
+     */
+    @Test
+    public void httpBasicTest_002() throws InterruptedException {
+        final Application application = this.buildApplication(true);
+        final RemoteConfiguration remoteConfiguration = application.injector().instanceOf(RemoteConfiguration.class);
+
+        Thread.sleep(500);
+        Assert.assertEquals(1, this.documentCount.get());
+
+        this.document = "my.key = \"Hello HTTP\"";
+        for (int i = 0; i < 50 && "Hello World".equals(remoteConfiguration.get().getString("my.key")); ++i) {
+            Thread.sleep(100);
+        }
+
+        Assert.assertEquals(
+            "Hello HTTP",
+            remoteConfiguration.get().getString("my.key")
+        );
+
+        Assert.assertEquals(2, this.documentCount.get());
+
+        application.asScala().stop();
+    }
+
+    /**
+     * @since 26.10.18
+     */
+    @Test
+    public void httpBasicTest_003() {
+        final long compressedResponses = this.getCompressedResponses();
+        final Application application = new PlayApplicationLoader().builder(new ApplicationLoader.Context(
+            new Environment(Mode.TEST),
+            new HashMap<String, Object>() {{
+                put("remote-configuration.provider", "HTTP_BASIC");
+                put("remote-configuration.http.url", String.format(
+                    "http://127.0.0.1:%d/compressed.conf",
+                    server.getAddress().getPort()
+                ));
+            }}
+        )).build();
+
+        Assert.assertEquals(
+            "Hello World",
+            application.config().getString("my.key")
+        );
+
+        Assert.assertEquals(compressedResponses + 1, this.getCompressedResponses());
+
+        application.asScala().stop();
+    }
+
+    /**
+     * @since 26.10.18
+     */
+    @Test
+    public void httpBasicTest_004() {
+        final long startTime = System.currentTimeMillis();
+        try {
+            new PlayApplicationLoader().builder(new ApplicationLoader.Context(
+                new Environment(Mode.TEST),
+                new HashMap<String, Object>() {{
+                    put("remote-configuration.provider", "HTTP_BASIC");
+                    put("remote-configuration.http.url", String.format(
+                        "http://127.0.0.1:%d/slow.conf",
+                        server.getAddress().getPort()
+                    ));
+                    put("remote-configuration.transport.deadline", "200ms");
+                }}
+            )).build();
+            Assert.fail("The deadline has not been applied");
+        } catch (final RuntimeException ex) {
+            Assert.assertTrue(ex.getCause() instanceof SocketTimeoutException);
+            Assert.assertTrue(System.currentTimeMillis() - startTime < 1000);
+        }
+    }
+
+    /**
+     * @since 26.10.18
+     */
+    @Test
+    public void httpBasicTest_005() {
+        Application application = new PlayApplicationLoader().builder(new ApplicationLoader.Context(
+            new Environment(Mode.TEST),
+            new HashMap<String, Object>() {{
+                put("remote-configuration.provider", "HTTP_BASIC");
+                put("remote-configuration.http.url", String.format(
+                    "http://127.0.0.1:%d/configs/main.conf",
+                    server.getAddress().getPort()
+                ));
+            }}
+        )).build();
+
+        // Relative includes are resolved against the document URL
+        Assert.assertEquals(
+            "Hello include",
+            application.config().getString("common.greeting")
+        );
+
+        Assert.assertEquals(
+            "Hello World",
+            application.config().getString("my.key")
+        );
+
+        application.asScala().stop();
+
+        application = new PlayApplicationLoader().builder(new ApplicationLoader.Context(
+            new Environment(Mode.TEST),
+            new HashMap<String, Object>() {{
+                put("remote-configuration.provider", "HTTP_BASIC");
+                put("remote-configuration.http.url", String.format(
+                    "http://127.0.0.1:%d/configs/missing.conf",
+                    server.getAddress().getPort()
+                ));
+            }}
+        )).build();
+
+        // A missing document is an empty configuration
+        Assert.assertFalse(application.config().hasPath("my.key"));
+
+        application.asScala().stop();
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 PayinTech
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import com.payintech.play.remoteconfiguration.provider.KeyValueConfigBuilder;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.junit.Assert;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+/**
+ * KeyValueConfigBuilderTest. Each couple list is built with the
+ * builder and, as providers did before, by parsing a HOCON document
+ * holding one {@code key = value} line per couple: both configurations
+ * must be equal.
+ *
+ * @author Thibault Meyer
+ * @version 26.10.18
+ * @since 26.10.18
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class KeyValueConfigBuilderTest {
+
+    /**
+     * Check that the builder and the HOCON parser return the same
+     * configuration.
+     *
+     * @param keyValues The Key/Value couples, in order
+     * @since 26.10.18
+     */
+    private void assertParity(final String... keyValues) {
+        final StringBuilder document = new StringBuilder();
+        final KeyValueConfigBuilder builder = new KeyValueConfigBuilder("test");
+        for (int i = 0; i < keyValues.length; i += 2) {
+            document.append(keyValues[i]).append(" = ").append(keyValues[i + 1]).append('\n');
+            builder.put(keyValues[i], keyValues[i + 1]);
+        }
+        final Config expected = ConfigFactory.parseString(document.toString()).resolve();
+        final Config actual = builder.build().resolve();
+
+        Assert.assertEquals(document.toString(), expected.root(), actual.root());
+    }
+
+    /**
+     * @since 26.10.18
+     */
+    @Test
+    public void keyValueConfigBuilderTest_001() {
+        // Numbers, booleans, null and simple strings
+        this.assertParity(
+            "a.int", "5000",
+            "a.negative", "-12",
+            "a.zero", "0",
+            "a.negativeZero", "-0",
+            "a.leadingZero", "007",
+            "a.leadingZeros", "00",
+            "a.long", "9999999999",
+            "a.tooLong", "99999999999999999999",
+            "a.double", "1.50",
+            "a.exponent", "1e3",
+            "a.true", "true",
+            "a.false", "false",
+            "a.yes", "yes",
+            "a.null", "null",
+            "a.nullPrefix", "nullable",
+            "a.string", "org.postgresql.Driver",
+            "a.spaces", "Hello  World",
+            "a.padded", "  Hello World  ",
+            "a.unicode", "Héllo Wörld",
+            "a.dotted", ".hidden",
+            "a.dash", "-abc"
+        );
+    }
+
+    /**
+     * @since 26.10.18
+     */
+    @Test
+    public void keyValueConfigBuilderTest_002() {
+        // Comments, quoted strings and quoted keys
+        this.assertParity(
+            "b.comment", "value // comment",
+            "b.quotedUrl", "\"http://127.0.0.1:8500/\"",
+            "b.hash", "value # comment",
+            "b.quoted", "\"Hello World\"",
+            "b.escaped", "\"tab\\tnew\\nline\"",
+            "b.tripleQuoted", "\"\"\"multi \"quoted\" line\"\"\"",
+            "b.concatenation", "\"Hello\" World",
+            "\"b.quoted.key\"", "1",
+            "b.\"dotted.part\".value", "2",
+            "b.\"\".empty", "3",
+            "b.with-dash_and_underscore.0", "4"
+        );
+    }
+
+    /**
+     * @since 26.10.18
+     */
+    @Test
+    public void keyValueConfigBuilderTest_003() {
+        // Lists, objects and substitutions
+        this.assertParity(
+            "c.ints", "[1,2,3,4,5]",
+            "c.strings", "[ a, \"b\", c d ]",
+            "c.objects", "[ { x = 1 }, { y = 2 } ]",
+            "c.object", "{ a = 1, b = two, c { d = [true] } }",
+            "c.emptyList", "[]",
+            "c.emptyObject", "{}",
+            "c.host", "example.com",
+            "c.url", "\"https://\"${c.host}\"/path\"",
+            "c.reference", "${c.ints}",
+            "c.merged", "${c.object} { e = 5 }",
+            "c.optional", "${?c.missing}",
+            "c.optionalDefault", "10",
+            "c.optionalDefault", "${?c.missing}"
+        );
+    }
+
+    /**
+     * @since 26.10.18
+     */
+    @Test
+    public void keyValueConfigBuilderTest_004() {
+        // A key later overridden by a sub-key
+        this.assertParity(
+            "d.object", "{ url = a, user = b }",
+            "d.object.user", "c",
+            "d.object.password", "d",
+            "d.scalar", "5",
+            "d.scalar.user", "e",
+            "d.list", "[1, 2]",
+            "d.list.user", "f",
+            "d.null", "null",
+            "d.null.user", "g"
+        );
+
+        // A sub-key later overridden by its parent key
+        this.assertParity(
+            "e.object.user", "c",
+            "e.object.password", "d",
+            "e.object", "{ url = a, user = b }",
+            "e.scalar.user", "e",
+            "e.scalar", "5",
+            "e.list.user", "f",
+            "e.list", "[1, 2]",
+            "e.deep.a.b.c", "1",
+            "e.deep", "{ a { b { d = 2 } } }",
+            "e.deep.a", "{ b { e = 3 } }",
+            "e.replaced.a", "1",
+            "e.replaced", "2",
+            "e.replaced.b", "3",
+            "e.same", "1",
+            "e.same", "2"
+        );
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 PayinTech
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+import com.payintech.play.remoteconfiguration.PlayApplicationLoader;
+import com.payintech.play.remoteconfiguration.RemoteConfiguration;
+import com.payintech.play.remoteconfiguration.metrics.RemoteConfigurationMetrics;
+import org.junit.Assert;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+import play.Application;
+import play.ApplicationLoader;
+import play.Environment;
+import play.Mode;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class RedisTest {
+
+    /**
+     * Send commands to the local Redis server and return the last
+     * reply line.
+     *
+     * @param commands The commands, arguments separated by a space
+     * @return The last reply line
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    private String execute(final String... commands) throws IOException {
+        try (final Socket socket = new Socket("127.0.0.1", 6379)) {
+            final StringBuilder sb = new StringBuilder();
+            for (final String command : commands) {
+                final String[] args = command.split(" ");
+                sb.append('*').append(args.length).append("\r\n");
+                for (final String arg : args) {
+                    sb.append('$').append(arg.getBytes(StandardCharsets.UTF_8).length).append("\r\n").append(arg).append("\r\n");
+                }
+            }
+            final OutputStream os = socket.getOutputStream();
+            os.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+            os.flush();
+            final BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            String line = null;
+            for (int i = 0; i < commands.length; ++i) {
+                line = reader.readLine();
+                if (line.startsWith("$")) {
+                    line = reader.readLine();
+                }
+            }
+            return line;
+        }
+    }
+
+    /**
+     * @since 26.10.18
+     */
+    @Test
+    public void redisTest_001() throws IOException {
+        final String[] commands = new String[2504];
+        commands[0] = "SET test:db:default:driver org.postgresql.Driver";
+        commands[1] = "SET test:db:default:timeout 5000";
+        commands[2] = "SET test:db:default:disabled false";
+        commands[3] = "SET other:key Hello";
+        for (int i = 0; i < 2500; ++i) {
+            commands[i + 4] = String.format("SET test:pages:key%04d %d", i, i);
+        }
+        this.execute(commands);
+        final long roundTrips = Long.parseLong(this.execute("ROUNDTRIPS").substring(1));
+        final Application application = new PlayApplicationLoader().builder(new ApplicationLoader.Context(
+            new Environment(Mode.TEST),
+            new HashMap<String, Object>() {{
+                put("remote-configuration.provider", "REDIS");
+                put("remote-configuration.redis.prefix", "test");
+                put("remote-configuration.redis.scanCount", 1000);
+            }}
+        )).build();
+
+        Assert.assertEquals(
+            "org.postgresql.Driver",
+            application.config().getString("db.default.driver")
+        );
+
+        Assert.assertEquals(
+            5000,
+            application.config().getInt("db.default.timeout")
+        );
+
+        Assert.assertEquals(
+            false,
+            application.config().getBoolean("db.default.disabled")
+        );
+
+        Assert.assertEquals(
+            2500,
+            application.config().getConfig("pages").entrySet().size()
+        );
+
+        Assert.assertFalse(application.config().hasPath("key"));
+
+        // One round trip by page of 1000 keys, plus the last MGET
+        Assert.assertTrue(Long.parseLong(this.execute("ROUNDTRIPS").substring(1)) - roundTrips <= 6);
+
+        application.asScala().stop();
+    }
+
+    /**
+     * @since 26.10.18
+     */
+    @Test
+    public void redisTest_002() throws IOException {
+        this.execute("HSET tenant:42 db.default.driver org.postgresql.Driver feature:enabled true");
+        final Application application = new PlayApplicationLoader().builder(new ApplicationLoader.Context(
+            new Environment(Mode.TEST),
+            new HashMap<String, Object>() {{
+                put("remote-configuration.provider", "REDIS");
+                put("remote-configuration.redis.hash", "tenant:42");
+            }}
+        )).build();
+
+        Assert.assertEquals(
+            "org.postgresql.Driver",
+            application.config().getString("db.default.driver")
+        );
+
+        Assert.assertEquals(
+            true,
+            application.config().getBoolean("feature.enabled")
+        );
+
+        application.asScala().stop();
+    }
+
+    /**
+     * @since 26.10.18
+     */
+    @Test
+    public void redisTest_003() throws IOException, InterruptedException {
+        this.execute("SET watch:my:key Hello_World", "SET watch:my:old:key Hello");
+        final Application application = new PlayApplicationLoader().builder(new ApplicationLoader.Context(
+            new Environment(Mode.TEST),
+            new HashMap<String, Object>() {{
+                put("remote-configuration.provider", "REDIS");
+                put("remote-configuration.redis.prefix", "watch");
+                put("remote-configuration.redis.watch.enabled", true);
+            }}
+        )).build();
+        final RemoteConfiguration remoteConfiguration = application.injector().instanceOf(RemoteConfiguration.class);
+
+        Assert.assertEquals(
+            "Hello_World",
+            remoteConfiguration.get().getString("my.key")
+        );
+
+        // Let the watcher subscribe
+        Thread.sleep(500);
+        this.execute("SET unwatched:my:key Hello", "SET watch:my:key Hello_Redis", "DEL watch:my:old:key");
+        for (int i = 0; i < 50 && remoteConfiguration.get().hasPath("my.old.key"); ++i) {
+            Thread.sleep(100);
+        }
+
+        Assert.assertEquals(
+            "Hello_Redis",
+            remoteConfiguration.get().getString("my.key")
+        );
+
+        Assert.assertFalse(remoteConfiguration.get().hasPath("my.old"));
+
+        application.asScala().stop();
+    }
+
+    /**
+     * @since 26.10.18
+     */
+    @Test
+    public void redisTest_004() throws IOException {
+        this.execute("DEL bytes:1", "HSET bytes:1 my.key Hello_World");
+        final long receivedBytes = RemoteConfigurationMetrics.getInstance()
+            .getCounters()
+            .getOrDefault("Redis/RECEIVED_BYTES", 0L);
+        final Application application = new PlayApplicationLoader().builder(new ApplicationLoader.Context(
+            new Environment(Mode.TEST),
+            new HashMap<String, Object>() {{
+                put("remote-configuration.provider", "REDIS");
+                put("remote-configuration.redis.hash", "bytes:1");
+            }}
+        )).build();
+
+        Assert.assertEquals(
+            "Hello_World",
+            application.config().getString("my.key")
+        );
+
+        // Single HSCAN reply: *2 $1 0 *2 $6 my.key $11 Hello_World
+        Assert.assertEquals(
+            receivedBytes + 45,
+            (long) RemoteConfigurationMetrics.getInstance()
+                .getCounters()
+                .getOrDefault("Redis/RECEIVED_BYTES", 0L)
+        );
+
+        application.asScala().stop();
+    }
+}
@@ -0,0 +1,334 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 PayinTech
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.payintech.play.remoteconfiguration.PlayApplicationLoader;
+import com.payintech.play.remoteconfiguration.RemoteConfiguration;
+import org.junit.Assert;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+import play.Application;
+import play.ApplicationLoader;
+import play.Environment;
+import play.Mode;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.stream.Stream;
+
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class VaultTest {
+
+    /**
+     * Write a secret on the local Vault server.
+     *
+     * @param path The API path of the secret, relative to "/v1/"
+     * @param data The secret, as Json document
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    private void putSecret(final String path, final String data) throws IOException {
+        final URL url = new URL("http://127.0.0.1:8200/v1/" + path);
+        final HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        conn.setRequestMethod("POST");
+        conn.setRequestProperty("X-Vault-Token", "root");
+        conn.setDoOutput(true);
+        try (final OutputStream os = conn.getOutputStream()) {
+            os.write(data.getBytes(StandardCharsets.UTF_8));
+        }
+        Assert.assertEquals(2, conn.getResponseCode() / 100);
+    }
+
+    /**
+     * Delete a secret on the local Vault server.
+     *
+     * @param path The API path of the secret, relative to "/v1/"
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    private void deleteSecret(final String path) throws IOException {
+        final URL url = new URL("http://127.0.0.1:8200/v1/" + path);
+        final HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        conn.setRequestMethod("DELETE");
+        conn.setRequestProperty("X-Vault-Token", "root");
+        Assert.assertEquals(2, conn.getResponseCode() / 100);
+    }
+
+    /**
+     * Retrieve the number of secrets read on the local Vault server.
+     *
+     * @return The number of secrets read
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    private long getReadCount() throws IOException {
+        final URL url = new URL("http://127.0.0.1:8200/v1/sys/reads");
+        final HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        conn.setRequestProperty("X-Vault-Token", "root");
+        return new ObjectMapper().readTree(conn.getInputStream()).get("reads").asLong();
+    }
+
+    /**
+     * @since 26.10.18
+     */
+    @Test
+    public void vaultTest_001() {
+        final Application application = new PlayApplicationLoader().builder(new ApplicationLoader.Context(
+            new Environment(Mode.TEST),
+            new HashMap<String, Object>() {{
+                put("remote-configuration.provider", "VAULT");
+                put("remote-configuration.vault.token", "root");
+                put("remote-configuration.vault.path", "app");
+            }}
+        )).build();
+
+        Assert.assertEquals(
+            "org.postgresql.Driver",
+            application.config().getString("db.default.driver")
+        );
+
+        Assert.assertEquals(
+            5000,
+            application.config().getInt("db.default.timeout")
+        );
+
+        Assert.assertEquals(
+            false,
+            application.config().getBoolean("db.default.disabled")
+        );
+
+        Assert.assertEquals(
+            2,
+            application.config().getStringList("api.hosts").size()
+        );
+
+        Assert.assertEquals(
+            "1",
+            application.config().getString("deep.nested.one.value")
+        );
+
+        application.asScala().stop();
+    }
+
+    /**
+     * @since 26.10.18
+     */
+    @Test
+    public void vaultTest_002() {
+        final Application application = new PlayApplicationLoader().builder(new ApplicationLoader.Context(
+            new Environment(Mode.TEST),
+            new HashMap<String, Object>() {{
+                put("remote-configuration.provider", "VAULT");
+                put("remote-configuration.vault.token", "root");
+                put("remote-configuration.vault.mount", "kv");
+                put("remote-configuration.vault.version", 1);
+                put("remote-configuration.vault.path", "/app/");
+            }}
+        )).build();
+
+        Assert.assertEquals(
+            "org.postgresql.Driver",
+            application.config().getString("db.default.driver")
+        );
+
+        application.asScala().stop();
+    }
+
+    /**
+     * @since 26.10.18
+     */
+    @Test
+    public void vaultTest_003() throws IOException, InterruptedException {
+        this.putSecret("secret/data/watch/my", "{\"data\": {\"key\": \"Hello World\"}}");
+        this.deleteSecret("secret/data/watch/other");
+        final Application application = new PlayApplicationLoader().builder(new ApplicationLoader.Context(
+            new Environment(Mode.TEST),
+            new HashMap<String, Object>() {{
+                put("remote-configuration.provider", "VAULT");
+                put("remote-configuration.vault.token", "root");
+                put("remote-configuration.vault.path", "watch");
+                put("remote-configuration.vault.cacheTtl", "1m");
+                put("remote-configuration.vault.watch.enabled", true);
+                put("remote-configuration.vault.watch.interval", "100ms");
+            }}
+        )).build();
+        final RemoteConfiguration remoteConfiguration = application.injector().instanceOf(RemoteConfiguration.class);
+
+        Assert.assertEquals(
+            "Hello World",
+            remoteConfiguration.get().getString("my.key")
+        );
+
+        final long readCount = this.getReadCount();
+        this.putSecret("secret/data/watch/other", "{\"data\": {\"key\": \"Hello Vault\"}}");
+        for (int i = 0; i < 50 && !remoteConfiguration.get().hasPath("other.key"); ++i) {
+            Thread.sleep(100);
+        }
+
+        Assert.assertEquals(
+            "Hello Vault",
+            remoteConfiguration.get().getString("other.key")
+        );
+
+        // Only the new secret has been read, the other one is still cached
+        Assert.assertEquals(
+            readCount + 1,
+            this.getReadCount()
+        );
+
+        application.asScala().stop();
+    }
+
+    /**
+     * @since 26.10.18
+     */
+    @Test
+    public void vaultTest_004() throws IOException, InterruptedException {
+        this.putSecret("kv/watch/my", "{\"key\": \"Hello World\"}");
+        final Application application = new PlayApplicationLoader().builder(new ApplicationLoader.Context(
+            new Environment(Mode.TEST),
+            new HashMap<String, Object>() {{
+                put("remote-configuration.provider", "VAULT");
+                put("remote-configuration.vault.token", "root");
+                put("remote-configuration.vault.mount", "kv");
+                put("remote-configuration.vault.version", 1);
+                put("remote-configuration.vault.path", "watch");
+                put("remote-configuration.vault.cacheTtl", "200ms");
+                put("remote-configuration.vault.watch.enabled", true);
+                put("remote-configuration.vault.watch.interval", "100ms");
+            }}
+        )).build();
+        final RemoteConfiguration remoteConfiguration = application.injector().instanceOf(RemoteConfiguration.class);
+
+        Assert.assertEquals(
+            "Hello World",
+            remoteConfiguration.get().getString("my.key")
+        );
+
+        // The secret is returned with a 768h lease, capped by the cache TTL
+        this.putSecret("kv/watch/my", "{\"key\": \"Hello Vault\"}");
+        for (int i = 0; i < 50 && "Hello World".equals(remoteConfiguration.get().getString("my.key")); ++i) {
+            Thread.sleep(100);
+        }
+
+        Assert.assertEquals(
+            "Hello Vault",
+            remoteConfiguration.get().getString("my.key")
+        );
+
+        application.asScala().stop();
+    }
+
+    /**
+     * @since 26.10.18
+     */
+    @Test
+    public void vaultTest_005() throws IOException {
+        this.putSecret(
+            "secret/data/opaque/db",
+            "{\"data\": {"
+                + "\"hash\": \"abc#123\", "
+                + "\"slashes\": \"s3cr3t//x\", "
+                + "\"dollar\": \"${db.password}\", "
+                + "\"brace\": \"{oops\", "
+                + "\"bracket\": \"[oops\", "
+                + "\"quotes\": \"\\\"quoted\\\" 'single'\", "
+                + "\"multiline\": \"line 1\\nline 2\\n\", "
+                + "\"spaces\": \"  padded  \""
+                + "}}"
+        );
+        final Application application = new PlayApplicationLoader().builder(new ApplicationLoader.Context(
+            new Environment(Mode.TEST),
+            new HashMap<String, Object>() {{
+                put("remote-configuration.provider", "VAULT");
+                put("remote-configuration.vault.token", "root");
+                put("remote-configuration.vault.path", "opaque");
+            }}
+        )).build();
+
+        Assert.assertEquals("abc#123", application.config().getString("db.hash"));
+        Assert.assertEquals("s3cr3t//x", application.config().getString("db.slashes"));
+        Assert.assertEquals("${db.password}", application.config().getString("db.dollar"));
+        Assert.assertEquals("{oops", application.config().getString("db.brace"));
+        Assert.assertEquals("[oops", application.config().getString("db.bracket"));
+        Assert.assertEquals("\"quoted\" 'single'", application.config().getString("db.quotes"));
+        Assert.assertEquals("line 1\nline 2\n", application.config().getString("db.multiline"));
+        Assert.assertEquals("  padded  ", application.config().getString("db.spaces"));
+
+        application.asScala().stop();
+    }
+
+    /**
+     * @since 26.10.18
+     */
+    @Test
+    public void vaultTest_006() throws IOException, InterruptedException {
+        this.putSecret("secret/data/private/db", "{\"data\": {\"password\": \"s3cr3t\"}}");
+        final Path directory = Files.createTempDirectory("rconf-snapshot");
+        final Application application = new PlayApplicationLoader().builder(new ApplicationLoader.Context(
+            new Environment(Mode.TEST),
+            new HashMap<String, Object>() {{
+                put("remote-configuration.provider", "VAULT");
+                put("remote-configuration.vault.token", "root");
+                put("remote-configuration.vault.path", "private");
+                put("remote-configuration.vault.watch.enabled", true);
+                put("remote-configuration.vault.watch.interval", "100ms");
+                put("remote-configuration.snapshot.enabled", true);
+                put("remote-configuration.snapshot.directory", directory.toString());
+                put("remote-configuration.coalescing.enabled", true);
+                put("remote-configuration.coalescing.directory", directory.toString());
+            }}
+        )).build();
+        final RemoteConfiguration remoteConfiguration = application.injector().instanceOf(RemoteConfiguration.class);
+
+        Assert.assertEquals(
+            "s3cr3t",
+            remoteConfiguration.get().getString("db.password")
+        );
+
+        // Without cache TTL, an updated secret is seen within the watch interval
+        this.putSecret("secret/data/private/db", "{\"data\": {\"password\": \"n3w-s3cr3t\"}}");
+        for (int i = 0; i < 50 && "s3cr3t".equals(remoteConfiguration.get().getString("db.password")); ++i) {
+            Thread.sleep(100);
+        }
+
+        Assert.assertEquals(
+            "n3w-s3cr3t",
+            remoteConfiguration.get().getString("db.password")
+        );
+
+        application.asScala().stop();
+
+        // Secrets are never written on disk
+        try (final Stream<Path> files = Files.walk(directory)) {
+            Assert.assertFalse(files.anyMatch(file -> Files.isRegularFile(file) && file.toFile().length() > 0));
+        }
+    }
+}
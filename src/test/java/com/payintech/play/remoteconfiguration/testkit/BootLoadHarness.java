@@ -0,0 +1,459 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 PayinTech
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.payintech.play.remoteconfiguration.testkit;
+
+import com.payintech.play.remoteconfiguration.PlayApplicationLoader;
+import play.Application;
+import play.ApplicationLoader;
+import play.Environment;
+import play.Mode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Boots a fleet of applications at the same time against a fake
+ * server, to measure how the boot latency and the server load scale
+ * with the number of keys and the size of the fleet. Each instance is
+ * a full application built with {@link PlayApplicationLoader}; all
+ * instances are released together once ready, like a fleet restarted
+ * by a deployment.
+ *
+ * @author Thibault Meyer
+ * @version 26.10.18
+ * @since 26.10.18
+ */
+public final class BootLoadHarness {
+
+    /**
+     * Number of keys by group (ie: "group001.key00042").
+     *
+     * @since 26.10.18
+     */
+    private static final int KEYS_BY_GROUP = 100;
+
+    /**
+     * Maximum time to wait for the fleet to boot, in minutes.
+     *
+     * @since 26.10.18
+     */
+    private static final long BOOT_TIMEOUT = 10;
+
+    /**
+     * Build a new instance.
+     *
+     * @since 26.10.18
+     */
+    private BootLoadHarness() {
+    }
+
+    /**
+     * Create a fake server able to serve the given provider.
+     *
+     * @param provider The provider short name ("CONSUL", "ETCD", "ETCD3" or "HTTP_BASIC")
+     * @return The fake server, not started
+     * @since 26.10.18
+     */
+    public static FakeServer createServer(final String provider) {
+        switch (provider) {
+            case "CONSUL":
+                return new FakeConsulServer();
+            case "ETCD":
+            case "ETCD3":
+                return new FakeEtcdServer();
+            case "HTTP_BASIC":
+                return new FakeHttpServer();
+            default:
+                throw new IllegalArgumentException("Unsupported provider: " + provider);
+        }
+    }
+
+    /**
+     * Store the keys of a workload on a started fake server. Keys are
+     * located under the "load" prefix.
+     *
+     * @param provider   The provider short name ("CONSUL", "ETCD", "ETCD3" or "HTTP_BASIC")
+     * @param fakeServer The started fake server, created by {@link #createServer(String)}
+     * @param keyCount   The number of keys
+     * @return The workload
+     * @since 26.10.18
+     */
+    public static Workload seed(final String provider, final FakeServer fakeServer, final int keyCount) {
+        final Map<String, Object> settings = new HashMap<>();
+        settings.put("remote-configuration.provider", provider);
+        final StringBuilder document = new StringBuilder();
+        String lastPath = null;
+        for (int i = 0; i < keyCount; ++i) {
+            final String group = String.format("group%03d", i / KEYS_BY_GROUP);
+            final String key = String.format("key%05d", i);
+            final String value = "value" + i;
+            switch (provider) {
+                case "CONSUL":
+                    ((FakeConsulServer) fakeServer).put("load/" + group + "/" + key, value);
+                    break;
+                case "ETCD":
+                    ((FakeEtcdServer) fakeServer).put("/load/" + group + "/" + key, value);
+                    break;
+                case "ETCD3":
+                    ((FakeEtcdServer) fakeServer).putV3("/load/" + group + "/" + key, value);
+                    break;
+                default:
+                    document.append(group).append('.').append(key).append(" = \"").append(value).append("\"\n");
+                    break;
+            }
+            lastPath = group + "." + key;
+        }
+        switch (provider) {
+            case "CONSUL":
+                settings.put("remote-configuration.consul.endpoint", fakeServer.getEndpoint());
+                settings.put("remote-configuration.consul.prefix", "/load");
+                break;
+            case "ETCD":
+                settings.put("remote-configuration.etcd.endpoint", fakeServer.getEndpoint());
+                settings.put("remote-configuration.etcd.prefix", "load");
+                break;
+            case "ETCD3":
+                settings.put("remote-configuration.etcd3.endpoint", fakeServer.getEndpoint());
+                settings.put("remote-configuration.etcd3.prefix", "load");
+                break;
+            default:
+                ((FakeHttpServer) fakeServer).putDocument("/load.conf", "application/hocon", document.toString());
+                settings.put("remote-configuration.http.url", fakeServer.getEndpoint() + "load.conf");
+                break;
+        }
+        return new Workload(keyCount, settings, lastPath);
+    }
+
+    /**
+     * Boot a fleet of applications at the same time. Each application is
+     * stopped as soon as it is booted. The server statistics are reset
+     * before the fleet is released.
+     *
+     * @param workload   The workload
+     * @param fakeServer The fake server holding the workload keys
+     * @param fleetSize  The number of applications
+     * @return The report
+     * @throws InterruptedException When the current thread is interrupted
+     * @since 26.10.18
+     */
+    public static Report run(final Workload workload,
+                             final FakeServer fakeServer,
+                             final int fleetSize) throws InterruptedException {
+        final ExecutorService executor = Executors.newFixedThreadPool(fleetSize);
+        final CountDownLatch ready = new CountDownLatch(fleetSize);
+        final CountDownLatch go = new CountDownLatch(1);
+        final List<Future<Long>> boots = new ArrayList<>();
+        for (int i = 0; i < fleetSize; ++i) {
+            boots.add(executor.submit(() -> {
+                ready.countDown();
+                go.await();
+                final long startTime = System.nanoTime();
+                final Application application = new PlayApplicationLoader().builder(new ApplicationLoader.Context(
+                    new Environment(Mode.TEST),
+                    new HashMap<>(workload.settings)
+                )).build();
+                final long bootTime = System.nanoTime() - startTime;
+                try {
+                    if (workload.lastPath != null && !application.config().hasPath(workload.lastPath)) {
+                        throw new IllegalStateException("Incomplete configuration, missing " + workload.lastPath);
+                    }
+                } finally {
+                    application.asScala().stop();
+                }
+                return bootTime;
+            }));
+        }
+        ready.await();
+        fakeServer.resetStatistics();
+        final long startTime = System.nanoTime();
+        go.countDown();
+        final List<Long> bootTimes = new ArrayList<>();
+        final List<Throwable> failures = new ArrayList<>();
+        for (final Future<Long> boot : boots) {
+            try {
+                bootTimes.add(boot.get(BOOT_TIMEOUT, TimeUnit.MINUTES));
+            } catch (final ExecutionException ex) {
+                failures.add(ex.getCause());
+            } catch (final TimeoutException ex) {
+                failures.add(ex);
+            }
+        }
+        final long wallTime = System.nanoTime() - startTime;
+        executor.shutdownNow();
+        Collections.sort(bootTimes);
+        return new Report(workload.keyCount, fleetSize, bootTimes, failures, wallTime, fakeServer);
+    }
+
+    /**
+     * Keys stored on a fake server, with the settings used by the
+     * applications to retrieve them.
+     *
+     * @since 26.10.18
+     */
+    public static final class Workload {
+
+        /**
+         * The number of keys.
+         *
+         * @since 26.10.18
+         */
+        private final int keyCount;
+
+        /**
+         * The application settings.
+         *
+         * @since 26.10.18
+         */
+        private final Map<String, Object> settings;
+
+        /**
+         * The configuration path of the last key, checked on each
+         * booted application.
+         *
+         * @since 26.10.18
+         */
+        private final String lastPath;
+
+        /**
+         * Build a new instance.
+         *
+         * @param keyCount The number of keys
+         * @param settings The application settings
+         * @param lastPath The configuration path of the last key, can be {@code null}
+         * @since 26.10.18
+         */
+        Workload(final int keyCount, final Map<String, Object> settings, final String lastPath) {
+            this.keyCount = keyCount;
+            this.settings = settings;
+            this.lastPath = lastPath;
+        }
+
+        /**
+         * Retrieve the application settings. Settings can be added
+         * (ie: timeouts) before running the workload.
+         *
+         * @return The application settings
+         * @since 26.10.18
+         */
+        public Map<String, Object> getSettings() {
+            return this.settings;
+        }
+    }
+
+    /**
+     * The result of a fleet boot.
+     *
+     * @since 26.10.18
+     */
+    public static final class Report {
+
+        /**
+         * The number of keys.
+         *
+         * @since 26.10.18
+         */
+        private final int keyCount;
+
+        /**
+         * The number of applications.
+         *
+         * @since 26.10.18
+         */
+        private final int fleetSize;
+
+        /**
+         * The boot time of each successfully booted application, in
+         * nanoseconds, sorted.
+         *
+         * @since 26.10.18
+         */
+        private final List<Long> bootTimes;
+
+        /**
+         * The boot failures.
+         *
+         * @since 26.10.18
+         */
+        private final List<Throwable> failures;
+
+        /**
+         * The time needed to boot the whole fleet, in nanoseconds.
+         *
+         * @since 26.10.18
+         */
+        private final long wallTime;
+
+        /**
+         * The number of requests received by the server.
+         *
+         * @since 26.10.18
+         */
+        private final long requestCount;
+
+        /**
+         * The number of response body bytes sent by the server.
+         *
+         * @since 26.10.18
+         */
+        private final long bytesSent;
+
+        /**
+         * The maximum number of requests handled at the same time.
+         *
+         * @since 26.10.18
+         */
+        private final int peakActiveRequests;
+
+        /**
+         * The number of injected errors and dropped connections.
+         *
+         * @since 26.10.18
+         */
+        private final long faultCount;
+
+        /**
+         * Build a new instance.
+         *
+         * @param keyCount   The number of keys
+         * @param fleetSize  The number of applications
+         * @param bootTimes  The sorted boot times, in nanoseconds
+         * @param failures   The boot failures
+         * @param wallTime   The time needed to boot the whole fleet, in nanoseconds
+         * @param fakeServer The fake server
+         * @since 26.10.18
+         */
+        Report(final int keyCount,
+               final int fleetSize,
+               final List<Long> bootTimes,
+               final List<Throwable> failures,
+               final long wallTime,
+               final FakeServer fakeServer) {
+            this.keyCount = keyCount;
+            this.fleetSize = fleetSize;
+            this.bootTimes = bootTimes;
+            this.failures = failures;
+            this.wallTime = wallTime;
+            this.requestCount = fakeServer.getRequestCount();
+            this.bytesSent = fakeServer.getBytesSent();
+            this.peakActiveRequests = fakeServer.getPeakActiveRequests();
+            this.faultCount = fakeServer.getInjectedErrorCount() + fakeServer.getDroppedConnectionCount();
+        }
+
+        /**
+         * Retrieve a percentile of the boot time of the successfully
+         * booted applications.
+         *
+         * @param percentile The percentile, between 0 and 100
+         * @return The boot time in milliseconds, or -1 if no application has booted
+         * @since 26.10.18
+         */
+        public long getBootTime(final double percentile) {
+            if (this.bootTimes.isEmpty()) {
+                return -1;
+            }
+            final int idx = (int) Math.ceil(percentile / 100 * this.bootTimes.size()) - 1;
+            return TimeUnit.NANOSECONDS.toMillis(this.bootTimes.get(Math.max(0, Math.min(idx, this.bootTimes.size() - 1))));
+        }
+
+        /**
+         * Retrieve the boot failures.
+         *
+         * @return The boot failures
+         * @since 26.10.18
+         */
+        public List<Throwable> getFailures() {
+            return this.failures;
+        }
+
+        /**
+         * Retrieve the number of requests received by the server.
+         *
+         * @return The number of requests
+         * @since 26.10.18
+         */
+        public long getRequestCount() {
+            return this.requestCount;
+        }
+
+        /**
+         * Retrieve the number of response body bytes sent by the server.
+         *
+         * @return The number of bytes
+         * @since 26.10.18
+         */
+        public long getBytesSent() {
+            return this.bytesSent;
+        }
+
+        /**
+         * Retrieve the maximum number of requests handled at the same
+         * time by the server.
+         *
+         * @return The number of requests
+         * @since 26.10.18
+         */
+        public int getPeakActiveRequests() {
+            return this.peakActiveRequests;
+        }
+
+        /**
+         * Retrieve the number of injected errors and dropped connections.
+         *
+         * @return The number of faults
+         * @since 26.10.18
+         */
+        public long getFaultCount() {
+            return this.faultCount;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                "keys=%d fleet=%d boot(ms) p50=%d p95=%d max=%d wall=%d failures=%d requests=%d (%.1f/instance) bytes=%d peak=%d faults=%d",
+                this.keyCount,
+                this.fleetSize,
+                this.getBootTime(50),
+                this.getBootTime(95),
+                this.getBootTime(100),
+                TimeUnit.NANOSECONDS.toMillis(this.wallTime),
+                this.failures.size(),
+                this.requestCount,
+                (double) this.requestCount / this.fleetSize,
+                this.bytesSent,
+                this.peakActiveRequests,
+                this.faultCount
+            );
+        }
+    }
+}
@@ -0,0 +1,503 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 PayinTech
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.payintech.play.remoteconfiguration.testkit;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-process fake of the Consul Key/Value HTTP API. Supported endpoints:
+ * <ul>
+ * <li>GET /v1/kv/{key}, with "recurse", "keys", "separator", "stale" and blocking queries ("index" and "wait")</li>
+ * <li>PUT /v1/kv/{key}</li>
+ * <li>DELETE /v1/kv/{key}, with "recurse"</li>
+ * <li>PUT /v1/txn, with the "get", "set" and "delete" verbs</li>
+ * </ul>
+ * Like Consul, the index of a prefix is the highest modify index of its
+ * keys, deleted keys included. Tokens are not checked.
+ *
+ * @author Thibault Meyer
+ * @version 26.10.18
+ * @since 26.10.18
+ */
+public final class FakeConsulServer extends FakeServer {
+
+    /**
+     * Maximum number of operations in a transaction.
+     *
+     * @since 26.10.18
+     */
+    private static final int MAX_TXN_OPERATIONS = 64;
+
+    /**
+     * Default blocking query wait time, in milliseconds.
+     *
+     * @since 26.10.18
+     */
+    private static final long DEFAULT_WAIT = TimeUnit.MINUTES.toMillis(5);
+
+    /**
+     * Maximum blocking query wait time, in milliseconds.
+     *
+     * @since 26.10.18
+     */
+    private static final long MAX_WAIT = TimeUnit.MINUTES.toMillis(10);
+
+    /**
+     * Last contact, in milliseconds, reported to stale queries.
+     *
+     * @since 26.10.18
+     */
+    private static final long STALE_LAST_CONTACT = 50;
+
+    /**
+     * JSON mapper.
+     *
+     * @since 26.10.18
+     */
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    /**
+     * The stored entries, by key.
+     *
+     * @since 26.10.18
+     */
+    private final NavigableMap<String, Entry> entries;
+
+    /**
+     * The modify index of the deleted keys, by key.
+     *
+     * @since 26.10.18
+     */
+    private final NavigableMap<String, Long> tombstones;
+
+    /**
+     * The current Raft index.
+     *
+     * @since 26.10.18
+     */
+    private long index;
+
+    /**
+     * Build a new instance listening on a random port.
+     *
+     * @since 26.10.18
+     */
+    public FakeConsulServer() {
+        this(0);
+    }
+
+    /**
+     * Build a new instance.
+     *
+     * @param port The port to listen on, zero for a random port
+     * @since 26.10.18
+     */
+    public FakeConsulServer(final int port) {
+        super(port);
+        this.entries = new TreeMap<>();
+        this.tombstones = new TreeMap<>();
+        this.index = 1;
+    }
+
+    /**
+     * Start a server on the given port, unless a Consul agent is
+     * already listening on it.
+     *
+     * @param port The port to listen on
+     * @return The started server, or {@code null} if the port is already bound
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    public static FakeConsulServer startIfAbsent(final int port) throws IOException {
+        return startIfAbsent(new FakeConsulServer(port));
+    }
+
+    /**
+     * Parse a Consul duration (ie: "10s", "5m", "500ms").
+     *
+     * @param duration The duration, can be {@code null}
+     * @return The duration in milliseconds
+     * @since 26.10.18
+     */
+    private static long parseWait(final String duration) {
+        if (duration == null || duration.isEmpty()) {
+            return DEFAULT_WAIT;
+        }
+        final long wait;
+        if (duration.endsWith("ms")) {
+            wait = Long.parseLong(duration.substring(0, duration.length() - 2));
+        } else if (duration.endsWith("s")) {
+            wait = TimeUnit.SECONDS.toMillis(Long.parseLong(duration.substring(0, duration.length() - 1)));
+        } else if (duration.endsWith("m")) {
+            wait = TimeUnit.MINUTES.toMillis(Long.parseLong(duration.substring(0, duration.length() - 1)));
+        } else {
+            wait = Long.parseLong(duration);
+        }
+        return Math.min(wait, MAX_WAIT);
+    }
+
+    /**
+     * Store a value.
+     *
+     * @param key   The key (ie: "app/db/default/url")
+     * @param value The value
+     * @return The modify index of the key
+     * @since 26.10.18
+     */
+    public synchronized long put(final String key, final String value) {
+        return this.put(key, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Store a value.
+     *
+     * @param key   The key (ie: "app/db/default/url")
+     * @param value The value
+     * @return The modify index of the key
+     * @since 26.10.18
+     */
+    public synchronized long put(final String key, final byte[] value) {
+        this.index += 1;
+        final Entry previous = this.entries.get(key);
+        this.entries.put(key, new Entry(value, previous == null ? this.index : previous.createIndex, this.index));
+        this.tombstones.remove(key);
+        this.signalChange();
+        return this.index;
+    }
+
+    /**
+     * Delete a key, or all keys starting with a prefix.
+     *
+     * @param key     The key, or the prefix
+     * @param recurse If {@code true}, all keys starting with the prefix are deleted
+     * @return The number of deleted keys
+     * @since 26.10.18
+     */
+    public synchronized int delete(final String key, final boolean recurse) {
+        final List<String> keys = new ArrayList<>();
+        if (recurse) {
+            keys.addAll(this.entries.subMap(key, true, key + Character.MAX_VALUE, false).keySet());
+        } else if (this.entries.containsKey(key)) {
+            keys.add(key);
+        }
+        if (!keys.isEmpty()) {
+            this.index += 1;
+            for (final String deletedKey : keys) {
+                this.entries.remove(deletedKey);
+                this.tombstones.put(deletedKey, this.index);
+            }
+            this.signalChange();
+        }
+        return keys.size();
+    }
+
+    /**
+     * Retrieve the number of stored keys.
+     *
+     * @return The number of keys
+     * @since 26.10.18
+     */
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * Retrieve the entries matching a key.
+     *
+     * @param key     The key, or the prefix
+     * @param recurse If {@code true}, all keys starting with the prefix are matched
+     * @return The matching entries
+     * @since 26.10.18
+     */
+    private NavigableMap<String, Entry> matching(final String key, final boolean recurse) {
+        if (recurse) {
+            return this.entries.subMap(key, true, key + Character.MAX_VALUE, false);
+        }
+        return this.entries.subMap(key, true, key, true);
+    }
+
+    /**
+     * Compute the index of a key or a prefix: the highest modify index
+     * of its keys, deleted keys included.
+     *
+     * @param key     The key, or the prefix
+     * @param recurse If {@code true}, all keys starting with the prefix are considered
+     * @return The index, or the current Raft index if no key matches
+     * @since 26.10.18
+     */
+    private long indexOf(final String key, final boolean recurse) {
+        long maxIndex = 0;
+        for (final Entry entry : this.matching(key, recurse).values()) {
+            maxIndex = Math.max(maxIndex, entry.modifyIndex);
+        }
+        final Map<String, Long> deleted = recurse
+            ? this.tombstones.subMap(key, true, key + Character.MAX_VALUE, false)
+            : this.tombstones.subMap(key, true, key, true);
+        for (final long deletedIndex : deleted.values()) {
+            maxIndex = Math.max(maxIndex, deletedIndex);
+        }
+        return maxIndex == 0 ? this.index : maxIndex;
+    }
+
+    @Override
+    protected void handle(final HttpExchange exchange) throws IOException, InterruptedException {
+        final String path = exchange.getRequestURI().getPath();
+        final Map<String, String> query = parseParameters(exchange.getRequestURI().getRawQuery());
+        final String method = exchange.getRequestMethod();
+        exchange.getResponseHeaders().set("X-Consul-KnownLeader", "true");
+        exchange.getResponseHeaders().set(
+            "X-Consul-LastContact",
+            query.containsKey("stale") ? String.valueOf(STALE_LAST_CONTACT) : "0"
+        );
+        if (path.equals("/v1/txn") && method.equals("PUT")) {
+            this.handleTransaction(exchange, readBody(exchange));
+        } else if (path.startsWith("/v1/kv/")) {
+            final String key = path.substring("/v1/kv/".length()).replaceFirst("^/+", "");
+            switch (method) {
+                case "GET":
+                    this.handleGet(exchange, key, query);
+                    break;
+                case "PUT":
+                    final long modifyIndex = this.put(key, readBody(exchange));
+                    exchange.getResponseHeaders().set("X-Consul-Index", String.valueOf(modifyIndex));
+                    this.send(exchange, 200, "application/json", "true");
+                    break;
+                case "DELETE":
+                    this.delete(key, query.containsKey("recurse"));
+                    this.send(exchange, 200, "application/json", "true");
+                    break;
+                default:
+                    this.send(exchange, 405, "text/plain", "Method not allowed");
+                    break;
+            }
+        } else {
+            this.send(exchange, 404, "text/plain", "Not found");
+        }
+    }
+
+    /**
+     * Handle a read request, blocking until the index of the requested
+     * keys changes when the "index" parameter is set.
+     *
+     * @param exchange The HTTP exchange
+     * @param key      The requested key, or prefix
+     * @param query    The query parameters
+     * @throws IOException          When I/O related errors occur
+     * @throws InterruptedException When the server is stopped
+     * @since 26.10.18
+     */
+    private void handleGet(final HttpExchange exchange,
+                           final String key,
+                           final Map<String, String> query) throws IOException, InterruptedException {
+        final boolean keysOnly = query.containsKey("keys");
+        final boolean recurse = keysOnly || query.containsKey("recurse");
+        final List<Map.Entry<String, Entry>> matchingEntries;
+        final long currentIndex;
+        synchronized (this) {
+            if (query.containsKey("index")) {
+                final long knownIndex = Long.parseLong(query.get("index"));
+                final long deadline = System.currentTimeMillis() + parseWait(query.get("wait"));
+                boolean waiting = this.indexOf(key, recurse) <= knownIndex;
+                while (waiting) {
+                    waiting = this.awaitChange(deadline) && this.indexOf(key, recurse) <= knownIndex;
+                }
+            }
+            matchingEntries = new ArrayList<>(this.matching(key, recurse).entrySet());
+            currentIndex = this.indexOf(key, recurse);
+        }
+        exchange.getResponseHeaders().set("X-Consul-Index", String.valueOf(currentIndex));
+        if (matchingEntries.isEmpty()) {
+            this.send(exchange, 404, null, new byte[0]);
+            return;
+        }
+        final ArrayNode document = OBJECT_MAPPER.createArrayNode();
+        if (keysOnly) {
+            final String separator = query.get("separator");
+            String lastKey = null;
+            for (final Map.Entry<String, Entry> entry : matchingEntries) {
+                String listedKey = entry.getKey();
+                final int idx = separator == null || separator.isEmpty() ? -1 : listedKey.indexOf(separator, key.length());
+                if (idx >= 0) {
+                    listedKey = listedKey.substring(0, idx + separator.length());
+                }
+                if (!listedKey.equals(lastKey)) {
+                    document.add(listedKey);
+                    lastKey = listedKey;
+                }
+            }
+        } else {
+            for (final Map.Entry<String, Entry> entry : matchingEntries) {
+                document.add(entry.getValue().toJson(entry.getKey()));
+            }
+        }
+        this.send(exchange, 200, "application/json", OBJECT_MAPPER.writeValueAsBytes(document));
+    }
+
+    /**
+     * Handle a transaction. Like Consul, the transaction is rolled back
+     * if any operation fails.
+     *
+     * @param exchange The HTTP exchange
+     * @param body     The request body
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    private void handleTransaction(final HttpExchange exchange, final byte[] body) throws IOException {
+        final JsonNode operations = OBJECT_MAPPER.readTree(body);
+        if (operations == null || !operations.isArray()) {
+            this.send(exchange, 400, "text/plain", "Failed to parse body");
+            return;
+        }
+        if (operations.size() > MAX_TXN_OPERATIONS) {
+            this.send(exchange, 413, "text/plain", String.format(
+                "Transaction contains too many operations (%d > %d)",
+                operations.size(),
+                MAX_TXN_OPERATIONS
+            ));
+            return;
+        }
+        final ObjectNode document = OBJECT_MAPPER.createObjectNode();
+        final int status;
+        synchronized (this) {
+            final ArrayNode errors = OBJECT_MAPPER.createArrayNode();
+            for (int i = 0; i < operations.size(); ++i) {
+                final JsonNode operation = operations.get(i).path("KV");
+                final String key = operation.path("Key").asText();
+                if ("get".equals(operation.path("Verb").asText()) && !this.entries.containsKey(key)) {
+                    errors.addObject()
+                        .put("OpIndex", i)
+                        .put("What", String.format("key \"%s\" doesn't exist", key));
+                }
+            }
+            if (errors.size() > 0) {
+                status = 409;
+                document.putNull("Results");
+                document.set("Errors", errors);
+            } else {
+                status = 200;
+                final ArrayNode results = document.putArray("Results");
+                for (final JsonNode item : operations) {
+                    final JsonNode operation = item.path("KV");
+                    final String key = operation.path("Key").asText();
+                    switch (operation.path("Verb").asText()) {
+                        case "get":
+                            results.addObject().set("KV", this.entries.get(key).toJson(key));
+                            break;
+                        case "set":
+                            this.put(key, Base64.getDecoder().decode(operation.path("Value").asText()));
+                            results.addObject().set("KV", this.entries.get(key).toJson(key).putNull("Value"));
+                            break;
+                        case "delete":
+                            this.delete(key, false);
+                            break;
+                        default:
+                            break;
+                    }
+                }
+                document.putNull("Errors");
+            }
+            exchange.getResponseHeaders().set("X-Consul-Index", String.valueOf(this.index));
+        }
+        this.send(exchange, status, "application/json", OBJECT_MAPPER.writeValueAsBytes(document));
+    }
+
+    /**
+     * A stored entry.
+     *
+     * @since 26.10.18
+     */
+    private static final class Entry {
+
+        /**
+         * The value.
+         *
+         * @since 26.10.18
+         */
+        private final byte[] value;
+
+        /**
+         * The index the key has been created at.
+         *
+         * @since 26.10.18
+         */
+        private final long createIndex;
+
+        /**
+         * The index the key has been modified at.
+         *
+         * @since 26.10.18
+         */
+        private final long modifyIndex;
+
+        /**
+         * Build a new instance.
+         *
+         * @param value       The value
+         * @param createIndex The index the key has been created at
+         * @param modifyIndex The index the key has been modified at
+         * @since 26.10.18
+         */
+        Entry(final byte[] value, final long createIndex, final long modifyIndex) {
+            this.value = value;
+            this.createIndex = createIndex;
+            this.modifyIndex = modifyIndex;
+        }
+
+        /**
+         * Build the JSON representation of the entry.
+         *
+         * @param key The key
+         * @return The JSON representation
+         * @since 26.10.18
+         */
+        ObjectNode toJson(final String key) {
+            final ObjectNode node = OBJECT_MAPPER.createObjectNode()
+                .put("LockIndex", 0)
+                .put("Key", key)
+                .put("Flags", 0);
+            if (this.value.length == 0) {
+                node.putNull("Value");
+            } else {
+                node.put("Value", Base64.getEncoder().encodeToString(this.value));
+            }
+            return node
+                .put("CreateIndex", this.createIndex)
+                .put("ModifyIndex", this.modifyIndex);
+        }
+    }
+}
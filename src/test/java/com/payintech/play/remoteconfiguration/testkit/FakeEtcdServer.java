@@ -0,0 +1,1026 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 PayinTech
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.payintech.play.remoteconfiguration.testkit;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * In-process fake of the etcd HTTP APIs. Like etcd, the v2 and v3
+ * Key/Value stores are distinct. Supported endpoints:
+ * <ul>
+ * <li>GET /v2/keys/{key}, with "recursive" and watches ("wait" and "waitIndex")</li>
+ * <li>PUT /v2/keys/{key}, with a form encoded "value"</li>
+ * <li>DELETE /v2/keys/{key}, with "recursive"</li>
+ * <li>POST /v3/kv/range, with "limit", "revision", "keys_only", "count_only", "sort_order" and "sort_target"</li>
+ * <li>POST /v3/kv/put, /v3/kv/deleterange and /v3/kv/compaction</li>
+ * <li>POST /v3/auth/authenticate</li>
+ * </ul>
+ * The last 1000 v2 events are kept for watches. All v3 revisions are
+ * kept until compacted. Credentials and tokens are not checked.
+ *
+ * @author Thibault Meyer
+ * @version 26.10.18
+ * @since 26.10.18
+ */
+public final class FakeEtcdServer extends FakeServer {
+
+    /**
+     * Number of v2 events kept for watches.
+     *
+     * @since 26.10.18
+     */
+    private static final int EVENT_HISTORY = 1000;
+
+    /**
+     * The v2 "Key not found" error code.
+     *
+     * @since 26.10.18
+     */
+    private static final int ERROR_KEY_NOT_FOUND = 100;
+
+    /**
+     * The v2 "Not a file" error code.
+     *
+     * @since 26.10.18
+     */
+    private static final int ERROR_NOT_A_FILE = 102;
+
+    /**
+     * The v2 "The event in requested index is outdated and cleared" error code.
+     *
+     * @since 26.10.18
+     */
+    private static final int ERROR_EVENT_INDEX_CLEARED = 401;
+
+    /**
+     * The v3 "Out of range" error code (compacted or future revision).
+     *
+     * @since 26.10.18
+     */
+    private static final int ERROR_OUT_OF_RANGE = 11;
+
+    /**
+     * JSON mapper.
+     *
+     * @since 26.10.18
+     */
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    /**
+     * The v2 nodes, by key (ie: "/app/db/default/url").
+     *
+     * @since 26.10.18
+     */
+    private final NavigableMap<String, Node> nodes;
+
+    /**
+     * The last v2 events, oldest first.
+     *
+     * @since 26.10.18
+     */
+    private final Deque<Event> events;
+
+    /**
+     * The v3 revisions of each key, oldest first. Keys are decoded
+     * with ISO-8859-1 to keep the byte order.
+     *
+     * @since 26.10.18
+     */
+    private final NavigableMap<String, List<Revision>> revisions;
+
+    /**
+     * The current v2 index.
+     *
+     * @since 26.10.18
+     */
+    private long etcdIndex;
+
+    /**
+     * The index of the last v2 event removed from the history.
+     *
+     * @since 26.10.18
+     */
+    private long clearedIndex;
+
+    /**
+     * The current v3 revision.
+     *
+     * @since 26.10.18
+     */
+    private long revision;
+
+    /**
+     * The v3 compaction revision.
+     *
+     * @since 26.10.18
+     */
+    private long compactRevision;
+
+    /**
+     * Build a new instance listening on a random port.
+     *
+     * @since 26.10.18
+     */
+    public FakeEtcdServer() {
+        this(0);
+    }
+
+    /**
+     * Build a new instance.
+     *
+     * @param port The port to listen on, zero for a random port
+     * @since 26.10.18
+     */
+    public FakeEtcdServer(final int port) {
+        super(port);
+        this.nodes = new TreeMap<>();
+        this.events = new ArrayDeque<>();
+        this.revisions = new TreeMap<>();
+        this.etcdIndex = 1;
+        this.revision = 1;
+    }
+
+    /**
+     * Start a server on the given port, unless an etcd server is
+     * already listening on it.
+     *
+     * @param port The port to listen on
+     * @return The started server, or {@code null} if the port is already bound
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    public static FakeEtcdServer startIfAbsent(final int port) throws IOException {
+        return startIfAbsent(new FakeEtcdServer(port));
+    }
+
+    /**
+     * Normalize a v2 key: a single leading slash, no trailing slash.
+     *
+     * @param key The key
+     * @return The normalized key, "/" for the root directory
+     * @since 26.10.18
+     */
+    private static String normalizeKey(final String key) {
+        final String normalizedKey = ("/" + key).replaceAll("/+", "/");
+        return normalizedKey.length() > 1 && normalizedKey.endsWith("/")
+            ? normalizedKey.substring(0, normalizedKey.length() - 1)
+            : normalizedKey;
+    }
+
+    /**
+     * Retrieve the prefix of the keys located in a v2 directory.
+     *
+     * @param key The directory key
+     * @return The prefix, ie: "/app/"
+     * @since 26.10.18
+     */
+    private static String directoryPrefix(final String key) {
+        return key.endsWith("/") ? key : key + "/";
+    }
+
+    /**
+     * Decode a v3 key or value.
+     *
+     * @param encoded The base64 encoded bytes
+     * @return The bytes decoded with ISO-8859-1
+     * @since 26.10.18
+     */
+    private static String decode(final String encoded) {
+        return new String(Base64.getDecoder().decode(encoded), StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Encode a v3 key or value.
+     *
+     * @param decoded The bytes decoded with ISO-8859-1
+     * @return The base64 encoded bytes
+     * @since 26.10.18
+     */
+    private static String encode(final String decoded) {
+        return Base64.getEncoder().encodeToString(decoded.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    /**
+     * Convert an UTF-8 string to the internal v3 representation.
+     *
+     * @param value The string
+     * @return The UTF-8 bytes decoded with ISO-8859-1
+     * @since 26.10.18
+     */
+    private static String toBytes(final String value) {
+        return new String(value.getBytes(StandardCharsets.UTF_8), StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Store a value in the v2 store.
+     *
+     * @param key   The key (ie: "/app/db/default/url")
+     * @param value The value
+     * @return The modified index of the key
+     * @since 26.10.18
+     */
+    public synchronized long put(final String key, final String value) {
+        final String normalizedKey = normalizeKey(key);
+        this.etcdIndex += 1;
+        final Node previous = this.nodes.get(normalizedKey);
+        final Node node = new Node(value, previous == null ? this.etcdIndex : previous.createdIndex, this.etcdIndex);
+        this.nodes.put(normalizedKey, node);
+        this.addEvent(new Event("set", normalizedKey, node, previous, false));
+        return this.etcdIndex;
+    }
+
+    /**
+     * Delete a key, or a directory, from the v2 store.
+     *
+     * @param key       The key
+     * @param recursive If {@code true}, directories are deleted with their content
+     * @return {@code true} if a key has been deleted
+     * @since 26.10.18
+     */
+    public synchronized boolean delete(final String key, final boolean recursive) {
+        final String normalizedKey = normalizeKey(key);
+        final Node previous = this.nodes.get(normalizedKey);
+        if (previous != null) {
+            this.etcdIndex += 1;
+            this.nodes.remove(normalizedKey);
+            this.addEvent(new Event("delete", normalizedKey, new Node(null, previous.createdIndex, this.etcdIndex), previous, false));
+            return true;
+        }
+        final Map<String, Node> children = this.children(normalizedKey);
+        if (recursive && !children.isEmpty()) {
+            this.etcdIndex += 1;
+            children.clear();
+            this.addEvent(new Event("delete", normalizedKey, new Node(null, this.etcdIndex, this.etcdIndex), null, true));
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Store a value in the v3 store.
+     *
+     * @param key   The key (ie: "/app/db/default/url")
+     * @param value The value
+     * @return The revision of the store
+     * @since 26.10.18
+     */
+    public synchronized long putV3(final String key, final String value) {
+        return this.putRevision(toBytes(key), toBytes(value));
+    }
+
+    /**
+     * Delete a key from the v3 store.
+     *
+     * @param key The key
+     * @return {@code true} if the key has been deleted
+     * @since 26.10.18
+     */
+    public synchronized boolean deleteV3(final String key) {
+        final String rawKey = toBytes(key);
+        return this.deleteRange(rawKey, "") > 0;
+    }
+
+    /**
+     * Compact the v3 store: revisions older than the given one can't be
+     * read anymore.
+     *
+     * @param compactionRevision The compaction revision
+     * @since 26.10.18
+     */
+    public synchronized void compactV3(final long compactionRevision) {
+        final Iterator<List<Revision>> iterator = this.revisions.values().iterator();
+        while (iterator.hasNext()) {
+            final List<Revision> keyRevisions = iterator.next();
+            // Keep the latest revision visible at the compaction revision
+            while (keyRevisions.size() > 1 && keyRevisions.get(1).modRevision <= compactionRevision) {
+                keyRevisions.remove(0);
+            }
+            if (keyRevisions.get(0).modRevision <= compactionRevision && keyRevisions.get(0).value == null) {
+                keyRevisions.remove(0);
+            }
+            if (keyRevisions.isEmpty()) {
+                iterator.remove();
+            }
+        }
+        this.compactRevision = Math.max(this.compactRevision, compactionRevision);
+    }
+
+    /**
+     * Retrieve the current v3 revision.
+     *
+     * @return The revision
+     * @since 26.10.18
+     */
+    public synchronized long getRevision() {
+        return this.revision;
+    }
+
+    /**
+     * Retrieve the number of keys stored in the v2 store.
+     *
+     * @return The number of keys
+     * @since 26.10.18
+     */
+    public synchronized int size() {
+        return this.nodes.size();
+    }
+
+    @Override
+    protected void handle(final HttpExchange exchange) throws IOException, InterruptedException {
+        final String path = exchange.getRequestURI().getPath();
+        final Map<String, String> query = parseParameters(exchange.getRequestURI().getRawQuery());
+        final String method = exchange.getRequestMethod();
+        if (path.startsWith("/v2/keys")) {
+            final String key = normalizeKey(path.substring("/v2/keys".length()));
+            switch (method) {
+                case "GET":
+                    if ("true".equals(query.get("wait"))) {
+                        this.handleWatch(exchange, key, query);
+                    } else {
+                        this.handleGet(exchange, key, "true".equals(query.get("recursive")));
+                    }
+                    break;
+                case "PUT":
+                    final Map<String, String> form = parseParameters(new String(readBody(exchange), StandardCharsets.UTF_8));
+                    form.putAll(query);
+                    this.handlePut(exchange, key, form.containsKey("value") ? form.get("value") : "");
+                    break;
+                case "DELETE":
+                    this.handleDelete(exchange, key, "true".equals(query.get("recursive")));
+                    break;
+                default:
+                    this.send(exchange, 405, "text/plain", "Method not allowed");
+                    break;
+            }
+        } else if (path.startsWith("/v3/") && method.equals("POST")) {
+            final JsonNode request = OBJECT_MAPPER.readTree(readBody(exchange));
+            this.handleV3(exchange, path, request == null ? OBJECT_MAPPER.createObjectNode() : request);
+        } else {
+            this.send(exchange, 404, "text/plain", "404 page not found");
+        }
+    }
+
+    /**
+     * Handle a v2 read request.
+     *
+     * @param exchange  The HTTP exchange
+     * @param key       The key
+     * @param recursive If {@code true}, the whole directory tree is returned
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    private void handleGet(final HttpExchange exchange, final String key, final boolean recursive) throws IOException {
+        final ObjectNode document = OBJECT_MAPPER.createObjectNode();
+        final long currentIndex;
+        synchronized (this) {
+            currentIndex = this.etcdIndex;
+            final Node node = this.nodes.get(key);
+            final Map<String, Node> children = this.children(key);
+            if (node == null && children.isEmpty() && !key.equals("/")) {
+                this.sendError(exchange, 404, ERROR_KEY_NOT_FOUND, "Key not found", key, currentIndex);
+                return;
+            }
+            document.put("action", "get");
+            document.set("node", node == null ? this.buildDirectory(key, children, recursive) : node.toJson(key));
+        }
+        exchange.getResponseHeaders().set("X-Etcd-Index", String.valueOf(currentIndex));
+        this.send(exchange, 200, "application/json", OBJECT_MAPPER.writeValueAsBytes(document));
+    }
+
+    /**
+     * Handle a v2 watch: wait for the first event on the key (or under
+     * the key) with an index greater than or equal to the wait index.
+     *
+     * @param exchange The HTTP exchange
+     * @param key      The watched key
+     * @param query    The query parameters
+     * @throws IOException          When I/O related errors occur
+     * @throws InterruptedException When the server is stopped
+     * @since 26.10.18
+     */
+    private void handleWatch(final HttpExchange exchange,
+                             final String key,
+                             final Map<String, String> query) throws IOException, InterruptedException {
+        final boolean recursive = "true".equals(query.get("recursive"));
+        final long startIndex;
+        Event event;
+        synchronized (this) {
+            startIndex = this.etcdIndex;
+            final long waitIndex = query.containsKey("waitIndex") ? Long.parseLong(query.get("waitIndex")) : startIndex + 1;
+            if (waitIndex <= this.clearedIndex) {
+                this.sendError(
+                    exchange,
+                    400,
+                    ERROR_EVENT_INDEX_CLEARED,
+                    "The event in requested index is outdated and cleared",
+                    String.format("the requested history has been cleared [%d/%d]", this.clearedIndex + 1, waitIndex),
+                    startIndex
+                );
+                return;
+            }
+            event = this.findEvent(key, recursive, waitIndex);
+            while (event == null && this.awaitChange(Long.MAX_VALUE)) {
+                event = this.findEvent(key, recursive, waitIndex);
+            }
+        }
+        if (event != null) {
+            exchange.getResponseHeaders().set("X-Etcd-Index", String.valueOf(startIndex));
+            this.send(exchange, 200, "application/json", OBJECT_MAPPER.writeValueAsBytes(event.toJson()));
+        }
+    }
+
+    /**
+     * Handle a v2 write request.
+     *
+     * @param exchange The HTTP exchange
+     * @param key      The key
+     * @param value    The value
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    private void handlePut(final HttpExchange exchange, final String key, final String value) throws IOException {
+        final Event event;
+        synchronized (this) {
+            if (!this.children(key).isEmpty() || key.equals("/")) {
+                this.sendError(exchange, 403, ERROR_NOT_A_FILE, "Not a file", key, this.etcdIndex);
+                return;
+            }
+            this.put(key, value);
+            event = this.events.getLast();
+        }
+        exchange.getResponseHeaders().set("X-Etcd-Index", String.valueOf(event.node.modifiedIndex));
+        this.send(exchange, event.previous == null ? 201 : 200, "application/json", OBJECT_MAPPER.writeValueAsBytes(event.toJson()));
+    }
+
+    /**
+     * Handle a v2 delete request.
+     *
+     * @param exchange  The HTTP exchange
+     * @param key       The key
+     * @param recursive If {@code true}, directories are deleted with their content
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    private void handleDelete(final HttpExchange exchange, final String key, final boolean recursive) throws IOException {
+        final Event event;
+        synchronized (this) {
+            if (!this.nodes.containsKey(key) && !this.children(key).isEmpty() && !recursive) {
+                this.sendError(exchange, 403, ERROR_NOT_A_FILE, "Not a file", key, this.etcdIndex);
+                return;
+            }
+            if (!this.delete(key, recursive)) {
+                this.sendError(exchange, 404, ERROR_KEY_NOT_FOUND, "Key not found", key, this.etcdIndex);
+                return;
+            }
+            event = this.events.getLast();
+        }
+        exchange.getResponseHeaders().set("X-Etcd-Index", String.valueOf(event.node.modifiedIndex));
+        this.send(exchange, 200, "application/json", OBJECT_MAPPER.writeValueAsBytes(event.toJson()));
+    }
+
+    /**
+     * Handle a v3 request.
+     *
+     * @param exchange The HTTP exchange
+     * @param path     The request path
+     * @param request  The JSON request
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    private void handleV3(final HttpExchange exchange, final String path, final JsonNode request) throws IOException {
+        final ObjectNode document = OBJECT_MAPPER.createObjectNode();
+        synchronized (this) {
+            final long requestedRevision = request.path("revision").asLong();
+            switch (path) {
+                case "/v3/auth/authenticate":
+                    document.put("token", UUID.randomUUID().toString());
+                    break;
+                case "/v3/kv/range":
+                    if (requestedRevision > this.revision) {
+                        this.sendOutOfRange(exchange, "etcdserver: mvcc: required revision is a future revision");
+                        return;
+                    }
+                    if (requestedRevision > 0 && requestedRevision < this.compactRevision) {
+                        this.sendOutOfRange(exchange, "etcdserver: mvcc: required revision has been compacted");
+                        return;
+                    }
+                    this.range(request, requestedRevision > 0 ? requestedRevision : this.revision, document);
+                    break;
+                case "/v3/kv/put":
+                    this.putRevision(decode(request.path("key").asText()), decode(request.path("value").asText()));
+                    break;
+                case "/v3/kv/deleterange":
+                    final int deleted = this.deleteRange(decode(request.path("key").asText()), decode(request.path("range_end").asText()));
+                    if (deleted > 0) {
+                        document.put("deleted", String.valueOf(deleted));
+                    }
+                    break;
+                case "/v3/kv/compaction":
+                    if (requestedRevision > this.revision) {
+                        this.sendOutOfRange(exchange, "etcdserver: mvcc: required revision is a future revision");
+                        return;
+                    }
+                    if (requestedRevision <= this.compactRevision) {
+                        this.sendOutOfRange(exchange, "etcdserver: mvcc: required revision has been compacted");
+                        return;
+                    }
+                    this.compactV3(requestedRevision);
+                    break;
+                default:
+                    this.send(exchange, 404, "text/plain", "Not Found");
+                    return;
+            }
+            document.putObject("header")
+                .put("cluster_id", "1")
+                .put("member_id", "1")
+                .put("revision", String.valueOf(this.revision))
+                .put("raft_term", "2");
+        }
+        this.send(exchange, 200, "application/json", OBJECT_MAPPER.writeValueAsBytes(document));
+    }
+
+    /**
+     * Read a v3 range at the given revision.
+     *
+     * @param request      The JSON range request
+     * @param readRevision The revision to read
+     * @param document     The JSON document where to put the response
+     * @since 26.10.18
+     */
+    private void range(final JsonNode request, final long readRevision, final ObjectNode document) {
+        final String key = decode(request.path("key").asText());
+        final String rangeEnd = decode(request.path("range_end").asText());
+        final List<Map.Entry<String, Revision>> kvs = new ArrayList<>();
+        for (final Map.Entry<String, List<Revision>> entry : this.rangeOf(key, rangeEnd).entrySet()) {
+            final List<Revision> keyRevisions = entry.getValue();
+            Revision visible = null;
+            for (int i = keyRevisions.size() - 1; i >= 0 && visible == null; --i) {
+                if (keyRevisions.get(i).modRevision <= readRevision) {
+                    visible = keyRevisions.get(i);
+                }
+            }
+            if (visible != null && visible.value != null) {
+                kvs.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), visible));
+            }
+        }
+        final Comparator<Map.Entry<String, Revision>> comparator;
+        switch (request.path("sort_target").asText("KEY")) {
+            case "CREATE":
+                comparator = Comparator.comparingLong(entry -> entry.getValue().createRevision);
+                break;
+            case "MOD":
+                comparator = Comparator.comparingLong(entry -> entry.getValue().modRevision);
+                break;
+            case "VERSION":
+                comparator = Comparator.comparingLong(entry -> entry.getValue().version);
+                break;
+            case "VALUE":
+                comparator = Comparator.comparing(entry -> entry.getValue().value);
+                break;
+            default:
+                comparator = Map.Entry.comparingByKey();
+                break;
+        }
+        kvs.sort("DESCEND".equals(request.path("sort_order").asText()) ? comparator.reversed() : comparator);
+        final int count = kvs.size();
+        final long limit = request.path("limit").asLong();
+        if (limit > 0 && count > limit) {
+            kvs.subList((int) limit, count).clear();
+            document.put("more", true);
+        }
+        if (!request.path("count_only").asBoolean() && !kvs.isEmpty()) {
+            final ArrayNode kvsNode = document.putArray("kvs");
+            final boolean keysOnly = request.path("keys_only").asBoolean();
+            for (final Map.Entry<String, Revision> entry : kvs) {
+                final ObjectNode kvNode = kvsNode.addObject()
+                    .put("key", encode(entry.getKey()))
+                    .put("create_revision", String.valueOf(entry.getValue().createRevision))
+                    .put("mod_revision", String.valueOf(entry.getValue().modRevision))
+                    .put("version", String.valueOf(entry.getValue().version));
+                if (!keysOnly && !entry.getValue().value.isEmpty()) {
+                    kvNode.put("value", encode(entry.getValue().value));
+                }
+            }
+        }
+        if (count > 0) {
+            document.put("count", String.valueOf(count));
+        }
+    }
+
+    /**
+     * Store a new revision of a v3 key.
+     *
+     * @param key   The key, decoded with ISO-8859-1
+     * @param value The value, decoded with ISO-8859-1
+     * @return The revision of the store
+     * @since 26.10.18
+     */
+    private long putRevision(final String key, final String value) {
+        this.revision += 1;
+        final List<Revision> keyRevisions = this.revisions.computeIfAbsent(key, k -> new ArrayList<>());
+        final Revision previous = keyRevisions.isEmpty() ? null : keyRevisions.get(keyRevisions.size() - 1);
+        if (previous == null || previous.value == null) {
+            keyRevisions.add(new Revision(value, this.revision, this.revision, 1));
+        } else {
+            keyRevisions.add(new Revision(value, previous.createRevision, this.revision, previous.version + 1));
+        }
+        this.signalChange();
+        return this.revision;
+    }
+
+    /**
+     * Delete a range of v3 keys.
+     *
+     * @param key      The first key of the range, decoded with ISO-8859-1
+     * @param rangeEnd The end of the range (exclusive), decoded with ISO-8859-1, empty to delete a single key
+     * @return The number of deleted keys
+     * @since 26.10.18
+     */
+    private int deleteRange(final String key, final String rangeEnd) {
+        final List<List<Revision>> deleted = new ArrayList<>();
+        for (final List<Revision> keyRevisions : this.rangeOf(key, rangeEnd).values()) {
+            if (keyRevisions.get(keyRevisions.size() - 1).value != null) {
+                deleted.add(keyRevisions);
+            }
+        }
+        if (!deleted.isEmpty()) {
+            this.revision += 1;
+            for (final List<Revision> keyRevisions : deleted) {
+                keyRevisions.add(new Revision(null, 0, this.revision, 0));
+            }
+            this.signalChange();
+        }
+        return deleted.size();
+    }
+
+    /**
+     * Retrieve the v3 keys of a range.
+     *
+     * @param key      The first key of the range, decoded with ISO-8859-1
+     * @param rangeEnd The end of the range (exclusive), decoded with ISO-8859-1, empty for a single key
+     * @return The revisions of the keys, by key
+     * @since 26.10.18
+     */
+    private NavigableMap<String, List<Revision>> rangeOf(final String key, final String rangeEnd) {
+        if (rangeEnd.isEmpty()) {
+            return this.revisions.subMap(key, true, key, true);
+        } else if (rangeEnd.equals("\0")) {
+            return this.revisions.tailMap(key, true);
+        } else if (key.compareTo(rangeEnd) >= 0) {
+            return new TreeMap<>();
+        }
+        return this.revisions.subMap(key, true, rangeEnd, false);
+    }
+
+    /**
+     * Retrieve the v2 nodes located under a directory.
+     *
+     * @param key The directory key
+     * @return The nodes, by key
+     * @since 26.10.18
+     */
+    private NavigableMap<String, Node> children(final String key) {
+        final String prefix = directoryPrefix(key);
+        return this.nodes.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+    }
+
+    /**
+     * Build the JSON representation of a v2 directory.
+     *
+     * @param key       The directory key
+     * @param children  The nodes located under the directory
+     * @param recursive If {@code true}, sub-directories are returned with their content
+     * @return The JSON representation
+     * @since 26.10.18
+     */
+    private ObjectNode buildDirectory(final String key, final Map<String, Node> children, final boolean recursive) {
+        final ObjectNode directory = OBJECT_MAPPER.createObjectNode().put("key", key).put("dir", true);
+        final Map<String, ArrayNode> directories = new HashMap<>();
+        directories.put(key, directory.putArray("nodes"));
+        for (final Map.Entry<String, Node> child : children.entrySet()) {
+            final String[] parts = child.getKey().substring(directoryPrefix(key).length()).split("/");
+            String parent = key;
+            for (int i = 0; i < parts.length - 1 && (recursive || i == 0); ++i) {
+                final String subDirectory = directoryPrefix(parent) + parts[i];
+                if (!directories.containsKey(subDirectory)) {
+                    final ObjectNode subDirectoryNode = directories.get(parent).addObject().put("key", subDirectory).put("dir", true);
+                    directories.put(subDirectory, recursive ? subDirectoryNode.putArray("nodes") : null);
+                }
+                parent = subDirectory;
+            }
+            if (parts.length == 1 || recursive) {
+                directories.get(parent).add(child.getValue().toJson(child.getKey()));
+            }
+        }
+        return directory;
+    }
+
+    /**
+     * Find the first v2 event matching a watch.
+     *
+     * @param key       The watched key
+     * @param recursive If {@code true}, events on keys located under the key match
+     * @param waitIndex The minimum event index
+     * @return The event, or {@code null} if no event matches
+     * @since 26.10.18
+     */
+    private Event findEvent(final String key, final boolean recursive, final long waitIndex) {
+        for (final Event event : this.events) {
+            if (event.node.modifiedIndex >= waitIndex
+                && (event.key.equals(key) || recursive && event.key.startsWith(directoryPrefix(key)))) {
+                return event;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Add a v2 event to the history.
+     *
+     * @param event The event
+     * @since 26.10.18
+     */
+    private void addEvent(final Event event) {
+        this.events.addLast(event);
+        if (this.events.size() > EVENT_HISTORY) {
+            this.clearedIndex = this.events.removeFirst().node.modifiedIndex;
+        }
+        this.signalChange();
+    }
+
+    /**
+     * Send a v2 error.
+     *
+     * @param exchange     The HTTP exchange
+     * @param status       The HTTP status
+     * @param errorCode    The etcd error code
+     * @param message      The error message
+     * @param cause        The error cause
+     * @param currentIndex The current index
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    private void sendError(final HttpExchange exchange,
+                           final int status,
+                           final int errorCode,
+                           final String message,
+                           final String cause,
+                           final long currentIndex) throws IOException {
+        final ObjectNode document = OBJECT_MAPPER.createObjectNode()
+            .put("errorCode", errorCode)
+            .put("message", message)
+            .put("cause", cause)
+            .put("index", currentIndex);
+        exchange.getResponseHeaders().set("X-Etcd-Index", String.valueOf(currentIndex));
+        this.send(exchange, status, "application/json", OBJECT_MAPPER.writeValueAsBytes(document));
+    }
+
+    /**
+     * Send a v3 "Out of range" error.
+     *
+     * @param exchange The HTTP exchange
+     * @param message  The error message
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    private void sendOutOfRange(final HttpExchange exchange, final String message) throws IOException {
+        final ObjectNode document = OBJECT_MAPPER.createObjectNode()
+            .put("error", message)
+            .put("code", ERROR_OUT_OF_RANGE)
+            .put("message", message);
+        this.send(exchange, 400, "application/json", OBJECT_MAPPER.writeValueAsBytes(document));
+    }
+
+    /**
+     * A v2 node.
+     *
+     * @since 26.10.18
+     */
+    private static final class Node {
+
+        /**
+         * The value, {@code null} for deleted nodes.
+         *
+         * @since 26.10.18
+         */
+        private final String value;
+
+        /**
+         * The index the node has been created at.
+         *
+         * @since 26.10.18
+         */
+        private final long createdIndex;
+
+        /**
+         * The index the node has been modified at.
+         *
+         * @since 26.10.18
+         */
+        private final long modifiedIndex;
+
+        /**
+         * Build a new instance.
+         *
+         * @param value         The value, {@code null} for deleted nodes
+         * @param createdIndex  The index the node has been created at
+         * @param modifiedIndex The index the node has been modified at
+         * @since 26.10.18
+         */
+        Node(final String value, final long createdIndex, final long modifiedIndex) {
+            this.value = value;
+            this.createdIndex = createdIndex;
+            this.modifiedIndex = modifiedIndex;
+        }
+
+        /**
+         * Build the JSON representation of the node.
+         *
+         * @param key The key
+         * @return The JSON representation
+         * @since 26.10.18
+         */
+        ObjectNode toJson(final String key) {
+            final ObjectNode node = OBJECT_MAPPER.createObjectNode().put("key", key);
+            if (this.value != null) {
+                node.put("value", this.value);
+            }
+            return node
+                .put("modifiedIndex", this.modifiedIndex)
+                .put("createdIndex", this.createdIndex);
+        }
+    }
+
+    /**
+     * A v2 event.
+     *
+     * @since 26.10.18
+     */
+    private static final class Event {
+
+        /**
+         * The action (ie: "set", "delete").
+         *
+         * @since 26.10.18
+         */
+        private final String action;
+
+        /**
+         * The key.
+         *
+         * @since 26.10.18
+         */
+        private final String key;
+
+        /**
+         * The node after the action.
+         *
+         * @since 26.10.18
+         */
+        private final Node node;
+
+        /**
+         * The node before the action, can be {@code null}.
+         *
+         * @since 26.10.18
+         */
+        private final Node previous;
+
+        /**
+         * Is the key a directory?
+         *
+         * @since 26.10.18
+         */
+        private final boolean directory;
+
+        /**
+         * Build a new instance.
+         *
+         * @param action    The action
+         * @param key       The key
+         * @param node      The node after the action
+         * @param previous  The node before the action, can be {@code null}
+         * @param directory Is the key a directory?
+         * @since 26.10.18
+         */
+        Event(final String action, final String key, final Node node, final Node previous, final boolean directory) {
+            this.action = action;
+            this.key = key;
+            this.node = node;
+            this.previous = previous;
+            this.directory = directory;
+        }
+
+        /**
+         * Build the JSON representation of the event.
+         *
+         * @return The JSON representation
+         * @since 26.10.18
+         */
+        ObjectNode toJson() {
+            final ObjectNode document = OBJECT_MAPPER.createObjectNode().put("action", this.action);
+            final ObjectNode nodeJson = document.putObject("node");
+            nodeJson.setAll(this.node.toJson(this.key));
+            if (this.directory) {
+                nodeJson.put("dir", true);
+            }
+            if (this.previous != null) {
+                document.set("prevNode", this.previous.toJson(this.key));
+            }
+            return document;
+        }
+    }
+
+    /**
+     * A v3 key revision.
+     *
+     * @since 26.10.18
+     */
+    private static final class Revision {
+
+        /**
+         * The value, decoded with ISO-8859-1, {@code null} for deletions.
+         *
+         * @since 26.10.18
+         */
+        private final String value;
+
+        /**
+         * The revision the key has been created at.
+         *
+         * @since 26.10.18
+         */
+        private final long createRevision;
+
+        /**
+         * The revision the key has been modified at.
+         *
+         * @since 26.10.18
+         */
+        private final long modRevision;
+
+        /**
+         * The number of modifications since the key creation.
+         *
+         * @since 26.10.18
+         */
+        private final long version;
+
+        /**
+         * Build a new instance.
+         *
+         * @param value          The value, {@code null} for deletions
+         * @param createRevision The revision the key has been created at
+         * @param modRevision    The revision the key has been modified at
+         * @param version        The number of modifications since the key creation
+         * @since 26.10.18
+         */
+        Revision(final String value, final long createRevision, final long modRevision, final long version) {
+            this.value = value;
+            this.createRevision = createRevision;
+            this.modRevision = modRevision;
+            this.version = version;
+        }
+    }
+}
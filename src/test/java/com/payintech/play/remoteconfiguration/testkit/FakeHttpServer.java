@@ -0,0 +1,165 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 PayinTech
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.payintech.play.remoteconfiguration.testkit;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * In-process fake of a static HTTP server serving configuration
+ * documents. Each document has an entity tag changing with its
+ * content: conditional requests ("If-None-Match") are answered with
+ * a "304 Not Modified" status when the document has not changed.
+ *
+ * @author Thibault Meyer
+ * @version 26.10.18
+ * @since 26.10.18
+ */
+public final class FakeHttpServer extends FakeServer {
+
+    /**
+     * The served documents, by path.
+     *
+     * @since 26.10.18
+     */
+    private final Map<String, Document> documents;
+
+    /**
+     * The number of document updates, used to build entity tags.
+     *
+     * @since 26.10.18
+     */
+    private long version;
+
+    /**
+     * Build a new instance listening on a random port.
+     *
+     * @since 26.10.18
+     */
+    public FakeHttpServer() {
+        this(0);
+    }
+
+    /**
+     * Build a new instance.
+     *
+     * @param port The port to listen on, zero for a random port
+     * @since 26.10.18
+     */
+    public FakeHttpServer(final int port) {
+        super(port);
+        this.documents = new HashMap<>();
+    }
+
+    /**
+     * Serve a document.
+     *
+     * @param path        The document path (ie: "/application.conf")
+     * @param contentType The document content type (ie: "application/hocon")
+     * @param content     The document content
+     * @since 26.10.18
+     */
+    public synchronized void putDocument(final String path, final String contentType, final String content) {
+        this.version += 1;
+        this.documents.put(path, new Document(contentType, content.getBytes(StandardCharsets.UTF_8), "\"" + this.version + "\""));
+    }
+
+    /**
+     * Stop serving a document.
+     *
+     * @param path The document path
+     * @since 26.10.18
+     */
+    public synchronized void removeDocument(final String path) {
+        this.documents.remove(path);
+    }
+
+    @Override
+    protected void handle(final HttpExchange exchange) throws IOException {
+        readBody(exchange);
+        final Document document;
+        synchronized (this) {
+            document = this.documents.get(exchange.getRequestURI().getPath());
+        }
+        if (document == null) {
+            this.send(exchange, 404, "text/plain", "Not found");
+        } else if (!exchange.getRequestMethod().equals("GET")) {
+            this.send(exchange, 405, "text/plain", "Method not allowed");
+        } else {
+            exchange.getResponseHeaders().set("ETag", document.entityTag);
+            if (document.entityTag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                this.send(exchange, 304, null, new byte[0]);
+            } else {
+                this.send(exchange, 200, document.contentType, document.content);
+            }
+        }
+    }
+
+    /**
+     * A served document.
+     *
+     * @since 26.10.18
+     */
+    private static final class Document {
+
+        /**
+         * The content type.
+         *
+         * @since 26.10.18
+         */
+        private final String contentType;
+
+        /**
+         * The content.
+         *
+         * @since 26.10.18
+         */
+        private final byte[] content;
+
+        /**
+         * The entity tag.
+         *
+         * @since 26.10.18
+         */
+        private final String entityTag;
+
+        /**
+         * Build a new instance.
+         *
+         * @param contentType The content type
+         * @param content     The content
+         * @param entityTag   The entity tag
+         * @since 26.10.18
+         */
+        Document(final String contentType, final byte[] content, final String entityTag) {
+            this.contentType = contentType;
+            this.content = content;
+            this.entityTag = entityTag;
+        }
+    }
+}
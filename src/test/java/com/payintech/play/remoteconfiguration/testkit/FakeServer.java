@@ -0,0 +1,504 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 PayinTech
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.payintech.play.remoteconfiguration.testkit;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.BindException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process HTTP server faking a configuration backend. Each request
+ * is handled on its own thread, so blocking queries never delay other
+ * requests. Faults (latency, bandwidth cap, errors, dropped connections)
+ * are injected before the request reaches the implementation. The
+ * server counts the requests and the bytes sent to measure the load
+ * generated by the clients.
+ * <p>
+ * The server state is guarded by the server instance itself:
+ * implementations must hold its monitor while reading or updating their
+ * data, call {@link #signalChange()} after each update and use
+ * {@link #awaitChange(long)} to implement blocking queries.
+ *
+ * @author Thibault Meyer
+ * @version 26.10.18
+ * @since 26.10.18
+ */
+public abstract class FakeServer implements Closeable {
+
+    /**
+     * Chunks sent per second when the bandwidth is capped.
+     *
+     * @since 26.10.18
+     */
+    private static final int THROTTLE_CHUNKS_PER_SECOND = 20;
+
+    /**
+     * The port to listen on, zero for a random port.
+     *
+     * @since 26.10.18
+     */
+    private final int port;
+
+    /**
+     * The injected faults.
+     *
+     * @since 26.10.18
+     */
+    private final Faults faults;
+
+    /**
+     * Number of received requests.
+     *
+     * @since 26.10.18
+     */
+    private final AtomicLong requestCount;
+
+    /**
+     * Number of response body bytes sent.
+     *
+     * @since 26.10.18
+     */
+    private final AtomicLong bytesSent;
+
+    /**
+     * Number of injected errors.
+     *
+     * @since 26.10.18
+     */
+    private final AtomicLong injectedErrorCount;
+
+    /**
+     * Number of dropped connections.
+     *
+     * @since 26.10.18
+     */
+    private final AtomicLong droppedConnectionCount;
+
+    /**
+     * Number of requests being handled.
+     *
+     * @since 26.10.18
+     */
+    private final AtomicInteger activeRequests;
+
+    /**
+     * Maximum number of requests handled at the same time.
+     *
+     * @since 26.10.18
+     */
+    private final AtomicInteger peakActiveRequests;
+
+    /**
+     * The HTTP server, {@code null} until started.
+     *
+     * @since 26.10.18
+     */
+    private HttpServer server;
+
+    /**
+     * The executor handling the requests.
+     *
+     * @since 26.10.18
+     */
+    private ExecutorService executor;
+
+    /**
+     * Is the server running?
+     *
+     * @since 26.10.18
+     */
+    private volatile boolean running;
+
+    /**
+     * Build a new instance.
+     *
+     * @param port The port to listen on, zero for a random port
+     * @since 26.10.18
+     */
+    protected FakeServer(final int port) {
+        this.port = port;
+        this.faults = new Faults();
+        this.requestCount = new AtomicLong();
+        this.bytesSent = new AtomicLong();
+        this.injectedErrorCount = new AtomicLong();
+        this.droppedConnectionCount = new AtomicLong();
+        this.activeRequests = new AtomicInteger();
+        this.peakActiveRequests = new AtomicInteger();
+    }
+
+    /**
+     * Start a server, unless its port is already bound (ie: by a real
+     * backend running locally).
+     *
+     * @param fakeServer The server to start
+     * @param <T>        The server type
+     * @return The started server, or {@code null} if the port is already bound
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    protected static <T extends FakeServer> T startIfAbsent(final T fakeServer) throws IOException {
+        try {
+            fakeServer.start();
+            return fakeServer;
+        } catch (final BindException ignore) {
+            return null;
+        }
+    }
+
+    /**
+     * Read the whole request body.
+     *
+     * @param exchange The HTTP exchange
+     * @return The request body
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    protected static byte[] readBody(final HttpExchange exchange) throws IOException {
+        try (final InputStream is = exchange.getRequestBody()) {
+            final ByteArrayOutputStream os = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[8192];
+            int length = is.read(buffer);
+            while (length != -1) {
+                os.write(buffer, 0, length);
+                length = is.read(buffer);
+            }
+            return os.toByteArray();
+        }
+    }
+
+    /**
+     * Parse URL-encoded parameters ("a=1&amp;b&amp;c=3"). Parameters
+     * without value are mapped to an empty string.
+     *
+     * @param encoded The encoded parameters, can be {@code null}
+     * @return The parameters
+     * @since 26.10.18
+     */
+    protected static Map<String, String> parseParameters(final String encoded) {
+        final Map<String, String> parameters = new HashMap<>();
+        if (encoded != null && !encoded.isEmpty()) {
+            for (final String parameter : encoded.split("&")) {
+                final int idx = parameter.indexOf('=');
+                try {
+                    parameters.put(
+                        URLDecoder.decode(idx < 0 ? parameter : parameter.substring(0, idx), "UTF-8"),
+                        idx < 0 ? "" : URLDecoder.decode(parameter.substring(idx + 1), "UTF-8")
+                    );
+                } catch (final UnsupportedEncodingException ex) {
+                    throw new IllegalStateException(ex);
+                }
+            }
+        }
+        return parameters;
+    }
+
+    /**
+     * Start the server.
+     *
+     * @throws IOException When the port can't be bound
+     * @since 26.10.18
+     */
+    public void start() throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", this.port), 1024);
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            final Thread thread = new Thread(runnable, "fake-" + this.getClass().getSimpleName());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server.setExecutor(this.executor);
+        this.server.createContext("/", this::dispatch);
+        this.running = true;
+        this.server.start();
+    }
+
+    /**
+     * Retrieve the port the server listens on.
+     *
+     * @return The port
+     * @since 26.10.18
+     */
+    public int getPort() {
+        return this.server.getAddress().getPort();
+    }
+
+    /**
+     * Retrieve the endpoint of the server.
+     *
+     * @return The endpoint, ie: "http://127.0.0.1:8500/"
+     * @since 26.10.18
+     */
+    public String getEndpoint() {
+        return "http://127.0.0.1:" + this.getPort() + "/";
+    }
+
+    /**
+     * Retrieve the injected faults.
+     *
+     * @return The injected faults
+     * @since 26.10.18
+     */
+    public Faults getFaults() {
+        return this.faults;
+    }
+
+    /**
+     * Retrieve the number of received requests.
+     *
+     * @return The number of requests
+     * @since 26.10.18
+     */
+    public long getRequestCount() {
+        return this.requestCount.get();
+    }
+
+    /**
+     * Retrieve the number of response body bytes sent.
+     *
+     * @return The number of bytes
+     * @since 26.10.18
+     */
+    public long getBytesSent() {
+        return this.bytesSent.get();
+    }
+
+    /**
+     * Retrieve the number of injected errors.
+     *
+     * @return The number of errors
+     * @since 26.10.18
+     */
+    public long getInjectedErrorCount() {
+        return this.injectedErrorCount.get();
+    }
+
+    /**
+     * Retrieve the number of dropped connections.
+     *
+     * @return The number of dropped connections
+     * @since 26.10.18
+     */
+    public long getDroppedConnectionCount() {
+        return this.droppedConnectionCount.get();
+    }
+
+    /**
+     * Retrieve the maximum number of requests handled at the same time
+     * since the statistics have been reset.
+     *
+     * @return The number of requests
+     * @since 26.10.18
+     */
+    public int getPeakActiveRequests() {
+        return this.peakActiveRequests.get();
+    }
+
+    /**
+     * Reset the statistics (requests, bytes, errors, etc.).
+     *
+     * @since 26.10.18
+     */
+    public void resetStatistics() {
+        this.requestCount.set(0);
+        this.bytesSent.set(0);
+        this.injectedErrorCount.set(0);
+        this.droppedConnectionCount.set(0);
+        this.peakActiveRequests.set(this.activeRequests.get());
+    }
+
+    /**
+     * Is the server running?
+     *
+     * @return {@code true} if the server is running
+     * @since 26.10.18
+     */
+    public boolean isRunning() {
+        return this.running;
+    }
+
+    /**
+     * Handle a request. Faults have already been injected.
+     *
+     * @param exchange The HTTP exchange
+     * @throws IOException          When I/O related errors occur
+     * @throws InterruptedException When the server is stopped during a blocking query
+     * @since 26.10.18
+     */
+    protected abstract void handle(final HttpExchange exchange) throws IOException, InterruptedException;
+
+    /**
+     * Send a response. The response body is throttled when the
+     * bandwidth is capped.
+     *
+     * @param exchange    The HTTP exchange
+     * @param status      The HTTP status
+     * @param contentType The content type, can be {@code null}
+     * @param body        The response body
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    protected void send(final HttpExchange exchange,
+                        final int status,
+                        final String contentType,
+                        final byte[] body) throws IOException {
+        if (contentType != null) {
+            exchange.getResponseHeaders().set("Content-Type", contentType);
+        }
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        try (final OutputStream os = exchange.getResponseBody()) {
+            final long bandwidth = this.faults.getBandwidth();
+            if (bandwidth <= 0) {
+                os.write(body);
+            } else {
+                final int chunkSize = (int) Math.max(1, Math.min(body.length, bandwidth / THROTTLE_CHUNKS_PER_SECOND));
+                final long startTime = System.nanoTime();
+                for (int offset = 0; offset < body.length; offset += chunkSize) {
+                    final int length = Math.min(chunkSize, body.length - offset);
+                    os.write(body, offset, length);
+                    os.flush();
+                    final long delay = startTime + (offset + length) * TimeUnit.SECONDS.toNanos(1) / bandwidth - System.nanoTime();
+                    if (delay > 0) {
+                        try {
+                            TimeUnit.NANOSECONDS.sleep(delay);
+                        } catch (final InterruptedException ex) {
+                            throw new InterruptedIOException("Server stopped");
+                        }
+                    }
+                }
+            }
+        }
+        this.bytesSent.addAndGet(body.length);
+    }
+
+    /**
+     * Send a response with a text body.
+     *
+     * @param exchange    The HTTP exchange
+     * @param status      The HTTP status
+     * @param contentType The content type, can be {@code null}
+     * @param body        The response body
+     * @throws IOException When I/O related errors occur
+     * @since 26.10.18
+     */
+    protected void send(final HttpExchange exchange,
+                        final int status,
+                        final String contentType,
+                        final String body) throws IOException {
+        this.send(exchange, status, contentType, body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Notify the blocking queries that the data has changed.
+     *
+     * @since 26.10.18
+     */
+    protected synchronized void signalChange() {
+        this.notifyAll();
+    }
+
+    /**
+     * Wait for a change of the data. The caller must hold the monitor
+     * of the server and check its condition again on return.
+     *
+     * @param deadline The time to stop waiting at, as returned by {@code System.currentTimeMillis()}
+     * @return {@code false} if the deadline is reached or if the server is stopped
+     * @throws InterruptedException When the server is stopped
+     * @since 26.10.18
+     */
+    protected boolean awaitChange(final long deadline) throws InterruptedException {
+        final long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0 || !this.running) {
+            return false;
+        }
+        this.wait(remaining);
+        return this.running;
+    }
+
+    /**
+     * Inject the faults, then handle the request.
+     *
+     * @param exchange The HTTP exchange
+     * @since 26.10.18
+     */
+    private void dispatch(final HttpExchange exchange) {
+        this.requestCount.incrementAndGet();
+        this.peakActiveRequests.accumulateAndGet(this.activeRequests.incrementAndGet(), Math::max);
+        try {
+            final long delay = this.faults.nextDelay();
+            if (delay > 0) {
+                Thread.sleep(delay);
+            }
+            if (this.faults.nextDrop()) {
+                // Closing the exchange before sending the headers closes the connection
+                this.droppedConnectionCount.incrementAndGet();
+            } else if (this.faults.nextError()) {
+                this.injectedErrorCount.incrementAndGet();
+                readBody(exchange);
+                this.send(exchange, this.faults.getErrorStatus(), "text/plain", "Injected failure");
+            } else {
+                this.handle(exchange);
+            }
+        } catch (final InterruptedException | InterruptedIOException ignore) {
+            Thread.currentThread().interrupt();
+        } catch (final IOException | RuntimeException ex) {
+            if (exchange.getResponseCode() == -1) {
+                try {
+                    this.send(exchange, 500, "text/plain", String.valueOf(ex));
+                } catch (final IOException ignore) {
+                    // The client is gone
+                }
+            }
+        } finally {
+            exchange.close();
+            this.activeRequests.decrementAndGet();
+        }
+    }
+
+    @Override
+    public void close() {
+        this.running = false;
+        this.signalChange();
+        if (this.server != null) {
+            this.server.stop(0);
+            this.executor.shutdownNow();
+        }
+    }
+}
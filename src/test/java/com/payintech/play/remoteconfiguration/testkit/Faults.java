@@ -0,0 +1,221 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 PayinTech
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.payintech.play.remoteconfiguration.testkit;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Faults injected by a fake server. All settings can be changed while
+ * the server is running; they apply to the next requests.
+ *
+ * @author Thibault Meyer
+ * @version 26.10.18
+ * @since 26.10.18
+ */
+public final class Faults {
+
+    /**
+     * Fixed delay added before answering, in milliseconds.
+     *
+     * @since 26.10.18
+     */
+    private volatile long latency;
+
+    /**
+     * Maximum random delay added to the fixed delay, in milliseconds.
+     *
+     * @since 26.10.18
+     */
+    private volatile long jitter;
+
+    /**
+     * Maximum number of response body bytes sent per second, zero
+     * means unlimited.
+     *
+     * @since 26.10.18
+     */
+    private volatile long bandwidth;
+
+    /**
+     * Probability of answering with an error status.
+     *
+     * @since 26.10.18
+     */
+    private volatile double errorRate;
+
+    /**
+     * The error status.
+     *
+     * @since 26.10.18
+     */
+    private volatile int errorStatus = 500;
+
+    /**
+     * Probability of closing the connection without answering.
+     *
+     * @since 26.10.18
+     */
+    private volatile double dropRate;
+
+    /**
+     * Set the fixed delay added before answering.
+     *
+     * @param latency The delay in milliseconds
+     * @return The current instance
+     * @since 26.10.18
+     */
+    public Faults setLatency(final long latency) {
+        this.latency = latency;
+        return this;
+    }
+
+    /**
+     * Set the maximum random delay added to the fixed delay.
+     *
+     * @param jitter The maximum delay in milliseconds
+     * @return The current instance
+     * @since 26.10.18
+     */
+    public Faults setJitter(final long jitter) {
+        this.jitter = jitter;
+        return this;
+    }
+
+    /**
+     * Set the maximum number of response body bytes sent per second.
+     *
+     * @param bandwidth The number of bytes per second, zero means unlimited
+     * @return The current instance
+     * @since 26.10.18
+     */
+    public Faults setBandwidth(final long bandwidth) {
+        this.bandwidth = bandwidth;
+        return this;
+    }
+
+    /**
+     * Set the probability of answering with an error status.
+     *
+     * @param errorRate The probability, between 0 and 1
+     * @return The current instance
+     * @since 26.10.18
+     */
+    public Faults setErrorRate(final double errorRate) {
+        this.errorRate = errorRate;
+        return this;
+    }
+
+    /**
+     * Set the status of the injected errors (500 by default).
+     *
+     * @param errorStatus The HTTP status
+     * @return The current instance
+     * @since 26.10.18
+     */
+    public Faults setErrorStatus(final int errorStatus) {
+        this.errorStatus = errorStatus;
+        return this;
+    }
+
+    /**
+     * Set the probability of closing the connection without answering.
+     *
+     * @param dropRate The probability, between 0 and 1
+     * @return The current instance
+     * @since 26.10.18
+     */
+    public Faults setDropRate(final double dropRate) {
+        this.dropRate = dropRate;
+        return this;
+    }
+
+    /**
+     * Remove all faults.
+     *
+     * @return The current instance
+     * @since 26.10.18
+     */
+    public Faults reset() {
+        this.latency = 0;
+        this.jitter = 0;
+        this.bandwidth = 0;
+        this.errorRate = 0;
+        this.errorStatus = 500;
+        this.dropRate = 0;
+        return this;
+    }
+
+    /**
+     * Retrieve the maximum number of response body bytes sent per second.
+     *
+     * @return The number of bytes per second, zero means unlimited
+     * @since 26.10.18
+     */
+    public long getBandwidth() {
+        return this.bandwidth;
+    }
+
+    /**
+     * Retrieve the status of the injected errors.
+     *
+     * @return The HTTP status
+     * @since 26.10.18
+     */
+    public int getErrorStatus() {
+        return this.errorStatus;
+    }
+
+    /**
+     * Draw the delay to wait before answering the next request.
+     *
+     * @return The delay in milliseconds
+     * @since 26.10.18
+     */
+    long nextDelay() {
+        final long maxJitter = this.jitter;
+        return this.latency + (maxJitter > 0 ? ThreadLocalRandom.current().nextLong(maxJitter) : 0);
+    }
+
+    /**
+     * Draw whether the next request must be answered with an error.
+     *
+     * @return {@code true} if an error must be returned
+     * @since 26.10.18
+     */
+    boolean nextError() {
+        final double rate = this.errorRate;
+        return rate > 0 && ThreadLocalRandom.current().nextDouble() < rate;
+    }
+
+    /**
+     * Draw whether the connection of the next request must be dropped.
+     *
+     * @return {@code true} if the connection must be dropped
+     * @since 26.10.18
+     */
+    boolean nextDrop() {
+        final double rate = this.dropRate;
+        return rate > 0 && ThreadLocalRandom.current().nextDouble() < rate;
+    }
+}